@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -37,6 +37,7 @@ import co.cask.cdap.common.NotImplementedException;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.discovery.EndpointStrategy;
 import co.cask.cdap.common.discovery.RandomEndpointStrategy;
+import co.cask.cdap.common.http.JsonArrayBodyProducer;
 import co.cask.cdap.common.io.CaseInsensitiveEnumTypeAdapterFactory;
 import co.cask.cdap.common.namespace.NamespaceQueryAdmin;
 import co.cask.cdap.common.security.AuditDetail;
@@ -80,8 +81,9 @@ import co.cask.http.HttpResponder;
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Throwables;
-import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Iterators;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.gson.Gson;
@@ -94,6 +96,7 @@ import com.google.inject.Singleton;
 import org.apache.twill.api.logging.LogEntry;
 import org.apache.twill.discovery.DiscoveryServiceClient;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
@@ -104,10 +107,10 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -144,6 +147,9 @@ public class ProgramLifecycleHttpHandler extends AbstractAppFabricHttpHandler {
     .registerTypeAdapter(ScheduleSpecification.class, new ScheduleSpecificationCodec())
     .create();
 
+  // Same as the Gson used by HttpResponder.sendJson, to keep the run records response unchanged
+  private static final Gson RUN_RECORD_GSON = new Gson();
+
   private static final Function<RunRecordMeta, RunRecord> CONVERT_TO_RUN_RECORD =
     new Function<RunRecordMeta, RunRecord>() {
       @Override
@@ -1490,12 +1496,16 @@ public class ProgramLifecycleHttpHandler extends AbstractAppFabricHttpHandler {
       ProgramRunStatus runStatus = (status == null) ? ProgramRunStatus.ALL :
         ProgramRunStatus.valueOf(status.toUpperCase());
 
-      Collection<RunRecord> records = Collections2.transform(
-        store.getRuns(programId, runStatus, start, end, limit).values(),
+      // Run records are converted and serialized lazily as the response is being sent in chunks, so that
+      // the serialized form of the whole list is never held in memory.
+      Iterator<RunRecord> records = Iterators.transform(
+        store.getRuns(programId, runStatus, start, end, limit).values().iterator(),
         CONVERT_TO_RUN_RECORD
       );
 
-      responder.sendJson(HttpResponseStatus.OK, records);
+      responder.sendContent(HttpResponseStatus.OK,
+                            new JsonArrayBodyProducer<>(records, RunRecord.class, RUN_RECORD_GSON),
+                            ImmutableMultimap.of(HttpHeaders.Names.CONTENT_TYPE, "application/json"));
     } catch (IllegalArgumentException e) {
       throw new BadRequestException(String.format("Invalid status %s. Supported options for status of runs are " +
                                                     "running/completed/failed", status));
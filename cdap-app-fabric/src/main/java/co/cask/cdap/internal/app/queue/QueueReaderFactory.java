@@ -44,13 +44,24 @@ public final class QueueReaderFactory {
     this.authenticationContext = authenticationContext;
   }
 
+  /**
+   * Creates a {@link QueueReader} for reading from a queue.
+   *
+   * @param batchSize provides the maximum number of entries to dequeue each time, which can change over time
+   */
   public <T> QueueReader<T> createQueueReader(Supplier<QueueConsumer> consumerSupplier,
-                                              int batchSize, Function<ByteBuffer, T> decoder) {
+                                              Supplier<Integer> batchSize, Function<ByteBuffer, T> decoder) {
     return new SingleQueue2Reader<>(consumerSupplier, batchSize, decoder);
   }
 
+  /**
+   * Creates a {@link QueueReader} for reading from a stream.
+   *
+   * @param batchSize provides the maximum number of events to dequeue each time, which can change over time
+   */
   public <T> QueueReader<T> createStreamReader(StreamId streamId, Supplier<StreamConsumer> consumerSupplier,
-                                               int batchSize, Function<StreamEvent, T> transformer) throws Exception {
+                                               Supplier<Integer> batchSize,
+                                               Function<StreamEvent, T> transformer) throws Exception {
     authorizationEnforcer.enforce(streamId, authenticationContext.getPrincipal(), Action.READ);
     return new StreamQueueReader<>(streamId, consumerSupplier, batchSize, transformer, authenticationContext,
                                    authorizationEnforcer);
@@ -42,13 +42,13 @@ public final class StreamQueueReader<T> implements QueueReader<T> {
 
   private final StreamId streamId;
   private final Supplier<StreamConsumer> consumerSupplier;
-  private final int batchSize;
+  private final Supplier<Integer> batchSize;
   private final Function<StreamEvent, T> eventTransform;
   private final Principal principal;
   private final AuthorizationEnforcer authorizationEnforcer;
 
 
-  StreamQueueReader(StreamId streamId, Supplier<StreamConsumer> consumerSupplier, int batchSize,
+  StreamQueueReader(StreamId streamId, Supplier<StreamConsumer> consumerSupplier, Supplier<Integer> batchSize,
                     Function<StreamEvent, T> eventTransform, AuthenticationContext authenticationContext,
                     AuthorizationEnforcer authorizationEnforcer) {
     this.streamId = streamId;
@@ -70,6 +70,6 @@ public final class StreamQueueReader<T> implements QueueReader<T> {
     }
     StreamConsumer consumer = consumerSupplier.get();
     return new BasicInputDatum<>(QueueName.fromStream(consumer.getStreamId()),
-                                 consumer.poll(batchSize, timeout, timeoutUnit), eventTransform);
+                                 consumer.poll(batchSize.get(), timeout, timeoutUnit), eventTransform);
   }
 }
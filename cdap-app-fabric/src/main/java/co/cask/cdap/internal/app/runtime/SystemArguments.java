@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -49,6 +49,10 @@ public final class SystemArguments {
   private static final String RETRY_POLICY_DELAY_BASE_MS = "system." + Constants.Retry.DELAY_BASE_MS;
   private static final String RETRY_POLICY_DELAY_MAX_MS = "system." + Constants.Retry.DELAY_MAX_MS;
   public static final String TRANSACTION_TIMEOUT = "system.data.tx.timeout";
+  public static final String SERVICE_MAX_CONCURRENT_REQUESTS = "system.service.max.concurrent.requests";
+  public static final String SERVICE_REQUEST_TIMEOUT_SECONDS = "system.service.request.timeout.seconds";
+
+  private static final int DEFAULT_SERVICE_REQUEST_TIMEOUT_SECONDS = 300;
 
   public static Map<String, String> getLogLevels(Map<String, String> args) {
     Map<String, String> logLevels = new HashMap<>();
@@ -113,6 +117,27 @@ public final class SystemArguments {
     return timeout;
   }
 
+  /**
+   * Returns the maximum number of requests that a service handles concurrently, based on the given arguments.
+   *
+   * @return the value of the argument system.service.max.concurrent.requests, or {@code 0} if it is not given,
+   *         which means that the number of concurrent requests is not limited.
+   */
+  public static int getServiceMaxConcurrentRequests(Map<String, String> args) {
+    return getNonNegativeInt(args, SERVICE_MAX_CONCURRENT_REQUESTS, "service max concurrent requests", 0);
+  }
+
+  /**
+   * Returns the number of seconds after which a service request that has not completed no longer counts towards
+   * the maximum number of concurrent requests, based on the given arguments.
+   *
+   * @return the value of the argument system.service.request.timeout.seconds, or {@code 300} if it is not given
+   */
+  public static int getServiceRequestTimeoutSeconds(Map<String, String> args) {
+    Integer timeout = getPositiveInt(args, SERVICE_REQUEST_TIMEOUT_SECONDS, "service request timeout");
+    return timeout == null ? DEFAULT_SERVICE_REQUEST_TIMEOUT_SECONDS : timeout;
+  }
+
   /**
    * Validates the custom transaction timeout, if specified in the given arguments.
    *
@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.flow;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * The dequeue batch size of an input queue that is adjusted based on the measured time of processing a batch
+ * and committing its transaction.
+ *
+ * The batch size is doubled when a full batch is dequeued and the transaction commit takes longer than
+ * processing the batch, since the commit cost is then amortized over more entries. The batch size is halved
+ * when processing a batch takes longer than the latency budget.
+ *
+ * This class is only used by the process thread of a flowlet.
+ */
+@NotThreadSafe
+final class AdaptiveBatchSize implements Supplier<Integer> {
+
+  private final int maxSize;
+  private final long latencyNanos;
+  private int size;
+
+  /**
+   * Creates an instance.
+   *
+   * @param initialSize the initial batch size
+   * @param maxSize the maximum batch size
+   * @param latencyMillis the maximum time in milliseconds that processing a batch should take
+   */
+  AdaptiveBatchSize(int initialSize, int maxSize, long latencyMillis) {
+    Preconditions.checkArgument(initialSize > 0, "Initial batch size must be > 0");
+    Preconditions.checkArgument(maxSize >= initialSize, "Maximum batch size must be >= initial batch size");
+    this.maxSize = maxSize;
+    this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+    this.size = initialSize;
+  }
+
+  @Override
+  public Integer get() {
+    return size;
+  }
+
+  /**
+   * Updates the batch size based on the last batch.
+   *
+   * @param dequeued number of entries dequeued in the last batch
+   * @param processNanos time in nanoseconds spent in processing the last batch
+   * @param commitNanos time in nanoseconds spent in committing the transaction for the last batch
+   */
+  void update(int dequeued, long processNanos, long commitNanos) {
+    if (processNanos > latencyNanos) {
+      size = Math.max(1, Math.min(size, dequeued) / 2);
+    } else if (dequeued >= size && commitNanos > processNanos) {
+      size = (int) Math.min(maxSize, size * 2L);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("size", size)
+      .add("maxSize", maxSize)
+      .toString();
+  }
+}
@@ -54,6 +54,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import javax.annotation.Nullable;
 
 /**
  * This class responsible invoking process methods of a {@link Flowlet}.
@@ -67,6 +68,7 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
   private final Callback txCallback;
   private final LoggingContext loggingContext;
   private final PriorityQueue<FlowletProcessEntry<?>> processQueue;
+  private final long txCoalesceNanos;
 
   private Thread runThread;
   private ExecutorService processExecutor;
@@ -75,10 +77,25 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
                        DataFabricFacade dataFabricFacade,
                        Callback txCallback,
                        Collection<? extends ProcessSpecification<?>> processSpecifications) {
+    this(flowletContext, dataFabricFacade, txCallback, processSpecifications, 0L);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param txCoalesceMillis if greater than zero, process methods invoked in the same round share one transaction,
+   *                         which is committed once it has been opened for at least this many milliseconds
+   */
+  FlowletProcessDriver(BasicFlowletContext flowletContext,
+                       DataFabricFacade dataFabricFacade,
+                       Callback txCallback,
+                       Collection<? extends ProcessSpecification<?>> processSpecifications,
+                       long txCoalesceMillis) {
     this.flowletContext = flowletContext;
     this.dataFabricFacade = dataFabricFacade;
     this.txCallback = txCallback;
     this.loggingContext = flowletContext.getLoggingContext();
+    this.txCoalesceNanos = TimeUnit.MILLISECONDS.toNanos(txCoalesceMillis);
 
     processQueue = new PriorityQueue<>(processSpecifications.size());
     for (ProcessSpecification<?> spec : processSpecifications) {
@@ -97,6 +114,7 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     this.dataFabricFacade = other.dataFabricFacade;
     this.txCallback = other.txCallback;
     this.loggingContext = other.loggingContext;
+    this.txCoalesceNanos = other.txCoalesceNanos;
     this.processQueue = new PriorityQueue<>(other.processQueue.size());
     Iterables.addAll(processQueue, other.processQueue);
   }
@@ -190,13 +208,31 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
       @Override
       public void run() {
         Thread.currentThread().setContextClassLoader(classLoader);
-        for (FlowletProcessEntry<?> entry : processList) {
-          if (!handleProcessEntry(entry, processQueue)) {
-            // If an entry is not processed (because it's not the time yet), just put it back to the queue
-            // Otherwise, it's up to the process result callback to handle re-enqueue of the entry. The callback
-            // will determine what entry to put it back, as it can be the original entry or a retry entry wrapper,
-            // depending on the process result.
-            processQueue.offer(entry);
+        CoalescedTransaction coalescedTx = txCoalesceNanos > 0 ? new CoalescedTransaction() : null;
+        try {
+          for (FlowletProcessEntry<?> entry : processList) {
+            boolean handled;
+            if (coalescedTx == null || entry.isRetry()) {
+              // Retry entry reclaims the input dequeued in an earlier transaction, hence always use its own
+              // transaction. Only one transaction can be active at a time, hence commit the coalesced one first.
+              if (coalescedTx != null) {
+                coalescedTx.commit();
+              }
+              handled = handleProcessEntry(entry, processQueue);
+            } else {
+              handled = handleCoalescedEntry(entry, processQueue, coalescedTx);
+            }
+            if (!handled) {
+              // If an entry is not processed (because it's not the time yet), just put it back to the queue
+              // Otherwise, it's up to the process result callback to handle re-enqueue of the entry. The callback
+              // will determine what entry to put it back, as it can be the original entry or a retry entry wrapper,
+              // depending on the process result.
+              processQueue.offer(entry);
+            }
+          }
+        } finally {
+          if (coalescedTx != null) {
+            coalescedTx.commit();
           }
         }
       }
@@ -243,8 +279,11 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
 
         // Call the process method and commit the transaction. The current process entry will put
         // back to queue in the postProcess method (either a retry copy or itself).
+        long startNanos = System.nanoTime();
         ProcessMethod.ProcessResult<?> result = processMethod.invoke(input);
-        postProcess(processMethodCallback(processQueue, entry, input), txContext, input, result);
+        long processNanos = System.nanoTime() - startNanos;
+        postProcess(processMethodCallback(processQueue, entry, input), txContext, input, result,
+                    entry.getProcessSpec().getBatchSize(input.getQueueName()), processNanos);
         return true;
 
       } catch (Throwable t) {
@@ -268,16 +307,98 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     return false;
   }
 
+  /**
+   * Invokes to perform dequeue and optionally invoke the user process input / tick method in the given
+   * {@link CoalescedTransaction}, which is shared with other process entries. The transaction is committed once
+   * it has been opened for longer than the coalesce latency.
+   *
+   * @param entry Contains information about the process method and queue.
+   * @param processQueue The queue for queuing up all process input methods in a flowlet instance.
+   * @param coalescedTx The transaction shared by process entries.
+   * @param <T> Type of input of the process method accepted.
+   *
+   * @return {@code true} if the entry is handled completely (regardless of process result), {@code false} otherwise.
+   */
+  private <T> boolean handleCoalescedEntry(FlowletProcessEntry<T> entry,
+                                           PriorityQueue<FlowletProcessEntry<?>> processQueue,
+                                           CoalescedTransaction coalescedTx) {
+    if (!entry.shouldProcess()) {
+      return false;
+    }
+
+    ProcessMethod<T> processMethod = entry.getProcessSpec().getProcessMethod();
+    if (processMethod.needsInput()) {
+      flowletContext.getProgramMetrics().increment("process.tuples.attempt.read", 1);
+    }
+
+    try {
+      coalescedTx.start();
+    } catch (Throwable t) {
+      LOG.error("Failed to start transaction.", t);
+      if (Throwables.getRootCause(t) instanceof UnauthorizedException) {
+        Throwables.propagate(t);
+      }
+      return false;
+    }
+
+    InputDatum<T> input;
+    ProcessMethod.ProcessResult<?> result;
+    long processNanos;
+    try {
+      input = entry.getProcessSpec().getQueueReader().dequeue(0, TimeUnit.MILLISECONDS);
+      if (!input.needProcess()) {
+        entry.backOff();
+        return false;
+      }
+      entry.resetBackOff();
+
+      long startNanos = System.nanoTime();
+      result = processMethod.invoke(input);
+      processNanos = System.nanoTime() - startNanos;
+    } catch (Throwable t) {
+      LOG.error("System failure: {}", flowletContext, t);
+      coalescedTx.abort(processQueue);
+      if (Throwables.getRootCause(t) instanceof UnauthorizedException) {
+        throw Throwables.propagate(t);
+      }
+      return false;
+    }
+
+    ProcessMethodCallback callback = processMethodCallback(processQueue, entry, input);
+    if (!result.isSuccess()) {
+      // The failure is handled the same way as a non-coalesced transaction, after the transaction is aborted.
+      coalescedTx.abort(processQueue);
+      invokeCallback(callback, input, result, result.getCause(), FailureReason.Type.USER);
+      return true;
+    }
+
+    coalescedTx.add(new PendingProcess(entry, callback, input, result, processNanos));
+    if (coalescedTx.isExpired()) {
+      coalescedTx.commit();
+    }
+    return true;
+  }
+
   private void startTx(TransactionContext txContext) throws TransactionFailureException {
     txContext.start(flowletContext.getDefaultTxTimeout());
   }
 
+  /**
+   * Updates the given {@link AdaptiveBatchSize} with the time spent on a successfully committed input.
+   */
+  private void updateBatchSize(@Nullable AdaptiveBatchSize batchSize, InputDatum input,
+                               long processNanos, long commitNanos) {
+    if (batchSize != null) {
+      batchSize.update(input.size(), processNanos, commitNanos);
+    }
+  }
+
   /**
    * Process the process result. This method never throws.
    */
   private void postProcess(ProcessMethodCallback callback, TransactionContext txContext,
-                           InputDatum input, ProcessMethod.ProcessResult result) {
-    InputContext inputContext = input.getInputContext();
+                           InputDatum input, ProcessMethod.ProcessResult result,
+                           @Nullable AdaptiveBatchSize batchSize, long processNanos) {
     Throwable failureCause = null;
     FailureReason.Type failureType = FailureReason.Type.IO_ERROR;
     try {
@@ -286,7 +407,9 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
         if (input.getRetry() > 0) {
           input.reclaim();
         }
+        long startNanos = System.nanoTime();
         txContext.finish();
+        updateBatchSize(batchSize, input, processNanos, System.nanoTime() - startNanos);
       } else {
         failureCause = result.getCause();
         failureType = FailureReason.Type.USER;
@@ -303,10 +426,19 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
           txContext.abort();
         }
       } catch (Throwable ex) {
-        LOG.error("Fail to abort transaction: {}", inputContext, ex);
+        LOG.error("Fail to abort transaction: {}", input.getInputContext(), ex);
       }
     }
 
+    invokeCallback(callback, input, result, failureCause, failureType);
+  }
+
+  /**
+   * Invokes the callback based on the process result after the transaction is completed. This method never throws.
+   */
+  private void invokeCallback(ProcessMethodCallback callback, InputDatum input, ProcessMethod.ProcessResult result,
+                              @Nullable Throwable failureCause, FailureReason.Type failureType) {
+    InputContext inputContext = input.getInputContext();
     try {
       if (failureCause == null) {
         callback.onSuccess(result.getEvent(), inputContext);
@@ -420,4 +552,118 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
       }
     };
   }
+
+  /**
+   * A transaction shared by process entries. Only process entries that are not retry are coalesced, so that the
+   * same queue consumer is never dequeued more than once in the transaction.
+   */
+  private final class CoalescedTransaction {
+
+    private final List<PendingProcess> pending = Lists.newArrayList();
+    private TransactionContext txContext;
+    private long startNanos;
+
+    /**
+     * Starts a new transaction if there is no active one.
+     */
+    void start() throws TransactionFailureException {
+      if (txContext != null) {
+        return;
+      }
+      TransactionContext context = dataFabricFacade.createTransactionContext();
+      startTx(context);
+      txContext = context;
+      startNanos = System.nanoTime();
+    }
+
+    void add(PendingProcess process) {
+      pending.add(process);
+    }
+
+    /**
+     * Returns {@code true} if the transaction has been active for longer than the coalesce latency.
+     */
+    boolean isExpired() {
+      return System.nanoTime() - startNanos >= txCoalesceNanos;
+    }
+
+    /**
+     * Commits the active transaction and invokes the callbacks of all pending process results. This method never
+     * throws.
+     */
+    void commit() {
+      if (txContext == null) {
+        return;
+      }
+      TransactionContext context = txContext;
+      txContext = null;
+
+      Throwable failureCause = null;
+      long commitNanos = System.nanoTime();
+      try {
+        context.finish();
+      } catch (Throwable e) {
+        LOG.error("Transaction operation failed: {}", e.getMessage(), e);
+        failureCause = e;
+        try {
+          context.abort();
+        } catch (Throwable ex) {
+          LOG.error("Fail to abort transaction: {}", flowletContext, ex);
+        }
+      }
+      // The commit cost is shared by all inputs processed in the transaction
+      commitNanos = (System.nanoTime() - commitNanos) / Math.max(1, pending.size());
+
+      for (PendingProcess process : pending) {
+        if (failureCause == null) {
+          updateBatchSize(process.entry.getProcessSpec().getBatchSize(process.input.getQueueName()),
+                          process.input, process.processNanos, commitNanos);
+        }
+        invokeCallback(process.callback, process.input, process.result, failureCause, FailureReason.Type.IO_ERROR);
+      }
+      pending.clear();
+    }
+
+    /**
+     * Aborts the active transaction. All pending process entries are put back to the process queue, as the inputs
+     * they dequeued are rolled back and will be dequeued again. This method never throws.
+     */
+    void abort(PriorityQueue<FlowletProcessEntry<?>> processQueue) {
+      if (txContext == null) {
+        return;
+      }
+      TransactionContext context = txContext;
+      txContext = null;
+      try {
+        context.abort();
+      } catch (Throwable e) {
+        LOG.error("Fail to abort transaction: {}", flowletContext, e);
+      }
+      for (PendingProcess process : pending) {
+        processQueue.offer(process.entry);
+      }
+      pending.clear();
+    }
+  }
+
+  /**
+   * The result of a process method invocation that is waiting for the commit of a {@link CoalescedTransaction}.
+   */
+  private static final class PendingProcess {
+
+    private final FlowletProcessEntry<?> entry;
+    private final ProcessMethodCallback callback;
+    private final InputDatum<?> input;
+    private final ProcessMethod.ProcessResult<?> result;
+    private final long processNanos;
+
+    PendingProcess(FlowletProcessEntry<?> entry, ProcessMethodCallback callback, InputDatum<?> input,
+                   ProcessMethod.ProcessResult<?> result, long processNanos) {
+      this.entry = entry;
+      this.callback = callback;
+      this.input = input;
+      this.result = result;
+      this.processNanos = processNanos;
+    }
+  }
 }
@@ -74,8 +74,9 @@ import co.cask.cdap.internal.app.runtime.DataSetFieldSetter;
 import co.cask.cdap.internal.app.runtime.MetricsFieldSetter;
 import co.cask.cdap.internal.app.runtime.ProgramOptionConstants;
 import co.cask.cdap.internal.app.runtime.ProgramRunners;
+import co.cask.cdap.internal.io.DatumReader;
+import co.cask.cdap.internal.io.DatumReaderFactory;
 import co.cask.cdap.internal.io.DatumWriterFactory;
-import co.cask.cdap.internal.io.ReflectionDatumReader;
 import co.cask.cdap.internal.io.SchemaGenerator;
 import co.cask.cdap.internal.lang.Reflections;
 import co.cask.cdap.internal.specification.FlowletMethod;
@@ -90,11 +91,14 @@ import co.cask.common.io.ByteBufferInputStream;
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
 import com.google.common.reflect.TypeToken;
@@ -134,6 +138,7 @@ public final class FlowletProgramRunner implements ProgramRunner {
   private final CConfiguration cConf;
   private final SchemaGenerator schemaGenerator;
   private final DatumWriterFactory datumWriterFactory;
+  private final DatumReaderFactory datumReaderFactory;
   private final DataFabricFacadeFactory dataFabricFacadeFactory;
   private final StreamCoordinatorClient streamCoordinatorClient;
   private final QueueReaderFactory queueReaderFactory;
@@ -150,6 +155,7 @@ public final class FlowletProgramRunner implements ProgramRunner {
   public FlowletProgramRunner(CConfiguration cConfiguration,
                               SchemaGenerator schemaGenerator,
                               DatumWriterFactory datumWriterFactory,
+                              DatumReaderFactory datumReaderFactory,
                               DataFabricFacadeFactory dataFabricFacadeFactory,
                               StreamCoordinatorClient streamCoordinatorClient,
                               QueueReaderFactory queueReaderFactory,
@@ -164,6 +170,7 @@ public final class FlowletProgramRunner implements ProgramRunner {
     this.cConf = cConfiguration;
     this.schemaGenerator = schemaGenerator;
     this.datumWriterFactory = datumWriterFactory;
+    this.datumReaderFactory = datumReaderFactory;
     this.dataFabricFacadeFactory = dataFabricFacadeFactory;
     this.streamCoordinatorClient = streamCoordinatorClient;
     this.queueReaderFactory = queueReaderFactory;
@@ -270,9 +277,11 @@ public final class FlowletProgramRunner implements ProgramRunner {
       // Create the flowlet driver
       AtomicReference<FlowletProgramController> controllerRef = new AtomicReference<>();
       Service serviceHook = createServiceHook(flowletName, consumerSuppliers, controllerRef);
+      long txCoalesceMillis = Long.parseLong(getConfiguration(flowletContext,
+                                                              Constants.AppFabric.FLOWLET_TX_COALESCE_LATENCY_MS));
       FlowletRuntimeService driver = new FlowletRuntimeService(flowlet, flowletContext, processSpecs,
                                                              createCallback(flowlet, flowletDef.getFlowletSpec()),
-                                                             dataFabricFacade, serviceHook);
+                                                             dataFabricFacade, serviceHook, txCoalesceMillis);
 
       FlowletProgramController controller = new FlowletProgramController(program.getId(), flowletName,
                                                                          flowletContext, driver,
@@ -312,6 +321,8 @@ public final class FlowletProgramRunner implements ProgramRunner {
     throws Exception {
 
     Set<FlowletMethod> seenMethods = Sets.newHashSet();
+    boolean adaptiveBatchEnabled = Boolean.parseBoolean(
+      getConfiguration(flowletContext, Constants.AppFabric.FLOWLET_ADAPTIVE_BATCH_ENABLED));
 
     // Walk up the hierarchy of flowlet class to get all ProcessInput and Tick methods
     for (TypeToken<?> type : flowletType.getTypes().classes()) {
@@ -347,6 +358,7 @@ public final class FlowletProgramRunner implements ProgramRunner {
         TypeToken<?> dataType;
         ConsumerConfig consumerConfig;
         int batchSize = 1;
+        boolean adaptiveBatch = false;
 
         if (tickAnnotation != null) {
           inputNames = ImmutableSet.of();
@@ -371,6 +383,8 @@ public final class FlowletProgramRunner implements ProgramRunner {
               dataType = flowletType.resolveType(((ParameterizedType) dataType.getType()).getActualTypeArguments()[0]);
             }
             batchSize = processBatchSize;
+            // Only adapt the batch size of methods that are declared to accept batch
+            adaptiveBatch = adaptiveBatchEnabled;
           }
 
           try {
@@ -381,7 +395,8 @@ public final class FlowletProgramRunner implements ProgramRunner {
         }
 
         ProcessSpecification processSpec = processSpecFactory.create(inputNames, schema, dataType, processMethod,
-                                                                     consumerConfig, batchSize, tickAnnotation);
+                                                                     consumerConfig, batchSize, adaptiveBatch,
+                                                                     tickAnnotation);
         // Add processSpec
         if (processSpec != null) {
           result.add(processSpec);
@@ -446,6 +461,26 @@ public final class FlowletProgramRunner implements ProgramRunner {
     return null;
   }
 
+  /**
+   * Returns the value of the given configuration from the runtime arguments, or from the cConf if it is not
+   * provided in the runtime arguments.
+   */
+  private String getConfiguration(BasicFlowletContext flowletContext, String key) {
+    String value = flowletContext.getRuntimeArguments().get(key);
+    return value == null ? cConf.get(key) : value;
+  }
+
+  /**
+   * Creates a {@link AdaptiveBatchSize} that starts with the given batch size.
+   */
+  private AdaptiveBatchSize createAdaptiveBatchSize(BasicFlowletContext flowletContext, int batchSize) {
+    int maxSize = Integer.parseInt(getConfiguration(flowletContext,
+                                                    Constants.AppFabric.FLOWLET_ADAPTIVE_BATCH_MAX_SIZE));
+    long latencyMillis = Long.parseLong(getConfiguration(flowletContext,
+                                                         Constants.AppFabric.FLOWLET_ADAPTIVE_BATCH_LATENCY_MS));
+    return new AdaptiveBatchSize(batchSize, Math.max(batchSize, maxSize), latencyMillis);
+  }
+
   private int getNumGroups(Iterable<QueueSpecification> queueSpecs, QueueName queueName) {
     int numGroups = 0;
     for (QueueSpecification queueSpec : queueSpecs) {
@@ -560,8 +595,9 @@ public final class FlowletProgramRunner implements ProgramRunner {
       @Override
       public <T> ProcessSpecification create(Set<String> inputNames, Schema schema, TypeToken<T> dataType,
                                              ProcessMethod<T> method, ConsumerConfig consumerConfig, int batchSize,
-                                             Tick tickAnnotation) throws Exception {
+                                             boolean adaptiveBatch, Tick tickAnnotation) throws Exception {
         List<QueueReader<T>> queueReaders = Lists.newLinkedList();
+        Map<QueueName, AdaptiveBatchSize> batchSizes = Maps.newHashMap();
 
         for (Map.Entry<Node, Set<QueueSpecification>> entry : queueSpecs.column(flowletName).entrySet()) {
           for (QueueSpecification queueSpec : entry.getValue()) {
@@ -571,6 +607,14 @@ public final class FlowletProgramRunner implements ProgramRunner {
               && (inputNames.contains(queueName.getSimpleName())
               || inputNames.contains(FlowletDefinition.ANY_INPUT))) {
 
+              // Each queue has its own batch size if it is adaptive
+              Supplier<Integer> queueBatchSize = Suppliers.ofInstance(batchSize);
+              if (adaptiveBatch) {
+                AdaptiveBatchSize adaptiveBatchSize = createAdaptiveBatchSize(flowletContext, batchSize);
+                batchSizes.put(queueName, adaptiveBatchSize);
+                queueBatchSize = adaptiveBatchSize;
+              }
+
               Node sourceNode = entry.getKey();
               if (sourceNode.getType() == FlowletConnection.Type.STREAM) {
                 ConsumerSupplier<StreamConsumer> consumerSupplier = ConsumerSupplier.create(flowletContext.getOwners(),
@@ -589,7 +633,7 @@ public final class FlowletProgramRunner implements ProgramRunner {
                 });
 
                 queueReaders.add(queueReaderFactory.createStreamReader(queueName.toStreamId(), consumerSupplier,
-                                                                       batchSize, decoder));
+                                                                       queueBatchSize, decoder));
 
               } else {
                 int numGroups = getNumGroups(Iterables.concat(queueSpecs.row(entry.getKey()).values()), queueName);
@@ -602,7 +646,7 @@ public final class FlowletProgramRunner implements ProgramRunner {
                                                                                            dataFabricFacade, queueName,
                                                                                            consumerConfig, numGroups);
                 queueConsumerSupplierBuilder.add(consumerSupplier);
-                queueReaders.add(queueReaderFactory.createQueueReader(consumerSupplier, batchSize, decoder));
+                queueReaders.add(queueReaderFactory.createQueueReader(consumerSupplier, queueBatchSize, decoder));
               }
             }
           }
@@ -612,14 +656,15 @@ public final class FlowletProgramRunner implements ProgramRunner {
         if (!inputNames.isEmpty() && queueReaders.isEmpty()) {
           return null;
         }
-        return new ProcessSpecification<>(new RoundRobinQueueReader<>(queueReaders), method, tickAnnotation);
+        return new ProcessSpecification<>(new RoundRobinQueueReader<>(queueReaders), method, tickAnnotation,
+                                          batchSizes);
       }
     };
   }
 
   private <T> Function<ByteBuffer, T> createInputDatumDecoder(final TypeToken<T> dataType, final Schema schema,
                                                               final SchemaCache schemaCache) {
-    final ReflectionDatumReader<T> datumReader = new ReflectionDatumReader<>(schema, dataType);
+    final DatumReader<T> datumReader = datumReaderFactory.create(dataType, schema);
     final ByteBufferInputStream byteBufferInput = new ByteBufferInputStream(null);
     final BinaryDecoder decoder = new BinaryDecoder(byteBufferInput);
 
@@ -729,7 +774,7 @@ public final class FlowletProgramRunner implements ProgramRunner {
      */
     <T> ProcessSpecification create(Set<String> inputNames, Schema schema, TypeToken<T> dataType,
                                     ProcessMethod<T> method, ConsumerConfig consumerConfig, int batchSize,
-                                    Tick tickAnnotation) throws Exception;
+                                    boolean adaptiveBatch, Tick tickAnnotation) throws Exception;
   }
 
   /**
@@ -45,26 +45,29 @@ final class FlowletRuntimeService extends AbstractIdleService {
   private final Callback txCallback;
   private final DataFabricFacade dataFabricFacade;
   private final Service serviceHook;
+  private final long txCoalesceMillis;
 
   private FlowletProcessDriver flowletProcessDriver;
 
   FlowletRuntimeService(Flowlet flowlet, BasicFlowletContext flowletContext,
                         Collection<? extends ProcessSpecification<?>> processSpecs,
                         Callback txCallback, DataFabricFacade dataFabricFacade,
-                        Service serviceHook) {
+                        Service serviceHook, long txCoalesceMillis) {
     this.flowlet = flowlet;
     this.flowletContext = flowletContext;
     this.processSpecs = processSpecs;
     this.txCallback = txCallback;
     this.dataFabricFacade = dataFabricFacade;
     this.serviceHook = serviceHook;
+    this.txCoalesceMillis = txCoalesceMillis;
   }
 
   @Override
   protected void startUp() throws Exception {
     LoggingContextAccessor.setLoggingContext(flowletContext.getLoggingContext());
     flowletContext.getProgramMetrics().increment("process.instance", 1);
-    flowletProcessDriver = new FlowletProcessDriver(flowletContext, dataFabricFacade, txCallback, processSpecs);
+    flowletProcessDriver = new FlowletProcessDriver(flowletContext, dataFabricFacade, txCallback, processSpecs,
+                                                    txCoalesceMillis);
 
     serviceHook.startAndWait();
     initFlowlet();
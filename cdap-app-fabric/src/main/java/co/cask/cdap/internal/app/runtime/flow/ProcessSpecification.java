@@ -18,9 +18,13 @@ package co.cask.cdap.internal.app.runtime.flow;
 
 import co.cask.cdap.api.annotation.Tick;
 import co.cask.cdap.app.queue.QueueReader;
+import co.cask.cdap.common.queue.QueueName;
 import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
 
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  *
@@ -31,12 +35,19 @@ final class ProcessSpecification<T> {
   private final ProcessMethod<T> processMethod;
   private final Tick tickAnnotation;
   private final boolean isTick;
+  private final Map<QueueName, AdaptiveBatchSize> batchSizes;
 
   ProcessSpecification(QueueReader<T> queueReader, ProcessMethod<T> processMethod, Tick tickAnnotation) {
+    this(queueReader, processMethod, tickAnnotation, ImmutableMap.<QueueName, AdaptiveBatchSize>of());
+  }
+
+  ProcessSpecification(QueueReader<T> queueReader, ProcessMethod<T> processMethod, Tick tickAnnotation,
+                       Map<QueueName, AdaptiveBatchSize> batchSizes) {
     this.queueReader = queueReader;
     this.processMethod = processMethod;
     this.tickAnnotation = tickAnnotation;
     this.isTick = tickAnnotation != null;
+    this.batchSizes = ImmutableMap.copyOf(batchSizes);
   }
 
   QueueReader<T> getQueueReader() {
@@ -63,6 +74,15 @@ final class ProcessSpecification<T> {
     return isTick;
   }
 
+  /**
+   * Returns the {@link AdaptiveBatchSize} used for dequeuing from the given queue or {@code null} if the
+   * batch size of the queue is not adaptive.
+   */
+  @Nullable
+  AdaptiveBatchSize getBatchSize(@Nullable QueueName queueName) {
+    return queueName == null ? null : batchSizes.get(queueName);
+  }
+
   private long convertToNano(long time, TimeUnit unit) {
     return TimeUnit.NANOSECONDS.convert(time, unit);
   }
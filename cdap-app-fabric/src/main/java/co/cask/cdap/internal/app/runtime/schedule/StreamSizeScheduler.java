@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -31,6 +31,7 @@ import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.namespace.NamespaceQueryAdmin;
 import co.cask.cdap.common.stream.notification.StreamSizeNotification;
+import co.cask.cdap.common.utils.TimeProvider;
 import co.cask.cdap.internal.app.runtime.ProgramOptionConstants;
 import co.cask.cdap.internal.app.runtime.schedule.store.DatasetBasedStreamSizeScheduleStore;
 import co.cask.cdap.internal.app.services.ProgramLifecycleService;
@@ -47,6 +48,7 @@ import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.proto.id.NotificationFeedId;
 import co.cask.cdap.proto.id.ProgramId;
 import co.cask.cdap.proto.id.StreamId;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
@@ -74,6 +76,7 @@ import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -115,6 +118,7 @@ public class StreamSizeScheduler implements Scheduler {
 
   private ListeningExecutorService taskExecutorService;
   private boolean schedulerStarted;
+  private volatile TimeProvider timeProvider = TimeProvider.SYSTEM_TIME;
 
   @Inject
   public StreamSizeScheduler(CConfiguration cConf, NotificationService notificationService, MetricStore metricStore,
@@ -155,6 +159,23 @@ public class StreamSizeScheduler implements Scheduler {
     schedulerStarted = true;
   }
 
+  /**
+   * Sets the {@link TimeProvider} used to decide whether the scheduled polling of streams is needed.
+   */
+  @VisibleForTesting
+  void setTimeProvider(TimeProvider timeProvider) {
+    this.timeProvider = timeProvider;
+  }
+
+  /**
+   * Returns {@code true} if the next scheduled polling of the given stream would query its size.
+   */
+  @VisibleForTesting
+  boolean shouldPoll(StreamId streamId) {
+    StreamSubscriber streamSubscriber = streamSubscribers.get(streamId);
+    return streamSubscriber != null && streamSubscriber.shouldPoll();
+  }
+
   boolean isStarted() {
     return schedulerStarted;
   }
@@ -483,6 +504,11 @@ public class StreamSizeScheduler implements Scheduler {
 
     // delta represents the gap between notifications for the stream and the stream size metric
     private Long delta;
+    // Whether a polling to compute the delta is pending, so that only one polling is done for it
+    private boolean deltaPollPending;
+
+    // Time at which the last notification was received
+    private volatile long lastNotificationTime;
 
     private StreamSubscriber(Id.Stream streamId) {
       this.streamId = streamId;
@@ -509,7 +535,7 @@ public class StreamSizeScheduler implements Scheduler {
 
     @Override
     protected void runOneIteration() throws Exception {
-      if (activeTasks.get() == 0) {
+      if (!shouldPoll()) {
         return;
       }
 
@@ -523,9 +549,23 @@ public class StreamSizeScheduler implements Scheduler {
       }
     }
 
+    /**
+     * Returns {@code true} if the scheduled polling should query the stream size.
+     */
+    private boolean shouldPoll() {
+      if (activeTasks.get() == 0) {
+        return false;
+      }
+      // The scheduled polling is only a fallback for when no notification is received. While notifications
+      // keep arriving, the stream size is estimated from them and the stream is only polled to confirm the estimate.
+      return timeProvider.currentTimeMillis() - lastNotificationTime >= pollingDelay;
+    }
+
     @Override
     protected Scheduler scheduler() {
-      return Scheduler.newFixedRateSchedule(pollingDelay, pollingDelay, TimeUnit.MILLISECONDS);
+      // Spread the initial delay, so that the polling of all the streams doesn't happen at the same time
+      long initialDelay = 1 + ThreadLocalRandom.current().nextLong(pollingDelay);
+      return Scheduler.newFixedRateSchedule(initialDelay, pollingDelay, TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -540,6 +580,8 @@ public class StreamSizeScheduler implements Scheduler {
 
     @Override
     public void received(final StreamSizeNotification notification, NotificationContext notificationContext) {
+      lastNotificationTime = timeProvider.currentTimeMillis();
+
       // We only use the stream size notification if it came after the last seen notification
       if (lastNotification != null && notification.getTimestamp() <= lastNotification.getTimestamp()) {
         return;
@@ -554,7 +596,9 @@ public class StreamSizeScheduler implements Scheduler {
       Long estimate = null;
       synchronized (deltaLock) {
         if (delta == null) {
-          poll = true;
+          // Only poll once to compute the delta, even if more notifications are received before the polling happens
+          poll = !deltaPollPending;
+          deltaPollPending = true;
         } else {
           for (StreamSizeScheduleTask streamSizeScheduleTask : scheduleTasks.values()) {
             if (streamSizeScheduleTask.shouldTriggerProgram(notification.getSize() - delta)) {
@@ -599,8 +643,13 @@ public class StreamSizeScheduler implements Scheduler {
             StreamSize streamSize;
             boolean estimateReached = false;
             synchronized (deltaLock) {
+              boolean first = firstPoll.compareAndSet(true, false);
+              if (first) {
+                // Allow another polling for the delta to be requested if this one fails
+                deltaPollPending = false;
+              }
               streamSize = pollOnce();
-              if (firstPoll.compareAndSet(true, false)) {
+              if (first) {
                 // The first polling will recalibrate the delta, for future use when receiving a notification
                 delta = notification.getSize() - streamSize.getSize();
               }
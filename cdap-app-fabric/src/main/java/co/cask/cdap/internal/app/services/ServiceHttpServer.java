@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -38,6 +38,7 @@ import co.cask.cdap.data2.dataset2.DatasetFramework;
 import co.cask.cdap.data2.transaction.Transactions;
 import co.cask.cdap.internal.app.runtime.DataSetFieldSetter;
 import co.cask.cdap.internal.app.runtime.MetricsFieldSetter;
+import co.cask.cdap.internal.app.runtime.SystemArguments;
 import co.cask.cdap.internal.app.runtime.plugin.PluginInstantiator;
 import co.cask.cdap.internal.app.runtime.service.http.BasicHttpServiceContext;
 import co.cask.cdap.internal.app.runtime.service.http.DelegatorContext;
@@ -55,6 +56,7 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.reflect.TypeToken;
 import com.google.common.util.concurrent.AbstractIdleService;
@@ -68,6 +70,7 @@ import org.slf4j.LoggerFactory;
 import java.io.Closeable;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
@@ -126,7 +129,10 @@ public class ServiceHttpServer extends AbstractIdleService {
                                                                          secureStoreManager, messagingService);
     this.handlerContexts = createHandlerDelegatorContexts(program, spec, contextFactory);
     this.context = contextFactory.create(null);
-    this.service = createNettyHttpService(program, host, handlerContexts, context.getProgramMetrics());
+    Map<String, String> userArgs = programOptions.getUserArguments().asMap();
+    this.service = createNettyHttpService(program, host, handlerContexts, context.getProgramMetrics(),
+                                          SystemArguments.getServiceMaxConcurrentRequests(userArgs),
+                                          SystemArguments.getServiceRequestTimeoutSeconds(userArgs));
   }
 
   private List<HandlerDelegatorContext> createHandlerDelegatorContexts(Program program, ServiceSpecification spec,
@@ -156,12 +162,16 @@ public class ServiceHttpServer extends AbstractIdleService {
    * @param host the host which the service will run on
    * @param delegatorContexts the list {@link HandlerDelegatorContext}
    * @param metricsContext a {@link MetricsContext} for metrics collection
+   * @param maxConcurrentRequests maximum number of requests to handle concurrently, or {@code 0} for no limit
+   * @param requestTimeoutSeconds seconds after which a request that has not completed no longer counts towards
+   *                              the limit
    *
    * @return a NettyHttpService which delegates to the {@link HttpServiceHandler}s to handle the HTTP requests
    */
   private NettyHttpService createNettyHttpService(Program program, String host,
                                                   Iterable<HandlerDelegatorContext> delegatorContexts,
-                                                  MetricsContext metricsContext) {
+                                                  MetricsContext metricsContext, int maxConcurrentRequests,
+                                                  int requestTimeoutSeconds) {
     // The service URI is always prefixed for routing purpose
     String pathPrefix = String.format("%s/namespaces/%s/apps/%s/services/%s/methods",
                                       Constants.Gateway.API_VERSION_3,
@@ -181,16 +191,25 @@ public class ServiceHttpServer extends AbstractIdleService {
     HttpHandlerFactory factory = new HttpHandlerFactory(pathPrefix, metricsContext);
     HttpHandlerFactory versionedFactory = new HttpHandlerFactory(versionedPathPrefix, metricsContext);
     List<HttpHandler> nettyHttpHandlers = Lists.newArrayList();
+    // Name of the user handler for each netty-http handler class, for metrics
+    Map<String, String> handlerNames = new HashMap<>();
     // get the runtime args from the twill context
     for (HandlerDelegatorContext context : delegatorContexts) {
-      nettyHttpHandlers.add(factory.createHttpHandler(context.getHandlerType(), context));
-      nettyHttpHandlers.add(versionedFactory.createHttpHandler(context.getHandlerType(), context));
+      HttpHandler handler = factory.createHttpHandler(context.getHandlerType(), context);
+      HttpHandler versionedHandler = versionedFactory.createHttpHandler(context.getHandlerType(), context);
+      nettyHttpHandlers.add(handler);
+      nettyHttpHandlers.add(versionedHandler);
+      handlerNames.put(handler.getClass().getName(), context.spec.getName());
+      handlerNames.put(versionedHandler.getClass().getName(), context.spec.getName());
     }
 
     NettyHttpService.Builder builder = NettyHttpService.builder(program.getName() + "-http")
       .setHost(host)
       .setPort(0)
-      .addHttpHandlers(nettyHttpHandlers);
+      .addHttpHandlers(nettyHttpHandlers)
+      .setHandlerHooks(ImmutableList.of(new ServiceRequestLimitHook(maxConcurrentRequests,
+                                                                    TimeUnit.SECONDS.toMillis(requestTimeoutSeconds),
+                                                                    metricsContext, handlerNames)));
 
     // These properties are for unit-test only. Currently they are not controllable by the user program
     String threadPoolSize = System.getProperty(THREAD_POOL_SIZE);
@@ -0,0 +1,166 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.services;
+
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.utils.ImmutablePair;
+import co.cask.cdap.common.utils.TimeProvider;
+import co.cask.cdap.metrics.collect.DistributionCollector;
+import co.cask.http.AbstractHandlerHook;
+import co.cask.http.HandlerInfo;
+import co.cask.http.HttpResponder;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Maps;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link co.cask.http.HandlerHook} for user services that limits the number of requests handled concurrently and
+ * emits the latency of requests for each handler method. Requests beyond the limit are rejected right away with
+ * {@code 503 Service Unavailable} and a {@code Retry-After} header, instead of waiting for a handler thread while
+ * all the handler threads are busy.
+ * <p>
+ * A request that is never responded to, for example because the handler dropped it after the client went away,
+ * never reaches {@link #postCall}. Such a request no longer counts towards the limit once it has been in progress
+ * for longer than the request timeout, so that it doesn't permanently use up the limit. Timed out requests are
+ * released by {@link #preCall}, which checks for them at most once a second.
+ */
+final class ServiceRequestLimitHook extends AbstractHandlerHook {
+
+  private static final String RETRY_AFTER_SECONDS = "1";
+  private static final long MAX_SWEEP_INTERVAL_MILLIS = 1000L;
+
+  private final int maxConcurrentRequests;
+  private final long requestTimeoutMillis;
+  private final long sweepIntervalMillis;
+  private final MetricsContext metricsContext;
+  private final TimeProvider timeProvider;
+  private final AtomicInteger activeRequests;
+  // start time of the requests that are being handled
+  private final ConcurrentMap<HttpRequest, Long> requestStartTimes;
+  private final AtomicLong nextSweepTime;
+  private final LoadingCache<ImmutablePair<String, String>, MetricsContext> methodMetricsContexts;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param maxConcurrentRequests maximum number of requests to handle concurrently, or {@code 0} for no limit
+   * @param requestTimeoutMillis milliseconds after which a request that has not completed is released
+   * @param metricsContext the {@link MetricsContext} of the service
+   * @param handlerNames a map from the class name of the netty-http handlers to the name of the user handler
+   */
+  ServiceRequestLimitHook(int maxConcurrentRequests, long requestTimeoutMillis, MetricsContext metricsContext,
+                          Map<String, String> handlerNames) {
+    this(maxConcurrentRequests, requestTimeoutMillis, metricsContext, handlerNames, TimeProvider.SYSTEM_TIME);
+  }
+
+  @VisibleForTesting
+  ServiceRequestLimitHook(int maxConcurrentRequests, long requestTimeoutMillis, final MetricsContext metricsContext,
+                          final Map<String, String> handlerNames, TimeProvider timeProvider) {
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    this.requestTimeoutMillis = requestTimeoutMillis;
+    this.sweepIntervalMillis = Math.min(requestTimeoutMillis, MAX_SWEEP_INTERVAL_MILLIS);
+    this.metricsContext = metricsContext;
+    this.timeProvider = timeProvider;
+    this.activeRequests = new AtomicInteger();
+    this.requestStartTimes = Maps.newConcurrentMap();
+    this.nextSweepTime = new AtomicLong(timeProvider.currentTimeMillis() + sweepIntervalMillis);
+    this.methodMetricsContexts = CacheBuilder.newBuilder().build(
+      new CacheLoader<ImmutablePair<String, String>, MetricsContext>() {
+        @Override
+        public MetricsContext load(ImmutablePair<String, String> key) throws Exception {
+          String handlerName = handlerNames.get(key.getFirst());
+          return metricsContext.childContext(ImmutableMap.of(
+            Constants.Metrics.Tag.HANDLER, handlerName == null ? key.getFirst() : handlerName,
+            Constants.Metrics.Tag.METHOD, key.getSecond()));
+        }
+      });
+  }
+
+  @Override
+  public boolean preCall(HttpRequest request, HttpResponder responder, HandlerInfo handlerInfo) {
+    long now = timeProvider.currentTimeMillis();
+    long sweepTime = nextSweepTime.get();
+    if (now >= sweepTime && nextSweepTime.compareAndSet(sweepTime, now + sweepIntervalMillis)) {
+      releaseTimedOutRequests(now);
+    }
+    if (maxConcurrentRequests > 0 && activeRequests.incrementAndGet() > maxConcurrentRequests) {
+      activeRequests.decrementAndGet();
+      metricsContext.increment("requests.rejected.count", 1);
+      responder.sendString(HttpResponseStatus.SERVICE_UNAVAILABLE,
+                           "Too many concurrent requests, please retry later",
+                           ImmutableMultimap.of(HttpHeaders.Names.RETRY_AFTER, RETRY_AFTER_SECONDS));
+      return false;
+    }
+    requestStartTimes.put(request, now);
+    return true;
+  }
+
+  @Override
+  public void postCall(HttpRequest request, HttpResponseStatus status, HandlerInfo handlerInfo) {
+    Long startTime = requestStartTimes.remove(request);
+    if (startTime == null) {
+      // The request was already released because it timed out
+      return;
+    }
+    release();
+
+    long latency = timeProvider.currentTimeMillis() - startTime;
+    MetricsContext context = methodMetricsContexts.getUnchecked(
+      ImmutablePair.of(handlerInfo.getHandlerName(), handlerInfo.getMethodName()));
+    if (context instanceof DistributionCollector) {
+      // emits the count, sum, max and percentiles of the latency
+      ((DistributionCollector) context).distribution("requests.latency.ms", latency);
+    } else {
+      context.increment("requests.count", 1);
+      context.increment("requests.latency.ms", latency);
+    }
+  }
+
+  /**
+   * Releases all requests that started more than the request timeout before the given time without reaching
+   * {@link #postCall}.
+   */
+  private void releaseTimedOutRequests(long now) {
+    for (Map.Entry<HttpRequest, Long> entry : requestStartTimes.entrySet()) {
+      // Only the caller that removes the entry releases it, which is either this method or postCall
+      if (now - entry.getValue() >= requestTimeoutMillis
+        && requestStartTimes.remove(entry.getKey(), entry.getValue())) {
+        release();
+        metricsContext.increment("requests.abandoned.count", 1);
+      }
+    }
+  }
+
+  private void release() {
+    if (maxConcurrentRequests > 0) {
+      activeRequests.decrementAndGet();
+    }
+  }
+}
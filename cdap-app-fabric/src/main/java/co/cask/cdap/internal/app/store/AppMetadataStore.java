@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -84,6 +84,10 @@ public class AppMetadataStore extends MetadataStoreDataset {
   private static final String TYPE_RUN_RECORD_STARTED = "runRecordStarted";
   private static final String TYPE_RUN_RECORD_SUSPENDED = "runRecordSuspended";
   private static final String TYPE_RUN_RECORD_COMPLETED = "runRecordCompleted";
+  // Index of completed run records by status, with the same inverted start time order as the completed run records
+  private static final String TYPE_RUN_RECORD_COMPLETED_STATUS = "runRecordCompletedStatus";
+  // Marks programs for which the status index contains all completed run records
+  private static final String TYPE_RUN_RECORD_STATUS_INDEXED = "runRecordStatusIndexed";
   private static final String TYPE_WORKFLOW_NODE_STATE = "wns";
   private static final String TYPE_WORKFLOW_TOKEN = "wft";
   private static final String TYPE_NAMESPACE = "namespace";
@@ -311,11 +315,32 @@ public class AppMetadataStore extends MetadataStoreDataset {
 
     deleteAll(key);
 
+    // The status index is complete for a program only if it has been maintained since the first completed run
+    MDSKey indexedKey = getProgramKeyBuilder(TYPE_RUN_RECORD_STATUS_INDEXED, programId).build();
+    if (!exists(indexedKey)
+      && getFirst(getProgramKeyBuilder(TYPE_RUN_RECORD_COMPLETED, programId).build(), RunRecordMeta.class) == null) {
+      write(indexedKey, Boolean.TRUE);
+    }
+
     key = getProgramKeyBuilder(TYPE_RUN_RECORD_COMPLETED, programId)
       .add(getInvertedTsKeyPart(started.getStartTs()))
       .add(pid).build();
 
-    write(key, new RunRecordMeta(started, stopTs, runStatus));
+    RunRecordMeta completed = new RunRecordMeta(started, stopTs, runStatus);
+    write(key, completed);
+    writeStatusIndex(programId, completed);
+  }
+
+  /**
+   * Writes the status index entry of a completed run record. The entry carries a copy of the run record, so that
+   * queries by status can be answered from the index without reading the completed run records.
+   */
+  private void writeStatusIndex(ProgramId programId, RunRecordMeta record) {
+    MDSKey key = getProgramKeyBuilder(TYPE_RUN_RECORD_COMPLETED_STATUS, programId)
+      .add(record.getStatus().name())
+      .add(getInvertedTsKeyPart(record.getStartTs()))
+      .add(record.getPid()).build();
+    write(key, record);
   }
 
   public Map<ProgramRunId, RunRecordMeta> getRuns(ProgramRunStatus status, Predicate<RunRecordMeta> filter) {
@@ -497,6 +522,16 @@ public class AppMetadataStore extends MetadataStoreDataset {
                   filter == null ? Predicates.<RunRecordMeta>alwaysTrue() : filter);
     }
 
+    // Use the status index if it covers all completed runs of the program, so that only run records
+    // of the requested status are scanned
+    if (programId != null && isStatusIndexed(status)
+      && exists(getProgramKeyBuilder(TYPE_RUN_RECORD_STATUS_INDEXED, programId).build())) {
+      MDSKey statusKey = getProgramKeyBuilder(TYPE_RUN_RECORD_COMPLETED_STATUS, programId).add(status.name()).build();
+      return listKV(new MDSKey.Builder(statusKey).add(getInvertedTsScanKeyPart(endTime)).build(),
+                    new MDSKey.Builder(statusKey).add(getInvertedTsScanKeyPart(startTime)).build(),
+                    RunRecordMeta.class, limit, filter == null ? Predicates.<RunRecordMeta>alwaysTrue() : filter);
+    }
+
     if (status.equals(ProgramRunStatus.COMPLETED)) {
       return listKV(start, stop, RunRecordMeta.class, limit,
                   andPredicate(getPredicate(ProgramController.State.COMPLETED), filter));
@@ -509,6 +544,11 @@ public class AppMetadataStore extends MetadataStoreDataset {
                 andPredicate(getPredicate(ProgramController.State.ERROR), filter));
   }
 
+  private boolean isStatusIndexed(ProgramRunStatus status) {
+    return status == ProgramRunStatus.COMPLETED || status == ProgramRunStatus.KILLED
+      || status == ProgramRunStatus.FAILED;
+  }
+
   private Predicate<RunRecordMeta> getPredicate(final ProgramController.State state) {
     return new Predicate<RunRecordMeta>() {
       @Override
@@ -564,12 +604,16 @@ public class AppMetadataStore extends MetadataStoreDataset {
     deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_STARTED, namespaceId, appId).build());
     deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED, namespaceId, appId).build());
     deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_SUSPENDED, namespaceId, appId).build());
+    deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED_STATUS, namespaceId, appId).build());
+    deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_STATUS_INDEXED, namespaceId, appId).build());
   }
 
   public void deleteProgramHistory(String namespaceId) {
     deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_STARTED, namespaceId).build());
     deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED, namespaceId).build());
     deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_SUSPENDED, namespaceId).build());
+    deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED_STATUS, namespaceId).build());
+    deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_STATUS_INDEXED, namespaceId).build());
   }
 
   public void createNamespace(NamespaceMeta metadata) {
@@ -687,6 +731,35 @@ public class AppMetadataStore extends MetadataStoreDataset {
     upgradeVersionKeys(TYPE_RUN_RECORD_COMPLETED, RunRecordMeta.class);
     upgradeVersionKeys(TYPE_WORKFLOW_NODE_STATE, WorkflowNodeStateDetail.class);
     upgradeVersionKeys(TYPE_WORKFLOW_TOKEN, BasicWorkflowToken.class);
+    upgradeRunRecordStatusIndex();
+  }
+
+  /**
+   * Builds the status index for all completed run records and marks the programs as indexed.
+   * This must be called after the completed run record keys have the application version.
+   */
+  private void upgradeRunRecordStatusIndex() {
+    LOG.info("Upgrading {}", TYPE_RUN_RECORD_COMPLETED_STATUS);
+    MDSKey startKey = new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED).build();
+    Map<MDSKey, RunRecordMeta> runRecords = listKV(startKey, RunRecordMeta.class);
+    Set<ProgramId> programIds = new HashSet<>();
+    for (Map.Entry<MDSKey, RunRecordMeta> entry : runRecords.entrySet()) {
+      // Key format: runRecordCompleted.namespace.appName.appVersion.programType.programName.invertedTs.runId
+      MDSKey.Splitter splitter = entry.getKey().split();
+      splitter.skipString(); // skip recordType
+      String namespace = splitter.getString();
+      String appName = splitter.getString();
+      String appVersion = splitter.getString();
+      ProgramType programType = ProgramType.valueOf(splitter.getString());
+      String programName = splitter.getString();
+      ProgramId programId = new ApplicationId(namespace, appName, appVersion).program(programType, programName);
+
+      writeStatusIndex(programId, entry.getValue());
+      programIds.add(programId);
+    }
+    for (ProgramId programId : programIds) {
+      write(getProgramKeyBuilder(TYPE_RUN_RECORD_STATUS_INDEXED, programId).build(), Boolean.TRUE);
+    }
   }
 
   /**
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015-2016 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -321,39 +321,44 @@ public class LineageAdmin {
     Set<ProgramId> visitedPrograms = new HashSet<>();
     Set<ProgramId> toVisitPrograms = new HashSet<>();
 
+    // Each level of the lineage is expanded with one batched lookup for all the datasets and streams in the
+    // frontier, followed by one for all the programs, rather than with one lookup per entity
     toVisitDatasets.add(sourceData);
-    for (int i = 0; i < levels; ++i) {
+    for (int i = 0; i < levels && !toVisitDatasets.isEmpty(); ++i) {
       LOG.trace("Level {}", i);
       toVisitPrograms.clear();
-      for (NamespacedEntityId d : toVisitDatasets) {
-        if (visitedDatasets.add(d)) {
-          LOG.trace("Visiting dataset {}", d);
-          // Fetch related programs
-          Iterable<Relation> programRelations = getProgramRelations(d, scanRange.getStart(), scanRange.getEnd(),
-                                                                    scanRange.getFilter());
-          LOG.trace("Got program relations {}", programRelations);
-          for (Relation relation : programRelations) {
-            relations.put(new RelationKey(relation), relation);
-          }
-          Iterables.addAll(toVisitPrograms, Iterables.transform(programRelations, RELATION_TO_PROGRAM_FUNCTION));
+      toVisitDatasets.removeAll(visitedDatasets);
+      if (!toVisitDatasets.isEmpty()) {
+        LOG.trace("Visiting datasets {}", toVisitDatasets);
+        visitedDatasets.addAll(toVisitDatasets);
+        // Fetch related programs
+        Set<Relation> programRelations = lineageStoreReader.getRelationsForData(toVisitDatasets,
+                                                                                scanRange.getStart(),
+                                                                                scanRange.getEnd(),
+                                                                                scanRange.getFilter());
+        LOG.trace("Got program relations {}", programRelations);
+        for (Relation relation : programRelations) {
+          relations.put(new RelationKey(relation), relation);
         }
+        Iterables.addAll(toVisitPrograms, Iterables.transform(programRelations, RELATION_TO_PROGRAM_FUNCTION));
       }
 
       toVisitDatasets.clear();
-      for (ProgramId p : toVisitPrograms) {
-        if (visitedPrograms.add(p)) {
-          LOG.trace("Visiting program {}", p);
-          // Fetch related datasets
-          Iterable<Relation> datasetRelations = lineageStoreReader.getRelations(p, scanRange.getStart(),
-                                                                                scanRange.getEnd(),
-                                                                                scanRange.getFilter());
-          LOG.trace("Got data relations {}", datasetRelations);
-          for (Relation relation : datasetRelations) {
-            relations.put(new RelationKey(relation), relation);
-          }
-          Iterables.addAll(toVisitDatasets,
-                           Iterables.transform(datasetRelations, RELATION_TO_DATA_FUNCTION));
+      toVisitPrograms.removeAll(visitedPrograms);
+      if (!toVisitPrograms.isEmpty()) {
+        LOG.trace("Visiting programs {}", toVisitPrograms);
+        visitedPrograms.addAll(toVisitPrograms);
+        // Fetch related datasets
+        Set<Relation> datasetRelations = lineageStoreReader.getRelationsForPrograms(toVisitPrograms,
+                                                                                    scanRange.getStart(),
+                                                                                    scanRange.getEnd(),
+                                                                                    scanRange.getFilter());
+        LOG.trace("Got data relations {}", datasetRelations);
+        for (Relation relation : datasetRelations) {
+          relations.put(new RelationKey(relation), relation);
         }
+        Iterables.addAll(toVisitDatasets,
+                         Iterables.transform(datasetRelations, RELATION_TO_DATA_FUNCTION));
       }
     }
 
@@ -367,19 +372,6 @@ public class LineageAdmin {
     return lineage;
   }
 
-  private Iterable<Relation> getProgramRelations(NamespacedEntityId data, long start, long end,
-                                                 Predicate<Relation> filter) {
-    if (data instanceof DatasetId) {
-      return lineageStoreReader.getRelations((DatasetId) data, start, end, filter);
-    }
-
-    if (data instanceof StreamId) {
-      return lineageStoreReader.getRelations((StreamId) data, start, end, filter);
-    }
-
-    throw new IllegalStateException("Unknown data type " + data);
-  }
-
   /**
    * Convert a set of runIds into a scan range based on earliest runtime and latest runtime of runIds.
    * Also, add a scan filter to include only runIds in the given set.
@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.flow;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test for {@link AdaptiveBatchSize}.
+ */
+public class AdaptiveBatchSizeTest {
+
+  private static final long LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  @Test
+  public void testGrow() {
+    AdaptiveBatchSize batchSize = new AdaptiveBatchSize(10, 50, 100);
+
+    // Commit is cheaper than processing, no change
+    batchSize.update(10, 1000, 10);
+    Assert.assertEquals(10, batchSize.get().intValue());
+
+    // Partial batch, no change even commit is expensive
+    batchSize.update(5, 10, 1000);
+    Assert.assertEquals(10, batchSize.get().intValue());
+
+    // Full batch with expensive commit, grows up to the max size
+    batchSize.update(10, 10, 1000);
+    Assert.assertEquals(20, batchSize.get().intValue());
+    batchSize.update(20, 10, 1000);
+    Assert.assertEquals(40, batchSize.get().intValue());
+    batchSize.update(40, 10, 1000);
+    Assert.assertEquals(50, batchSize.get().intValue());
+    batchSize.update(50, 10, 1000);
+    Assert.assertEquals(50, batchSize.get().intValue());
+  }
+
+  @Test
+  public void testShrink() {
+    AdaptiveBatchSize batchSize = new AdaptiveBatchSize(40, 40, 100);
+
+    // Processing exceeds the latency budget, shrinks even commit is expensive
+    batchSize.update(40, LATENCY_NANOS + 1, LATENCY_NANOS * 2);
+    Assert.assertEquals(20, batchSize.get().intValue());
+
+    // Shrinks based on the number of entries actually dequeued
+    batchSize.update(6, LATENCY_NANOS + 1, 0);
+    Assert.assertEquals(3, batchSize.get().intValue());
+
+    // Never goes below one
+    batchSize.update(3, LATENCY_NANOS + 1, 0);
+    Assert.assertEquals(1, batchSize.get().intValue());
+    batchSize.update(1, LATENCY_NANOS + 1, 0);
+    Assert.assertEquals(1, batchSize.get().intValue());
+  }
+}
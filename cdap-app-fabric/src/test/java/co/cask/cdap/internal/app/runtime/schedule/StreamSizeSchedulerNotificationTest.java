@@ -0,0 +1,170 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.schedule;
+
+import co.cask.cdap.AppWithStreamSizeSchedule;
+import co.cask.cdap.api.schedule.SchedulableProgramType;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.namespace.NamespaceAdmin;
+import co.cask.cdap.common.stream.notification.StreamSizeNotification;
+import co.cask.cdap.common.utils.Tasks;
+import co.cask.cdap.common.utils.TimeProvider;
+import co.cask.cdap.internal.AppFabricTestHelper;
+import co.cask.cdap.notifications.service.NotificationService;
+import co.cask.cdap.proto.NamespaceMeta;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.NotificationFeedId;
+import co.cask.cdap.proto.id.ProgramId;
+import co.cask.cdap.proto.id.StreamId;
+import co.cask.cdap.test.XSlowTests;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.inject.Injector;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests that {@link StreamSizeScheduler} only polls the metrics when no stream size notification is received.
+ */
+@Category(XSlowTests.class)
+public class StreamSizeSchedulerNotificationTest {
+
+  private static final long POLLING_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(60);
+  private static final ProgramId PROGRAM_ID = NamespaceId.DEFAULT.app("AppWithStreamSizeSchedule")
+    .workflow("SampleWorkflow");
+  private static final StreamId STREAM_ID = NamespaceId.DEFAULT.stream("stream");
+  private static final NotificationFeedId FEED_ID = new NotificationFeedId(
+    NamespaceId.DEFAULT.getNamespace(), Constants.Notification.Stream.STREAM_FEED_CATEGORY, "streamSize");
+
+  @ClassRule
+  public static TemporaryFolder tmpFolder = new TemporaryFolder();
+
+  private static NamespaceAdmin namespaceAdmin;
+  private static StreamSizeScheduler streamSizeScheduler;
+  private static NotificationService notificationService;
+  private static TestTimeProvider timeProvider;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setLong(Constants.Notification.Stream.STREAM_SIZE_SCHEDULE_POLLING_DELAY,
+                  TimeUnit.MILLISECONDS.toSeconds(POLLING_DELAY_MILLIS));
+    Injector injector = AppFabricTestHelper.getInjector(cConf);
+    namespaceAdmin = injector.getInstance(NamespaceAdmin.class);
+    namespaceAdmin.create(NamespaceMeta.DEFAULT);
+    streamSizeScheduler = injector.getInstance(StreamSizeScheduler.class);
+    notificationService = injector.getInstance(NotificationService.class);
+    timeProvider = new TestTimeProvider(System.currentTimeMillis());
+    streamSizeScheduler.setTimeProvider(timeProvider);
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    streamSizeScheduler.setTimeProvider(TimeProvider.SYSTEM_TIME);
+    namespaceAdmin.delete(NamespaceId.DEFAULT);
+  }
+
+  @Test
+  public void testNoPollingWithNotifications() throws Exception {
+    AppFabricTestHelper.deployApplicationWithManager(AppWithStreamSizeSchedule.class, new Supplier<File>() {
+      @Override
+      public File get() {
+        try {
+          return tmpFolder.newFolder();
+        } catch (IOException e) {
+          throw Throwables.propagate(e);
+        }
+      }
+    });
+    streamSizeScheduler.resumeSchedule(PROGRAM_ID, SchedulableProgramType.WORKFLOW, "SampleSchedule1");
+
+    // Without notification, the stream is polled
+    Assert.assertTrue(streamSizeScheduler.shouldPoll(STREAM_ID));
+
+    // A notification stops the polling for the polling delay
+    publishNotification(1000L);
+    timeProvider.advance(POLLING_DELAY_MILLIS - 1);
+    Assert.assertFalse(streamSizeScheduler.shouldPoll(STREAM_ID));
+
+    // Once notifications stop for the polling delay, the polling resumes
+    timeProvider.advance(1);
+    Assert.assertTrue(streamSizeScheduler.shouldPoll(STREAM_ID));
+
+    // Notifications keep stopping the polling as long as they arrive
+    long size = 1000L;
+    for (int i = 0; i < 5; i++) {
+      size += 10;
+      publishNotification(size);
+      timeProvider.advance(POLLING_DELAY_MILLIS / 2);
+      Assert.assertFalse(streamSizeScheduler.shouldPoll(STREAM_ID));
+      timeProvider.advance(POLLING_DELAY_MILLIS / 2);
+      Assert.assertTrue(streamSizeScheduler.shouldPoll(STREAM_ID));
+    }
+
+    // No polling without active schedule
+    streamSizeScheduler.suspendSchedule(PROGRAM_ID, SchedulableProgramType.WORKFLOW, "SampleSchedule1");
+    Assert.assertFalse(streamSizeScheduler.shouldPoll(STREAM_ID));
+    streamSizeScheduler.deleteSchedules(PROGRAM_ID, SchedulableProgramType.WORKFLOW);
+  }
+
+  /**
+   * Publishes a stream size notification and waits until the scheduler received it. The polling of the stream must
+   * be due when this method is called.
+   */
+  private void publishNotification(long size) throws Exception {
+    notificationService.publish(FEED_ID, new StreamSizeNotification(timeProvider.currentTimeMillis(), size));
+    Tasks.waitFor(false, new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return streamSizeScheduler.shouldPoll(STREAM_ID);
+      }
+    }, 10, TimeUnit.SECONDS, 50, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * A {@link TimeProvider} that only moves forward when asked to.
+   */
+  private static final class TestTimeProvider implements TimeProvider {
+
+    private final AtomicLong currentTime;
+
+    TestTimeProvider(long startTime) {
+      this.currentTime = new AtomicLong(startTime);
+    }
+
+    void advance(long millis) {
+      currentTime.addAndGet(millis);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+      return currentTime.get();
+    }
+  }
+}
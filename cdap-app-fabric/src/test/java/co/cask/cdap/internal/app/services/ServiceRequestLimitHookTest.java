@@ -0,0 +1,260 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.services;
+
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.api.metrics.NoopMetricsContext;
+import co.cask.cdap.common.utils.Tasks;
+import co.cask.cdap.common.utils.TimeProvider;
+import co.cask.cdap.internal.MockResponder;
+import co.cask.cdap.metrics.collect.DistributionCollector;
+import co.cask.http.AbstractHttpHandler;
+import co.cask.http.HandlerInfo;
+import co.cask.http.HttpResponder;
+import co.cask.http.NettyHttpService;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+
+/**
+ * Unit test for {@link ServiceRequestLimitHook}.
+ */
+public class ServiceRequestLimitHookTest {
+
+  @Test
+  public void testLimit() throws Exception {
+    final BlockingHandler handler = new BlockingHandler();
+    NettyHttpService service = NettyHttpService.builder()
+      .addHttpHandlers(ImmutableList.of(handler))
+      .setHandlerHooks(ImmutableList.of(new ServiceRequestLimitHook(1, TimeUnit.MINUTES.toMillis(5),
+                                                                    new NoopMetricsContext(),
+                                                                    ImmutableMap.<String, String>of())))
+      .build();
+
+    service.startAndWait();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final InetSocketAddress bindAddress = service.getBindAddress();
+
+      // The first request blocks in the handler
+      Future<Integer> blocked = executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          return request(bindAddress).getResponseCode();
+        }
+      });
+      Assert.assertTrue(handler.entered.await(10, TimeUnit.SECONDS));
+
+      // The second request is rejected since the limit is reached
+      HttpURLConnection urlConn = request(bindAddress);
+      Assert.assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE.getCode(), urlConn.getResponseCode());
+      Assert.assertNotNull(urlConn.getHeaderField(HttpHeaders.Names.RETRY_AFTER));
+      urlConn.disconnect();
+
+      // Once the first request completes, requests are accepted again. The hook is called after the response is
+      // written, hence the client may see the response before the request is no longer counted.
+      handler.release.countDown();
+      Assert.assertEquals(HttpResponseStatus.OK.getCode(), blocked.get(10, TimeUnit.SECONDS).intValue());
+      Tasks.waitFor(HttpResponseStatus.OK.getCode(), new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          HttpURLConnection urlConn = request(bindAddress);
+          try {
+            return urlConn.getResponseCode();
+          } finally {
+            urlConn.disconnect();
+          }
+        }
+      }, 10, TimeUnit.SECONDS, 100, TimeUnit.MILLISECONDS);
+    } finally {
+      executor.shutdownNow();
+      service.stopAndWait();
+    }
+  }
+
+  @Test
+  public void testTimedOutRequest() {
+    TestTimeProvider timeProvider = new TestTimeProvider();
+    RecordingMetricsContext metricsContext = new RecordingMetricsContext();
+    ServiceRequestLimitHook hook = new ServiceRequestLimitHook(1, 10000L, metricsContext,
+                                                               ImmutableMap.<String, String>of(), timeProvider);
+    HandlerInfo handlerInfo = new HandlerInfo("handler", "method");
+    MockResponder responder = new MockResponder();
+
+    // A request that never completes, e.g. the handler never responds, holds the slot until it times out
+    HttpRequest abandoned = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/block");
+    Assert.assertTrue(hook.preCall(abandoned, responder, handlerInfo));
+
+    HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/block");
+    timeProvider.advance(9999L);
+    Assert.assertFalse(hook.preCall(request, responder, handlerInfo));
+    Assert.assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE, responder.getStatus());
+    Assert.assertEquals(1L, (long) metricsContext.counters.get("requests.rejected.count"));
+    Assert.assertFalse(metricsContext.counters.containsKey("requests.abandoned.count"));
+
+    // Once timed out, the slot is released by the next sweep, which happens at most a second later
+    timeProvider.advance(1L);
+    Assert.assertFalse(hook.preCall(request, responder, handlerInfo));
+    timeProvider.advance(999L);
+    Assert.assertTrue(hook.preCall(request, responder, handlerInfo));
+    Assert.assertEquals(1L, (long) metricsContext.counters.get("requests.abandoned.count"));
+
+    // Completing the timed out request late doesn't release the slot of the other request
+    hook.postCall(abandoned, HttpResponseStatus.OK, handlerInfo);
+    Assert.assertFalse(hook.preCall(abandoned, responder, handlerInfo));
+    hook.postCall(request, HttpResponseStatus.OK, handlerInfo);
+    Assert.assertTrue(hook.preCall(abandoned, responder, handlerInfo));
+    Assert.assertEquals(1L, (long) metricsContext.counters.get("requests.count"));
+  }
+
+  @Test
+  public void testLatencyMetrics() {
+    HandlerInfo handlerInfo = new HandlerInfo("handler", "method");
+    HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/block");
+
+    // Without distribution support, the request count is emitted together with the total latency
+    RecordingMetricsContext metricsContext = new RecordingMetricsContext();
+    ServiceRequestLimitHook hook = new ServiceRequestLimitHook(0, 10000L, metricsContext,
+                                                               ImmutableMap.<String, String>of());
+    for (int i = 0; i < 3; i++) {
+      Assert.assertTrue(hook.preCall(request, null, handlerInfo));
+      hook.postCall(request, HttpResponseStatus.OK, handlerInfo);
+    }
+    Assert.assertEquals(3L, (long) metricsContext.counters.get("requests.count"));
+    Assert.assertTrue(metricsContext.counters.containsKey("requests.latency.ms"));
+
+    // With distribution support, each latency is reported to the distribution
+    RecordingDistributionContext distributionContext = new RecordingDistributionContext();
+    hook = new ServiceRequestLimitHook(0, 10000L, distributionContext, ImmutableMap.<String, String>of());
+    for (int i = 0; i < 3; i++) {
+      Assert.assertTrue(hook.preCall(request, null, handlerInfo));
+      hook.postCall(request, HttpResponseStatus.OK, handlerInfo);
+    }
+    Assert.assertEquals(3, distributionContext.distributionCounts.get("requests.latency.ms").intValue());
+    Assert.assertTrue(distributionContext.counters.isEmpty());
+  }
+
+  private HttpURLConnection request(InetSocketAddress bindAddress) throws Exception {
+    URL url = new URL(String.format("http://%s:%d/block", bindAddress.getHostName(), bindAddress.getPort()));
+    return (HttpURLConnection) url.openConnection();
+  }
+
+  /**
+   * Handler that blocks the first request until released.
+   */
+  public static final class BlockingHandler extends AbstractHttpHandler {
+
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @GET
+    @Path("/block")
+    public void block(HttpRequest request, HttpResponder responder) throws InterruptedException {
+      entered.countDown();
+      release.await(10, TimeUnit.SECONDS);
+      responder.sendStatus(HttpResponseStatus.OK);
+    }
+  }
+
+  /**
+   * A {@link MetricsContext} that records the counters emitted to it and to its child contexts.
+   */
+  private static class RecordingMetricsContext implements MetricsContext {
+
+    final Map<String, Long> counters = Maps.newConcurrentMap();
+
+    @Override
+    public MetricsContext childContext(Map<String, String> tags) {
+      return this;
+    }
+
+    @Override
+    public MetricsContext childContext(String tagName, String tagValue) {
+      return this;
+    }
+
+    @Override
+    public Map<String, String> getTags() {
+      return ImmutableMap.of();
+    }
+
+    @Override
+    public synchronized void increment(String metricName, long value) {
+      Long count = counters.get(metricName);
+      counters.put(metricName, count == null ? value : count + value);
+    }
+
+    @Override
+    public void gauge(String metricName, long value) {
+      // no-op
+    }
+  }
+
+  /**
+   * A {@link RecordingMetricsContext} that also records the number of values reported to each distribution.
+   */
+  private static final class RecordingDistributionContext extends RecordingMetricsContext
+                                                          implements DistributionCollector {
+
+    final Map<String, Integer> distributionCounts = Maps.newConcurrentMap();
+
+    @Override
+    public synchronized void distribution(String metricName, long value) {
+      Integer count = distributionCounts.get(metricName);
+      distributionCounts.put(metricName, count == null ? 1 : count + 1);
+    }
+  }
+
+  /**
+   * A {@link TimeProvider} that only moves forward when advanced explicitly.
+   */
+  private static final class TestTimeProvider implements TimeProvider {
+
+    private final AtomicLong time = new AtomicLong();
+
+    void advance(long millis) {
+      time.addAndGet(millis);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+      return time.get();
+    }
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -22,6 +22,7 @@ import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.common.app.RunIds;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.data2.dataset2.DatasetFramework;
+import co.cask.cdap.data2.dataset2.lib.table.MDSKey;
 import co.cask.cdap.data2.transaction.TransactionExecutorFactory;
 import co.cask.cdap.internal.AppFabricTestHelper;
 import co.cask.cdap.proto.ProgramRunStatus;
@@ -33,6 +34,7 @@ import co.cask.cdap.proto.id.ProgramId;
 import co.cask.cdap.proto.id.ProgramRunId;
 import com.google.common.base.Function;
 import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.inject.Injector;
@@ -44,6 +46,7 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -238,6 +241,110 @@ public class AppMetadataStoreTest {
     });
   }
 
+  @Test
+  public void testGetRunsByStatus() throws Exception {
+    DatasetId storeTable = NamespaceId.DEFAULT.dataset("testGetRunsByStatus");
+    datasetFramework.addInstance(Table.class.getName(), storeTable, DatasetProperties.EMPTY);
+
+    Table table = datasetFramework.getDataset(storeTable, ImmutableMap.<String, String>of(), null);
+    Assert.assertNotNull(table);
+    final AppMetadataStore metadataStoreDataset = new AppMetadataStore(table, cConf);
+    TransactionExecutor txnl = txExecutorFactory.createExecutor(
+      Collections.singleton((TransactionAware) metadataStoreDataset));
+
+    final ProgramId program = NamespaceId.DEFAULT.app("app").workflow("workflow");
+    final ProgramId legacyProgram = NamespaceId.DEFAULT.app("legacyApp").workflow("workflow");
+    final ProgramRunStatus[] statuses = { ProgramRunStatus.COMPLETED, ProgramRunStatus.FAILED,
+                                          ProgramRunStatus.KILLED };
+    final List<String> expectedFailed = new ArrayList<>();
+    final List<String> expectedLegacyFailed = new ArrayList<>();
+
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        for (int i = 0; i < 30; i++) {
+          long startTs = (i + 1) * 10;
+          ProgramRunStatus status = statuses[i % statuses.length];
+
+          // Records through the store, which maintains the status index
+          RunId runId = RunIds.generate(TimeUnit.SECONDS.toMillis(startTs));
+          metadataStoreDataset.recordProgramStart(program, runId.getId(), startTs, null, null, null);
+          metadataStoreDataset.recordProgramStop(program, runId.getId(), startTs + 5, status, null);
+
+          // Records written without the status index, as before the index was introduced
+          RunId legacyRunId = RunIds.generate(TimeUnit.SECONDS.toMillis(startTs));
+          MDSKey key = new MDSKey.Builder().add("runRecordCompleted", legacyProgram.getNamespace(),
+                                                legacyProgram.getApplication(), legacyProgram.getVersion(),
+                                                legacyProgram.getType().name(), legacyProgram.getProgram())
+            .add(Long.MAX_VALUE - startTs).add(legacyRunId.getId()).build();
+          metadataStoreDataset.write(key, new RunRecordMeta(legacyRunId.getId(), startTs, startTs + 5, status,
+                                                            null, null, null));
+
+          if (status == ProgramRunStatus.FAILED) {
+            expectedFailed.add(0, runId.getId());
+            expectedLegacyFailed.add(0, legacyRunId.getId());
+          }
+        }
+      }
+    });
+
+    // Newest runs come first and the limit is applied on the runs of the requested status
+    assertRuns(txnl, metadataStoreDataset, program, ProgramRunStatus.FAILED, 0, Long.MAX_VALUE, 3,
+               expectedFailed.subList(0, 3));
+    assertRuns(txnl, metadataStoreDataset, program, ProgramRunStatus.FAILED, 0, Long.MAX_VALUE, Integer.MAX_VALUE,
+               expectedFailed);
+    // Time range of [50, 150) includes the FAILED runs started at 50, 80, 110 and 140
+    assertRuns(txnl, metadataStoreDataset, program, ProgramRunStatus.FAILED, 50, 150, Integer.MAX_VALUE,
+               expectedFailed.subList(5, 9));
+
+    // Runs not in the status index are still found by scanning all completed runs
+    assertRuns(txnl, metadataStoreDataset, legacyProgram, ProgramRunStatus.FAILED, 0, Long.MAX_VALUE, 3,
+               expectedLegacyFailed.subList(0, 3));
+
+    // After the upgrade, the status index has all the runs
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        metadataStoreDataset.upgradeVersionKeys();
+        RunId runId = RunIds.generate(TimeUnit.SECONDS.toMillis(1000));
+        metadataStoreDataset.recordProgramStart(legacyProgram, runId.getId(), 1000, null, null, null);
+        metadataStoreDataset.recordProgramStop(legacyProgram, runId.getId(), 1005, ProgramRunStatus.FAILED, null);
+        expectedLegacyFailed.add(0, runId.getId());
+      }
+    });
+    assertRuns(txnl, metadataStoreDataset, legacyProgram, ProgramRunStatus.FAILED, 0, Long.MAX_VALUE,
+               Integer.MAX_VALUE, expectedLegacyFailed);
+    assertRuns(txnl, metadataStoreDataset, program, ProgramRunStatus.FAILED, 0, Long.MAX_VALUE, Integer.MAX_VALUE,
+               expectedFailed);
+
+    // Deleting the program history removes the status index as well
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        metadataStoreDataset.deleteProgramHistory(program.getNamespace(), program.getApplication());
+      }
+    });
+    assertRuns(txnl, metadataStoreDataset, program, ProgramRunStatus.FAILED, 0, Long.MAX_VALUE, Integer.MAX_VALUE,
+               ImmutableList.<String>of());
+  }
+
+  private void assertRuns(TransactionExecutor txnl, final AppMetadataStore metadataStoreDataset,
+                          final ProgramId program, final ProgramRunStatus status, final long startTime,
+                          final long endTime, final int limit, final List<String> expected) throws Exception {
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        List<String> actual = new ArrayList<>();
+        for (RunRecordMeta meta : metadataStoreDataset.getRuns(program, status, startTime, endTime,
+                                                               limit, null).values()) {
+          Assert.assertEquals(status, meta.getStatus());
+          actual.add(meta.getPid());
+        }
+        Assert.assertEquals(expected, actual);
+      }
+    });
+  }
+
   private static class CountingTicker extends Ticker {
     private final long elementsPerMillis;
     private int numProcessed = 0;
@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.api.lookup;
+
+import co.cask.cdap.etl.api.CacheConfig;
+import co.cask.cdap.etl.api.LookupProvider;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reserved arguments that can be passed to {@link LookupProvider#provide(String, Map)} to control how lookups
+ * are performed. These arguments are not passed to the underlying dataset.
+ */
+public final class LookupArguments {
+
+  /**
+   * Maximum number of entries to cache. Caching is enabled if it is larger than zero.
+   */
+  public static final String CACHE_MAX_SIZE = "lookup.cache.max.size";
+
+  /**
+   * Number of seconds that a cached entry stays valid after it is read from the table. Zero means no expiration.
+   */
+  public static final String CACHE_EXPIRY_SECONDS = "lookup.cache.expiry.seconds";
+
+  /**
+   * Maximum number of entries to preload. If it is larger than zero, the whole table is read when the lookup
+   * is provided, and all lookups are served from memory. It fails if the table has more entries than this limit.
+   */
+  public static final String PRELOAD_MAX_SIZE = "lookup.preload.max.size";
+
+  /**
+   * Returns the arguments that enable caching based on the given {@link CacheConfig}.
+   */
+  public static Map<String, String> cache(CacheConfig config) {
+    Map<String, String> arguments = new HashMap<>();
+    arguments.put(CACHE_MAX_SIZE, Integer.toString(config.getMaxSize()));
+    arguments.put(CACHE_EXPIRY_SECONDS, Long.toString(config.getExpirySeconds()));
+    return arguments;
+  }
+
+  /**
+   * Returns the arguments that enable preloading of a table with at most the given number of entries.
+   */
+  public static Map<String, String> preload(int maxSize) {
+    Map<String, String> arguments = new HashMap<>();
+    arguments.put(PRELOAD_MAX_SIZE, Integer.toString(maxSize));
+    return arguments;
+  }
+
+  private LookupArguments() {
+    // no-op
+  }
+}
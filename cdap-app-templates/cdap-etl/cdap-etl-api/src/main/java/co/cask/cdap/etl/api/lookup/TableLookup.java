@@ -17,12 +17,16 @@
 package co.cask.cdap.etl.api.lookup;
 
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.table.Get;
 import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.etl.api.Lookup;
 import com.google.common.collect.ImmutableSet;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -49,9 +53,15 @@ public class TableLookup implements Lookup<Row> {
 
   @Override
   public Map<String, Row> lookup(Set<String> keys) {
+    // Reads all rows with a single batched get instead of one get per key
+    List<Get> gets = new ArrayList<>(keys.size());
+    for (String key : keys) {
+      gets.add(new Get(key));
+    }
     Map<String, Row> results = new HashMap<>();
+    Iterator<Row> rows = table.get(gets).iterator();
     for (String key : keys) {
-      results.put(key, lookup(key));
+      results.put(key, rows.next());
     }
     return results;
   }
@@ -52,6 +52,10 @@ import javax.annotation.Nullable;
  * @param <T> the type of input for the created transform executors
  */
 public abstract class TransformExecutorFactory<T> {
+  // Number of input records a stage processes before its metrics are sent. Counts are also sent when the
+  // transform executor is destroyed at the end of the task.
+  protected static final int METRICS_FLUSH_SIZE = 1000;
+
   protected final Map<String, Map<String, Schema>> perStageInputSchemas;
   private final String sourceStageName;
   private final MacroEvaluator macroEvaluator;
@@ -188,7 +192,8 @@ public abstract class TransformExecutorFactory<T> {
   protected static <IN, OUT> TrackedTransform<IN, OUT> getTrackedEmitKeyStep(Transformation<IN, OUT> transform,
                                                                              StageMetrics stageMetrics,
                                                                              DataTracer dataTracer) {
-    return new TrackedTransform<>(transform, stageMetrics, TrackedTransform.RECORDS_IN, null, dataTracer);
+    return new TrackedTransform<>(transform, stageMetrics, TrackedTransform.RECORDS_IN, null, dataTracer,
+                                  METRICS_FLUSH_SIZE);
   }
 
   protected static <IN, OUT> TrackedTransform<IN, OUT> getTrackedAggregateStep(Transformation<IN, OUT> transform,
@@ -196,12 +201,13 @@ public abstract class TransformExecutorFactory<T> {
                                                                                DataTracer dataTracer) {
     // 'aggregator.groups' is the number of groups output by the aggregator
     return new TrackedTransform<>(transform, stageMetrics, "aggregator.groups", TrackedTransform.RECORDS_OUT,
-                                  dataTracer);
+                                  dataTracer, METRICS_FLUSH_SIZE);
   }
 
   protected static <IN, OUT> TrackedTransform<IN, OUT> getTrackedMergeStep(Transformation<IN, OUT> transform,
                                                                            StageMetrics stageMetrics,
                                                                            DataTracer dataTracer) {
-    return new TrackedTransform<>(transform, stageMetrics, null, TrackedTransform.RECORDS_OUT, dataTracer);
+    return new TrackedTransform<>(transform, stageMetrics, null, TrackedTransform.RECORDS_OUT, dataTracer,
+                                  METRICS_FLUSH_SIZE);
   }
 }
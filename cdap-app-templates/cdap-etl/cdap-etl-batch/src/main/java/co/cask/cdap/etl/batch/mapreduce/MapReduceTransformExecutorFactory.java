@@ -140,7 +140,8 @@ public class MapReduceTransformExecutorFactory<T> extends TransformExecutorFacto
       taskContext.getDataTracer(stageName).isEnabled() && BatchSource.PLUGIN_TYPE.equals(pluginType) && isMapPhase;
     return new TrackedTransform(
       isLimitingSource ? new LimitingTransform(transformation, numberOfRecordsPreview) : transformation,
-      stageMetrics, taskContext.getDataTracer(stageName));
+      stageMetrics, TrackedTransform.RECORDS_IN, TrackedTransform.RECORDS_OUT, taskContext.getDataTracer(stageName),
+      METRICS_FLUSH_SIZE);
   }
 
   /**
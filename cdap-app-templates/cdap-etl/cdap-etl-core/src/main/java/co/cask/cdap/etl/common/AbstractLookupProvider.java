@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,14 +16,25 @@
 
 package co.cask.cdap.etl.common;
 
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.Dataset;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.api.dataset.lib.KeyValue;
 import co.cask.cdap.api.dataset.lib.KeyValueTable;
+import co.cask.cdap.api.dataset.table.Result;
+import co.cask.cdap.api.dataset.table.Row;
+import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.etl.api.Lookup;
 import co.cask.cdap.etl.api.LookupProvider;
 import co.cask.cdap.etl.api.lookup.KeyValueTableLookup;
+import co.cask.cdap.etl.api.lookup.LookupArguments;
 import co.cask.cdap.etl.api.lookup.TableLookup;
+import com.google.common.base.Function;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import javax.annotation.Nullable;
 
 /**
@@ -45,4 +56,85 @@ public abstract class AbstractLookupProvider implements LookupProvider {
       throw new RuntimeException(String.format("Dataset %s does not support lookup", table));
     }
   }
+
+  /**
+   * Reads all entries of the given dataset into memory and returns a {@link Lookup} that is served from them.
+   *
+   * @param table name of the dataset
+   * @param dataset the dataset to read from
+   * @param maxSize maximum number of entries to read
+   * @throws RuntimeException if the dataset does not support lookup or has more than {@code maxSize} entries
+   */
+  @SuppressWarnings("unchecked")
+  protected <T> Lookup<T> preload(String table, @Nullable Dataset dataset, int maxSize) {
+    if (dataset == null) {
+      throw new RuntimeException(String.format("Dataset %s does not exist", table));
+    }
+
+    if (dataset instanceof KeyValueTable) {
+      Map<String, String> entries = new HashMap<>();
+      try (CloseableIterator<KeyValue<byte[], byte[]>> iterator = ((KeyValueTable) dataset).scan(null, null)) {
+        while (iterator.hasNext()) {
+          KeyValue<byte[], byte[]> entry = iterator.next();
+          checkPreloadSize(table, entries, maxSize);
+          entries.put(Bytes.toString(entry.getKey()), Bytes.toString(entry.getValue()));
+        }
+      }
+      return (Lookup<T>) new PreloadedLookup<>(entries, new Function<String, String>() {
+        @Override
+        public String apply(String key) {
+          return null;
+        }
+      });
+    } else if (dataset instanceof Table) {
+      Map<String, Row> entries = new HashMap<>();
+      try (Scanner scanner = ((Table) dataset).scan(null, null)) {
+        Row row;
+        while ((row = scanner.next()) != null) {
+          checkPreloadSize(table, entries, maxSize);
+          entries.put(Bytes.toString(row.getRow()), row);
+        }
+      }
+      // Table lookup returns an empty row for key that doesn't exist
+      return (Lookup<T>) new PreloadedLookup<>(entries, new Function<String, Row>() {
+        @Override
+        public Row apply(String key) {
+          return new Result(Bytes.toBytes(key), Collections.<byte[], byte[]>emptyMap());
+        }
+      });
+    } else {
+      throw new RuntimeException(String.format("Dataset %s does not support lookup", table));
+    }
+  }
+
+  /**
+   * Returns the maximum number of entries to preload as specified by {@link LookupArguments#PRELOAD_MAX_SIZE}
+   * in the given arguments, or {@code 0} if preloading is not requested.
+   */
+  protected static int getPreloadMaxSize(Map<String, String> arguments) {
+    String maxSize = arguments.get(LookupArguments.PRELOAD_MAX_SIZE);
+    return maxSize == null ? 0 : Integer.parseInt(maxSize);
+  }
+
+  /**
+   * Returns the arguments for the dataset by removing all arguments defined in {@link LookupArguments}.
+   */
+  protected static Map<String, String> getDatasetArguments(Map<String, String> arguments) {
+    if (!arguments.containsKey(LookupArguments.PRELOAD_MAX_SIZE)
+      && !arguments.containsKey(LookupArguments.CACHE_MAX_SIZE)
+      && !arguments.containsKey(LookupArguments.CACHE_EXPIRY_SECONDS)) {
+      return arguments;
+    }
+    Map<String, String> datasetArguments = new HashMap<>(arguments);
+    datasetArguments.remove(LookupArguments.PRELOAD_MAX_SIZE);
+    datasetArguments.remove(LookupArguments.CACHE_MAX_SIZE);
+    datasetArguments.remove(LookupArguments.CACHE_EXPIRY_SECONDS);
+    return datasetArguments;
+  }
+
+  private static void checkPreloadSize(String table, Map<String, ?> entries, int maxSize) {
+    if (entries.size() >= maxSize) {
+      throw new RuntimeException(String.format("Dataset %s has more than %d entries to preload", table, maxSize));
+    }
+  }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -37,7 +37,7 @@ public abstract class AbstractTransformContext extends AbstractStageContext impl
   public AbstractTransformContext(PluginContext pluginContext, Metrics metrics,
                                   LookupProvider lookup, StageInfo stageInfo) {
     super(pluginContext, metrics, stageInfo);
-    this.lookup = lookup;
+    this.lookup = new CachingLookupProvider(lookup, getMetrics());
   }
 
   @Override
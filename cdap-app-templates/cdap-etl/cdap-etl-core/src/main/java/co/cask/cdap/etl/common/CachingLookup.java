@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.common;
+
+import co.cask.cdap.etl.api.Lookup;
+import co.cask.cdap.etl.api.StageMetrics;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Lookup} that caches the values returned by another {@link Lookup}. Keys missing from the cache in a
+ * batch lookup are read with a single batch lookup on the delegate. The number of cache hits and misses are
+ * emitted as stage metrics.
+ *
+ * @param <T> the type of value returned by the lookup
+ */
+final class CachingLookup<T> implements Lookup<T> {
+
+  private final Lookup<T> delegate;
+  private final Cache<String, Optional<T>> cache;
+  private final StageMetrics metrics;
+  private final String hitsMetricName;
+  private final String missesMetricName;
+
+  /**
+   * @param table name of the lookup table, used in the metric names
+   * @param delegate the {@link Lookup} to read values from on cache miss
+   * @param maxSize maximum number of entries in the cache
+   * @param expirySeconds number of seconds that an entry stays in the cache, or {@code 0} for no expiration
+   * @param metrics the {@link StageMetrics} for emitting cache hits and misses
+   */
+  CachingLookup(String table, Lookup<T> delegate, int maxSize, long expirySeconds, StageMetrics metrics) {
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(maxSize);
+    if (expirySeconds > 0) {
+      builder.expireAfterWrite(expirySeconds, TimeUnit.SECONDS);
+    }
+    this.delegate = delegate;
+    this.cache = builder.build();
+    this.metrics = metrics;
+    this.hitsMetricName = "lookup." + table + ".cache.hits";
+    this.missesMetricName = "lookup." + table + ".cache.misses";
+  }
+
+  @Override
+  public T lookup(String key) {
+    Optional<T> cached = cache.getIfPresent(key);
+    if (cached != null) {
+      metrics.count(hitsMetricName, 1);
+      return cached.orNull();
+    }
+    metrics.count(missesMetricName, 1);
+    T value = delegate.lookup(key);
+    cache.put(key, Optional.fromNullable(value));
+    return value;
+  }
+
+  @Override
+  public Map<String, T> lookup(String... keys) {
+    return lookup(ImmutableSet.copyOf(keys));
+  }
+
+  @Override
+  public Map<String, T> lookup(Set<String> keys) {
+    Map<String, T> results = new HashMap<>();
+    Set<String> missingKeys = new HashSet<>();
+    for (String key : keys) {
+      Optional<T> cached = cache.getIfPresent(key);
+      if (cached == null) {
+        missingKeys.add(key);
+      } else if (cached.isPresent()) {
+        results.put(key, cached.get());
+      }
+    }
+
+    if (missingKeys.size() < keys.size()) {
+      metrics.count(hitsMetricName, keys.size() - missingKeys.size());
+    }
+    if (missingKeys.isEmpty()) {
+      return results;
+    }
+
+    metrics.count(missesMetricName, missingKeys.size());
+    Map<String, T> values = delegate.lookup(missingKeys);
+    for (String key : missingKeys) {
+      T value = values.get(key);
+      cache.put(key, Optional.fromNullable(value));
+      if (value != null) {
+        results.put(key, value);
+      }
+    }
+    return results;
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.common;
+
+import co.cask.cdap.etl.api.Lookup;
+import co.cask.cdap.etl.api.LookupProvider;
+import co.cask.cdap.etl.api.StageMetrics;
+import co.cask.cdap.etl.api.lookup.LookupArguments;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link LookupProvider} that provides caching {@link Lookup} if it is requested through
+ * {@link LookupArguments#CACHE_MAX_SIZE} and {@link LookupArguments#CACHE_EXPIRY_SECONDS}.
+ * Cache hits and misses are emitted to the {@link StageMetrics} of the stage that uses the lookup.
+ */
+public class CachingLookupProvider implements LookupProvider {
+
+  private final LookupProvider delegate;
+  private final StageMetrics metrics;
+
+  public CachingLookupProvider(LookupProvider delegate, StageMetrics metrics) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public <T> Lookup<T> provide(String table, Map<String, String> arguments) {
+    String maxSize = arguments.get(LookupArguments.CACHE_MAX_SIZE);
+    if (maxSize == null) {
+      return delegate.provide(table, arguments);
+    }
+
+    String expirySeconds = arguments.get(LookupArguments.CACHE_EXPIRY_SECONDS);
+    Map<String, String> delegateArguments = new HashMap<>(arguments);
+    delegateArguments.remove(LookupArguments.CACHE_MAX_SIZE);
+    delegateArguments.remove(LookupArguments.CACHE_EXPIRY_SECONDS);
+
+    Lookup<T> lookup = delegate.provide(table, delegateArguments);
+    // No need to cache if the whole table is already in memory
+    if (Integer.parseInt(maxSize) <= 0 || delegateArguments.containsKey(LookupArguments.PRELOAD_MAX_SIZE)) {
+      return lookup;
+    }
+    return new CachingLookup<>(table, lookup, Integer.parseInt(maxSize),
+                               expirySeconds == null ? 0L : Long.parseLong(expirySeconds), metrics);
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,7 +16,9 @@
 package co.cask.cdap.etl.common;
 
 import co.cask.cdap.api.data.DatasetContext;
+import co.cask.cdap.api.dataset.Dataset;
 import co.cask.cdap.etl.api.Lookup;
+import co.cask.cdap.etl.api.lookup.LookupArguments;
 
 import java.util.Map;
 
@@ -24,6 +26,8 @@ import java.util.Map;
  * Implementation of {@link AbstractLookupProvider} that uses {@link DatasetContext}.
  * This provides the raw {@link Lookup} without doing any transaction-wrapping for you,
  * and therefore should be used when executing lookup functions inside a transaction.
+ * If {@link LookupArguments#PRELOAD_MAX_SIZE} is given, the whole table is read with the {@link DatasetContext}
+ * when the {@link Lookup} is provided.
  */
 public class DatasetContextLookupProvider extends AbstractLookupProvider {
 
@@ -35,6 +39,8 @@ public class DatasetContextLookupProvider extends AbstractLookupProvider {
 
   @Override
   public <T> Lookup<T> provide(String table, Map<String, String> arguments) {
-    return getLookup(table, context.getDataset(table, arguments));
+    Dataset dataset = context.getDataset(table, getDatasetArguments(arguments));
+    int preloadMaxSize = getPreloadMaxSize(arguments);
+    return preloadMaxSize > 0 ? this.<T>preload(table, dataset, preloadMaxSize) : this.<T>getLookup(table, dataset);
   }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.common;
+
+import co.cask.cdap.etl.api.Lookup;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link Lookup} that serves all lookups from entries that are read into memory in advance.
+ *
+ * @param <T> the type of value returned by the lookup
+ */
+final class PreloadedLookup<T> implements Lookup<T> {
+
+  private final Map<String, T> entries;
+  private final Function<String, T> missingValue;
+
+  /**
+   * @param entries all entries of the lookup table
+   * @param missingValue function to provide the value for key that doesn't exist in the table
+   */
+  PreloadedLookup(Map<String, T> entries, Function<String, T> missingValue) {
+    this.entries = ImmutableMap.copyOf(entries);
+    this.missingValue = missingValue;
+  }
+
+  @Override
+  public T lookup(String key) {
+    T value = entries.get(key);
+    return value == null ? missingValue.apply(key) : value;
+  }
+
+  @Override
+  public Map<String, T> lookup(String... keys) {
+    return lookup(ImmutableSet.copyOf(keys));
+  }
+
+  @Override
+  public Map<String, T> lookup(Set<String> keys) {
+    Map<String, T> results = new HashMap<>();
+    for (String key : keys) {
+      T value = lookup(key);
+      if (value != null) {
+        results.put(key, value);
+      }
+    }
+    return results;
+  }
+}
@@ -23,27 +23,46 @@ import co.cask.cdap.etl.api.StageMetrics;
 
 /**
  * Wrapper around another emitter that tracks how many records were emitted.
+ * Counts are either sent to the {@link StageMetrics} as each record is emitted, or accumulated and sent in bulk
+ * when {@link #flush()} is called.
  *
  * @param <T> the type of object to emit
  */
 public class TrackedEmitter<T> implements Emitter<T> {
   private static final String RECORDS_ERROR = "records.error";
-  private final Emitter<T> delegate;
   private final StageMetrics stageMetrics;
   private final String emitMetricName;
   private final DataTracer dataTracer;
+  private final boolean deferCounts;
+  private Emitter<T> delegate;
+  private int emitCount;
+  private int errorCount;
 
   public TrackedEmitter(Emitter<T> delegate, StageMetrics stageMetrics, String emitMetricName, DataTracer dataTracer) {
+    this(delegate, stageMetrics, emitMetricName, dataTracer, false);
+  }
+
+  /**
+   * Creates an instance that only sends the accumulated counts to the {@link StageMetrics} on {@link #flush()}
+   * if {@code deferCounts} is {@code true}.
+   */
+  TrackedEmitter(Emitter<T> delegate, StageMetrics stageMetrics, String emitMetricName,
+                 DataTracer dataTracer, boolean deferCounts) {
     this.delegate = delegate;
     this.stageMetrics = stageMetrics;
     this.emitMetricName = emitMetricName;
     this.dataTracer = dataTracer;
+    this.deferCounts = deferCounts;
   }
 
   @Override
   public void emit(T value) {
     delegate.emit(value);
-    stageMetrics.count(emitMetricName, 1);
+    if (deferCounts) {
+      emitCount++;
+    } else {
+      stageMetrics.count(emitMetricName, 1);
+    }
     if (dataTracer.isEnabled()) {
       dataTracer.info(emitMetricName, value);
     }
@@ -52,9 +71,38 @@ public class TrackedEmitter<T> implements Emitter<T> {
   @Override
   public void emitError(InvalidEntry<T> value) {
     delegate.emitError(value);
-    stageMetrics.count(RECORDS_ERROR, 1);
+    if (deferCounts) {
+      errorCount++;
+    } else {
+      stageMetrics.count(RECORDS_ERROR, 1);
+    }
     if (dataTracer.isEnabled()) {
       dataTracer.info(RECORDS_ERROR, value);
     }
   }
+
+  /**
+   * Sends the accumulated counts to the {@link StageMetrics}.
+   */
+  public void flush() {
+    if (emitCount > 0) {
+      stageMetrics.count(emitMetricName, emitCount);
+      emitCount = 0;
+    }
+    if (errorCount > 0) {
+      stageMetrics.count(RECORDS_ERROR, errorCount);
+      errorCount = 0;
+    }
+  }
+
+  Emitter<T> getDelegate() {
+    return delegate;
+  }
+
+  /**
+   * Sets the {@link Emitter} that records are emitted to, so that this instance can be reused across records.
+   */
+  void setDelegate(Emitter<T> delegate) {
+    this.delegate = delegate;
+  }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -27,6 +27,8 @@ import javax.annotation.Nullable;
 /**
  * A {@link Transformation} that delegates transform operations while emitting metrics
  * around how many records were input into the transform and output by it.
+ * If created with a metrics flush size larger than one, counts are accumulated and sent to the
+ * {@link StageMetrics} in bulk after that many input records, on {@link #flush()} or on {@link #destroy()}.
  *
  * @param <IN> Type of input object
  * @param <OUT> Type of output object
@@ -39,6 +41,10 @@ public class TrackedTransform<IN, OUT> implements Transformation<IN, OUT>, Destr
   private final String metricInName;
   private final String metricOutName;
   private final DataTracer dataTracer;
+  private final int metricsFlushSize;
+  private TrackedEmitter<OUT> trackedEmitter;
+  private int inCount;
+  private int pendingRecords;
 
   public TrackedTransform(Transformation<IN, OUT> transform, StageMetrics metrics, DataTracer dataTracer) {
     this(transform, metrics, RECORDS_IN, RECORDS_OUT, dataTracer);
@@ -46,26 +52,72 @@ public class TrackedTransform<IN, OUT> implements Transformation<IN, OUT>, Destr
 
   public TrackedTransform(Transformation<IN, OUT> transform, StageMetrics metrics,
                           @Nullable String metricInName, @Nullable String metricOutName, DataTracer dataTracer) {
+    this(transform, metrics, metricInName, metricOutName, dataTracer, 1);
+  }
+
+  /**
+   * Creates an instance that accumulates counts for up to the given number of input records before sending them
+   * to the {@link StageMetrics}. The caller must call {@link #flush()} or {@link #destroy()} when it finishes
+   * with this instance, otherwise the counts accumulated since the last flush are lost.
+   */
+  public TrackedTransform(Transformation<IN, OUT> transform, StageMetrics metrics,
+                          @Nullable String metricInName, @Nullable String metricOutName, DataTracer dataTracer,
+                          int metricsFlushSize) {
     this.transform = transform;
     this.metrics = metrics;
     this.metricInName = metricInName;
     this.metricOutName = metricOutName;
     this.dataTracer = dataTracer;
+    this.metricsFlushSize = metricsFlushSize;
   }
 
   @Override
   public void transform(IN input, Emitter<OUT> emitter) throws Exception {
     if (metricInName != null) {
-      metrics.count(metricInName, 1);
+      if (metricsFlushSize > 1) {
+        inCount++;
+      } else {
+        metrics.count(metricInName, 1);
+      }
+    }
+    transform.transform(input, metricOutName == null ? emitter : getTrackedEmitter(emitter));
+    if (metricsFlushSize > 1 && ++pendingRecords >= metricsFlushSize) {
+      flush();
     }
-    transform.transform(input, metricOutName == null ? emitter :
-      new TrackedEmitter<>(emitter, metrics, metricOutName, dataTracer));
+  }
+
+  /**
+   * Sends the counts accumulated since the last flush to the {@link StageMetrics}.
+   */
+  public void flush() {
+    if (inCount > 0) {
+      metrics.count(metricInName, inCount);
+      inCount = 0;
+    }
+    if (trackedEmitter != null) {
+      trackedEmitter.flush();
+    }
+    pendingRecords = 0;
   }
 
   @Override
   public void destroy() {
+    flush();
     if (transform instanceof Destroyable) {
       ((Destroyable) transform).destroy();
     }
   }
+
+  /**
+   * Returns a {@link TrackedEmitter} that wraps the given {@link Emitter}. The same instance is reused as long as
+   * the caller passes the same emitter, which is the common case of a transform running in a pipeline.
+   */
+  private TrackedEmitter<OUT> getTrackedEmitter(Emitter<OUT> emitter) {
+    if (trackedEmitter == null) {
+      trackedEmitter = new TrackedEmitter<>(emitter, metrics, metricOutName, dataTracer, metricsFlushSize > 1);
+    } else if (trackedEmitter.getDelegate() != emitter) {
+      trackedEmitter.setDelegate(emitter);
+    }
+    return trackedEmitter;
+  }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -18,8 +18,11 @@ package co.cask.cdap.etl.common;
 import co.cask.cdap.api.Transactional;
 import co.cask.cdap.api.TxRunnable;
 import co.cask.cdap.api.data.DatasetContext;
+import co.cask.cdap.api.dataset.Dataset;
 import co.cask.cdap.etl.api.Lookup;
+import co.cask.cdap.etl.api.lookup.LookupArguments;
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import org.apache.tephra.TransactionFailureException;
 
 import java.util.Map;
@@ -31,6 +34,8 @@ import javax.annotation.Nullable;
  * Implementation of {@link AbstractLookupProvider} that uses {@link Transactional}.
  * This class will provide a {@link Lookup} that wraps each call within a transaction
  * using {@link Transactional}, and therefore can be used when executing lookup functions outside a transaction.
+ * If {@link LookupArguments#PRELOAD_MAX_SIZE} is given, the whole table is read in a single transaction
+ * when the {@link Lookup} is provided, and lookups are served from memory without transaction.
  */
 public class TxLookupProvider extends AbstractLookupProvider {
 
@@ -41,7 +46,13 @@ public class TxLookupProvider extends AbstractLookupProvider {
   }
 
   @Override
-  public <T> Lookup<T> provide(final String table, final Map<String, String> arguments) {
+  public <T> Lookup<T> provide(final String table, Map<String, String> lookupArguments) {
+    final Map<String, String> arguments = getDatasetArguments(lookupArguments);
+    final int preloadMaxSize = getPreloadMaxSize(lookupArguments);
+    if (preloadMaxSize > 0) {
+      return executeLookup(table, arguments, Functions.<Lookup<T>>identity(), preloadMaxSize);
+    }
+
     //noinspection unchecked
     return new Lookup<T>() {
 
@@ -80,15 +91,27 @@ public class TxLookupProvider extends AbstractLookupProvider {
     };
   }
 
+  @Nullable
+  private <T, R> R executeLookup(String table, Map<String, String> arguments, Function<Lookup<T>, R> func) {
+    return executeLookup(table, arguments, func, 0);
+  }
+
+  /**
+   * Executes the given function with a {@link Lookup} in a transaction. If {@code preloadMaxSize} is larger than
+   * zero, the {@link Lookup} is served from all entries of the table read in the transaction.
+   */
   @Nullable
   private <T, R> R executeLookup(final String table, final Map<String, String> arguments,
-                                 final Function<Lookup<T>, R> func) {
+                                 final Function<Lookup<T>, R> func, final int preloadMaxSize) {
     try {
       final AtomicReference<R> result = new AtomicReference<>();
       tx.execute(new TxRunnable() {
         @Override
         public void run(DatasetContext context) throws Exception {
-          Lookup<T> lookup = getLookup(table, context.getDataset(table, arguments));
+          Dataset dataset = context.getDataset(table, arguments);
+          Lookup<T> lookup = preloadMaxSize > 0
+            ? TxLookupProvider.this.<T>preload(table, dataset, preloadMaxSize)
+            : TxLookupProvider.this.<T>getLookup(table, dataset);
           result.set(func.apply(lookup));
         }
       });
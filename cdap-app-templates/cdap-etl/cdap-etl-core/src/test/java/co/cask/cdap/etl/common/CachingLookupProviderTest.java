@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.etl.common;
+
+import co.cask.cdap.etl.api.CacheConfig;
+import co.cask.cdap.etl.api.Lookup;
+import co.cask.cdap.etl.api.LookupProvider;
+import co.cask.cdap.etl.api.lookup.LookupArguments;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tests for {@link CachingLookupProvider}.
+ */
+public class CachingLookupProviderTest {
+
+  @Test
+  public void testNoCache() {
+    MapLookupProvider delegate = new MapLookupProvider(ImmutableMap.of("k1", "v1"));
+    LookupProvider provider = new CachingLookupProvider(delegate, new DefaultStageMetrics(new MockMetrics(), "s"));
+    Lookup<String> lookup = provider.provide("table", ImmutableMap.<String, String>of());
+
+    Assert.assertEquals("v1", lookup.lookup("k1"));
+    Assert.assertEquals("v1", lookup.lookup("k1"));
+    Assert.assertEquals(2, delegate.getLookedUpKeys().size());
+  }
+
+  @Test
+  public void testCache() {
+    MockMetrics metrics = new MockMetrics();
+    MapLookupProvider delegate = new MapLookupProvider(ImmutableMap.of("k1", "v1", "k2", "v2", "k3", "v3"));
+    LookupProvider provider = new CachingLookupProvider(delegate, new DefaultStageMetrics(metrics, "s"));
+
+    Map<String, String> arguments = new HashMap<>(LookupArguments.cache(new CacheConfig(0, 100)));
+    arguments.put("key", "value");
+    Lookup<String> lookup = provider.provide("table", arguments);
+
+    // Cache arguments shouldn't be passed to the delegate
+    Assert.assertEquals(ImmutableMap.of("key", "value"), delegate.getArguments());
+
+    Assert.assertEquals("v1", lookup.lookup("k1"));
+    Assert.assertEquals("v1", lookup.lookup("k1"));
+    Assert.assertNull(lookup.lookup("k4"));
+    Assert.assertNull(lookup.lookup("k4"));
+    Assert.assertEquals(2, delegate.getLookedUpKeys().size());
+    Assert.assertEquals(2, metrics.getCount("s.lookup.table.cache.hits"));
+    Assert.assertEquals(2, metrics.getCount("s.lookup.table.cache.misses"));
+
+    // Only keys not in the cache are looked up, with a single batch lookup
+    Assert.assertEquals(ImmutableMap.of("k1", "v1", "k2", "v2", "k3", "v3"),
+                        lookup.lookup("k1", "k2", "k3", "k4"));
+    Assert.assertEquals(3, delegate.getLookedUpKeys().size());
+    Assert.assertEquals(ImmutableSet.of("k2", "k3"), delegate.getLookedUpKeys().get(2));
+    Assert.assertEquals(4, metrics.getCount("s.lookup.table.cache.hits"));
+    Assert.assertEquals(4, metrics.getCount("s.lookup.table.cache.misses"));
+
+    Assert.assertEquals(ImmutableMap.of("k2", "v2", "k3", "v3"), lookup.lookup(ImmutableSet.of("k2", "k3")));
+    Assert.assertEquals(3, delegate.getLookedUpKeys().size());
+  }
+
+  @Test
+  public void testCacheMaxSize() {
+    MapLookupProvider delegate = new MapLookupProvider(ImmutableMap.of("k1", "v1", "k2", "v2"));
+    LookupProvider provider = new CachingLookupProvider(delegate, new DefaultStageMetrics(new MockMetrics(), "s"));
+    Lookup<String> lookup = provider.provide("table", LookupArguments.cache(new CacheConfig(0, 1)));
+
+    Assert.assertEquals("v1", lookup.lookup("k1"));
+    Assert.assertEquals("v2", lookup.lookup("k2"));
+    Assert.assertEquals("v1", lookup.lookup("k1"));
+    Assert.assertEquals(3, delegate.getLookedUpKeys().size());
+  }
+
+  /**
+   * A {@link LookupProvider} that provides {@link Lookup} backed by a {@link Map}, and records the keys
+   * being looked up.
+   */
+  private static final class MapLookupProvider implements LookupProvider {
+
+    private final Map<String, String> entries;
+    private final List<Set<String>> lookedUpKeys = new ArrayList<>();
+    private Map<String, String> arguments;
+
+    MapLookupProvider(Map<String, String> entries) {
+      this.entries = entries;
+    }
+
+    List<Set<String>> getLookedUpKeys() {
+      return lookedUpKeys;
+    }
+
+    Map<String, String> getArguments() {
+      return arguments;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> Lookup<T> provide(String table, Map<String, String> arguments) {
+      this.arguments = arguments;
+      return (Lookup<T>) new Lookup<String>() {
+        @Override
+        public String lookup(String key) {
+          lookedUpKeys.add(ImmutableSet.of(key));
+          return entries.get(key);
+        }
+
+        @Override
+        public Map<String, String> lookup(String... keys) {
+          return lookup(ImmutableSet.copyOf(keys));
+        }
+
+        @Override
+        public Map<String, String> lookup(Set<String> keys) {
+          lookedUpKeys.add(ImmutableSet.copyOf(keys));
+          Map<String, String> result = new HashMap<>();
+          for (String key : keys) {
+            if (entries.containsKey(key)) {
+              result.put(key, entries.get(key));
+            }
+          }
+          return result;
+        }
+      };
+    }
+  }
+}
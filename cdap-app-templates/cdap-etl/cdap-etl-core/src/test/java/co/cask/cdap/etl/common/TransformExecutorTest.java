@@ -292,6 +292,40 @@ public class TransformExecutorTest {
     Assert.assertEquals(3, mockMetrics.getCount("sink3.records.out"));
   }
 
+  @Test
+  public void testDeferredMetrics() throws Exception {
+    MockMetrics mockMetrics = new MockMetrics();
+    TrackedTransform<Double, Double> transform =
+      new TrackedTransform<>(new Filter(100d, Threshold.LOWER), new DefaultStageMetrics(mockMetrics, "filter"),
+                             TrackedTransform.RECORDS_IN, TrackedTransform.RECORDS_OUT,
+                             dataTracerFactory.getDataTracer(null, "filter"), 4);
+
+    DefaultEmitter<Double> emitter = new DefaultEmitter<>();
+    for (int i = 0; i < 3; i++) {
+      transform.transform(i * 100d, emitter);
+    }
+    // Counts are not sent until the flush size is reached
+    Assert.assertEquals(0, mockMetrics.getCount("filter.records.in"));
+
+    // Changing the emitter should not lose the counts
+    DefaultEmitter<Double> newEmitter = new DefaultEmitter<>();
+    transform.transform(300d, newEmitter);
+    Assert.assertEquals(4, mockMetrics.getCount("filter.records.in"));
+    Assert.assertEquals(2, mockMetrics.getCount("filter.records.out"));
+    Assert.assertEquals(2, mockMetrics.getCount("filter.records.error"));
+    Assert.assertEquals(1, emitter.getEntries().size());
+    Assert.assertEquals(2, emitter.getErrors().size());
+    Assert.assertEquals(1, newEmitter.getEntries().size());
+
+    // Remaining counts are sent on destroy
+    transform.transform(400d, newEmitter);
+    Assert.assertEquals(4, mockMetrics.getCount("filter.records.in"));
+    transform.destroy();
+    Assert.assertEquals(5, mockMetrics.getCount("filter.records.in"));
+    Assert.assertEquals(3, mockMetrics.getCount("filter.records.out"));
+    Assert.assertEquals(2, mockMetrics.getCount("filter.records.error"));
+  }
+
   private <T> void assertResults(Map<String, Collection<T>> results, Map<String, Integer> expectedListsSize) {
     Assert.assertEquals(expectedListsSize.size(), results.size());
     for (Map.Entry<String, Integer> entry : expectedListsSize.entrySet()) {
@@ -1175,15 +1175,7 @@ public class MetadataHttpHandlerTestRun extends MetadataTestBase {
       // expected
     }
 
-    // search with numCursors for relevance sort
-    try {
-      searchMetadata(NamespaceId.DEFAULT, "search*", targets, null, 0, Integer.MAX_VALUE, 1, null);
-      Assert.fail();
-    } catch (BadRequestException e) {
-      // expected
-    }
-
-    // search with cursor for relevance sort
+    // search with invalid cursor for relevance sort
     try {
       searchMetadata(NamespaceId.DEFAULT, "search*", targets, null, 0, Integer.MAX_VALUE, 0, "cursor");
       Assert.fail();
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -32,6 +32,7 @@ import co.cask.cdap.proto.id.StreamViewId;
 import co.cask.cdap.security.spi.authorization.UnauthorizedException;
 import co.cask.cdap.test.XSlowTests;
 import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
@@ -129,6 +130,31 @@ public class StreamClientTestRun extends ClientTestBase {
       Assert.assertEquals("Testing " + i, Bytes.toString(events.get(i).getBody()));
     }
 
+    // Read all events in binary format, which should be the same as the JSON format as there is only one writer
+    final List<StreamEvent> binaryEvents = Lists.newArrayList();
+    Function<StreamEvent, Boolean> collector = new Function<StreamEvent, Boolean>() {
+      @Override
+      public Boolean apply(StreamEvent event) {
+        return binaryEvents.add(event);
+      }
+    };
+    streamClient.getEventsBinary(streamId, "0", Long.toString(Long.MAX_VALUE), Integer.MAX_VALUE, collector);
+    Assert.assertEquals(eventCount, binaryEvents.size());
+    for (int i = 0; i < eventCount; i++) {
+      Assert.assertEquals(events.get(i).getTimestamp(), binaryEvents.get(i).getTimestamp());
+      Assert.assertEquals("Testing " + i, Bytes.toString(binaryEvents.get(i).getBody()));
+    }
+
+    // Read first 5 only in binary format
+    binaryEvents.clear();
+    streamClient.getEventsBinary(streamId, "0", Long.toString(Long.MAX_VALUE), 5, collector);
+    Assert.assertEquals(5, binaryEvents.size());
+
+    // Read with limit that equals to the number of events in binary format
+    binaryEvents.clear();
+    streamClient.getEventsBinary(streamId, "0", Long.toString(Long.MAX_VALUE), eventCount, collector);
+    Assert.assertEquals(eventCount, binaryEvents.size());
+
     // Read first 5 only
     events.clear();
     streamClient.getEvents(streamId, 0, Long.MAX_VALUE, 5, events);
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -24,6 +24,7 @@ import co.cask.cdap.client.util.RESTClient;
 import co.cask.cdap.common.BadRequestException;
 import co.cask.cdap.common.StreamNotFoundException;
 import co.cask.cdap.common.UnauthenticatedException;
+import co.cask.cdap.common.stream.StreamDataBlockCodec;
 import co.cask.cdap.common.stream.StreamEventTypeAdapter;
 import co.cask.cdap.common.utils.TimeMathParser;
 import co.cask.cdap.internal.io.SchemaTypeAdapter;
@@ -50,6 +51,7 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -686,12 +688,79 @@ public class StreamClient {
                         Function<? super StreamEvent, Boolean> callback)
     throws IOException, StreamNotFoundException, UnauthenticatedException {
 
+    HttpURLConnection urlConn = openEventsConnection(streamId, start, end, limit, "json");
+    if (urlConn == null) {
+      return;
+    }
+
+    try {
+      // The response is an array of stream event object
+      InputStream inputStream = urlConn.getInputStream();
+      JsonReader jsonReader = new JsonReader(new InputStreamReader(inputStream, Charsets.UTF_8));
+      jsonReader.beginArray();
+      while (jsonReader.peek() != JsonToken.END_ARRAY) {
+        Boolean result = callback.apply(GSON.<StreamEvent>fromJson(jsonReader, StreamEvent.class));
+        if (result == null || !result) {
+          break;
+        }
+      }
+      drain(inputStream);
+      // No need to close reader, the urlConn.disconnect in finally will close all underlying streams
+    } finally {
+      urlConn.disconnect();
+    }
+  }
+
+  /**
+   * Reads events from a stream in the binary format, which transfers the stream data as stored in the stream files
+   * without conversion on the server side. It is more efficient than
+   * {@link #getEvents(StreamId, String, String, int, Function)} for reading large amount of events. Events are only
+   * ordered by time within each stream file written by the same stream writer.
+   *
+   * @param streamId ID of the stream
+   * @param start Timestamp in milliseconds or now-xs format to start reading event from (inclusive)
+   * @param end Timestamp in milliseconds or now-xs format for the last event to read (exclusive)
+   * @param limit Maximum number of events to read
+   * @param callback Callback to invoke for each stream event read. If the callback function returns {@code false}
+   *                 upon invocation, it will stops the reading
+   * @throws IOException If fails to read from stream
+   * @throws StreamNotFoundException If the given stream does not exists
+   */
+  public void getEventsBinary(StreamId streamId, String start, String end, int limit,
+                              Function<? super StreamEvent, Boolean> callback)
+    throws IOException, StreamNotFoundException, UnauthenticatedException {
+
+    HttpURLConnection urlConn = openEventsConnection(streamId, start, end, limit, "binary");
+    if (urlConn == null) {
+      return;
+    }
+
+    try {
+      // The limit is applied on the client side for the binary format
+      // Remaining response is not drained if reading is stopped early, as it can be large.
+      StreamDataBlockCodec.decode(new BufferedInputStream(urlConn.getInputStream()), limit, callback);
+      // No need to close the stream, the urlConn.disconnect in finally will close all underlying streams
+    } finally {
+      urlConn.disconnect();
+    }
+  }
+
+  /**
+   * Opens a connection for reading events from a stream.
+   *
+   * @return the connection for reading the response body or {@code null} if there is no event to read
+   */
+  @Nullable
+  private HttpURLConnection openEventsConnection(StreamId streamId, String start, String end, int limit,
+                                                 String format)
+    throws IOException, StreamNotFoundException, UnauthenticatedException {
+
     long startTime = TimeMathParser.parseTime(start, TimeUnit.MILLISECONDS);
     long endTime = TimeMathParser.parseTime(end, TimeUnit.MILLISECONDS);
 
     URL url = config.resolveNamespacedURLV3(streamId.getParent(),
-                                            String.format("streams/%s/events?start=%d&end=%d&limit=%d",
-                                                          streamId.getStream(), startTime, endTime, limit));
+                                            String.format("streams/%s/events?start=%d&end=%d&limit=%d&format=%s",
+                                                          streamId.getStream(), startTime, endTime, limit, format));
     HttpURLConnection urlConn = (HttpURLConnection) url.openConnection();
     AccessToken accessToken = config.getAccessToken();
     if (accessToken != null) {
@@ -714,24 +783,14 @@ public class StreamClient {
         throw new StreamNotFoundException(streamId);
       }
       if (urlConn.getResponseCode() == HttpURLConnection.HTTP_NO_CONTENT) {
-        return;
+        urlConn.disconnect();
+        return null;
       }
-
-      // The response is an array of stream event object
-      InputStream inputStream = urlConn.getInputStream();
-      JsonReader jsonReader = new JsonReader(new InputStreamReader(inputStream, Charsets.UTF_8));
-      jsonReader.beginArray();
-      while (jsonReader.peek() != JsonToken.END_ARRAY) {
-        Boolean result = callback.apply(GSON.<StreamEvent>fromJson(jsonReader, StreamEvent.class));
-        if (result == null || !result) {
-          break;
-        }
-      }
-      drain(inputStream);
-      // No need to close reader, the urlConn.disconnect in finally will close all underlying streams
-    } finally {
+    } catch (IOException | RuntimeException e) {
       urlConn.disconnect();
+      throw e;
     }
+    return urlConn;
   }
 
   /**
@@ -210,6 +210,15 @@ public final class Constants {
      */
     public static final String WORKFLOW_LOCAL_DATASET_PROPERTY = "workflow.local.dataset";
 
+    /**
+     * Configuration settings for adapting the dequeue batch size of flowlet process methods and
+     * for processing multiple dequeues of a flowlet in one transaction.
+     */
+    public static final String FLOWLET_ADAPTIVE_BATCH_ENABLED = "flow.flowlet.adaptive.batch.enabled";
+    public static final String FLOWLET_ADAPTIVE_BATCH_LATENCY_MS = "flow.flowlet.adaptive.batch.latency.ms";
+    public static final String FLOWLET_ADAPTIVE_BATCH_MAX_SIZE = "flow.flowlet.adaptive.batch.max.size";
+    public static final String FLOWLET_TX_COALESCE_LATENCY_MS = "flow.flowlet.tx.coalesce.latency.ms";
+
     /**
      * Configuration setting to localize extra jars to every program container and to be
      * added to classpaths of CDAP programs.
@@ -310,6 +319,13 @@ public final class Constants {
 
     public static final String DATASET_UNCHECKED_UPGRADE = "dataset.unchecked.upgrade";
 
+    /** Maximum number of idle dataset caches of terminated threads kept for reuse by new threads. */
+    public static final String CACHE_MAX_IDLE_CACHES = "dataset.cache.max.idle.caches";
+    public static final int DEFAULT_CACHE_MAX_IDLE_CACHES = 32;
+    /** Number of seconds after which an idle dataset cache is closed. */
+    public static final String CACHE_MAX_IDLE_SECONDS = "dataset.cache.max.idle.seconds";
+    public static final long DEFAULT_CACHE_MAX_IDLE_SECONDS = 300;
+
     /**
      * Constants for PartitionedFileSet's DynamicPartitioner
      */
@@ -391,6 +407,7 @@ public final class Constants {
     public static final String PARTITION_DURATION = "stream.partition.duration";
     public static final String INDEX_INTERVAL = "stream.index.interval";
     public static final String FILE_PREFIX = "stream.file.prefix";
+    public static final String FILE_COMPRESSION = "stream.file.compression";
     public static final String INSTANCE_FILE_PREFIX = "stream.instance.file.prefix";
     public static final String CONSUMER_TABLE_PRESPLITS = "stream.consumer.table.presplits";
     public static final String FILE_CLEANUP_PERIOD = "stream.file.cleanup.period";
@@ -525,6 +542,11 @@ public final class Constants {
 
     public static final String SERVER_ADDRESS = "metrics.query.bind.address";
     public static final String SERVER_PORT = "metrics.query.bind.port";
+    public static final String QUERY_PARALLELISM = "metrics.query.parallelism";
+
+    public static final String ROLLUP_ENABLED = "metrics.rollup.enabled";
+    public static final String ROLLUP_INTERVAL_SECONDS = "metrics.rollup.interval.seconds";
+    public static final String ROLLUP_DELAY_SECONDS = "metrics.rollup.delay.seconds";
 
     public static final String TOPIC_PREFIX = "metrics.topic.prefix";
     public static final String KAFKA_TOPIC_PREFIX = "metrics.kafka.topic.prefix";
@@ -637,6 +659,9 @@ public final class Constants {
         public static final String OP_COUNT = "dataset.store.ops";
         public static final String WRITE_COUNT = "dataset.store.writes";
         public static final String WRITE_BYTES = "dataset.store.bytes";
+        public static final String CACHE_REUSES = "dataset.cache.reuses";
+        public static final String CACHE_CREATES = "dataset.cache.creates";
+        public static final String CACHE_CREATE_MILLIS = "dataset.cache.create.millis";
       }
 
       /**
@@ -725,6 +750,7 @@ public final class Constants {
     public static final String PIPELINE_CONFIG_DIR = "log.process.pipeline.config.dir";
     public static final String PIPELINE_LIBRARY_DIR = "log.process.pipeline.lib.dir";
     public static final String PIPELINE_AUTO_BUFFER_RATIO = "log.process.pipeline.auto.buffer.ratio";
+    public static final String PIPELINE_WORKERS = "log.process.pipeline.workers";
 
     // The following properties can be defined in cdap-site and overridden in individual pipeline config xml
     public static final String PIPELINE_BUFFER_SIZE = "log.process.pipeline.buffer.size";
@@ -1188,6 +1214,9 @@ public final class Constants {
     public static final String HTTP_SERVER_MAX_REQUEST_SIZE_MB = "messaging.http.server.max.request.size.mb";
     public static final String HTTP_SERVER_CONSUME_CHUNK_SIZE = "messaging.http.server.consume.chunk.size";
 
+    public static final String GROUP_COMMIT_LINGER_MS = "messaging.group.commit.linger.ms";
+    public static final String GROUP_COMMIT_MAX_BATCH_COUNT = "messaging.group.commit.max.batch.count";
+    public static final String GROUP_COMMIT_MAX_BATCH_BYTES = "messaging.group.commit.max.batch.bytes";
 
     public static final String CONTAINER_VIRTUAL_CORES = "messaging.container.num.cores";
     public static final String CONTAINER_MEMORY_MB = "messaging.container.memory.mb";
@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.common.http;
+
+import co.cask.http.BodyProducer;
+import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link BodyProducer} that sends elements from an {@link Iterator} as a JSON array with chunked encoding.
+ * Elements are only serialized when the next chunk is requested, which happens when the connection is ready to
+ * send more data. Hence the memory used is bounded by the chunk size, regardless of the number of elements,
+ * as long as the {@link Iterator} produces elements lazily.
+ * If the {@link Iterator} is also {@link Closeable}, it will be closed when the response is completed or failed.
+ *
+ * @param <T> type of the elements
+ */
+public class JsonArrayBodyProducer<T> extends BodyProducer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JsonArrayBodyProducer.class);
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private final Iterator<? extends T> elements;
+  private final Type elementType;
+  private final Gson gson;
+  private final ChannelBuffer buffer;
+  private final JsonWriter jsonWriter;
+  private boolean started;
+  private boolean ended;
+
+  public JsonArrayBodyProducer(Iterator<? extends T> elements, Type elementType, Gson gson) {
+    this.elements = elements;
+    this.elementType = elementType;
+    this.gson = gson;
+    this.buffer = ChannelBuffers.dynamicBuffer(CHUNK_SIZE);
+    this.jsonWriter = new JsonWriter(new OutputStreamWriter(new ChannelBufferOutputStream(buffer), Charsets.UTF_8));
+  }
+
+  @Override
+  public ChannelBuffer nextChunk() throws Exception {
+    if (ended) {
+      return ChannelBuffers.EMPTY_BUFFER;
+    }
+
+    buffer.clear();
+    if (!started) {
+      jsonWriter.beginArray();
+      started = true;
+    }
+    while (buffer.readableBytes() < CHUNK_SIZE && elements.hasNext()) {
+      gson.toJson(elements.next(), elementType, jsonWriter);
+      jsonWriter.flush();
+    }
+    if (!elements.hasNext()) {
+      jsonWriter.endArray();
+      jsonWriter.flush();
+      ended = true;
+    }
+    // Need to copy the buffer because the buffer will get reused and the chunk is sent asynchronously
+    return buffer.copy();
+  }
+
+  @Override
+  public void finished() throws Exception {
+    close();
+  }
+
+  @Override
+  public void handleError(@Nullable Throwable cause) {
+    LOG.warn("Failed to send JSON response", cause);
+    close();
+  }
+
+  private void close() {
+    if (elements instanceof Closeable) {
+      Closeables.closeQuietly((Closeable) elements);
+    }
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.common.stream;
+
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.BinaryEncoder;
+import org.xerial.snappy.Snappy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of data blocks in stream event files. A compressed data block has the following format:
+ *
+ * <pre>
+ * {@code
+ *
+ * compressed_block = <uncompressed_length> <compressed_length> <compressed_data> <padding>
+ * uncompressed_length = Avro encoded int, number of bytes of all <stream_event>s in the data block
+ * compressed_length = Avro encoded int, number of bytes of <compressed_data>
+ * padding = zero bytes to make the compressed block at least as long as the number of events in it
+ * }
+ * </pre>
+ *
+ * The padding guarantees that each event in a compressed data block can be identified by a distinct file offset
+ * within the data block.
+ */
+public enum StreamBlockCompression {
+
+  NONE {
+    @Override
+    int maxCompressedLength(int length) {
+      return length;
+    }
+
+    @Override
+    int compress(byte[] input, int length, byte[] output, int outputOffset) {
+      System.arraycopy(input, 0, output, outputOffset, length);
+      return length;
+    }
+
+    @Override
+    void decompress(byte[] input, int offset, int length, byte[] output, int outputLength) {
+      System.arraycopy(input, offset, output, 0, outputLength);
+    }
+  },
+
+  DEFLATE {
+    @Override
+    int maxCompressedLength(int length) {
+      // Upper bound of deflate output as computed by zlib deflateBound()
+      return length + (length >> 12) + (length >> 14) + (length >> 25) + 13;
+    }
+
+    @Override
+    int compress(byte[] input, int length, byte[] output, int outputOffset) {
+      Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+      try {
+        deflater.setInput(input, 0, length);
+        deflater.finish();
+        int size = 0;
+        while (!deflater.finished()) {
+          size += deflater.deflate(output, outputOffset + size, output.length - outputOffset - size);
+        }
+        return size;
+      } finally {
+        deflater.end();
+      }
+    }
+
+    @Override
+    void decompress(byte[] input, int offset, int length, byte[] output, int outputLength) throws IOException {
+      Inflater inflater = new Inflater(true);
+      try {
+        inflater.setInput(input, offset, length);
+        int size = 0;
+        while (size < outputLength && !inflater.finished()) {
+          int len = inflater.inflate(output, size, outputLength - size);
+          if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+            break;
+          }
+          size += len;
+        }
+        if (size != outputLength) {
+          throw new IOException("Expected to decompress " + outputLength + " bytes, but only got " + size);
+        }
+      } catch (DataFormatException e) {
+        throw new IOException("Failed to decompress data block", e);
+      } finally {
+        inflater.end();
+      }
+    }
+  },
+
+  SNAPPY {
+    @Override
+    int maxCompressedLength(int length) {
+      return Snappy.maxCompressedLength(length);
+    }
+
+    @Override
+    int compress(byte[] input, int length, byte[] output, int outputOffset) throws IOException {
+      return Snappy.compress(input, 0, length, output, outputOffset);
+    }
+
+    @Override
+    void decompress(byte[] input, int offset, int length, byte[] output, int outputLength) throws IOException {
+      int size = Snappy.uncompress(input, offset, length, output, 0);
+      if (size != outputLength) {
+        throw new IOException("Expected to decompress " + outputLength + " bytes, but got " + size);
+      }
+    }
+  };
+
+  /**
+   * Returns the {@link StreamBlockCompression} of the given name, which is case insensitive.
+   *
+   * @throws IllegalArgumentException if the name is not a supported compression
+   */
+  public static StreamBlockCompression fromName(String name) {
+    return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+  }
+
+  /**
+   * Compresses the given data block.
+   *
+   * @param input buffer containing the encoded stream events in the data block
+   * @param length number of bytes in the buffer
+   * @param eventCount number of events in the data block
+   * @return the compressed data block
+   * @throws IOException if failed to compress
+   */
+  public byte[] compressBlock(byte[] input, int length, int eventCount) throws IOException {
+    ByteArrayOutputStream header = new ByteArrayOutputStream(10);
+    BinaryEncoder encoder = new BinaryEncoder(header);
+    byte[] output = new byte[maxCompressedLength(length)];
+    int compressedLength = compress(input, length, output, 0);
+    encoder.writeInt(length);
+    encoder.writeInt(compressedLength);
+
+    int blockSize = Math.max(eventCount, header.size() + compressedLength);
+    byte[] block = new byte[blockSize];
+    System.arraycopy(header.toByteArray(), 0, block, 0, header.size());
+    System.arraycopy(output, 0, block, header.size(), compressedLength);
+    return block;
+  }
+
+  /**
+   * Decompresses the given compressed data block.
+   *
+   * @param block buffer containing the compressed data block
+   * @param length number of bytes in the buffer
+   * @param buffer a buffer to reuse for the result if it has enough capacity
+   * @return a {@link ByteBuffer} containing the encoded stream events in the data block. It is the given buffer
+   *         if it has enough capacity, otherwise a new buffer.
+   * @throws IOException if failed to decompress
+   */
+  public ByteBuffer decompressBlock(byte[] block, int length, ByteBuffer buffer) throws IOException {
+    ByteArrayInputStream input = new ByteArrayInputStream(block, 0, length);
+    BinaryDecoder decoder = new BinaryDecoder(input);
+    int uncompressedLength = decoder.readInt();
+    int compressedLength = decoder.readInt();
+    int offset = length - input.available();
+    if (uncompressedLength < 0 || compressedLength < 0 || offset + compressedLength > length) {
+      throw new IOException("Invalid compressed data block");
+    }
+
+    ByteBuffer result = buffer.capacity() >= uncompressedLength && buffer.hasArray() && buffer.arrayOffset() == 0
+      ? buffer : ByteBuffer.allocate(uncompressedLength);
+    result.clear();
+    decompress(block, offset, compressedLength, result.array(), uncompressedLength);
+    result.limit(uncompressedLength);
+    return result;
+  }
+
+  /**
+   * Returns the maximum number of bytes of the compressed data of the given length.
+   */
+  abstract int maxCompressedLength(int length);
+
+  /**
+   * Compresses data in the input buffer into the output buffer.
+   *
+   * @return number of bytes written to the output buffer
+   */
+  abstract int compress(byte[] input, int length, byte[] output, int outputOffset) throws IOException;
+
+  /**
+   * Decompresses data from the input buffer into the beginning of output buffer.
+   */
+  abstract void decompress(byte[] input, int offset, int length,
+                           byte[] output, int outputLength) throws IOException;
+}
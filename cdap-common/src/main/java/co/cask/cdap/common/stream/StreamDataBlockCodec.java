@@ -0,0 +1,214 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.common.stream;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.flow.flowlet.StreamEvent;
+import co.cask.cdap.api.stream.StreamEventData;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.common.io.Decoder;
+import co.cask.common.io.ByteBufferInputStream;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Codec for the binary format of the stream events fetch response. The response is a sequence of segments, each
+ * carrying a range of raw data blocks copied from a stream event file:
+ *
+ * <pre>
+ * {@code
+ *
+ * response   = <segment>*
+ * segment    = <header> <data_length> <data>
+ * header     = <timestamp> <headers> <compression>
+ * timestamp  = Avro encoded long, which is the timestamp of all events in the segment or -1 if events carry
+ *              the timestamp of their data blocks
+ * headers    = Avro encoded map from string to string, which are default headers of all events in the segment
+ * compression = Avro encoded string, which is the name of the {@link StreamBlockCompression} of data blocks
+ * data_length = Avro encoded long, number of bytes of <data>
+ * data       = <data_block>*
+ * data_block = <timestamp 8 bytes> <length> <stream_event>+
+ * length     = Avro encoded int, number of bytes of all <stream_event> in the data block
+ * stream_event = Avro encoded StreamEventData
+ * }
+ * </pre>
+ *
+ * If data blocks are compressed, all {@code <stream_event>}s of a data block are compressed in the format defined by
+ * {@link StreamBlockCompression} and the {@code <length>} is the size of the compressed data.
+ *
+ * The {@code <data_block>} is the same format as written by the stream data file writer, so that the server
+ * can send it from the file as is.
+ */
+public final class StreamDataBlockCodec {
+
+  /**
+   * Encodes the segment header, including the {@code <data_length>}.
+   *
+   * @param timestamp timestamp of all events in the segment or {@code -1} to use the timestamp of data blocks
+   * @param headers default headers of all events in the segment
+   * @param compression compression of the data blocks in the segment
+   * @param dataLength number of bytes of data blocks in the segment
+   * @return the encoded segment header
+   */
+  public static byte[] encodeSegmentHeader(long timestamp, Map<String, String> headers,
+                                           StreamBlockCompression compression, long dataLength) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    BinaryEncoder encoder = new BinaryEncoder(os);
+    encoder.writeLong(timestamp);
+    encoder.writeInt(headers.size());
+    for (Map.Entry<String, String> entry : headers.entrySet()) {
+      encoder.writeString(entry.getKey()).writeString(entry.getValue());
+    }
+    if (!headers.isEmpty()) {
+      encoder.writeInt(0);
+    }
+    encoder.writeString(compression.name());
+    encoder.writeLong(dataLength);
+    return os.toByteArray();
+  }
+
+  /**
+   * Decodes stream events from the given input until the end of input is reached or the callback returns
+   * {@code false}.
+   *
+   * @param input the {@link InputStream} to read the encoded segments from
+   * @param callback callback to invoke for each decoded {@link StreamEvent}
+   * @return {@code true} if all events are decoded, {@code false} if decoding is stopped by the callback
+   * @throws IOException if failed to decode from the input
+   */
+  public static boolean decode(InputStream input, Function<? super StreamEvent, Boolean> callback) throws IOException {
+    return decode(input, Integer.MAX_VALUE, callback);
+  }
+
+  /**
+   * Decodes at most {@code limit} stream events from the given input until the end of input is reached or the
+   * callback returns {@code false}.
+   *
+   * @param input the {@link InputStream} to read the encoded segments from
+   * @param limit maximum number of events to decode
+   * @param callback callback to invoke for each decoded {@link StreamEvent}
+   * @return {@code true} if all events are decoded, {@code false} if decoding is stopped by the limit or the callback
+   * @throws IOException if failed to decode from the input
+   */
+  public static boolean decode(InputStream input, int limit,
+                               Function<? super StreamEvent, Boolean> callback) throws IOException {
+    int count = 0;
+    Decoder decoder = new BinaryDecoder(input);
+    byte[] timestampBuffer = new byte[Bytes.SIZEOF_LONG];
+    ByteBuffer buffer = ByteBuffer.allocate(0);
+    byte[] compressedBlock = new byte[0];
+    ByteBufferInputStream bufferInput = new ByteBufferInputStream(buffer);
+    Decoder bufferDecoder = new BinaryDecoder(bufferInput);
+
+    while (true) {
+      long segmentTimestamp;
+      try {
+        segmentTimestamp = decoder.readLong();
+      } catch (EOFException e) {
+        // No more segment
+        return true;
+      }
+      Map<String, String> headers = decodeHeaders(decoder);
+      StreamBlockCompression compression = decodeCompression(decoder);
+      long remaining = decoder.readLong();
+
+      while (remaining > 0) {
+        ByteStreams.readFully(input, timestampBuffer);
+        long timestamp = segmentTimestamp >= 0 ? segmentTimestamp : Bytes.toLong(timestampBuffer);
+        int length = decoder.readInt();
+        // The int is encoded in 1 to 5 bytes, compute the actual size from the value to update the remaining
+        remaining -= timestampBuffer.length + intSize(length) + length;
+
+        if (compression == StreamBlockCompression.NONE) {
+          if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(length);
+          }
+          buffer.clear();
+          ByteStreams.readFully(input, buffer.array(), 0, length);
+          buffer.limit(length);
+        } else {
+          if (compressedBlock.length < length) {
+            compressedBlock = new byte[length];
+          }
+          ByteStreams.readFully(input, compressedBlock, 0, length);
+          buffer = compression.decompressBlock(compressedBlock, length, buffer);
+        }
+        bufferInput.reset(buffer);
+
+        while (buffer.hasRemaining()) {
+          if (count++ >= limit) {
+            return false;
+          }
+          StreamEventData data = StreamEventDataCodec.decode(bufferDecoder, headers);
+          Boolean result = callback.apply(new StreamEvent(data, timestamp));
+          if (result == null || !result) {
+            return false;
+          }
+        }
+      }
+    }
+  }
+
+  private static Map<String, String> decodeHeaders(Decoder decoder) throws IOException {
+    int len = decoder.readInt();
+    if (len == 0) {
+      return ImmutableMap.of();
+    }
+    ImmutableMap.Builder<String, String> headers = ImmutableMap.builder();
+    while (len != 0) {
+      for (int i = 0; i < len; i++) {
+        headers.put(decoder.readString(), decoder.readString());
+      }
+      len = decoder.readInt();
+    }
+    return headers.build();
+  }
+
+  private static StreamBlockCompression decodeCompression(Decoder decoder) throws IOException {
+    String compression = decoder.readString();
+    try {
+      return StreamBlockCompression.fromName(compression);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Unsupported compression " + compression, e);
+    }
+  }
+
+  /**
+   * Returns the number of bytes of the given int in Avro zig-zag variable length encoding.
+   */
+  private static int intSize(int value) {
+    int zigzag = (value << 1) ^ (value >> 31);
+    int size = 1;
+    while ((zigzag & ~0x7F) != 0) {
+      zigzag >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  private StreamDataBlockCodec() {
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.io;
+
+import co.cask.cdap.api.data.schema.Schema;
+import com.google.common.reflect.TypeToken;
+
+import javax.inject.Inject;
+
+/**
+ * A {@link DatumReaderFactory} that creates {@link DatumReader} specialized for the source schema of the data.
+ * For each source schema, the resolution against the target schema and type is done once, and record fields are
+ * set through {@link FieldAccessor} generated with ASM.
+ */
+public final class ASMDatumReaderFactory implements DatumReaderFactory {
+
+  private final FieldAccessorFactory fieldAccessorFactory;
+
+  @Inject
+  public ASMDatumReaderFactory(FieldAccessorFactory fieldAccessorFactory) {
+    this.fieldAccessorFactory = fieldAccessorFactory;
+  }
+
+  /**
+   * Creates a {@link DatumReader} that decodes data to the given type with the given {@link Schema}.
+   * The instance created is thread safe and reusable.
+   *
+   * @param type Type information of the data type to decode to.
+   * @param schema Schema of the data type.
+   * @param <T> Type of the data type.
+   * @return A {@link DatumReader} instance.
+   */
+  @Override
+  public <T> DatumReader<T> create(TypeToken<T> type, Schema schema) {
+    return new ResolvingDatumReader<>(schema, type, fieldAccessorFactory);
+  }
+}
@@ -0,0 +1,884 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.io;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.common.io.Decoder;
+import co.cask.cdap.common.lang.Instantiator;
+import co.cask.cdap.common.lang.InstantiatorFactory;
+import co.cask.cdap.internal.lang.Fields;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Longs;
+import com.google.common.reflect.TypeToken;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link DatumReader} that resolves each source schema against the target schema and type once, into a tree of
+ * {@link ValueReader}. Decoding then only follows the tree, without inspecting schemas or types. It follows the same
+ * resolution rules as {@link ReflectionDatumReader}.
+ *
+ * @param <T> type T to be deserialized.
+ */
+final class ResolvingDatumReader<T> implements DatumReader<T> {
+
+  private final Schema schema;
+  private final TypeToken<T> type;
+  private final FieldAccessorFactory fieldAccessorFactory;
+  private final InstantiatorFactory instantiatorFactory;
+  private final ConcurrentMap<Schema, ValueReader> readers;
+
+  // The source schema of the last read and its reader, since it is usually the same for all reads.
+  private volatile SourceReader lastReader;
+
+  ResolvingDatumReader(Schema schema, TypeToken<T> type, FieldAccessorFactory fieldAccessorFactory) {
+    this.schema = schema;
+    this.type = type;
+    this.fieldAccessorFactory = fieldAccessorFactory;
+    this.instantiatorFactory = new InstantiatorFactory(true);
+    this.readers = Maps.newConcurrentMap();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public T read(Decoder decoder, Schema sourceSchema) throws IOException {
+    SourceReader reader = lastReader;
+    if (reader == null || reader.sourceSchema != sourceSchema) {
+      reader = new SourceReader(sourceSchema, getReader(sourceSchema));
+      lastReader = reader;
+    }
+    return (T) reader.valueReader.read(decoder);
+  }
+
+  private ValueReader getReader(Schema sourceSchema) throws IOException {
+    ValueReader reader = readers.get(sourceSchema);
+    if (reader != null) {
+      return reader;
+    }
+    reader = new Resolver().resolve(sourceSchema, schema, type);
+    ValueReader existing = readers.putIfAbsent(sourceSchema, reader);
+    return existing == null ? reader : existing;
+  }
+
+  /**
+   * Resolves a source schema to a {@link ValueReader}.
+   */
+  private final class Resolver {
+
+    // Record readers being resolved, to support recursive record schemas
+    private final Map<List<Object>, RecordReader> records = Maps.newHashMap();
+    private final Map<Schema, RecordReader> recordSkippers = Maps.newIdentityHashMap();
+
+    ValueReader resolve(Schema sourceSchema, Schema targetSchema, TypeToken<?> targetType) throws IOException {
+      if (sourceSchema.getType() != Schema.Type.UNION && targetSchema.getType() == Schema.Type.UNION) {
+        // Try every target schemas
+        for (Schema schema : targetSchema.getUnionSchemas()) {
+          try {
+            return doResolve(sourceSchema, schema, targetType);
+          } catch (IOException e) {
+            // Continue
+          }
+        }
+        throw new IOException(String.format("No matching schema to resolve %s to %s", sourceSchema, targetSchema));
+      }
+      return doResolve(sourceSchema, targetSchema, targetType);
+    }
+
+    private ValueReader doResolve(Schema sourceSchema, Schema targetSchema,
+                                  TypeToken<?> targetType) throws IOException {
+      Schema.Type sourceType = sourceSchema.getType();
+      Schema.Type targetSchemaType = targetSchema.getType();
+
+      switch (sourceType) {
+        case NULL:
+          check(sourceType == targetSchemaType, "Fails to resolve %s to %s", sourceType, targetSchemaType);
+          return NULL_READER;
+        case BYTES:
+          check(sourceType == targetSchemaType, "Fails to resolve %s to %s", sourceType, targetSchemaType);
+          return resolveBytes(targetType.getRawType());
+        case ENUM:
+          check(sourceType == targetSchemaType, "Fails to resolve %s to %s", sourceType, targetSchemaType);
+          return resolveEnum(sourceSchema, targetSchema, targetType);
+        case ARRAY:
+          check(sourceType == targetSchemaType, "Fails to resolve %s to %s", sourceType, targetSchemaType);
+          return resolveArray(sourceSchema, targetSchema, targetType);
+        case MAP:
+          check(sourceType == targetSchemaType, "Fails to resolve %s to %s", sourceType, targetSchemaType);
+          return resolveMap(sourceSchema, targetSchema, targetType);
+        case RECORD:
+          check(sourceType == targetSchemaType, "Fails to resolve %s to %s", sourceType, targetSchemaType);
+          return resolveRecord(sourceSchema, targetSchema, targetType);
+        case UNION:
+          return resolveUnion(sourceSchema, targetSchema, targetType);
+      }
+      // For simple type other than NULL and BYTES
+      if (sourceType.isSimpleType()) {
+        return resolveSimple(sourceType, targetSchemaType, targetType.getRawType());
+      }
+      throw new IOException(String.format("Fails to resolve %s to %s", sourceSchema, targetSchema));
+    }
+
+    private ValueReader resolveEnum(Schema sourceSchema, Schema targetSchema,
+                                    TypeToken<?> targetType) throws IOException {
+      Class<?> rawType = targetType.getRawType();
+      check(rawType.isEnum(), "Only enum type is supported for enum value.");
+
+      // Map each source enum index to the enum constant of the target type
+      final String[] names = new String[sourceSchema.getEnumValues().size()];
+      final Object[] constants = new Object[names.length];
+      for (int i = 0; i < names.length; i++) {
+        names[i] = sourceSchema.getEnumValue(i);
+        if (targetSchema.getEnumValues().contains(names[i])) {
+          for (Object constant : rawType.getEnumConstants()) {
+            if (((Enum<?>) constant).name().equals(names[i])) {
+              constants[i] = constant;
+            }
+          }
+        }
+      }
+
+      return new ValueReader() {
+        @Override
+        Object read(Decoder decoder) throws IOException {
+          int idx = decoder.readInt();
+          check(idx >= 0 && idx < constants.length, "Enum index %s out of range.", idx);
+          check(constants[idx] != null, "Enum value '%s' missing in target.", names[idx]);
+          return constants[idx];
+        }
+      };
+    }
+
+    private ValueReader resolveArray(Schema sourceSchema, Schema targetSchema,
+                                     TypeToken<?> targetType) throws IOException {
+      TypeToken<?> componentType = null;
+      if (targetType.isArray()) {
+        componentType = targetType.getComponentType();
+      } else if (Collection.class.isAssignableFrom(targetType.getRawType())) {
+        Type type = targetType.getType();
+        check(type instanceof ParameterizedType, "Only parameterized type is supported for collection.");
+        componentType = TypeToken.of(((ParameterizedType) type).getActualTypeArguments()[0]);
+      }
+      check(componentType != null, "Only array or collection type is support for array value.");
+
+      final ValueReader componentReader = resolve(sourceSchema.getComponentSchema(),
+                                                  targetSchema.getComponentSchema(), componentType);
+      if (targetType.isArray()) {
+        final Class<?> componentClass = componentType.getRawType();
+        return new ValueReader() {
+          @Override
+          Object read(Decoder decoder) throws IOException {
+            List<Object> list = new ArrayList<>();
+            readElements(decoder, componentReader, list);
+            Object array = Array.newInstance(componentClass, list.size());
+            for (int i = 0; i < list.size(); i++) {
+              Array.set(array, i, list.get(i));
+            }
+            return array;
+          }
+        };
+      }
+
+      final Instantiator<?> instantiator = instantiatorFactory.get(targetType);
+      return new ValueReader() {
+        @SuppressWarnings("unchecked")
+        @Override
+        Object read(Decoder decoder) throws IOException {
+          Collection<Object> collection = (Collection<Object>) instantiator.create();
+          readElements(decoder, componentReader, collection);
+          return collection;
+        }
+      };
+    }
+
+    private ValueReader resolveMap(Schema sourceSchema, Schema targetSchema,
+                                   TypeToken<?> targetType) throws IOException {
+      check(Map.class.isAssignableFrom(targetType.getRawType()), "Only map type is supported for map data.");
+      Type type = targetType.getType();
+      check(type instanceof ParameterizedType, "Only parameterized map is supported.");
+      Type[] typeArgs = ((ParameterizedType) type).getActualTypeArguments();
+
+      Map.Entry<Schema, Schema> sourceEntry = sourceSchema.getMapSchema();
+      Map.Entry<Schema, Schema> targetEntry = targetSchema.getMapSchema();
+      final ValueReader keyReader = resolve(sourceEntry.getKey(), targetEntry.getKey(), TypeToken.of(typeArgs[0]));
+      final ValueReader valueReader = resolve(sourceEntry.getValue(), targetEntry.getValue(),
+                                              TypeToken.of(typeArgs[1]));
+      final Instantiator<?> instantiator = instantiatorFactory.get(targetType);
+
+      return new ValueReader() {
+        @SuppressWarnings("unchecked")
+        @Override
+        Object read(Decoder decoder) throws IOException {
+          Map<Object, Object> map = (Map<Object, Object>) instantiator.create();
+          int len = decoder.readInt();
+          while (len != 0) {
+            for (int i = 0; i < len; i++) {
+              map.put(keyReader.read(decoder), valueReader.read(decoder));
+            }
+            len = decoder.readInt();
+          }
+          return map;
+        }
+      };
+    }
+
+    private ValueReader resolveUnion(Schema sourceSchema, Schema targetSchema, TypeToken<?> targetType) {
+      List<Schema> sourceSchemas = sourceSchema.getUnionSchemas();
+      final ValueReader[] readers = new ValueReader[sourceSchemas.size()];
+      for (int i = 0; i < readers.length; i++) {
+        Schema sourceValueSchema = sourceSchemas.get(i);
+        try {
+          readers[i] = resolveUnionValue(i, sourceValueSchema, targetSchema, targetType);
+        } catch (IOException e) {
+          // The failure is only surfaced when the union value is actually of this schema
+          readers[i] = new FailureReader(e);
+        }
+      }
+
+      return new ValueReader() {
+        @Override
+        Object read(Decoder decoder) throws IOException {
+          int idx = decoder.readInt();
+          check(idx >= 0 && idx < readers.length, "Union index %s out of range.", idx);
+          return readers[idx].read(decoder);
+        }
+      };
+    }
+
+    private ValueReader resolveUnionValue(int idx, Schema sourceValueSchema, Schema targetSchema,
+                                          TypeToken<?> targetType) throws IOException {
+      if (targetSchema.getType() != Schema.Type.UNION) {
+        return resolve(sourceValueSchema, targetSchema, targetType);
+      }
+
+      // A simple optimization to try resolve before resorting to linearly try the union schema.
+      Schema targetValueSchema = targetSchema.getUnionSchema(idx);
+      if (targetValueSchema != null && targetValueSchema.getType() == sourceValueSchema.getType()) {
+        try {
+          return resolve(sourceValueSchema, targetValueSchema, targetType);
+        } catch (IOException e) {
+          // OK to ignore it, as we'll do union schema resolution
+        }
+      }
+      IOException failure = null;
+      for (Schema schema : targetSchema.getUnionSchemas()) {
+        try {
+          return resolve(sourceValueSchema, schema, targetType);
+        } catch (IOException e) {
+          // It's ok to have exception here, as we'll keep trying until exhausted the target union.
+          failure = failure == null ? e : failure;
+        }
+      }
+      throw new IOException(String.format("Fail to resolve %s to %s", sourceValueSchema, targetSchema), failure);
+    }
+
+    private ValueReader resolveRecord(Schema sourceSchema, Schema targetSchema,
+                                      TypeToken<?> targetType) throws IOException {
+      List<Object> key = ImmutableList.<Object>of(sourceSchema, targetSchema, targetType);
+      RecordReader reader = records.get(key);
+      if (reader != null) {
+        return reader;
+      }
+
+      // Register the reader before resolving the fields, since a field can refer to the same record
+      reader = new RecordReader(instantiatorFactory.get(targetType));
+      records.put(key, reader);
+      try {
+        List<FieldReader> fieldReaders = new ArrayList<>();
+        for (Schema.Field sourceField : sourceSchema.getFields()) {
+          Schema.Field targetField = targetSchema.getField(sourceField.getName());
+          if (targetField == null) {
+            fieldReaders.add(new SkipFieldReader(skipper(sourceField.getSchema())));
+            continue;
+          }
+          FieldAccessor fieldAccessor = fieldAccessorFactory.getFieldAccessor(targetType, sourceField.getName());
+          // The type of the field is resolved here, since FieldAccessor.getType() is not the field type for all
+          // FieldAccessorFactory implementations.
+          TypeToken<?> fieldType = targetType.resolveType(
+            Fields.findField(targetType.getType(), sourceField.getName()).getGenericType());
+          fieldReaders.add(resolveField(fieldAccessor, fieldType, sourceField.getSchema(), targetField.getSchema()));
+        }
+        reader.setFieldReaders(fieldReaders);
+        return reader;
+      } catch (IOException e) {
+        records.remove(key);
+        throw e;
+      } catch (Exception e) {
+        records.remove(key);
+        throw new IOException(e);
+      }
+    }
+
+    private FieldReader resolveField(final FieldAccessor fieldAccessor, TypeToken<?> fieldTypeToken,
+                                     Schema sourceSchema, Schema targetSchema) throws IOException {
+      Type fieldType = fieldTypeToken.getType();
+
+      // Primitive fields with the same source and target types are set without boxing
+      if (sourceSchema.getType() == targetSchema.getType()) {
+        switch (sourceSchema.getType()) {
+          case BOOLEAN:
+            if (fieldType == boolean.class) {
+              return new FieldReader() {
+                @Override
+                void read(Decoder decoder, Object record) throws IOException {
+                  fieldAccessor.setBoolean(record, decoder.readBool());
+                }
+              };
+            }
+            break;
+          case INT:
+            if (fieldType == int.class) {
+              return new FieldReader() {
+                @Override
+                void read(Decoder decoder, Object record) throws IOException {
+                  fieldAccessor.setInt(record, decoder.readInt());
+                }
+              };
+            }
+            break;
+          case LONG:
+            if (fieldType == long.class) {
+              return new FieldReader() {
+                @Override
+                void read(Decoder decoder, Object record) throws IOException {
+                  fieldAccessor.setLong(record, decoder.readLong());
+                }
+              };
+            }
+            break;
+          case FLOAT:
+            if (fieldType == float.class) {
+              return new FieldReader() {
+                @Override
+                void read(Decoder decoder, Object record) throws IOException {
+                  fieldAccessor.setFloat(record, decoder.readFloat());
+                }
+              };
+            }
+            break;
+          case DOUBLE:
+            if (fieldType == double.class) {
+              return new FieldReader() {
+                @Override
+                void read(Decoder decoder, Object record) throws IOException {
+                  fieldAccessor.setDouble(record, decoder.readDouble());
+                }
+              };
+            }
+            break;
+        }
+      }
+
+      final ValueReader valueReader = resolve(sourceSchema, targetSchema, fieldTypeToken);
+      return new FieldReader() {
+        @Override
+        void read(Decoder decoder, Object record) throws IOException {
+          fieldAccessor.set(record, valueReader.read(decoder));
+        }
+      };
+    }
+
+    private ValueReader resolveSimple(Schema.Type sourceType, Schema.Type targetType,
+                                      final Class<?> targetClass) throws IOException {
+      switch (sourceType) {
+        case BOOLEAN:
+          switch (targetType) {
+            case BOOLEAN:
+              return new ValueReader() {
+                @Override
+                Object read(Decoder decoder) throws IOException {
+                  return decoder.readBool();
+                }
+              };
+            case STRING:
+              return new ValueReader() {
+                @Override
+                Object read(Decoder decoder) throws IOException {
+                  return String.valueOf(decoder.readBool());
+                }
+              };
+          }
+          break;
+        case INT:
+          switch (targetType) {
+            case INT:
+              if (targetClass.equals(byte.class) || targetClass.equals(Byte.class)) {
+                return new ValueReader() {
+                  @Override
+                  Object read(Decoder decoder) throws IOException {
+                    return (byte) decoder.readInt();
+                  }
+                };
+              }
+              if (targetClass.equals(char.class) || targetClass.equals(Character.class)) {
+                return new ValueReader() {
+                  @Override
+                  Object read(Decoder decoder) throws IOException {
+                    return (char) decoder.readInt();
+                  }
+                };
+              }
+              if (targetClass.equals(short.class) || targetClass.equals(Short.class)) {
+                return new ValueReader() {
+                  @Override
+                  Object read(Decoder decoder) throws IOException {
+                    return (short) decoder.readInt();
+                  }
+                };
+              }
+              return new ValueReader() {
+                @Override
+                Object read(Decoder decoder) throws IOException {
+                  return decoder.readInt();
+                }
+              };
+            case LONG:
+              return new ValueReader() {
+                @Override
+                Object read(Decoder decoder) throws IOException {
+                  return (long) decoder.readInt();
+                }
+              };
+            case FLOAT:
+              return new ValueReader() {
+                @Override
+                Object read(Decoder decoder) throws IOException {
+                  return (float) decoder.readInt();
+                }
+              };
+            case DOUBLE:
+              return new ValueReader() {
+                @Override
+                Object read(Decoder decoder) throws IOException {
+                  return (double) decoder.readInt();
+                }
+              };
+            case STRING:
+              return new ValueReader() {
+                @Override
+                Object read(Decoder decoder) throws IOException {
+                  return String.valueOf(decoder.readInt());
+                }
+              };
+          }
+          break;
+        case LONG:
+          switch (targetType) {
+            case LONG:
+              return new ValueReader() {
+                @Override
+                Object read(Decoder decoder) throws IOException {
+                  return decoder.readLong();
+                }
+              };
+            case FLOAT:
+              return new ValueReader() {
+                @Override
+                Object read(Decoder decoder) throws IOException {
+                  return (float) decoder.readLong();
+                }
+              };
+            case DOUBLE:
+              return new ValueReader() {
+                @Override
+                Object read(Decoder decoder) throws IOException {
+                  return (double) decoder.readLong();
+                }
+              };
+            case STRING:
+              return new ValueReader() {
+                @Override
+                Object read(Decoder decoder) throws IOException {
+                  return String.valueOf(decoder.readLong());
+                }
+              };
+          }
+          break;
+        case FLOAT:
+          switch (targetType) {
+            case FLOAT:
+              return new ValueReader() {
+                @Override
+                Object read(Decoder decoder) throws IOException {
+                  return decoder.readFloat();
+                }
+              };
+            case DOUBLE:
+              return new ValueReader() {
+                @Override
+                Object read(Decoder decoder) throws IOException {
+                  return (double) decoder.readFloat();
+                }
+              };
+            case STRING:
+              return new ValueReader() {
+                @Override
+                Object read(Decoder decoder) throws IOException {
+                  return String.valueOf(decoder.readFloat());
+                }
+              };
+          }
+          break;
+        case DOUBLE:
+          switch (targetType) {
+            case DOUBLE:
+              return new ValueReader() {
+                @Override
+                Object read(Decoder decoder) throws IOException {
+                  return decoder.readDouble();
+                }
+              };
+            case STRING:
+              return new ValueReader() {
+                @Override
+                Object read(Decoder decoder) throws IOException {
+                  return String.valueOf(decoder.readDouble());
+                }
+              };
+          }
+          break;
+        case STRING:
+          if (targetType == Schema.Type.STRING) {
+            if (targetClass.equals(URI.class)) {
+              return new ValueReader() {
+                @Override
+                Object read(Decoder decoder) throws IOException {
+                  return URI.create(decoder.readString());
+                }
+              };
+            }
+            if (targetClass.equals(URL.class)) {
+              return new ValueReader() {
+                @Override
+                Object read(Decoder decoder) throws IOException {
+                  return new URL(decoder.readString());
+                }
+              };
+            }
+            return new ValueReader() {
+              @Override
+              Object read(Decoder decoder) throws IOException {
+                return decoder.readString();
+              }
+            };
+          }
+          break;
+      }
+
+      throw new IOException("Fail to resolve type " + sourceType + " to type " + targetType);
+    }
+
+    /**
+     * Returns a {@link ValueReader} that skips a value of the given schema and returns {@code null}.
+     */
+    private ValueReader skipper(Schema schema) {
+      switch (schema.getType()) {
+        case NULL:
+          return NULL_READER;
+        case BOOLEAN:
+          return new ValueReader() {
+            @Override
+            Object read(Decoder decoder) throws IOException {
+              decoder.readBool();
+              return null;
+            }
+          };
+        case INT:
+        case ENUM:
+          return new ValueReader() {
+            @Override
+            Object read(Decoder decoder) throws IOException {
+              decoder.readInt();
+              return null;
+            }
+          };
+        case LONG:
+          return new ValueReader() {
+            @Override
+            Object read(Decoder decoder) throws IOException {
+              decoder.readLong();
+              return null;
+            }
+          };
+        case FLOAT:
+          return new ValueReader() {
+            @Override
+            Object read(Decoder decoder) throws IOException {
+              decoder.skipFloat();
+              return null;
+            }
+          };
+        case DOUBLE:
+          return new ValueReader() {
+            @Override
+            Object read(Decoder decoder) throws IOException {
+              decoder.skipDouble();
+              return null;
+            }
+          };
+        case BYTES:
+          return new ValueReader() {
+            @Override
+            Object read(Decoder decoder) throws IOException {
+              decoder.skipBytes();
+              return null;
+            }
+          };
+        case STRING:
+          return new ValueReader() {
+            @Override
+            Object read(Decoder decoder) throws IOException {
+              decoder.skipString();
+              return null;
+            }
+          };
+        case ARRAY: {
+          final ValueReader componentSkipper = skipper(schema.getComponentSchema());
+          return new ValueReader() {
+            @Override
+            Object read(Decoder decoder) throws IOException {
+              int len = decoder.readInt();
+              while (len != 0) {
+                for (int i = 0; i < len; i++) {
+                  componentSkipper.read(decoder);
+                }
+                len = decoder.readInt();
+              }
+              return null;
+            }
+          };
+        }
+        case MAP: {
+          final ValueReader keySkipper = skipper(schema.getMapSchema().getKey());
+          final ValueReader valueSkipper = skipper(schema.getMapSchema().getValue());
+          return new ValueReader() {
+            @Override
+            Object read(Decoder decoder) throws IOException {
+              int len = decoder.readInt();
+              while (len != 0) {
+                for (int i = 0; i < len; i++) {
+                  keySkipper.read(decoder);
+                  valueSkipper.read(decoder);
+                }
+                len = decoder.readInt();
+              }
+              return null;
+            }
+          };
+        }
+        case RECORD: {
+          RecordReader recordSkipper = recordSkippers.get(schema);
+          if (recordSkipper == null) {
+            recordSkipper = new RecordReader(null);
+            recordSkippers.put(schema, recordSkipper);
+            List<FieldReader> fieldSkippers = new ArrayList<>();
+            for (Schema.Field field : schema.getFields()) {
+              fieldSkippers.add(new SkipFieldReader(skipper(field.getSchema())));
+            }
+            recordSkipper.setFieldReaders(fieldSkippers);
+          }
+          return recordSkipper;
+        }
+        case UNION: {
+          final List<ValueReader> skippers = new ArrayList<>();
+          for (Schema unionSchema : schema.getUnionSchemas()) {
+            skippers.add(skipper(unionSchema));
+          }
+          return new ValueReader() {
+            @Override
+            Object read(Decoder decoder) throws IOException {
+              int idx = decoder.readInt();
+              check(idx >= 0 && idx < skippers.size(), "Union index %s out of range.", idx);
+              return skippers.get(idx).read(decoder);
+            }
+          };
+        }
+      }
+      throw new IllegalArgumentException("Unsupported schema type " + schema.getType());
+    }
+  }
+
+  private static ValueReader resolveBytes(Class<?> targetClass) {
+    if (targetClass.equals(byte[].class)) {
+      return new ValueReader() {
+        @Override
+        Object read(Decoder decoder) throws IOException {
+          ByteBuffer buffer = decoder.readBytes();
+          if (buffer.hasArray()) {
+            byte[] array = buffer.array();
+            if (buffer.remaining() == array.length) {
+              return array;
+            }
+            byte[] bytes = new byte[buffer.remaining()];
+            System.arraycopy(array, buffer.arrayOffset() + buffer.position(), bytes, 0, buffer.remaining());
+            return bytes;
+          }
+          byte[] bytes = new byte[buffer.remaining()];
+          buffer.get(bytes);
+          return bytes;
+        }
+      };
+    }
+    if (targetClass.equals(UUID.class)) {
+      return new ValueReader() {
+        @Override
+        Object read(Decoder decoder) throws IOException {
+          ByteBuffer buffer = decoder.readBytes();
+          if (buffer.remaining() == Longs.BYTES * 2) {
+            return new UUID(buffer.getLong(), buffer.getLong());
+          }
+          return buffer;
+        }
+      };
+    }
+    return new ValueReader() {
+      @Override
+      Object read(Decoder decoder) throws IOException {
+        return decoder.readBytes();
+      }
+    };
+  }
+
+  private static void readElements(Decoder decoder, ValueReader componentReader,
+                                   Collection<Object> collection) throws IOException {
+    int len = decoder.readInt();
+    while (len != 0) {
+      for (int i = 0; i < len; i++) {
+        collection.add(componentReader.read(decoder));
+      }
+      len = decoder.readInt();
+    }
+  }
+
+  private static void check(boolean condition, String message, Object... objs) throws IOException {
+    if (!condition) {
+      throw new IOException(String.format(message, objs));
+    }
+  }
+
+  private static final ValueReader NULL_READER = new ValueReader() {
+    @Override
+    Object read(Decoder decoder) throws IOException {
+      return decoder.readNull();
+    }
+  };
+
+  /**
+   * Reads a value resolved from a source schema.
+   */
+  private abstract static class ValueReader {
+    abstract Object read(Decoder decoder) throws IOException;
+  }
+
+  /**
+   * Reads a record field resolved from a source schema and sets it to the record.
+   */
+  private abstract static class FieldReader {
+    abstract void read(Decoder decoder, Object record) throws IOException;
+  }
+
+  /**
+   * A {@link FieldReader} that skips a field that is not in the target schema.
+   */
+  private static final class SkipFieldReader extends FieldReader {
+
+    private final ValueReader skipper;
+
+    SkipFieldReader(ValueReader skipper) {
+      this.skipper = skipper;
+    }
+
+    @Override
+    void read(Decoder decoder, Object record) throws IOException {
+      skipper.read(decoder);
+    }
+  }
+
+  /**
+   * A {@link ValueReader} for records. The field readers are set after construction to support recursive records.
+   * If it is created without {@link Instantiator}, it skips the record and returns {@code null}.
+   */
+  private static final class RecordReader extends ValueReader {
+
+    private final Instantiator<?> instantiator;
+    private FieldReader[] fieldReaders;
+
+    RecordReader(Instantiator<?> instantiator) {
+      this.instantiator = instantiator;
+    }
+
+    void setFieldReaders(List<FieldReader> fieldReaders) {
+      this.fieldReaders = fieldReaders.toArray(new FieldReader[fieldReaders.size()]);
+    }
+
+    @Override
+    Object read(Decoder decoder) throws IOException {
+      Object record = instantiator == null ? null : instantiator.create();
+      try {
+        for (FieldReader fieldReader : fieldReaders) {
+          fieldReader.read(decoder, record);
+        }
+      } catch (RuntimeException e) {
+        throw new IOException(e);
+      }
+      return record;
+    }
+  }
+
+  /**
+   * A {@link ValueReader} for a value that cannot be resolved to the target.
+   */
+  private static final class FailureReader extends ValueReader {
+
+    private final IOException failure;
+
+    FailureReader(IOException failure) {
+      this.failure = failure;
+    }
+
+    @Override
+    Object read(Decoder decoder) throws IOException {
+      throw new IOException(failure.getMessage(), failure);
+    }
+  }
+
+  /**
+   * A source schema and its {@link ValueReader}.
+   */
+  private static final class SourceReader {
+
+    private final Schema sourceSchema;
+    private final ValueReader valueReader;
+
+    SourceReader(Schema sourceSchema, ValueReader valueReader) {
+      this.sourceSchema = sourceSchema;
+      this.valueReader = valueReader;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.common.http;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Unit tests for {@link JsonArrayBodyProducer}.
+ */
+public class JsonArrayBodyProducerTest {
+
+  private static final Gson GSON = new Gson();
+
+  @Test
+  public void testEmpty() throws Exception {
+    JsonArrayBodyProducer<String> producer =
+      new JsonArrayBodyProducer<>(ImmutableList.<String>of().iterator(), String.class, GSON);
+    Assert.assertEquals(-1L, producer.getContentLength());
+    Assert.assertEquals("[]", readAll(producer, new int[1]));
+  }
+
+  @Test
+  public void testMultipleChunks() throws Exception {
+    List<String> elements = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      elements.add("element-" + i);
+    }
+
+    CloseableIterator<String> iterator = new CloseableIterator<>(elements.iterator());
+    JsonArrayBodyProducer<String> producer = new JsonArrayBodyProducer<>(iterator, String.class, GSON);
+    int[] chunks = new int[1];
+    String json = readAll(producer, chunks);
+    producer.finished();
+
+    Assert.assertTrue(chunks[0] > 1);
+    Assert.assertTrue(iterator.closed);
+    Assert.assertEquals(elements, GSON.fromJson(json, new TypeToken<List<String>>() { }.getType()));
+  }
+
+  private String readAll(JsonArrayBodyProducer<?> producer, int[] chunks) throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ChannelBuffer chunk = producer.nextChunk();
+    while (chunk.readable()) {
+      chunks[0]++;
+      chunk.readBytes(output, chunk.readableBytes());
+      chunk = producer.nextChunk();
+    }
+    return new String(output.toByteArray(), Charsets.UTF_8);
+  }
+
+  /**
+   * An {@link Iterator} that records whether it is closed.
+   */
+  private static final class CloseableIterator<T> extends AbstractIterator<T> implements Closeable {
+
+    private final Iterator<T> delegate;
+    private boolean closed;
+
+    CloseableIterator(Iterator<T> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    protected T computeNext() {
+      return delegate.hasNext() ? delegate.next() : endOfData();
+    }
+
+    @Override
+    public void close() throws IOException {
+      closed = true;
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.io;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.data.schema.UnsupportedTypeException;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.internal.io.ASMDatumReaderFactory;
+import co.cask.cdap.internal.io.ASMFieldAccessorFactory;
+import co.cask.cdap.internal.io.DatumReader;
+import co.cask.cdap.internal.io.ReflectionDatumWriter;
+import co.cask.cdap.internal.io.ReflectionSchemaGenerator;
+import com.google.common.reflect.TypeToken;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Runs the {@link DatumCodecTest} with the {@link DatumReader} created by {@link ASMDatumReaderFactory}, plus
+ * tests specific to it.
+ */
+public class ASMDatumReaderCodecTest extends DatumCodecTest {
+
+  private static final ASMDatumReaderFactory DATUM_READER_FACTORY =
+    new ASMDatumReaderFactory(new ASMFieldAccessorFactory());
+
+  @Override
+  protected <T> DatumReader<T> createReader(Schema schema, TypeToken<T> type) {
+    return DATUM_READER_FACTORY.create(type, schema);
+  }
+
+  /**
+   * Record with primitive and boxed fields.
+   */
+  public static final class Primitives {
+    boolean b;
+    int i;
+    long l;
+    float f;
+    double d;
+    short s;
+    Integer boxed;
+    String str;
+  }
+
+  /**
+   * Evolved version of {@link Primitives}, with fields removed and widened.
+   */
+  public static final class WidenedPrimitives {
+    boolean b;
+    long i;
+    double l;
+    String d;
+    Integer boxed;
+    String str;
+  }
+
+  @Test
+  public void testRecursiveRecord() throws IOException, UnsupportedTypeException {
+    Schema schema = new ReflectionSchemaGenerator().generate(Node.class);
+    Node head = new Node();
+    head.d = 1;
+    head.next = new Node();
+    head.next.d = 2;
+    head.next.next = new Node();
+    head.next.next.d = 3;
+
+    Node node = decode(encode(head, schema), schema, TypeToken.of(Node.class), schema);
+    for (int i = 1; i <= 3; i++) {
+      Assert.assertEquals(i, node.d);
+      node = node.next;
+    }
+    Assert.assertNull(node);
+  }
+
+  @Test
+  public void testMultipleSourceSchemas() throws IOException, UnsupportedTypeException {
+    Schema sourceSchema = new ReflectionSchemaGenerator().generate(Primitives.class);
+    Schema targetSchema = new ReflectionSchemaGenerator().generate(WidenedPrimitives.class);
+    DatumReader<WidenedPrimitives> reader = createReader(targetSchema, TypeToken.of(WidenedPrimitives.class));
+
+    Primitives primitives = new Primitives();
+    primitives.b = true;
+    primitives.i = 10;
+    primitives.l = 20L;
+    primitives.f = 1.5f;
+    primitives.d = 2.5d;
+    primitives.s = 30;
+    primitives.boxed = null;
+    primitives.str = "str";
+
+    WidenedPrimitives widened = new WidenedPrimitives();
+    widened.b = false;
+    widened.i = 40L;
+    widened.l = 50d;
+    widened.d = "60";
+    widened.boxed = 70;
+    widened.str = null;
+
+    // The same reader decodes data of different source schemas alternately
+    for (int i = 0; i < 3; i++) {
+      WidenedPrimitives result = reader.read(decoder(encode(primitives, sourceSchema)), sourceSchema);
+      Assert.assertTrue(result.b);
+      Assert.assertEquals(10L, result.i);
+      Assert.assertEquals(20d, result.l, 0d);
+      Assert.assertEquals("2.5", result.d);
+      Assert.assertNull(result.boxed);
+      Assert.assertEquals("str", result.str);
+
+      result = reader.read(decoder(encode(widened, targetSchema)), targetSchema);
+      Assert.assertFalse(result.b);
+      Assert.assertEquals(40L, result.i);
+      Assert.assertEquals(50d, result.l, 0d);
+      Assert.assertEquals("60", result.d);
+      Assert.assertEquals(Integer.valueOf(70), result.boxed);
+      Assert.assertNull(result.str);
+    }
+  }
+
+  @Test
+  public void testEnumMissingInTarget() throws IOException {
+    Schema sourceSchema = Schema.enumWith("VALUE1", "VALUE4", "VALUE3");
+    Schema targetSchema = Schema.enumWith("VALUE1", "VALUE2", "VALUE3");
+    DatumReader<TestEnum> reader = createReader(targetSchema, TypeToken.of(TestEnum.class));
+
+    Assert.assertEquals(TestEnum.VALUE3, reader.read(decoder(encodeInt(2)), sourceSchema));
+    Assert.assertEquals(TestEnum.VALUE1, reader.read(decoder(encodeInt(0)), sourceSchema));
+    try {
+      reader.read(decoder(encodeInt(1)), sourceSchema);
+      Assert.fail("Expected failure for enum value missing in target");
+    } catch (IOException e) {
+      // Expected
+    }
+  }
+
+  private <T> byte[] encode(T object, Schema schema) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new ReflectionDatumWriter<T>(schema).encode(object, new BinaryEncoder(output));
+    return output.toByteArray();
+  }
+
+  private byte[] encodeInt(int value) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new BinaryEncoder(output).writeInt(value);
+    return output.toByteArray();
+  }
+
+  private <T> T decode(byte[] bytes, Schema sourceSchema, TypeToken<T> type, Schema targetSchema) throws IOException {
+    return createReader(targetSchema, type).read(decoder(bytes), sourceSchema);
+  }
+
+  private BinaryDecoder decoder(byte[] bytes) {
+    return new BinaryDecoder(new ByteArrayInputStream(bytes));
+  }
+}
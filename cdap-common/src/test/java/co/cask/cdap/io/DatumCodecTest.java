@@ -20,6 +20,7 @@ import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.data.schema.UnsupportedTypeException;
 import co.cask.cdap.common.io.BinaryDecoder;
 import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.internal.io.DatumReader;
 import co.cask.cdap.internal.io.DatumWriter;
 import co.cask.cdap.internal.io.ReflectionDatumReader;
 import co.cask.cdap.internal.io.ReflectionDatumWriter;
@@ -53,6 +54,13 @@ import java.util.UUID;
  */
 public class DatumCodecTest {
 
+  /**
+   * Creates the {@link DatumReader} to test with.
+   */
+  protected <T> DatumReader<T> createReader(Schema schema, TypeToken<T> type) {
+    return new ReflectionDatumReader<>(schema, type);
+  }
+
   /**
    *
    */
@@ -152,7 +160,7 @@ public class DatumCodecTest {
     Schema targetSchema = new ReflectionSchemaGenerator().generate(Record2.class);
 
     new ReflectionDatumWriter<Record1>(sourceSchema).encode(r1, new BinaryEncoder(output));
-    Record2 r2 = new ReflectionDatumReader<>(targetSchema, TypeToken.of(Record2.class))
+    Record2 r2 = createReader(targetSchema, TypeToken.of(Record2.class))
                             .read(new BinaryDecoder(input), sourceSchema);
 
     Assert.assertEquals(10L, r2.i.longValue());
@@ -183,7 +191,7 @@ public class DatumCodecTest {
     PipedInputStream input = new PipedInputStream(output);
 
     new ReflectionDatumWriter<List<String>>(sourceSchema).encode(list, new BinaryEncoder(output));
-    Set<String> set = new ReflectionDatumReader<>(targetSchema, new TypeToken<Set<String>>() { })
+    Set<String> set = createReader(targetSchema, new TypeToken<Set<String>>() { })
                         .read(new BinaryDecoder(input), sourceSchema);
 
     Assert.assertEquals(Sets.newHashSet("1", "2", "3"), set);
@@ -191,7 +199,7 @@ public class DatumCodecTest {
 
     targetSchema = new ReflectionSchemaGenerator().generate(String[].class);
     new ReflectionDatumWriter<List<String>>(sourceSchema).encode(list, new BinaryEncoder(output));
-    String[] array = new ReflectionDatumReader<>(targetSchema, new TypeToken<String[]>() { })
+    String[] array = createReader(targetSchema, new TypeToken<String[]>() { })
                         .read(new BinaryDecoder(input), sourceSchema);
 
     Assert.assertArrayEquals(new String[]{"1", "2", "3"}, array);
@@ -276,7 +284,7 @@ public class DatumCodecTest {
 
     MoreFields moreFields = new MoreFields(10, 20.2, "30", ImmutableList.of("1", "2"));
     new ReflectionDatumWriter<MoreFields>(sourceSchema).encode(moreFields, new BinaryEncoder(output));
-    LessFields lessFields = new ReflectionDatumReader<>(targetSchema, TypeToken.of(LessFields.class))
+    LessFields lessFields = createReader(targetSchema, TypeToken.of(LessFields.class))
                                             .read(new BinaryDecoder(input), sourceSchema);
 
     Assert.assertEquals("30", lessFields.k);
@@ -304,7 +312,7 @@ public class DatumCodecTest {
 
     BinaryDecoder decoder = new BinaryDecoder(input);
     Schema readSchema = Schema.parseJson(schema.toString());
-    ReflectionDatumReader<TestEnum> reader = new ReflectionDatumReader<>(readSchema, TypeToken.of(TestEnum.class));
+    DatumReader<TestEnum> reader = createReader(readSchema, TypeToken.of(TestEnum.class));
 
     Assert.assertEquals(TestEnum.VALUE1, reader.read(decoder, readSchema));
     Assert.assertEquals(TestEnum.VALUE3, reader.read(decoder, readSchema));
@@ -318,7 +326,7 @@ public class DatumCodecTest {
     TypeRepresentation typeRep = new TypeRepresentation(RecordWithString.class);
     DatumWriter<RecordWithString> datumWriter = new ReflectionDatumWriter<>(schema);
     @SuppressWarnings("unchecked")
-    ReflectionDatumReader<RecordWithString> datumReader = new ReflectionDatumReader<>(
+    DatumReader<RecordWithString> datumReader = createReader(
       schema, (TypeToken<RecordWithString>) TypeToken.of(typeRep.toType()));
 
     RecordWithString record = new RecordWithString();
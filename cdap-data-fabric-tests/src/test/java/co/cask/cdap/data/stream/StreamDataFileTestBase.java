@@ -18,6 +18,9 @@ package co.cask.cdap.data.stream;
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.io.Locations;
+import co.cask.cdap.common.io.SeekableInputStream;
+import co.cask.cdap.common.stream.StreamBlockCompression;
+import co.cask.cdap.common.stream.StreamDataBlockCodec;
 import co.cask.cdap.data.file.FileReader;
 import co.cask.cdap.data.file.FileWriter;
 import co.cask.cdap.data.file.ReadFilter;
@@ -30,6 +33,7 @@ import co.cask.cdap.security.impersonation.Impersonator;
 import co.cask.cdap.security.impersonation.UnsupportedUGIProvider;
 import co.cask.cdap.test.SlowTests;
 import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
 import com.google.common.collect.AbstractIterator;
@@ -39,8 +43,10 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Closeables;
 import com.google.common.io.Flushables;
+import com.google.common.io.LimitInputStream;
 import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.hadoop.hbase.util.Strings;
 import org.apache.twill.filesystem.Location;
@@ -53,6 +59,8 @@ import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -65,6 +73,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 
 /**
  * Test cases for StreamDataFileReader/Writer.
@@ -315,6 +324,74 @@ public abstract class StreamDataFileTestBase {
     }
   }
 
+  @Test
+  public void testFileRegion() throws Exception {
+    Location dir = StreamFileTestUtils.createTempDir(getLocationFactory());
+    Location eventFile = dir.getTempFile(".dat");
+    Location indexFile = dir.getTempFile(".idx");
+
+    // Write 1000 events with 500 different timestamps, and create index for every 100 timestamps.
+    StreamDataFileWriter writer = new StreamDataFileWriter(Locations.newOutputSupplier(eventFile),
+                                                           Locations.newOutputSupplier(indexFile),
+                                                           100L);
+    for (int i = 0; i < 1000; i++) {
+      writer.append(StreamFileTestUtils.createEvent(1000 + i / 2, "Testing " + i));
+    }
+    writer.flush();
+
+    // The file is still open, all events written should be included in the region
+    Assert.assertEquals(1000, readFileRegion(eventFile, indexFile, 0, Long.MAX_VALUE).size());
+    writer.close();
+
+    for (long[] range : new long[][] { {0, 2000}, {1050, 1300}, {1100, 1101}, {1299, 1301}, {1499, 1500} }) {
+      List<StreamEvent> events = readFileRegion(eventFile, indexFile, range[0], range[1]);
+      long startTime = Math.max(range[0], 1000);
+      long endTime = Math.min(range[1], 1500);
+      Assert.assertEquals((endTime - startTime) * 2, events.size());
+      for (int i = 0; i < events.size(); i++) {
+        long timestamp = startTime + i / 2;
+        Assert.assertEquals(timestamp, events.get(i).getTimestamp());
+        Assert.assertEquals("Testing " + ((timestamp - 1000) * 2 + i % 2),
+                            Charsets.UTF_8.decode(events.get(i).getBody()).toString());
+      }
+    }
+
+    // The same result without index
+    Assert.assertEquals(500, readFileRegion(eventFile, null, 1250, 1500).size());
+
+    // No region if there is no event in the time range
+    Assert.assertNull(StreamDataFileRegion.create(eventFile, indexFile, 0, 1000));
+    Assert.assertNull(StreamDataFileRegion.create(eventFile, indexFile, 1500, 2000));
+  }
+
+  /**
+   * Reads events in the {@link StreamDataFileRegion} of the given time range by
+   * encoding and decoding it with {@link StreamDataBlockCodec}.
+   */
+  private List<StreamEvent> readFileRegion(Location eventFile, @Nullable Location indexFile,
+                                           long startTime, long endTime) throws IOException {
+    StreamDataFileRegion region = StreamDataFileRegion.create(eventFile, indexFile, startTime, endTime);
+    Assert.assertNotNull(region);
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    os.write(StreamDataBlockCodec.encodeSegmentHeader(region.getTimestamp(), region.getHeaders(),
+                                                      region.getCompression(), region.getLength()));
+    try (SeekableInputStream input = Locations.newInputSupplier(eventFile).getInput()) {
+      input.seek(region.getStart());
+      ByteStreams.copy(new LimitInputStream(input, region.getLength()), os);
+    }
+
+    final List<StreamEvent> events = Lists.newArrayList();
+    Assert.assertTrue(StreamDataBlockCodec.decode(new ByteArrayInputStream(os.toByteArray()),
+                                                  new Function<StreamEvent, Boolean>() {
+      @Override
+      public Boolean apply(StreamEvent event) {
+        return events.add(event);
+      }
+    }));
+    return events;
+  }
+
   @Test
   public void testPosition() throws Exception {
     Location dir = StreamFileTestUtils.createTempDir(getLocationFactory());
@@ -360,6 +437,65 @@ public abstract class StreamDataFileTestBase {
     }
   }
 
+  @Test
+  public void testCompression() throws Exception {
+    for (StreamBlockCompression compression : StreamBlockCompression.values()) {
+      Location dir = StreamFileTestUtils.createTempDir(getLocationFactory());
+      Location eventFile = dir.getTempFile(".dat");
+      Location indexFile = dir.getTempFile(".idx");
+
+      // Write 1000 events with 100 different timestamps, hence 10 events per data block.
+      StreamDataFileWriter writer = new StreamDataFileWriter(Locations.newOutputSupplier(eventFile),
+                                                             Locations.newOutputSupplier(indexFile),
+                                                             10L, ImmutableMap.<String, String>of(), compression);
+      for (int i = 0; i < 1000; i++) {
+        writer.append(StreamFileTestUtils.createEvent(1000 + i / 10, "Testing " + i));
+      }
+      writer.close();
+
+      // Read all events in small batches, reopening the reader from the last position each time.
+      List<StreamEvent> events = Lists.newArrayList();
+      long position = 0L;
+      long lastPosition = -1L;
+      while (events.size() < 1000) {
+        StreamDataFileReader reader = StreamDataFileReader.createWithOffset(Locations.newInputSupplier(eventFile),
+                                                                            Locations.newInputSupplier(indexFile),
+                                                                            position);
+        try {
+          Assert.assertTrue(reader.read(events, 7, 0, TimeUnit.SECONDS) > 0);
+          position = reader.getPosition();
+          Assert.assertTrue(position > lastPosition);
+          lastPosition = position;
+        } finally {
+          reader.close();
+        }
+      }
+      for (int i = 0; i < 1000; i++) {
+        Assert.assertEquals(1000 + i / 10, events.get(i).getTimestamp());
+        Assert.assertEquals("Testing " + i, Charsets.UTF_8.decode(events.get(i).getBody()).toString());
+      }
+
+      // Read by start time
+      StreamDataFileReader reader = StreamDataFileReader.createByStartTime(Locations.newInputSupplier(eventFile),
+                                                                           Locations.newInputSupplier(indexFile),
+                                                                           1050L);
+      try {
+        events.clear();
+        Assert.assertEquals(1, reader.read(events, 1, 0, TimeUnit.SECONDS));
+        Assert.assertEquals("Testing 500", Charsets.UTF_8.decode(events.get(0).getBody()).toString());
+      } finally {
+        reader.close();
+      }
+
+      // Read through file region
+      events = readFileRegion(eventFile, indexFile, 1050, 1060);
+      Assert.assertEquals(100, events.size());
+      for (int i = 0; i < events.size(); i++) {
+        Assert.assertEquals("Testing " + (500 + i), Charsets.UTF_8.decode(events.get(i).getBody()).toString());
+      }
+    }
+  }
+
   @Test
   public void testOffset() throws Exception {
     Location dir = StreamFileTestUtils.createTempDir(getLocationFactory());
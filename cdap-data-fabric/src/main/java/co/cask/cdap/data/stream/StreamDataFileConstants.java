@@ -25,6 +25,8 @@ public final class StreamDataFileConstants {
   static final int MAGIC_HEADER_SIZE = 2;
   static final byte[] MAGIC_HEADER_V1 = {'E', '1'};
   static final byte[] MAGIC_HEADER_V2 = {'E', '2'};
+  // Version 3 is the same as version 2, except that data blocks are compressed
+  static final byte[] MAGIC_HEADER_V3 = {'E', '3'};
 
   static final byte[] INDEX_MAGIC_HEADER_V1 = {'I', '1'};
 
@@ -43,6 +45,9 @@ public final class StreamDataFileConstants {
       // Key to indicate all events in the file is of the same timestamp
       public static final String UNI_TIMESTAMP = "stream.uni.timestamp";
 
+      // Key for the compression of data blocks
+      public static final String COMPRESSION = "stream.block.compression";
+
       // Key prefix for properties that will be defaulted to all events' header
       public static final String EVENT_HEADER_PREFIX = "event.";
     }
@@ -22,6 +22,7 @@ import co.cask.cdap.common.io.BinaryDecoder;
 import co.cask.cdap.common.io.ByteBuffers;
 import co.cask.cdap.common.io.Decoder;
 import co.cask.cdap.common.io.SeekableInputStream;
+import co.cask.cdap.common.stream.StreamBlockCompression;
 import co.cask.cdap.common.stream.StreamEventDataCodec;
 import co.cask.cdap.data.file.FileReader;
 import co.cask.cdap.data.file.ReadFilter;
@@ -299,6 +300,7 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     Map<String, String> properties = StreamUtils.decodeMap(new BinaryDecoder(eventInput));
 
     verifySchema(properties);
+    streamEventBuffer.setCompression(getCompression(fileVersion, properties));
 
     // Create event template
     if (fileVersion >= 2) {
@@ -316,20 +318,44 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
    * @return the file version
    * @throws IOException if failed to decode file version from the magic header
    */
-  private int decodeFileVersion(byte[] magic) throws IOException {
+  static int decodeFileVersion(byte[] magic) throws IOException {
     if (Arrays.equals(magic, StreamDataFileConstants.MAGIC_HEADER_V1)) {
       return 1;
     }
     if (Arrays.equals(magic, StreamDataFileConstants.MAGIC_HEADER_V2)) {
       return 2;
     }
+    if (Arrays.equals(magic, StreamDataFileConstants.MAGIC_HEADER_V3)) {
+      return 3;
+    }
     throw new IOException(
-      String.format("Unsupported stream file format. First two bytes must be %s or %s",
+      String.format("Unsupported stream file format. First two bytes must be %s, %s or %s",
                     Bytes.toStringBinary(StreamDataFileConstants.MAGIC_HEADER_V1),
-                    Bytes.toStringBinary(StreamDataFileConstants.MAGIC_HEADER_V2))
+                    Bytes.toStringBinary(StreamDataFileConstants.MAGIC_HEADER_V2),
+                    Bytes.toStringBinary(StreamDataFileConstants.MAGIC_HEADER_V3))
     );
   }
 
+  /**
+   * Returns the compression of data blocks based on the file version and the file properties.
+   *
+   * @throws IOException if the compression is missing or not supported
+   */
+  static StreamBlockCompression getCompression(int fileVersion, Map<String, String> properties) throws IOException {
+    if (fileVersion < 3) {
+      return StreamBlockCompression.NONE;
+    }
+    String compression = properties.get(StreamDataFileConstants.Property.Key.COMPRESSION);
+    if (compression == null) {
+      throw new IOException("Missing '" + StreamDataFileConstants.Property.Key.COMPRESSION + "' property.");
+    }
+    try {
+      return StreamBlockCompression.fromName(compression);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Unsupported compression " + compression, e);
+    }
+  }
+
   /**
    * Creates a {@link StreamEvent} that will be used as a template for all events consumable from this reader.
    */
@@ -446,7 +472,7 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     }
   }
 
-  private void verifySchema(Map<String, String> properties) throws IOException {
+  static void verifySchema(Map<String, String> properties) throws IOException {
     String schemaKey = StreamDataFileConstants.Property.Key.SCHEMA;
     String schemaStr = properties.get(schemaKey);
     if (schemaStr == null) {
@@ -0,0 +1,244 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.stream;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.Locations;
+import co.cask.cdap.common.io.SeekableInputStream;
+import co.cask.cdap.common.stream.StreamBlockCompression;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import org.apache.twill.filesystem.Location;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Represents a range of complete data blocks in a stream event file written by {@link StreamDataFileWriter}
+ * that contains all events of a given time range. The range can be copied from the file as is, without decoding
+ * the events.
+ */
+public final class StreamDataFileRegion {
+
+  private final Location location;
+  private final long timestamp;
+  private final Map<String, String> headers;
+  private final StreamBlockCompression compression;
+  private final long start;
+  private final long end;
+
+  /**
+   * Creates a {@link StreamDataFileRegion} for the data blocks in the given event file that have timestamp in the
+   * range of {@code [startTime, endTime)}. Only data blocks that are completely written are included, hence it
+   * is safe to call this method on a file that is still being written.
+   *
+   * @param eventLocation location of the stream event file
+   * @param indexLocation location of the index file of the event file or {@code null} if no index is available.
+   *                      The index is used to locate the data blocks without scanning from the beginning of the file
+   * @param startTime start timestamp in milliseconds (inclusive)
+   * @param endTime end timestamp in milliseconds (exclusive)
+   * @return the {@link StreamDataFileRegion} or {@code null} if there is no data block in the time range
+   * @throws IOException if failed to read the event file
+   */
+  @Nullable
+  public static StreamDataFileRegion create(Location eventLocation, @Nullable Location indexLocation,
+                                            long startTime, long endTime) throws IOException {
+    try (SeekableInputStream input = Locations.newInputSupplier(eventLocation).getInput()) {
+      // The file size is taken once so that the region stays the same even if the file is still being written.
+      long size = input.size();
+
+      byte[] magic = new byte[StreamDataFileConstants.MAGIC_HEADER_SIZE];
+      ByteStreams.readFully(input, magic);
+      int fileVersion = StreamDataFileReader.decodeFileVersion(magic);
+      Map<String, String> properties = StreamUtils.decodeMap(new BinaryDecoder(input));
+      StreamDataFileReader.verifySchema(properties);
+      StreamBlockCompression compression = StreamDataFileReader.getCompression(fileVersion, properties);
+      long dataStart = input.getPos();
+
+      long timestamp = -1L;
+      Map<String, String> headers = ImmutableMap.of();
+      if (fileVersion >= 2) {
+        timestamp = getUniTimestamp(input, size, properties);
+        headers = getDefaultHeaders(properties);
+      }
+
+      long start;
+      long end;
+      if (timestamp >= 0) {
+        // All events in the file have the same timestamp, hence either the whole file is included or none of it.
+        if (timestamp < startTime || timestamp >= endTime) {
+          return null;
+        }
+        start = dataStart;
+        end = skipBlocks(input, size, dataStart, Long.MAX_VALUE);
+      } else {
+        // Timestamps of data blocks are non-decreasing. Use the index to get the positions of data blocks that are
+        // before the start and the end time, then scan the data block headers to find the exact positions.
+        StreamDataFileIndex index = null;
+        if (indexLocation != null && indexLocation.exists()) {
+          index = new StreamDataFileIndex(Locations.newInputSupplier(indexLocation));
+        }
+        start = skipBlocks(input, size, floorPosition(index, startTime - 1, dataStart), startTime);
+        end = skipBlocks(input, size, Math.max(start, floorPosition(index, endTime - 1, dataStart)), endTime);
+      }
+
+      return start < end
+        ? new StreamDataFileRegion(eventLocation, timestamp, headers, compression, start, end)
+        : null;
+    }
+  }
+
+  private StreamDataFileRegion(Location location, long timestamp, Map<String, String> headers,
+                               StreamBlockCompression compression, long start, long end) {
+    this.location = location;
+    this.timestamp = timestamp;
+    this.headers = headers;
+    this.compression = compression;
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Returns the location of the stream event file.
+   */
+  public Location getLocation() {
+    return location;
+  }
+
+  /**
+   * Returns the timestamp of all events in this region or {@code -1} if events carry the timestamp of the
+   * data blocks that they belong to.
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Returns the default headers of all events in this region.
+   */
+  public Map<String, String> getHeaders() {
+    return headers;
+  }
+
+  /**
+   * Returns the compression of data blocks in this region.
+   */
+  public StreamBlockCompression getCompression() {
+    return compression;
+  }
+
+  /**
+   * Returns the file position of the first data block in this region.
+   */
+  public long getStart() {
+    return start;
+  }
+
+  /**
+   * Returns the number of bytes in this region.
+   */
+  public long getLength() {
+    return end - start;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("location", location)
+      .add("timestamp", timestamp)
+      .add("compression", compression)
+      .add("start", start)
+      .add("end", end)
+      .toString();
+  }
+
+  /**
+   * Returns the position of a data block from the index that has timestamp smaller than or equal to the given
+   * timestamp, or the given default position if there is no such data block.
+   */
+  private static long floorPosition(@Nullable StreamDataFileIndex index, long timestamp, long defaultPosition) {
+    long position = index == null ? -1L : index.floorPositionByTime(timestamp);
+    return Math.max(position, defaultPosition);
+  }
+
+  /**
+   * Skips data blocks starting at the given position until a data block with timestamp larger than or equal to
+   * the given time is found, the end of file is reached, or the next data block is incomplete.
+   *
+   * @return the position of the data block that stops the skipping
+   */
+  private static long skipBlocks(SeekableInputStream input, long size, long position, long time) throws IOException {
+    byte[] timestampBuffer = new byte[Bytes.SIZEOF_LONG];
+    BinaryDecoder decoder = new BinaryDecoder(input);
+    input.seek(position);
+
+    try {
+      while (position + timestampBuffer.length <= size) {
+        ByteStreams.readFully(input, timestampBuffer);
+        long timestamp = Bytes.toLong(timestampBuffer);
+        // A negative timestamp is the end of file marker
+        if (timestamp < 0 || timestamp >= time) {
+          return position;
+        }
+        int length = decoder.readInt();
+        long nextPosition = input.getPos() + length;
+        if (nextPosition > size) {
+          return position;
+        }
+        input.seek(nextPosition);
+        position = nextPosition;
+      }
+    } catch (EOFException e) {
+      // It's ok if hitting EOF, meaning the file is still being written.
+    }
+    return position;
+  }
+
+  /**
+   * Returns the timestamp of all events in the file based on the given file properties, or {@code -1} if events
+   * carry the timestamp of their data blocks.
+   */
+  private static long getUniTimestamp(SeekableInputStream input, long size,
+                                      Map<String, String> properties) throws IOException {
+    String uniTimestamp = properties.get(StreamDataFileConstants.Property.Key.UNI_TIMESTAMP);
+    if (StreamDataFileConstants.Property.Value.CLOSE_TIMESTAMP.equals(uniTimestamp)) {
+      // The close timestamp is the last 8 bytes of the file
+      long pos = input.getPos();
+      byte[] timestampBuffer = new byte[Bytes.SIZEOF_LONG];
+      input.seek(size - timestampBuffer.length);
+      ByteStreams.readFully(input, timestampBuffer);
+      input.seek(pos);
+      return Math.abs(Bytes.toLong(timestampBuffer));
+    }
+    return uniTimestamp == null ? -1L : Long.parseLong(uniTimestamp);
+  }
+
+  private static Map<String, String> getDefaultHeaders(Map<String, String> properties) {
+    ImmutableMap.Builder<String, String> headers = ImmutableMap.builder();
+    String prefix = StreamDataFileConstants.Property.Key.EVENT_HEADER_PREFIX;
+    for (Map.Entry<String, String> entry : properties.entrySet()) {
+      if (entry.getKey().startsWith(prefix)) {
+        headers.put(entry.getKey().substring(prefix.length()), entry.getValue());
+      }
+    }
+    return headers.build();
+  }
+}
@@ -21,6 +21,7 @@ import co.cask.cdap.api.flow.flowlet.StreamEvent;
 import co.cask.cdap.common.io.BinaryEncoder;
 import co.cask.cdap.common.io.BufferedEncoder;
 import co.cask.cdap.common.io.Encoder;
+import co.cask.cdap.common.stream.StreamBlockCompression;
 import co.cask.cdap.common.stream.StreamEventDataCodec;
 import co.cask.cdap.data.file.FileWriter;
 import com.google.common.base.Function;
@@ -32,6 +33,7 @@ import com.google.common.io.OutputSupplier;
 import com.google.common.primitives.Longs;
 import org.apache.hadoop.fs.Syncable;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -59,6 +61,9 @@ import javax.annotation.concurrent.NotThreadSafe;
  * }
  * </pre>
  *
+ * If data blocks are compressed, the header is "E" "3" and all <stream_event>s in a data block are compressed
+ * in the format defined by {@link StreamBlockCompression}. The <length> is then the size of the compressed data.
+ *
  * Stream index file:
  *
  * <pre>
@@ -84,6 +89,8 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
   private final long indexInterval;
   private final BufferedEncoder encoder;
   private final BufferedEncoder lengthEncoder;
+  private final StreamBlockCompression compression;
+  private final BlockBuffer blockBuffer;
 
   // Timestamp for the current block
   private long currentTimestamp;
@@ -92,6 +99,8 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
   private boolean synced;
   private boolean closed;
   private long closeTimestamp;
+  // Number of events in the current block
+  private int blockEventCount;
 
   /**
    * Constructs a new instance that writes to given outputs. Same as calling
@@ -116,6 +125,23 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
   public StreamDataFileWriter(OutputSupplier<? extends OutputStream> eventOutputSupplier,
                               OutputSupplier<? extends OutputStream> indexOutputSupplier,
                               long indexInterval, Map<String, String> properties) throws IOException {
+    this(eventOutputSupplier, indexOutputSupplier, indexInterval, properties, StreamBlockCompression.NONE);
+  }
+
+  /**
+   * Constructs a new instance that writes to given outputs with data blocks compressed.
+   *
+   * @param eventOutputSupplier the provider of the {@link OutputStream} for writing events
+   * @param indexOutputSupplier the provider of the {@link OutputStream} for writing the index
+   * @param indexInterval the time interval in milliseconds for emitting a new index entry
+   * @param properties the property set that will be stored as file properties
+   * @param compression the compression of data blocks
+   * @throws IOException if there is an error in preparing the output streams
+   */
+  public StreamDataFileWriter(OutputSupplier<? extends OutputStream> eventOutputSupplier,
+                              OutputSupplier<? extends OutputStream> indexOutputSupplier,
+                              long indexInterval, Map<String, String> properties,
+                              StreamBlockCompression compression) throws IOException {
     this.eventOutput = eventOutputSupplier.getOutput();
     try {
       this.indexOutput = indexOutputSupplier.getOutput();
@@ -126,6 +152,8 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
     this.indexInterval = indexInterval;
     this.currentTimestamp = -1L;
     this.closeTimestamp = -1L;
+    this.compression = compression;
+    this.blockBuffer = compression == StreamBlockCompression.NONE ? null : new BlockBuffer();
 
     Function<OutputStream, Encoder> encoderFactory = createEncoderFactory();
     this.encoder = new BufferedEncoder(BUFFER_SIZE, encoderFactory);
@@ -222,6 +250,7 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
 
       // Encodes the event data into buffer.
       StreamEventDataCodec.encode(event, encoder);
+      blockEventCount++;
 
       // Optionally flush if already filled up the buffer.
       if (encoder.size() >= flushLimit) {
@@ -235,10 +264,15 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
 
   private void init(Map<String, String> properties) throws IOException {
     // Writes the header for event file
-    encoder.writeRaw(StreamDataFileConstants.MAGIC_HEADER_V2);
-
     Map<String, String> headers = Maps.newHashMap(properties);
     headers.put(StreamDataFileConstants.Property.Key.SCHEMA, StreamEventDataCodec.STREAM_DATA_SCHEMA.toString());
+    if (blockBuffer == null) {
+      encoder.writeRaw(StreamDataFileConstants.MAGIC_HEADER_V2);
+    } else {
+      // Use a different version so that readers that don't support compression would fail
+      encoder.writeRaw(StreamDataFileConstants.MAGIC_HEADER_V3);
+      headers.put(StreamDataFileConstants.Property.Key.COMPRESSION, compression.name());
+    }
     StreamUtils.encodeMap(headers, encoder);
 
     long headerSize = encoder.size();
@@ -278,16 +312,30 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
       indexOffset = position - Bytes.SIZEOF_LONG;
     }
 
-    // Writes the size of the encoded event
-    lengthEncoder.writeInt(encoder.size());
-    int size = lengthEncoder.size();
-    lengthEncoder.writeTo(eventOutput);
-    position += size;
-
-    // Writes all encoded data from the buffer to the output.
-    size = encoder.size();
-    encoder.writeTo(eventOutput);
-    position += size;
+    if (blockBuffer == null) {
+      // Writes the size of the encoded event
+      lengthEncoder.writeInt(encoder.size());
+      int size = lengthEncoder.size();
+      lengthEncoder.writeTo(eventOutput);
+      position += size;
+
+      // Writes all encoded data from the buffer to the output.
+      size = encoder.size();
+      encoder.writeTo(eventOutput);
+      position += size;
+    } else {
+      encoder.writeTo(blockBuffer);
+      byte[] block = compression.compressBlock(blockBuffer.getBuffer(), blockBuffer.size(), blockEventCount);
+      blockBuffer.reset();
+
+      // Writes the size of the compressed block, followed by the compressed block
+      lengthEncoder.writeInt(block.length);
+      int size = lengthEncoder.size();
+      lengthEncoder.writeTo(eventOutput);
+      eventOutput.write(block);
+      position += size + block.length;
+    }
+    blockEventCount = 0;
     if (sync) {
       sync(eventOutput);
     }
@@ -329,6 +377,20 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
     throw ex;
   }
 
+  /**
+   * A {@link ByteArrayOutputStream} that exposes the internal buffer, for compressing data blocks without copying.
+   */
+  private static final class BlockBuffer extends ByteArrayOutputStream {
+
+    BlockBuffer() {
+      super(BUFFER_SIZE);
+    }
+
+    byte[] getBuffer() {
+      return buf;
+    }
+  }
+
   private static Function<OutputStream, Encoder> createEncoderFactory() {
     return new Function<OutputStream, Encoder>() {
       @Override
@@ -20,6 +20,7 @@ import co.cask.cdap.common.io.BinaryDecoder;
 import co.cask.cdap.common.io.ByteBuffers;
 import co.cask.cdap.common.io.Decoder;
 import co.cask.cdap.common.io.SeekableInputStream;
+import co.cask.cdap.common.stream.StreamBlockCompression;
 import co.cask.cdap.common.stream.StreamEventDataCodec;
 import co.cask.cdap.data.file.ReadFilter;
 import co.cask.common.io.ByteBufferInputStream;
@@ -33,6 +34,10 @@ import javax.annotation.concurrent.NotThreadSafe;
 /**
  * A buffer for holding encoded stream events. It is used by {@link StreamDataFileReader} for holding
  * encoded stream events in each data block.
+ *
+ * The position of an event in an uncompressed data block is the file offset of the encoded event. Since events
+ * in a compressed data block don't have file offsets, the position of the n-th event in a compressed data block is
+ * the file offset of the data block content plus n.
  */
 @NotThreadSafe
 final class StreamEventBuffer {
@@ -43,11 +48,25 @@ final class StreamEventBuffer {
   private ByteBuffer buffer;
   private long basePosition;
 
+  private StreamBlockCompression compression;
+  private byte[] compressedBlock;
+  private long endPosition;
+  private int eventIndex;
+
   StreamEventBuffer() {
     this.buffer = ByteBuffers.EMPTY_BUFFER;
     this.bufferInput = new ByteBufferInputStream(buffer);
     this.decoder = new BinaryDecoder(bufferInput);
     this.basePosition = -1L;
+    this.compression = StreamBlockCompression.NONE;
+    this.compressedBlock = new byte[0];
+  }
+
+  /**
+   * Sets the compression of data blocks to be filled into this buffer.
+   */
+  void setCompression(StreamBlockCompression compression) {
+    this.compression = compression;
   }
 
   /**
@@ -60,19 +79,22 @@ final class StreamEventBuffer {
    */
   void fillBuffer(SeekableInputStream input, int size) throws IOException {
     buffer.clear();
-    buffer = ensureCapacity(buffer, size);
 
     try {
       basePosition = input.getPos();
-      int bytesRead = 0;
-      while (bytesRead != size) {
-        int len = input.read(buffer.array(), bytesRead, size - bytesRead);
-        if (len < 0) {
-          throw new EOFException("Expected to read " + size + ", but only " + bytesRead + " was read");
+      endPosition = basePosition + size;
+      eventIndex = 0;
+      if (compression == StreamBlockCompression.NONE) {
+        buffer = ensureCapacity(buffer, size);
+        readFully(input, buffer.array(), size);
+        buffer.limit(size);
+      } else {
+        if (compressedBlock.length < size) {
+          compressedBlock = new byte[size];
         }
-        bytesRead += len;
+        readFully(input, compressedBlock, size);
+        buffer = compression.decompressBlock(compressedBlock, size, buffer);
       }
-      buffer.limit(size);
       bufferInput.reset(buffer);
     } catch (IOException e) {
       // Make the buffer has nothing to read
@@ -94,7 +116,13 @@ final class StreamEventBuffer {
    * read from the stream.
    */
   long getPosition() {
-    return basePosition >= 0 ? basePosition + buffer.position() : -1L;
+    if (basePosition < 0) {
+      return -1L;
+    }
+    if (compression == StreamBlockCompression.NONE) {
+      return basePosition + buffer.position();
+    }
+    return hasEvent() ? basePosition + eventIndex : endPosition;
   }
 
   /**
@@ -102,7 +130,7 @@ final class StreamEventBuffer {
    * been read from the stream.
    */
   long getEndPosition() {
-    return basePosition >= 0 ? basePosition + buffer.limit() : -1L;
+    return basePosition >= 0 ? endPosition : -1L;
   }
 
   /**
@@ -120,7 +148,8 @@ final class StreamEventBuffer {
       throw new IOException("No more event in the buffer");
     }
 
-    long eventPos = basePosition + buffer.position();
+    long eventPos = getPosition();
+    eventIndex++;
     if (filter.acceptOffset(eventPos)) {
       return new PositionStreamEvent(StreamEventDataCodec.decode(decoder, defaultHeaders), timestamp, eventPos);
     }
@@ -128,6 +157,17 @@ final class StreamEventBuffer {
     return null;
   }
 
+  private void readFully(SeekableInputStream input, byte[] bytes, int size) throws IOException {
+    int bytesRead = 0;
+    while (bytesRead != size) {
+      int len = input.read(bytes, bytesRead, size - bytesRead);
+      if (len < 0) {
+        throw new EOFException("Expected to read " + size + ", but only " + bytesRead + " was read");
+      }
+      bytesRead += len;
+    }
+  }
+
   /**
    * Ensures that the given {@link ByteBuffer} is of sufficient size.
    *
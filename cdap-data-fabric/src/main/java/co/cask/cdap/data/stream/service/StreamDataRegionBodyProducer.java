@@ -0,0 +1,180 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.stream.service;
+
+import co.cask.cdap.common.io.Locations;
+import co.cask.cdap.common.io.SeekableInputStream;
+import co.cask.cdap.common.stream.StreamDataBlockCodec;
+import co.cask.cdap.data.stream.StreamDataFileRegion;
+import co.cask.cdap.proto.id.StreamId;
+import co.cask.cdap.security.impersonation.Impersonator;
+import co.cask.http.BodyProducer;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import org.apache.twill.filesystem.Location;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link BodyProducer} that sends a list of {@link StreamDataFileRegion} in the format defined by
+ * {@link StreamDataBlockCodec}. Data blocks in local files are read into a direct buffer that is reused for every
+ * chunk, so that they are written to the socket without copying through the heap. Data blocks in other file systems
+ * are copied in chunks.
+ */
+final class StreamDataRegionBodyProducer extends BodyProducer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StreamDataRegionBodyProducer.class);
+
+  // Size of each chunk read from a file
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private final StreamId streamId;
+  private final Impersonator impersonator;
+  private final Iterator<StreamDataFileRegion> regions;
+  private final List<byte[]> segmentHeaders;
+  private final long contentLength;
+
+  private int regionIndex;
+  private StreamDataFileRegion region;
+  private long position;
+  private long remaining;
+  private FileChannel fileChannel;
+  private SeekableInputStream input;
+  private ByteBuffer directBuffer;
+
+  StreamDataRegionBodyProducer(StreamId streamId, Impersonator impersonator,
+                               List<StreamDataFileRegion> regions) throws IOException {
+    this.streamId = streamId;
+    this.impersonator = impersonator;
+    this.regions = regions.iterator();
+    this.segmentHeaders = Lists.newArrayListWithCapacity(regions.size());
+
+    long contentLength = 0L;
+    for (StreamDataFileRegion region : regions) {
+      byte[] header = StreamDataBlockCodec.encodeSegmentHeader(region.getTimestamp(), region.getHeaders(),
+                                                               region.getCompression(), region.getLength());
+      segmentHeaders.add(header);
+      contentLength += header.length + region.getLength();
+    }
+    this.contentLength = contentLength;
+  }
+
+  @Override
+  public long getContentLength() {
+    return contentLength;
+  }
+
+  @Override
+  public ChannelBuffer nextChunk() throws Exception {
+    if (remaining > 0) {
+      return readData();
+    }
+    closeRegion();
+    if (!regions.hasNext()) {
+      return ChannelBuffers.EMPTY_BUFFER;
+    }
+
+    // Starts a new segment by sending the segment header
+    region = regions.next();
+    position = region.getStart();
+    remaining = region.getLength();
+    openRegion(region);
+    return ChannelBuffers.wrappedBuffer(segmentHeaders.get(regionIndex++));
+  }
+
+  @Override
+  public void finished() throws Exception {
+    closeRegion();
+  }
+
+  @Override
+  public void handleError(@Nullable Throwable cause) {
+    LOG.warn("Failed to send events of stream {} from {}", streamId, region, cause);
+    closeRegion();
+  }
+
+  private ChannelBuffer readData() throws IOException {
+    ChannelBuffer buffer;
+    int size = (int) Math.min(remaining, CHUNK_SIZE);
+    if (fileChannel != null) {
+      // The next chunk is only requested after the previous one is written to the socket,
+      // hence the same direct buffer can be reused for all chunks.
+      if (directBuffer == null) {
+        directBuffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+      }
+      directBuffer.clear();
+      directBuffer.limit(size);
+      while (directBuffer.hasRemaining()) {
+        if (fileChannel.read(directBuffer, position + directBuffer.position()) < 0) {
+          throw new EOFException("Unexpected end of file " + region.getLocation() + " at position "
+                                   + (position + directBuffer.position()));
+        }
+      }
+      directBuffer.flip();
+      buffer = ChannelBuffers.wrappedBuffer(directBuffer);
+    } else {
+      byte[] bytes = new byte[size];
+      ByteStreams.readFully(input, bytes);
+      buffer = ChannelBuffers.wrappedBuffer(bytes);
+    }
+    position += buffer.readableBytes();
+    remaining -= buffer.readableBytes();
+    return buffer;
+  }
+
+  private void openRegion(StreamDataFileRegion region) throws Exception {
+    final Location location = region.getLocation();
+    final long start = region.getStart();
+    // Open the file as the stream owner, since this is called from the netty IO thread.
+    impersonator.doAs(streamId, new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        URI uri = location.toURI();
+        if ("file".equals(uri.getScheme())) {
+          fileChannel = new RandomAccessFile(new File(uri), "r").getChannel();
+        } else {
+          input = Locations.newInputSupplier(location).getInput();
+          input.seek(start);
+        }
+        return null;
+      }
+    });
+  }
+
+  private void closeRegion() {
+    Closeables.closeQuietly(fileChannel);
+    Closeables.closeQuietly(input);
+    fileChannel = null;
+    input = null;
+    remaining = 0L;
+  }
+}
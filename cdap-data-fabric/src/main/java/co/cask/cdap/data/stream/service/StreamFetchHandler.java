@@ -19,11 +19,13 @@ package co.cask.cdap.data.stream.service;
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.stream.StreamDataBlockCodec;
 import co.cask.cdap.common.stream.StreamEventTypeAdapter;
 import co.cask.cdap.common.utils.TimeMathParser;
 import co.cask.cdap.data.file.FileReader;
 import co.cask.cdap.data.file.ReadFilter;
 import co.cask.cdap.data.stream.MultiLiveStreamFileReader;
+import co.cask.cdap.data.stream.StreamDataFileRegion;
 import co.cask.cdap.data.stream.StreamEventOffset;
 import co.cask.cdap.data.stream.StreamFileOffset;
 import co.cask.cdap.data.stream.StreamFileType;
@@ -59,6 +61,9 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 import javax.ws.rs.DefaultValue;
@@ -76,6 +81,8 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
   private static final Gson GSON = StreamEventTypeAdapter.register(new GsonBuilder()).create();
   private static final int MAX_EVENTS_PER_READ = 100;
   private static final int CHUNK_SIZE = 8192;
+  private static final String FORMAT_JSON = "json";
+  private static final String FORMAT_BINARY = "binary";
 
   private final CConfiguration cConf;
   private final StreamAdmin streamAdmin;
@@ -107,7 +114,10 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
    * </ul>
    * </p>
    * <p>
-   * Response body is a JSON array of the StreamEvent object.
+   * Response body is a JSON array of the StreamEvent object. If the {@code format} query parameter is
+   * {@code binary}, the response body is the binary format defined by {@link StreamDataBlockCodec}, which
+   * contains the data blocks of the stream files as is. In binary format, events are only ordered by time within
+   * each stream file and the limit is not applied by the server.
    * </p>
    *
    * @see StreamEventTypeAdapter StreamEventTypeAdapter for the format of the StreamEvent object
@@ -119,12 +129,13 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
                     @PathParam("stream") String stream,
                     @QueryParam("start") @DefaultValue("0") String start,
                     @QueryParam("end") @DefaultValue("9223372036854775807") String end,
-                    @QueryParam("limit") @DefaultValue("2147483647") final int limitEvents) throws Exception {
+                    @QueryParam("limit") @DefaultValue("2147483647") final int limitEvents,
+                    @QueryParam("format") @DefaultValue(FORMAT_JSON) String format) throws Exception {
     long startTime = TimeMathParser.parseTime(start, TimeUnit.MILLISECONDS);
     long endTime = TimeMathParser.parseTime(end, TimeUnit.MILLISECONDS);
 
     StreamId streamId = new StreamId(namespaceId, stream);
-    if (!verifyGetEventsRequest(streamId, startTime, endTime, limitEvents, responder)) {
+    if (!verifyGetEventsRequest(streamId, startTime, endTime, limitEvents, format, responder)) {
       return;
     }
 
@@ -136,6 +147,10 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
     endTime = Math.min(endTime, now);
     final long streamStartTime = startTime;
     final long streamEndTime = endTime;
+    if (FORMAT_BINARY.equals(format)) {
+      fetchBinary(responder, streamId, streamConfig, streamStartTime, streamEndTime);
+      return;
+    }
     impersonator.doAs(streamId, new Callable<Void>() {
       @Override
       public Void call() throws Exception {
@@ -203,6 +218,70 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
 
   }
 
+  /**
+   * Responds with the data blocks of all stream files that contain events in the given time range.
+   */
+  private void fetchBinary(HttpResponder responder, final StreamId streamId, final StreamConfig streamConfig,
+                           final long startTime, final long endTime) throws Exception {
+    List<StreamDataFileRegion> regions = impersonator.doAs(streamId, new Callable<List<StreamDataFileRegion>>() {
+      @Override
+      public List<StreamDataFileRegion> call() throws Exception {
+        return getFileRegions(streamConfig, startTime, endTime);
+      }
+    });
+
+    if (regions.isEmpty()) {
+      responder.sendStatus(HttpResponseStatus.NO_CONTENT);
+      return;
+    }
+    responder.sendContent(HttpResponseStatus.OK, new StreamDataRegionBodyProducer(streamId, impersonator, regions),
+                          ImmutableMultimap.of(HttpHeaders.Names.CONTENT_TYPE, "application/octet-stream"));
+  }
+
+  /**
+   * Returns the {@link StreamDataFileRegion} of all stream event files that contain events in the given time range.
+   */
+  private List<StreamDataFileRegion> getFileRegions(StreamConfig streamConfig,
+                                                    long startTime, long endTime) throws IOException {
+    int generation = StreamUtils.getGeneration(streamConfig);
+    Location baseLocation = StreamUtils.createGenerationLocation(streamConfig.getLocation(), generation);
+    String filePrefix = cConf.get(Constants.Stream.FILE_PREFIX) + '.';
+
+    // Partitions and files are sorted by name, which sorts partitions by start time
+    // and files of the same writer instance by sequence id.
+    SortedMap<String, Location> partitions = new TreeMap<>();
+    for (Location location : baseLocation.list()) {
+      String name = location.getName();
+      if (!location.isDirectory() || !StreamUtils.isPartition(name)) {
+        continue;
+      }
+      if (StreamUtils.getPartitionStartTime(name) < endTime && StreamUtils.getPartitionEndTime(name) > startTime) {
+        partitions.put(name, location);
+      }
+    }
+
+    List<StreamDataFileRegion> regions = Lists.newArrayList();
+    for (Location partition : partitions.values()) {
+      SortedMap<String, Location> eventFiles = new TreeMap<>();
+      for (Location location : partition.list()) {
+        String name = location.getName();
+        if (name.startsWith(filePrefix) && StreamFileType.EVENT.isMatched(name)) {
+          eventFiles.put(name, location);
+        }
+      }
+      for (Map.Entry<String, Location> entry : eventFiles.entrySet()) {
+        Location indexLocation = partition.append(StreamUtils.getBucketName(entry.getKey()) + '.'
+                                                    + StreamFileType.INDEX.getSuffix());
+        StreamDataFileRegion region = StreamDataFileRegion.create(entry.getValue(), indexLocation,
+                                                                  startTime, endTime);
+        if (region != null) {
+          regions.add(region);
+        }
+      }
+    }
+    return regions;
+  }
+
   /**
    * Reads events from the given reader.
    */
@@ -223,7 +302,7 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
    * Verifies query properties.
    */
   private boolean verifyGetEventsRequest(StreamId streamId, long startTime, long endTime,
-                                         int count, HttpResponder responder) throws Exception {
+                                         int count, String format, HttpResponder responder) throws Exception {
     if (startTime < 0) {
       responder.sendString(HttpResponseStatus.BAD_REQUEST, "Start time must be >= 0");
       return false;
@@ -240,6 +319,11 @@ public final class StreamFetchHandler extends AbstractHttpHandler {
       responder.sendString(HttpResponseStatus.BAD_REQUEST, "Cannot request for <=0 events");
       return false;
     }
+    if (!FORMAT_JSON.equals(format) && !FORMAT_BINARY.equals(format)) {
+      responder.sendString(HttpResponseStatus.BAD_REQUEST,
+                           "Format must be either " + FORMAT_JSON + " or " + FORMAT_BINARY);
+      return false;
+    }
     if (!streamMetaStore.streamExists(streamId)) {
       responder.sendStatus(HttpResponseStatus.NOT_FOUND);
       return false;
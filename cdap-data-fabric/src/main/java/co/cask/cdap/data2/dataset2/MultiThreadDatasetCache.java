@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -19,24 +19,35 @@ package co.cask.cdap.data2.dataset2;
 import co.cask.cdap.api.data.DatasetInstantiationException;
 import co.cask.cdap.api.dataset.Dataset;
 import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data.dataset.SystemDatasetInstantiator;
 import co.cask.cdap.data2.transaction.MultiThreadTransactionAware;
 import co.cask.cdap.proto.id.NamespaceId;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.Iterables;
 import org.apache.tephra.TransactionAware;
 import org.apache.tephra.TransactionContext;
 import org.apache.tephra.TransactionFailureException;
 import org.apache.tephra.TransactionSystemClient;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
@@ -44,11 +55,26 @@ import javax.annotation.ParametersAreNonnullByDefault;
  * Implementation of {@link DynamicDatasetCache} that performs all operations on a per-thread basis.
  * That is, every thread is guaranteed to receive its own distinct copy of every dataset; every thread
  * has its own transaction context, etc.
+ *
+ * When a thread goes away, its {@link SingleThreadDatasetCache} is kept in a bounded pool of idle caches if it has
+ * no active transaction, and it is handed to the next new thread, so that threads of a pool that shrinks and grows
+ * don't need to instantiate all the datasets again. The size of the pool and how long a cache can stay idle before it
+ * is closed are configured by {@link Constants.Dataset#CACHE_MAX_IDLE_CACHES} and
+ * {@link Constants.Dataset#CACHE_MAX_IDLE_SECONDS}.
  */
 public class MultiThreadDatasetCache extends DynamicDatasetCache {
 
+  private final int maxIdleCaches;
+  private final long maxIdleMillis;
+  // time after which the oldest idle cache expires, checked without locking when a thread accesses the cache
+  private volatile long nextExpiryMillis = Long.MAX_VALUE;
+
   // maintains a single threaded factory for each thread.
   private final LoadingCache<Thread, SingleThreadDatasetCache> perThreadMap;
+  // caches of threads that went away, with the most recently released one first
+  private final Deque<IdleCache> idleCaches;
+  private final int numMultiThreadTxAwares;
+  private boolean closed;
 
   /**
    * See {@link DynamicDatasetCache}.
@@ -61,24 +87,66 @@ public class MultiThreadDatasetCache extends DynamicDatasetCache {
    *                            {@link SingleThreadDatasetCache#addExtraTransactionAware(TransactionAware)} method
    *                            to participate in transaction lifecycle.
    */
-  public MultiThreadDatasetCache(final SystemDatasetInstantiator instantiator,
-                                 final TransactionSystemClient txClient,
-                                 final NamespaceId namespace,
-                                 final Map<String, String> runtimeArguments,
-                                 @Nullable final MetricsContext metricsContext,
-                                 @Nullable final Map<String, Map<String, String>> staticDatasets,
-                                 final MultiThreadTransactionAware<?>...multiThreadTxAwares) {
+  public MultiThreadDatasetCache(SystemDatasetInstantiator instantiator,
+                                 TransactionSystemClient txClient,
+                                 NamespaceId namespace,
+                                 Map<String, String> runtimeArguments,
+                                 @Nullable MetricsContext metricsContext,
+                                 @Nullable Map<String, Map<String, String>> staticDatasets,
+                                 MultiThreadTransactionAware<?>...multiThreadTxAwares) {
+    this(Constants.Dataset.DEFAULT_CACHE_MAX_IDLE_CACHES, Constants.Dataset.DEFAULT_CACHE_MAX_IDLE_SECONDS,
+         instantiator, txClient, namespace, runtimeArguments, metricsContext, staticDatasets, multiThreadTxAwares);
+  }
+
+  /**
+   * Same as
+   * {@link #MultiThreadDatasetCache(SystemDatasetInstantiator, TransactionSystemClient, NamespaceId, Map,
+   * MetricsContext, Map, MultiThreadTransactionAware[])}, with the pool of idle caches configured by the given
+   * {@link CConfiguration}.
+   */
+  public MultiThreadDatasetCache(CConfiguration cConf,
+                                 SystemDatasetInstantiator instantiator,
+                                 TransactionSystemClient txClient,
+                                 NamespaceId namespace,
+                                 Map<String, String> runtimeArguments,
+                                 @Nullable MetricsContext metricsContext,
+                                 @Nullable Map<String, Map<String, String>> staticDatasets,
+                                 MultiThreadTransactionAware<?>...multiThreadTxAwares) {
+    this(cConf.getInt(Constants.Dataset.CACHE_MAX_IDLE_CACHES, Constants.Dataset.DEFAULT_CACHE_MAX_IDLE_CACHES),
+         cConf.getLong(Constants.Dataset.CACHE_MAX_IDLE_SECONDS, Constants.Dataset.DEFAULT_CACHE_MAX_IDLE_SECONDS),
+         instantiator, txClient, namespace, runtimeArguments, metricsContext, staticDatasets, multiThreadTxAwares);
+  }
+
+  private MultiThreadDatasetCache(int maxIdleCaches, long maxIdleSeconds,
+                                  final SystemDatasetInstantiator instantiator,
+                                  final TransactionSystemClient txClient,
+                                  final NamespaceId namespace,
+                                  final Map<String, String> runtimeArguments,
+                                  @Nullable final MetricsContext metricsContext,
+                                  @Nullable final Map<String, Map<String, String>> staticDatasets,
+                                  final MultiThreadTransactionAware<?>...multiThreadTxAwares) {
     super(instantiator, txClient, namespace, runtimeArguments);
+    this.maxIdleCaches = maxIdleCaches;
+    this.maxIdleMillis = TimeUnit.SECONDS.toMillis(maxIdleSeconds);
+    this.idleCaches = new LinkedList<>();
+    this.numMultiThreadTxAwares = multiThreadTxAwares.length;
     this.perThreadMap = CacheBuilder.newBuilder()
       .weakKeys()
-      .removalListener(new RemovalListener<Thread, DynamicDatasetCache>() {
+      .removalListener(new RemovalListener<Thread, SingleThreadDatasetCache>() {
         @Override
         @ParametersAreNonnullByDefault
-        public void onRemoval(RemovalNotification<Thread, DynamicDatasetCache> notification) {
-          DynamicDatasetCache cache = notification.getValue();
-          if (cache != null) {
-            cache.close();
+        public void onRemoval(RemovalNotification<Thread, SingleThreadDatasetCache> notification) {
+          SingleThreadDatasetCache cache = notification.getValue();
+          if (cache == null) {
+            return;
           }
+          // The thread has gone away, the cache can be used by another thread. Explicit removal is either done
+          // by close(), in which case releaseCache() returns false, or by releaseCacheOf().
+          RemovalCause cause = notification.getCause();
+          if ((cause == RemovalCause.COLLECTED || cause == RemovalCause.EXPLICIT) && releaseCache(cache)) {
+            return;
+          }
+          cache.close();
         }
       })
       .build(
@@ -86,11 +154,25 @@ public class MultiThreadDatasetCache extends DynamicDatasetCache {
           @Override
           @ParametersAreNonnullByDefault
           public SingleThreadDatasetCache load(Thread thread) throws Exception {
-            SingleThreadDatasetCache cache = new SingleThreadDatasetCache(
+            SingleThreadDatasetCache cache = acquireIdleCache();
+            if (cache != null) {
+              if (metricsContext != null) {
+                metricsContext.increment(Constants.Metrics.Name.Dataset.CACHE_REUSES, 1);
+              }
+              return cache;
+            }
+
+            Stopwatch stopwatch = new Stopwatch().start();
+            cache = new SingleThreadDatasetCache(
               instantiator, txClient, namespace, runtimeArguments, metricsContext, staticDatasets);
             for (MultiThreadTransactionAware<?> txAware : multiThreadTxAwares) {
               cache.addExtraTransactionAware(txAware);
             }
+            if (metricsContext != null) {
+              metricsContext.increment(Constants.Metrics.Name.Dataset.CACHE_CREATES, 1);
+              metricsContext.increment(Constants.Metrics.Name.Dataset.CACHE_CREATE_MILLIS,
+                                       stopwatch.elapsedTime(TimeUnit.MILLISECONDS));
+            }
             return cache;
           }
         });
@@ -105,6 +187,16 @@ public class MultiThreadDatasetCache extends DynamicDatasetCache {
   @Override
   public void close() {
     super.close();
+    List<IdleCache> toClose;
+    synchronized (idleCaches) {
+      closed = true;
+      toClose = new ArrayList<>(idleCaches);
+      idleCaches.clear();
+      nextExpiryMillis = Long.MAX_VALUE;
+    }
+    for (IdleCache idleCache : toClose) {
+      idleCache.cache.close();
+    }
     perThreadMap.invalidateAll();
   }
 
@@ -155,6 +247,7 @@ public class MultiThreadDatasetCache extends DynamicDatasetCache {
   }
 
   private DynamicDatasetCache entryForCurrentThread() {
+    expireIdleCaches();
     try {
       return perThreadMap.get(Thread.currentThread());
     } catch (ExecutionException e) {
@@ -163,11 +256,135 @@ public class MultiThreadDatasetCache extends DynamicDatasetCache {
     }
   }
 
+  /**
+   * Returns the most recently released idle cache, or {@code null} if there is none.
+   */
+  @Nullable
+  private SingleThreadDatasetCache acquireIdleCache() {
+    List<IdleCache> toClose;
+    SingleThreadDatasetCache cache;
+    synchronized (idleCaches) {
+      toClose = removeExpired(System.currentTimeMillis());
+      IdleCache idleCache = idleCaches.pollFirst();
+      cache = idleCache == null ? null : idleCache.cache;
+      updateNextExpiry();
+    }
+    for (IdleCache expired : toClose) {
+      expired.cache.close();
+    }
+    return cache;
+  }
+
+  /**
+   * Adds the cache of a thread that went away to the idle caches.
+   *
+   * @return {@code true} if the cache was added, {@code false} if it should be closed instead
+   */
+  private boolean releaseCache(SingleThreadDatasetCache cache) {
+    // The cache can only be reused if it is in the same state as a newly created one
+    if (cache.isTransactionActive() || Iterables.size(cache.getExtraTransactionAwares()) != numMultiThreadTxAwares) {
+      return false;
+    }
+    List<IdleCache> toClose;
+    synchronized (idleCaches) {
+      if (closed) {
+        return false;
+      }
+      cache.dismissTransactionContext();
+      long now = System.currentTimeMillis();
+      idleCaches.addFirst(new IdleCache(cache, now));
+      toClose = removeExpired(now);
+      while (idleCaches.size() > maxIdleCaches) {
+        toClose.add(idleCaches.pollLast());
+      }
+      updateNextExpiry();
+    }
+    for (IdleCache idleCache : toClose) {
+      idleCache.cache.close();
+    }
+    return true;
+  }
+
+  /**
+   * Closes the caches that have been idle for too long. The expiry time is checked without locking, so that threads
+   * accessing their own cache don't contend unless an idle cache is due to be closed.
+   */
+  private void expireIdleCaches() {
+    long now = System.currentTimeMillis();
+    if (now <= nextExpiryMillis) {
+      return;
+    }
+    List<IdleCache> toClose;
+    synchronized (idleCaches) {
+      toClose = removeExpired(now);
+      updateNextExpiry();
+    }
+    for (IdleCache idleCache : toClose) {
+      idleCache.cache.close();
+    }
+  }
+
+  /**
+   * Updates the time after which the oldest idle cache expires. Must be called while holding the lock on
+   * {@link #idleCaches}.
+   */
+  private void updateNextExpiry() {
+    IdleCache oldest = idleCaches.peekLast();
+    nextExpiryMillis = oldest == null ? Long.MAX_VALUE : oldest.idleSince + maxIdleMillis;
+  }
+
+  /**
+   * Removes the caches that have been idle for too long. Must be called while holding the lock on
+   * {@link #idleCaches}.
+   *
+   * @return the caches removed, which need to be closed
+   */
+  private List<IdleCache> removeExpired(long now) {
+    List<IdleCache> expired = new ArrayList<>();
+    Iterator<IdleCache> iterator = idleCaches.descendingIterator();
+    while (iterator.hasNext()) {
+      IdleCache idleCache = iterator.next();
+      if (now - idleCache.idleSince <= maxIdleMillis) {
+        break;
+      }
+      expired.add(idleCache);
+      iterator.remove();
+    }
+    return expired;
+  }
+
   @VisibleForTesting
   public Collection<Thread> getCacheKeys() {
     perThreadMap.cleanUp();
     return perThreadMap.asMap().keySet();
   }
 
+  /**
+   * Removes the cache of the given thread and adds it to the idle caches, as it happens when the thread is collected.
+   */
+  @VisibleForTesting
+  public void releaseCacheOf(Thread thread) {
+    perThreadMap.invalidate(thread);
+  }
+
+  @VisibleForTesting
+  public int getIdleCacheCount() {
+    synchronized (idleCaches) {
+      return idleCaches.size();
+    }
+  }
+
+  /**
+   * A {@link SingleThreadDatasetCache} that is not used by any thread.
+   */
+  private static final class IdleCache {
+    private final SingleThreadDatasetCache cache;
+    private final long idleSince;
+
+    private IdleCache(SingleThreadDatasetCache cache, long idleSince) {
+      this.cache = cache;
+      this.idleSince = idleSince;
+    }
+  }
 }
 
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -271,6 +271,13 @@ public class SingleThreadDatasetCache extends DynamicDatasetCache {
     return txContext;
   }
 
+  /**
+   * Returns whether there is an active transaction started through this cache.
+   */
+  boolean isTransactionActive() {
+    return txContext != null && txContext.getCurrentTransaction() != null;
+  }
+
   @Override
   public void dismissTransactionContext() {
     if (txContext != null) {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2015-2016 Cask Data, Inc.
+ * Copyright 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,31 +16,36 @@
 
 package co.cask.cdap.data2.dataset2.lib.cube;
 
-import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
 import co.cask.cdap.api.dataset.lib.cube.Cube;
 import co.cask.cdap.api.dataset.lib.cube.CubeDeleteQuery;
 import co.cask.cdap.api.dataset.lib.cube.CubeExploreQuery;
 import co.cask.cdap.api.dataset.lib.cube.CubeFact;
 import co.cask.cdap.api.dataset.lib.cube.CubeQuery;
 import co.cask.cdap.api.dataset.lib.cube.DimensionValue;
+import co.cask.cdap.api.dataset.lib.cube.MeasureType;
+import co.cask.cdap.api.dataset.lib.cube.Measurement;
 import co.cask.cdap.api.dataset.lib.cube.TimeSeries;
 import co.cask.cdap.api.dataset.lib.cube.TimeValue;
 import co.cask.cdap.api.dataset.metrics.MeteredDataset;
 import co.cask.cdap.api.metrics.MetricsCollector;
 import co.cask.cdap.common.utils.ImmutablePair;
+import co.cask.cdap.common.utils.TimeProvider;
 import co.cask.cdap.data2.dataset2.lib.timeseries.Fact;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactScan;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactScanResult;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactScanner;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactTable;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.PeekingIterator;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
+import com.google.common.primitives.Ints;
+import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,7 +56,17 @@ import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 
 /**
@@ -63,23 +78,81 @@ public class DefaultCube implements Cube, MeteredDataset {
   private static final DimensionValueComparator DIMENSION_VALUE_COMPARATOR = new DimensionValueComparator();
   // hard-limit on max records to scan
   private static final int MAX_RECORDS_TO_SCAN = 100 * 1000;
+  // max number of facts to buffer before writing them into coarser resolutions during rollup
+  private static final int ROLLUP_BATCH_SIZE = 1000;
+  // a rollup claim that is not completed after this time is considered abandoned by a failed instance
+  private static final long ROLLUP_CLAIM_TIMEOUT_SECONDS = 600L;
+  // max time for writing facts into the finest resolution, including the clock difference between instances.
+  // Rollup lags behind the time up to which facts are written into the finest resolution only by this time.
+  private static final long ROLLUP_WRITE_MARGIN_SECONDS = 10L;
 
   private final Map<Integer, FactTable> resolutionToFactTable;
   private final Map<String, ? extends Aggregation> aggregations;
   private final Map<String, AggregationAlias> aggregationAliasMap;
+  private final int queryParallelism;
+  private final boolean rollupEnabled;
+  private final long rollupDelaySeconds;
+  private final int finestResolution;
+  // measures that are known to be gauges, to avoid recording them as gauges repeatedly
+  private final Set<String> gaugeMeasures;
+  private TimeProvider timeProvider = TimeProvider.SYSTEM_TIME;
+  // the largest rollup watermark of the coarser resolutions when this instance started writing, see #addWithRollup
+  private volatile Long rollupStartTs;
 
   @Nullable
   private MetricsCollector metrics;
+  // Executor for scanning in parallel, created on first use
+  private ExecutorService queryExecutor;
 
   public DefaultCube(int[] resolutions, FactTableSupplier factTableSupplier,
                      Map<String, ? extends Aggregation> aggregations,
                      Map<String, AggregationAlias> aggregationAliasMap) {
+    this(resolutions, factTableSupplier, aggregations, aggregationAliasMap, 1);
+  }
+
+  /**
+   * Creates a {@link DefaultCube} that executes each query with up to the given number of parallel scans.
+   * The time range of a query is split into disjoint ranges aligned with the fact table row time base, and each
+   * range is scanned by a separate thread. The {@link FactTable}s provided by the given {@link FactTableSupplier}
+   * must support concurrent scans if {@code queryParallelism} is greater than one.
+   */
+  public DefaultCube(int[] resolutions, FactTableSupplier factTableSupplier,
+                     Map<String, ? extends Aggregation> aggregations,
+                     Map<String, AggregationAlias> aggregationAliasMap, int queryParallelism) {
+    this(resolutions, factTableSupplier, aggregations, aggregationAliasMap, queryParallelism, false, 0L);
+  }
+
+  /**
+   * Creates a {@link DefaultCube} that optionally writes facts only into the finest resolution, leaving the coarser
+   * resolutions to be computed from it with {@link #rollup(long)}.
+   *
+   * When rollup is enabled, counters are written only into the finest resolution. A time range is closed once it is
+   * more than {@code rollupDelaySeconds} behind the current time, and only closed time ranges are rolled up. Counters
+   * that arrive after their time range is closed are written as late facts of the finest resolution, which are added
+   * into all resolutions once the rollup has passed their time range. Writing never reads or waits for the state of
+   * a rollup.
+   * Gauges are always written into all resolutions, since they cannot be rolled up by adding values.
+   * Coarser resolutions lag behind the finest one until the facts are rolled up.
+   *
+   * A measure that is written both as a gauge and as a counter is not rolled up. Once it is known as a gauge by this
+   * instance, its counters are written into all resolutions. Counters of the measure written before that, or by
+   * another instance that has not seen the measure as a gauge, are only in the finest resolution.
+   */
+  public DefaultCube(int[] resolutions, FactTableSupplier factTableSupplier,
+                     Map<String, ? extends Aggregation> aggregations,
+                     Map<String, AggregationAlias> aggregationAliasMap, int queryParallelism, boolean rollupEnabled,
+                     long rollupDelaySeconds) {
     this.aggregations = aggregations;
     this.resolutionToFactTable = Maps.newHashMap();
     for (int resolution : resolutions) {
       resolutionToFactTable.put(resolution, factTableSupplier.get(resolution, 3600));
     }
     this.aggregationAliasMap = aggregationAliasMap;
+    this.queryParallelism = Math.max(1, queryParallelism);
+    this.rollupEnabled = rollupEnabled && resolutions.length > 1;
+    this.rollupDelaySeconds = rollupDelaySeconds;
+    this.finestResolution = Ints.min(resolutions);
+    this.gaugeMeasures = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
   }
 
   @Override
@@ -113,15 +186,405 @@ public class DefaultCube implements Cube, MeteredDataset {
       }
     }
 
-    for (FactTable table : resolutionToFactTable.values()) {
-      table.add(toWrite);
+    int added;
+    if (rollupEnabled) {
+      added = addWithRollup(toWrite);
+    } else {
+      for (FactTable table : resolutionToFactTable.values()) {
+        table.add(toWrite);
+      }
+      added = toWrite.size() * resolutionToFactTable.size();
     }
 
     incrementMetric("cube.cubeFact.add.request.count", 1);
     incrementMetric("cube.cubeFact.added.count", facts.size());
     incrementMetric("cube.tsFact.created.count", toWrite.size());
     incrementMetric("cube.tsFact.created.dimValues.count", dimValuesCount);
-    incrementMetric("cube.tsFact.added.count", toWrite.size() * resolutionToFactTable.size());
+    incrementMetric("cube.tsFact.added.count", added);
+  }
+
+  /**
+   * Sets the {@link TimeProvider} for deciding which facts are closed for rollup.
+   */
+  @VisibleForTesting
+  void setTimeProvider(TimeProvider timeProvider) {
+    this.timeProvider = timeProvider;
+  }
+
+  /**
+   * Writes the given facts into the finest resolution, and the part of them that cannot be rolled up into the coarser
+   * resolutions. Counters are split by the closed time, which is the rollup delay behind the current time:
+   * <ul>
+   *   <li>Counters after the closed time are written into the finest resolution only. The rollup only rolls up time
+   *   ranges behind the closed time, hence includes them.</li>
+   *   <li>Counters before the closed time may be in a time range that has been rolled up already. They are written as
+   *   late facts, which {@link #rollup(long)} adds into all resolutions once the rollup watermarks have passed them,
+   *   so that they are neither missed nor counted twice.</li>
+   *   <li>Gauges, and counters of measures known as gauges, are written into all resolutions.</li>
+   * </ul>
+   * Counters before the rollup watermarks at the time this instance started writing are also written as late facts,
+   * since the rollup never goes back before its watermarks.
+   *
+   * @return number of facts written into all resolutions
+   */
+  private int addWithRollup(List<Fact> facts) {
+    FactTable finestTable = resolutionToFactTable.get(finestResolution);
+    if (facts.isEmpty()) {
+      return 0;
+    }
+
+    // Must be taken before writing, since the rollup lags behind it only by the write margin
+    long closedTs = Math.max(getRollupStartTs(), currentTimeSeconds() - rollupDelaySeconds);
+    List<Fact> finestFacts = Lists.newArrayList();
+    List<Fact> allResolutionsFacts = Lists.newArrayList();
+    List<Fact> lateFacts = Lists.newArrayList();
+    for (Fact fact : facts) {
+      List<Measurement> finestMeasurements = Lists.newArrayList();
+      List<Measurement> allResolutionsMeasurements = Lists.newArrayList();
+      List<Measurement> lateMeasurements = Lists.newArrayList();
+      for (Measurement measurement : fact.getMeasurements()) {
+        if (measurement.getType() == MeasureType.GAUGE && gaugeMeasures.add(measurement.getName())) {
+          finestTable.markGaugeMeasure(measurement.getName());
+        }
+        if (measurement.getType() == MeasureType.GAUGE || gaugeMeasures.contains(measurement.getName())) {
+          allResolutionsMeasurements.add(measurement);
+        } else if (fact.getTimestamp() < closedTs) {
+          lateMeasurements.add(measurement);
+        } else {
+          finestMeasurements.add(measurement);
+        }
+      }
+      addFact(finestFacts, fact, finestMeasurements);
+      addFact(allResolutionsFacts, fact, allResolutionsMeasurements);
+      addFact(lateFacts, fact, lateMeasurements);
+    }
+
+    finestFacts.addAll(allResolutionsFacts);
+    int added = 0;
+    for (Map.Entry<Integer, FactTable> entry : resolutionToFactTable.entrySet()) {
+      List<Fact> toWrite = entry.getKey() == finestResolution ? finestFacts : allResolutionsFacts;
+      if (!toWrite.isEmpty()) {
+        entry.getValue().add(toWrite);
+        added += toWrite.size();
+      }
+    }
+    if (!lateFacts.isEmpty()) {
+      finestTable.addLateFacts(lateFacts);
+      added += lateFacts.size();
+      incrementMetric("cube.tsFact.late.count", lateFacts.size());
+    }
+    return added;
+  }
+
+  private void addFact(List<Fact> facts, Fact fact, List<Measurement> measurements) {
+    if (measurements.size() == fact.getMeasurements().size()) {
+      facts.add(fact);
+    } else if (!measurements.isEmpty()) {
+      facts.add(new Fact(fact.getTimestamp(), fact.getDimensionValues(), measurements));
+    }
+  }
+
+  /**
+   * Returns the largest rollup watermark of the coarser resolutions, loaded from the tables on the first call. A
+   * watermark that is not set yet is set to the current time, so that facts written into the finest resolution from
+   * that time on are rolled up, while facts written into all resolutions before rollup was enabled are not rolled up
+   * again.
+   */
+  private long getRollupStartTs() {
+    Long startTs = rollupStartTs;
+    if (startTs != null) {
+      return startTs;
+    }
+    synchronized (this) {
+      if (rollupStartTs == null) {
+        long currentTs = currentTimeSeconds() / finestResolution * finestResolution;
+        long maxWatermark = Long.MIN_VALUE;
+        for (Map.Entry<Integer, FactTable> entry : resolutionToFactTable.entrySet()) {
+          if (entry.getKey() == finestResolution) {
+            continue;
+          }
+          FactTable table = entry.getValue();
+          Long watermark = table.getRollupWatermark();
+          if (watermark == null) {
+            // Initialized concurrently by another instance if the swap fails
+            watermark = table.swapRollupWatermark(null, currentTs) ? currentTs : table.getRollupWatermark();
+          }
+          maxWatermark = Math.max(maxWatermark, watermark);
+        }
+        rollupStartTs = maxWatermark;
+      }
+      return rollupStartTs;
+    }
+  }
+
+  private long currentTimeSeconds() {
+    return TimeUnit.MILLISECONDS.toSeconds(timeProvider.currentTimeMillis());
+  }
+
+  /**
+   * Rolls up the facts in the finest resolution into the coarser resolutions, up to the given time. For each
+   * resolution, the time range from its rollup watermark to the given time is first claimed in the table, so that
+   * concurrent calls, in this or other instances, never roll up the same facts twice. The watermark is only advanced
+   * after the facts are written into the coarser resolution. If writing fails, the claim is released, so that the
+   * time range is rolled up again by the next call. Since the tables are not transactional, facts written into a
+   * resolution before a failure in the middle of the rollup are counted again.
+   *
+   * Only closed time ranges are rolled up, in which no more counters are written into the finest resolution only.
+   * The given time is therefore capped at the rollup delay plus a margin for writes in progress behind the current
+   * time. After that, late facts with timestamps before the watermarks of all coarser resolutions are added into all
+   * resolutions, see {@link #addWithRollup(List)}.
+   *
+   * @param endTs rolls up facts with timestamps smaller than this time, in seconds
+   * @return number of facts written into coarser resolutions
+   */
+  public int rollup(long endTs) {
+    Preconditions.checkState(rollupEnabled, "Rollup is not enabled for the cube");
+    long closedTs = currentTimeSeconds() - rollupDelaySeconds - ROLLUP_WRITE_MARGIN_SECONDS;
+    // Align to the finest resolution, so that a data point in the finest resolution is rolled up all at once
+    long rollupEndTs = Math.min(endTs, closedTs) / finestResolution * finestResolution;
+
+    // Claim the time ranges to roll up, grouping the resolutions by their watermarks, so that each time range in the
+    // finest resolution is scanned once
+    Map<Long, List<Integer>> resolutionsToRollup = Maps.newTreeMap();
+    for (Map.Entry<Integer, FactTable> entry : resolutionToFactTable.entrySet()) {
+      if (entry.getKey() == finestResolution) {
+        continue;
+      }
+      FactTable table = entry.getValue();
+      Long watermark = table.getRollupWatermark();
+      // Nothing is written since rollup is enabled if the watermark is not set
+      if (watermark == null || watermark >= rollupEndTs) {
+        continue;
+      }
+      Long claim = table.getRollupClaim();
+      if (claim != null && claim > watermark && rollupEndTs - claim < ROLLUP_CLAIM_TIMEOUT_SECONDS) {
+        // Being rolled up by another instance
+        continue;
+      }
+      if (!table.swapRollupClaim(claim, rollupEndTs)) {
+        // Claimed by another instance concurrently
+        continue;
+      }
+      List<Integer> resolutions = resolutionsToRollup.get(watermark);
+      if (resolutions == null) {
+        resolutions = Lists.newArrayList();
+        resolutionsToRollup.put(watermark, resolutions);
+      }
+      resolutions.add(entry.getKey());
+    }
+
+    int rolledUp = 0;
+    Set<Integer> failedResolutions = Sets.newHashSet();
+    try {
+      for (Map.Entry<Long, List<Integer>> entry : resolutionsToRollup.entrySet()) {
+        try {
+          rolledUp += rollup(entry.getKey(), rollupEndTs - 1, entry.getValue(), failedResolutions);
+        } catch (Exception e) {
+          LOG.warn("Failed to roll up metrics from {} to {}", entry.getKey(), rollupEndTs, e);
+          failedResolutions.addAll(entry.getValue());
+        }
+      }
+    } finally {
+      for (Map.Entry<Long, List<Integer>> entry : resolutionsToRollup.entrySet()) {
+        for (int resolution : entry.getValue()) {
+          FactTable table = resolutionToFactTable.get(resolution);
+          if (failedResolutions.contains(resolution)) {
+            table.swapRollupClaim(rollupEndTs, entry.getKey());
+          } else if (!table.swapRollupWatermark(entry.getKey(), rollupEndTs)) {
+            LOG.warn("Rollup watermark of resolution {} was changed concurrently, which means the rollup up to {} " +
+                       "was considered abandoned and taken over by another instance", resolution, rollupEndTs);
+          }
+        }
+      }
+    }
+
+    try {
+      rolledUp += rollupLateFacts();
+    } catch (Exception e) {
+      LOG.warn("Failed to roll up late metrics", e);
+      incrementMetric("cube.rollup.late.failure.count", 1);
+    }
+
+    incrementMetric("cube.rollup.request.count", 1);
+    incrementMetric("cube.rollup.failure.count", failedResolutions.size());
+    incrementMetric("cube.rollup.tsFact.added.count", rolledUp);
+    return rolledUp;
+  }
+
+  /**
+   * Rolls up the counters in the finest resolution in the given time range into the given resolutions. Resolutions
+   * that fail to be written are added to the given set, and are not written anymore.
+   */
+  private int rollup(long startTs, long endTs, List<Integer> resolutions, Set<Integer> failedResolutions) {
+    FactTable finestTable = resolutionToFactTable.get(finestResolution);
+    // Aggregations with the same dimensions are stored with the same keys, which must be scanned only once
+    Set<List<String>> scannedDimensions = Sets.newHashSet();
+    Map<String, Boolean> isGauge = Maps.newHashMap();
+    List<Fact> toWrite = Lists.newArrayList();
+    int rolledUp = 0;
+    for (Aggregation agg : aggregations.values()) {
+      if (!scannedDimensions.add(agg.getDimensionNames())) {
+        continue;
+      }
+      List<DimensionValue> dimensionValues = Lists.newArrayList();
+      for (String dimensionName : agg.getDimensionNames()) {
+        dimensionValues.add(new DimensionValue(dimensionName, null));
+      }
+
+      FactScanner scanner = finestTable.scan(new FactScan(startTs, endTs, ImmutableList.<String>of(),
+                                                          dimensionValues));
+      try {
+        while (scanner.hasNext()) {
+          FactScanResult result = scanner.next();
+          Boolean gauge = isGauge.get(result.getMeasureName());
+          if (gauge == null) {
+            gauge = finestTable.isGaugeMeasure(result.getMeasureName());
+            isGauge.put(result.getMeasureName(), gauge);
+          }
+          // Gauges are always written into all resolutions
+          if (gauge) {
+            continue;
+          }
+          for (TimeValue timeValue : result) {
+            // Timestamps are rounded to the coarser resolution and the values are added up when written
+            toWrite.add(new Fact(timeValue.getTimestamp(), result.getDimensionValues(),
+                                 new Measurement(result.getMeasureName(), MeasureType.COUNTER, timeValue.getValue())));
+          }
+          if (toWrite.size() >= ROLLUP_BATCH_SIZE) {
+            rolledUp += writeRollup(toWrite, resolutions, failedResolutions);
+          }
+        }
+      } finally {
+        scanner.close();
+      }
+    }
+    rolledUp += writeRollup(toWrite, resolutions, failedResolutions);
+    return rolledUp;
+  }
+
+  /**
+   * Adds the late facts with timestamps before the rollup watermarks of all coarser resolutions into all resolutions,
+   * and subtracts them from the late facts. The late facts are claimed first, so that concurrent calls never add
+   * them twice. Late facts after a watermark are left for a later call, since the time range they belong to is not
+   * rolled up yet.
+   *
+   * @return number of facts written into all resolutions
+   */
+  private int rollupLateFacts() {
+    FactTable finestTable = resolutionToFactTable.get(finestResolution);
+    long endTs = Long.MAX_VALUE;
+    for (Map.Entry<Integer, FactTable> entry : resolutionToFactTable.entrySet()) {
+      if (entry.getKey() != finestResolution) {
+        Long watermark = entry.getValue().getRollupWatermark();
+        if (watermark == null) {
+          // Nothing is written since rollup is enabled
+          return 0;
+        }
+        endTs = Math.min(endTs, watermark);
+      }
+    }
+    if (endTs <= 0) {
+      return 0;
+    }
+
+    long currentTs = currentTimeSeconds();
+    Long claim = finestTable.getLateFactsClaim();
+    if (claim != null && claim > currentTs) {
+      // Being rolled up by another instance
+      return 0;
+    }
+    long claimTs = currentTs + ROLLUP_CLAIM_TIMEOUT_SECONDS;
+    if (!finestTable.swapLateFactsClaim(claim, claimTs)) {
+      // Claimed by another instance concurrently
+      return 0;
+    }
+
+    int rolledUp = 0;
+    try {
+      // Aggregations with the same dimensions are stored with the same keys, which must be scanned only once
+      Set<List<String>> scannedDimensions = Sets.newHashSet();
+      List<Fact> toWrite = Lists.newArrayList();
+      List<Fact> toSubtract = Lists.newArrayList();
+      for (Aggregation agg : aggregations.values()) {
+        if (!scannedDimensions.add(agg.getDimensionNames())) {
+          continue;
+        }
+        List<DimensionValue> dimensionValues = Lists.newArrayList();
+        for (String dimensionName : agg.getDimensionNames()) {
+          dimensionValues.add(new DimensionValue(dimensionName, null));
+        }
+
+        FactScanner scanner = finestTable.scanLateFacts(new FactScan(0, endTs - 1, ImmutableList.<String>of(),
+                                                                     dimensionValues));
+        try {
+          while (scanner.hasNext()) {
+            FactScanResult result = scanner.next();
+            for (TimeValue timeValue : result) {
+              // Late facts that were subtracted already are left as zero
+              if (timeValue.getValue() == 0) {
+                continue;
+              }
+              toWrite.add(new Fact(timeValue.getTimestamp(), result.getDimensionValues(),
+                                   new Measurement(result.getMeasureName(), MeasureType.COUNTER,
+                                                   timeValue.getValue())));
+              toSubtract.add(new Fact(timeValue.getTimestamp(), result.getDimensionValues(),
+                                      new Measurement(result.getMeasureName(), MeasureType.COUNTER,
+                                                      -timeValue.getValue())));
+            }
+            if (toWrite.size() >= ROLLUP_BATCH_SIZE) {
+              rolledUp += writeLateFacts(toWrite, toSubtract);
+            }
+          }
+        } finally {
+          scanner.close();
+        }
+      }
+      rolledUp += writeLateFacts(toWrite, toSubtract);
+    } finally {
+      finestTable.swapLateFactsClaim(claimTs, currentTs);
+    }
+    incrementMetric("cube.rollup.late.tsFact.added.count", rolledUp);
+    return rolledUp;
+  }
+
+  /**
+   * Writes the given late facts into all resolutions, and subtracts them from the late facts. Since the tables are not
+   * transactional, a failure in the middle leaves the facts written into some resolutions, which are written again
+   * by the next rollup.
+   */
+  private int writeLateFacts(List<Fact> facts, List<Fact> subtractions) {
+    if (facts.isEmpty()) {
+      return 0;
+    }
+    for (FactTable table : resolutionToFactTable.values()) {
+      table.add(facts);
+    }
+    resolutionToFactTable.get(finestResolution).addLateFacts(subtractions);
+    int written = facts.size() * resolutionToFactTable.size();
+    facts.clear();
+    subtractions.clear();
+    return written;
+  }
+
+  private int writeRollup(List<Fact> facts, List<Integer> resolutions, Set<Integer> failedResolutions) {
+    if (facts.isEmpty()) {
+      return 0;
+    }
+    int written = 0;
+    for (int resolution : resolutions) {
+      if (failedResolutions.contains(resolution)) {
+        continue;
+      }
+      try {
+        resolutionToFactTable.get(resolution).add(facts);
+        written += facts.size();
+      } catch (Exception e) {
+        LOG.warn("Failed to write rolled up metrics into resolution {}", resolution, e);
+        failedResolutions.add(resolution);
+      }
+    }
+    facts.clear();
+    return written;
   }
 
   @Override
@@ -209,8 +672,7 @@ public class DefaultCube implements Cube, MeteredDataset {
 
     // 3) execute scan query
     FactTable table = resolutionToFactTable.get(query.getResolution());
-    FactScanner scanner = table.scan(scan);
-    Table<Map<String, String>, String, Map<Long, Long>> resultMap = getTimeSeries(query, scanner);
+    Table<Map<String, String>, String, TimeValueAggregator> resultMap = scan(query, table, scan);
 
     incrementMetric("cube.query.request.success.count", 1);
     incrementMetric("cube.query.result.size", resultMap.size());
@@ -329,100 +791,146 @@ public class DefaultCube implements Cube, MeteredDataset {
     return currentBest;
   }
 
-  private Table<Map<String, String>, String, Map<Long, Long>> getTimeSeries(CubeQuery query, FactScanner scanner) {
-    // {dimension values, measure} -> {time -> value}s
-    Table<Map<String, String>, String, Map<Long, Long>> result = HashBasedTable.create();
-
-    int count = 0;
-    while (scanner.hasNext()) {
-      FactScanResult next = scanner.next();
-      incrementMetric("cube.query.scan.records.count", 1);
-
-      boolean skip = false;
-      // using tree map, as we are using it as a key for a map
-      Map<String, String> seriesDimensions = Maps.newTreeMap();
-      for (String dimensionName : query.getGroupByDimensions()) {
-        // todo: use Map<String, String> instead of List<DimensionValue> into a String, String, everywhere
-        for (DimensionValue dimensionValue : next.getDimensionValues()) {
-          if (dimensionName.equals(dimensionValue.getName())) {
-            if (dimensionValue.getValue() == null) {
-              // Currently, we do NOT return null as grouped by value.
-              // Depending on whether dimension is required or not the records with null value in it may or may not be
-              // in aggregation. At this moment, the choosing of the aggregation for query doesn't look at this, so
-              // potentially null may or may not be included in results, depending on the aggregation selected
-              // querying. We don't want to produce inconsistent results varying due to different aggregations selected,
-              // so don't return nulls in any of those cases.
-              skip = true;
-              continue;
-            }
-            seriesDimensions.put(dimensionName, dimensionValue.getValue());
-            break;
+  /**
+   * Executes the given scan, splitting it into parallel scans by time range if query parallelism is enabled.
+   */
+  private Table<Map<String, String>, String, TimeValueAggregator> scan(final CubeQuery query, final FactTable table,
+                                                                        FactScan scan) {
+    List<FactScan> scans = queryParallelism > 1 ? table.splitScan(scan, queryParallelism) : ImmutableList.of(scan);
+    // The limit on the number of records to scan is shared by all scans
+    final AtomicInteger scanned = new AtomicInteger();
+    if (scans.size() == 1) {
+      return getTimeSeries(query, table.scan(scan), scanned);
+    }
+
+    incrementMetric("cube.query.parallel.scan.count", scans.size());
+    ExecutorService executor = getQueryExecutor();
+    List<Future<Table<Map<String, String>, String, TimeValueAggregator>>> futures = Lists.newArrayList();
+    try {
+      // Scan the first time range in the current thread
+      for (final FactScan partialScan : scans.subList(1, scans.size())) {
+        futures.add(executor.submit(new Callable<Table<Map<String, String>, String, TimeValueAggregator>>() {
+          @Override
+          public Table<Map<String, String>, String, TimeValueAggregator> call() throws Exception {
+            return getTimeSeries(query, table.scan(partialScan), scanned);
+          }
+        }));
+      }
+      Table<Map<String, String>, String, TimeValueAggregator> result =
+        getTimeSeries(query, table.scan(scans.get(0)), scanned);
+
+      // Merge the partial results in time order. Since the scans have disjoint time ranges, it is just an union.
+      for (Future<Table<Map<String, String>, String, TimeValueAggregator>> future : futures) {
+        for (Table.Cell<Map<String, String>, String, TimeValueAggregator> cell : future.get().cellSet()) {
+          TimeValueAggregator timeValues = result.get(cell.getRowKey(), cell.getColumnKey());
+          if (timeValues == null) {
+            result.put(cell.getRowKey(), cell.getColumnKey(), cell.getValue());
+          } else {
+            timeValues.addAll(cell.getValue());
           }
         }
       }
-
-      if (skip) {
-        incrementMetric("cube.query.scan.skipped.count", 1);
-        continue;
+      return result;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      for (Future<?> future : futures) {
+        future.cancel(true);
       }
+    }
+  }
+
+  private synchronized ExecutorService getQueryExecutor() {
+    if (queryExecutor == null) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(queryParallelism, queryParallelism, 60L, TimeUnit.SECONDS,
+                                                           new LinkedBlockingQueue<Runnable>(),
+                                                           Threads.createDaemonThreadFactory("cube-query-%d"));
+      // Release the threads when there is no query
+      executor.allowCoreThreadTimeOut(true);
+      queryExecutor = executor;
+    }
+    return queryExecutor;
+  }
 
-      for (TimeValue timeValue : next) {
-        Map<Long, Long> timeValues = result.get(seriesDimensions, next.getMeasureName());
-        if (timeValues == null) {
-          result.put(seriesDimensions, next.getMeasureName(), Maps.<Long, Long>newHashMap());
+  private Table<Map<String, String>, String, TimeValueAggregator> getTimeSeries(CubeQuery query, FactScanner scanner,
+                                                                                AtomicInteger scanned) {
+    // {dimension values, measure} -> {time -> value}s
+    Table<Map<String, String>, String, TimeValueAggregator> result = HashBasedTable.create();
+
+    try {
+      while (scanner.hasNext()) {
+        FactScanResult next = scanner.next();
+        incrementMetric("cube.query.scan.records.count", 1);
+
+        boolean skip = false;
+        // using tree map, as we are using it as a key for a map
+        Map<String, String> seriesDimensions = Maps.newTreeMap();
+        for (String dimensionName : query.getGroupByDimensions()) {
+          // todo: use Map<String, String> instead of List<DimensionValue> into a String, String, everywhere
+          for (DimensionValue dimensionValue : next.getDimensionValues()) {
+            if (dimensionName.equals(dimensionValue.getName())) {
+              if (dimensionValue.getValue() == null) {
+                // Currently, we do NOT return null as grouped by value.
+                // Depending on whether dimension is required or not the records with null value in it may or may
+                // not be in aggregation. At this moment, the choosing of the aggregation for query doesn't look at
+                // this, so potentially null may or may not be included in results, depending on the aggregation
+                // selected querying. We don't want to produce inconsistent results varying due to different
+                // aggregations selected, so don't return nulls in any of those cases.
+                skip = true;
+                continue;
+              }
+              seriesDimensions.put(dimensionName, dimensionValue.getValue());
+              break;
+            }
+          }
         }
 
-        AggregationFunction function = query.getMeasurements().get(next.getMeasureName());
-        if (AggregationFunction.SUM == function) {
-          Long value =  result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
-          value = value == null ? 0 : value;
-          value += timeValue.getValue();
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
-        } else if (AggregationFunction.MAX == function) {
-          Long value = result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
-          value = value != null && value > timeValue.getValue() ? value : timeValue.getValue();
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
-        } else if (AggregationFunction.MIN == function) {
-          Long value =  result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
-          value = value != null && value < timeValue.getValue() ? value : timeValue.getValue();
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
-        } else if (AggregationFunction.LATEST == function) {
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), timeValue.getValue());
-        } else {
-          // should never happen: developer error
-          throw new RuntimeException("Unknown MeasureType: " + function);
+        if (skip) {
+          incrementMetric("cube.query.scan.skipped.count", 1);
+          continue;
+        }
+
+        TimeValueAggregator timeValues = result.get(seriesDimensions, next.getMeasureName());
+        for (TimeValue timeValue : next) {
+          if (timeValues == null) {
+            timeValues = new TimeValueAggregator(query.getMeasurements().get(next.getMeasureName()));
+            result.put(seriesDimensions, next.getMeasureName(), timeValues);
+          }
+          timeValues.add(timeValue.getTimestamp(), timeValue.getValue());
+        }
+        if (scanned.incrementAndGet() >= MAX_RECORDS_TO_SCAN) {
+          break;
         }
       }
-      if (++count >= MAX_RECORDS_TO_SCAN) {
-        break;
-      }
+    } finally {
+      scanner.close();
     }
     return result;
   }
 
   private Collection<TimeSeries> convertToQueryResult(CubeQuery query,
                                                       Table<Map<String, String>, String,
-                                                        Map<Long, Long>> resultTable) {
+                                                        TimeValueAggregator> resultTable) {
 
     List<TimeSeries> result = Lists.newArrayList();
     // iterating each groupValue dimensions
-    for (Map.Entry<Map<String, String>, Map<String, Map<Long, Long>>> row : resultTable.rowMap().entrySet()) {
+    for (Map.Entry<Map<String, String>, Map<String, TimeValueAggregator>> row : resultTable.rowMap().entrySet()) {
       // iterating each measure
-      for (Map.Entry<String, Map<Long, Long>> measureEntry : row.getValue().entrySet()) {
-        // generating time series for a grouping and a measure
-        int count = 0;
-        List<TimeValue> timeValues = Lists.newArrayList();
-        for (Map.Entry<Long, Long> timeValue : measureEntry.getValue().entrySet()) {
-          timeValues.add(new TimeValue(timeValue.getKey(), timeValue.getValue()));
-        }
-        Collections.sort(timeValues);
-        PeekingIterator<TimeValue> timeValueItor = Iterators.peekingIterator(
-          new TimeSeriesInterpolator(timeValues, query.getInterpolator(), query.getResolution()).iterator());
-        List<TimeValue> resultTimeValues = Lists.newArrayList();
-        while (timeValueItor.hasNext()) {
-          TimeValue timeValue = timeValueItor.next();
-          resultTimeValues.add(new TimeValue(timeValue.getTimestamp(), timeValue.getValue()));
-          if (++count >= query.getLimit()) {
+      for (Map.Entry<String, TimeValueAggregator> measureEntry : row.getValue().entrySet()) {
+        // generating time series for a grouping and a measure.
+        // At least one value is returned for a non-empty time series, even if the limit is not positive.
+        int limit = Math.max(1, query.getLimit());
+        // Each actual data point results in at least one time value after interpolation, hence only the first
+        // "limit" data points are needed.
+        List<TimeValue> timeValues = measureEntry.getValue().getTimeValues(limit);
+        List<TimeValue> resultTimeValues = Lists.newArrayListWithCapacity(timeValues.size());
+        for (TimeValue timeValue : new TimeSeriesInterpolator(timeValues, query.getInterpolator(),
+                                                              query.getResolution())) {
+          resultTimeValues.add(timeValue);
+          if (resultTimeValues.size() >= limit) {
             break;
           }
         }
@@ -439,6 +947,11 @@ public class DefaultCube implements Cube, MeteredDataset {
 
   @Override
   public void close() throws IOException {
+    synchronized (this) {
+      if (queryExecutor != null) {
+        queryExecutor.shutdownNow();
+      }
+    }
     for (FactTable factTable : resolutionToFactTable.values()) {
       factTable.close();
     }
@@ -0,0 +1,163 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.cube;
+
+import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
+import co.cask.cdap.api.dataset.lib.cube.TimeValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aggregates values of a time series by timestamp with an {@link AggregationFunction}. Timestamps and values are
+ * kept in an open-addressing hash table of primitive longs, so that no boxing happens while aggregating.
+ * This class is not thread safe.
+ */
+final class TimeValueAggregator {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final AggregationFunction function;
+  private long[] timestamps;
+  private long[] values;
+  private boolean[] used;
+  private int size;
+
+  TimeValueAggregator(AggregationFunction function) {
+    this.function = function;
+    this.timestamps = new long[INITIAL_CAPACITY];
+    this.values = new long[INITIAL_CAPACITY];
+    this.used = new boolean[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Aggregates the given value into the value of the given timestamp.
+   */
+  void add(long timestamp, long value) {
+    int slot = findSlot(timestamps, used, timestamp);
+    if (used[slot]) {
+      values[slot] = aggregate(values[slot], value);
+      return;
+    }
+
+    timestamps[slot] = timestamp;
+    values[slot] = value;
+    used[slot] = true;
+    // Keep the load factor at most 0.5
+    if (++size * 2 > used.length) {
+      resize();
+    }
+  }
+
+  /**
+   * Aggregates all values in the given {@link TimeValueAggregator} into this one. For
+   * {@link AggregationFunction#LATEST}, values in the given aggregator are considered as later ones.
+   */
+  void addAll(TimeValueAggregator other) {
+    for (int i = 0; i < other.used.length; i++) {
+      if (other.used[i]) {
+        add(other.timestamps[i], other.values[i]);
+      }
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the earliest time values in ascending order of timestamp.
+   *
+   * @param limit maximum number of time values to return
+   */
+  List<TimeValue> getTimeValues(int limit) {
+    long[] sortedTimestamps = new long[size];
+    int idx = 0;
+    for (int i = 0; i < used.length; i++) {
+      if (used[i]) {
+        sortedTimestamps[idx++] = timestamps[i];
+      }
+    }
+    Arrays.sort(sortedTimestamps);
+
+    int count = Math.min(limit, size);
+    List<TimeValue> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      long timestamp = sortedTimestamps[i];
+      result.add(new TimeValue(timestamp, values[findSlot(timestamps, used, timestamp)]));
+    }
+    return result;
+  }
+
+  private long aggregate(long current, long value) {
+    switch (function) {
+      case SUM:
+        return current + value;
+      case MAX:
+        return Math.max(current, value);
+      case MIN:
+        return Math.min(current, value);
+      case LATEST:
+        return value;
+      default:
+        // should never happen: developer error
+        throw new RuntimeException("Unknown MeasureType: " + function);
+    }
+  }
+
+  private void resize() {
+    long[] oldTimestamps = timestamps;
+    long[] oldValues = values;
+    boolean[] oldUsed = used;
+
+    timestamps = new long[oldUsed.length * 2];
+    values = new long[oldUsed.length * 2];
+    used = new boolean[oldUsed.length * 2];
+    for (int i = 0; i < oldUsed.length; i++) {
+      if (oldUsed[i]) {
+        int slot = findSlot(timestamps, used, oldTimestamps[i]);
+        timestamps[slot] = oldTimestamps[i];
+        values[slot] = oldValues[i];
+        used[slot] = true;
+      }
+    }
+  }
+
+  /**
+   * Returns the slot that contains the given timestamp, or the empty slot for inserting it.
+   */
+  private static int findSlot(long[] timestamps, boolean[] used, long timestamp) {
+    int mask = used.length - 1;
+    int slot = hash(timestamp) & mask;
+    while (used[slot] && timestamps[slot] != timestamp) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private static int hash(long timestamp) {
+    // Timestamps are multiples of the resolution, so mix the bits to spread them (murmur3 finalizer)
+    long h = timestamp;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+}
@@ -48,18 +48,24 @@ import co.cask.cdap.api.dataset.lib.Partitioning.FieldType;
 import co.cask.cdap.api.dataset.lib.partitioned.PartitionKeyCodec;
 import co.cask.cdap.api.dataset.table.Put;
 import co.cask.cdap.api.dataset.table.Row;
+import co.cask.cdap.api.dataset.table.Scan;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Locations;
+import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.data2.dataset2.lib.file.FileSetDataset;
+import co.cask.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
 import co.cask.cdap.explore.client.ExploreFacade;
 import co.cask.cdap.proto.id.DatasetId;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.inject.Provider;
@@ -72,6 +78,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -605,7 +612,11 @@ public class PartitionedFileSetDataset extends AbstractDataset implements Partit
   private void getPartitions(@Nullable PartitionFilter filter, PartitionConsumer consumer, boolean decodeMetadata,
                              @Nullable byte[] startKey, @Nullable byte[] endKey, long limit) {
     long count = 0L;
-    try (Scanner scanner = partitionsTable.scan(startKey, endKey)) {
+    // Push the conditions that can't be expressed by the start and stop keys down to the table with a fuzzy filter,
+    // so that non-matching partitions are skipped by the table rather than returned and filtered here
+    FuzzyRowFilter fuzzyRowFilter = generateFuzzyRowFilter(filter, partitioning);
+    Scan scan = fuzzyRowFilter == null ? new Scan(startKey, endKey) : new Scan(startKey, endKey, fuzzyRowFilter);
+    try (Scanner scanner = partitionsTable.scan(scan)) {
       while (count < limit) {
         Row row = scanner.next();
         if (row == null) {
@@ -1130,6 +1141,78 @@ public class PartitionedFileSetDataset extends AbstractDataset implements Partit
     return stopKey;
   }
 
+  /**
+   * Generates a {@link FuzzyRowFilter} that matches the row keys of partitions satisfying the single value
+   * conditions of the given filter. A filter is only generated if there is a single value condition on a field
+   * that follows a field without such condition, because otherwise the start and stop keys already limit the scan
+   * to the matching rows. Fields without single value condition are matched as wildcards, which is only possible
+   * if they have a fixed length; hence, no condition after a {@link FieldType#STRING} field without single value
+   * condition is included.
+   *
+   * @return the {@link FuzzyRowFilter} or {@code null} if it would not reduce the rows scanned
+   */
+  @Nullable
+  @VisibleForTesting
+  static FuzzyRowFilter generateFuzzyRowFilter(@Nullable PartitionFilter filter, Partitioning partitioning) {
+    if (filter == null) {
+      return null;
+    }
+    ByteArrayDataOutput keyBytes = ByteStreams.newDataOutput();
+    ByteArrayDataOutput maskBytes = ByteStreams.newDataOutput();
+    int length = 0;
+    // length of the fuzzy key up to the end of the last field with single value condition
+    int fixedLength = 0;
+    boolean hasWildcard = false;
+    boolean useful = false;
+
+    Iterator<Map.Entry<String, FieldType>> iterator = partitioning.getFields().entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, FieldType> entry = iterator.next();
+      FieldType fieldType = entry.getValue();
+      PartitionFilter.Condition<? extends Comparable> condition = filter.getCondition(entry.getKey());
+
+      if (condition != null && condition.isSingleValue()) {
+        try {
+          fieldType.validate(condition.getValue());
+        } catch (IllegalArgumentException e) {
+          // the filter can't match any partition, which is handled when matching the filter against the row keys
+          return null;
+        }
+        byte[] bytes = FieldTypes.toBytes(condition.getValue(), fieldType);
+        keyBytes.write(bytes);
+        maskBytes.write(new byte[bytes.length]);
+        length += bytes.length;
+        fixedLength = length;
+        useful = useful || hasWildcard;
+      } else if (fieldType == FieldType.INT || fieldType == FieldType.LONG) {
+        int size = fieldType == FieldType.INT ? Bytes.SIZEOF_INT : Bytes.SIZEOF_LONG;
+        byte[] mask = new byte[size];
+        Arrays.fill(mask, (byte) 1);
+        keyBytes.write(new byte[size]);
+        maskBytes.write(mask);
+        length += size;
+        hasWildcard = true;
+      } else {
+        // the positions of the following fields depend on the length of this field
+        break;
+      }
+
+      if (iterator.hasNext()) {
+        // the \0 separator between fields
+        keyBytes.write(0);
+        maskBytes.write(0);
+        length++;
+      }
+    }
+
+    if (!useful) {
+      return null;
+    }
+    byte[] fuzzyKey = Arrays.copyOf(keyBytes.toByteArray(), fixedLength);
+    byte[] fuzzyMask = Arrays.copyOf(maskBytes.toByteArray(), fixedLength);
+    return new FuzzyRowFilter(ImmutableList.of(ImmutablePair.of(fuzzyKey, fuzzyMask)));
+  }
+
   @VisibleForTesting
   static PartitionKey parseRowKey(byte[] rowKey, Partitioning partitioning) {
     PartitionKey.Builder builder = PartitionKey.builder();
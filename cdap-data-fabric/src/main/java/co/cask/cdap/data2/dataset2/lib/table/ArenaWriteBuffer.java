@@ -0,0 +1,658 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Maps;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link WriteBuffer} that copies row, column and value bytes into large, reusable memory chunks (an arena),
+ * either on-heap or off-heap, instead of keeping one object graph per cell.
+ * <p>
+ * Each cell is stored as a record in the arena:
+ *
+ * <pre>
+ * [row length (int)][row][column length (int)][column][type (byte)][value]
+ * </pre>
+ *
+ * where value is {@code [length (int)][bytes]} for a put, with length {@code -1} for a delete, and
+ * {@code [amount (long)]} for an increment. Cells are located through an open-addressing hash table of primitive
+ * cell ids, so that writes to an existing cell are merged (in place when the value size does not change) without
+ * allocating. The sorted order of cells is maintained lazily; it is only computed, incrementally, when an ordered read
+ * (whole row, scan, transaction changes or persist) is performed. Scan and persist walk the sorted cells directly,
+ * one row at a time, so that maps of {@link Update} are only created for the row being read or persisted.
+ * <p>
+ * The first chunk and a bounded cell index are retained across transactions; the rest is released on
+ * {@link #clear()}, so that an unusually large transaction does not pin its memory. Everything is released when
+ * the buffer is closed.
+ */
+final class ArenaWriteBuffer extends WriteBuffer {
+
+  @VisibleForTesting
+  static final int CHUNK_SIZE = 1 << 20;
+
+  private static final byte TYPE_PUT = 0;
+  private static final byte TYPE_INCREMENT = 1;
+  private static final int NULL_VALUE_LENGTH = -1;
+  private static final int INITIAL_CAPACITY = 256;
+  // Cell index arrays larger than this are not retained across transactions
+  @VisibleForTesting
+  static final int MAX_RETAINED_CAPACITY = 1 << 14;
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+
+  private final boolean direct;
+  private final List<ByteBuffer> chunks;
+  private ByteBuffer currentChunk;
+
+  // cell id -> address of the record of the cell. The address is (chunk index << 32 | offset in chunk)
+  private long[] cellAddresses;
+  // cell id -> hash of the (row, column) of the cell
+  private int[] cellHashes;
+  // open-addressing hash table. Each slot holds (cell id + 1), or 0 if the slot is empty
+  private int[] hashSlots;
+  // cell ids. The first sortedCount entries are sorted by (row, column);
+  // cells with id >= sortedCount are not yet in sorted order.
+  private int[] sortedCells;
+  private int cellCount;
+  private int sortedCount;
+  private int[] sortBuffer;
+  // Incremented whenever cells are added or removed, so that row iterators know when to re-position themselves
+  private int modCount;
+
+  /**
+   * Constructor.
+   *
+   * @param direct {@code true} to allocate the arena off-heap, {@code false} to allocate it on-heap
+   */
+  ArenaWriteBuffer(boolean direct) {
+    this.direct = direct;
+    this.chunks = new ArrayList<>();
+    this.currentChunk = allocateChunk(CHUNK_SIZE);
+    this.cellAddresses = new long[INITIAL_CAPACITY];
+    this.cellHashes = new int[INITIAL_CAPACITY];
+    this.hashSlots = new int[INITIAL_CAPACITY * 2];
+    this.sortedCells = new int[INITIAL_CAPACITY];
+    this.sortBuffer = new int[0];
+  }
+
+  @Override
+  boolean isEmpty() {
+    return cellCount == 0;
+  }
+
+  @Override
+  void clear() {
+    // Shrink the cell index if it was grown by an unusually large transaction, same as for the chunks below
+    if (cellAddresses.length > MAX_RETAINED_CAPACITY) {
+      cellAddresses = new long[INITIAL_CAPACITY];
+      cellHashes = new int[INITIAL_CAPACITY];
+      hashSlots = new int[INITIAL_CAPACITY * 2];
+      sortedCells = new int[INITIAL_CAPACITY];
+    } else if (cellCount > 0) {
+      Arrays.fill(hashSlots, 0);
+    }
+    if (sortBuffer.length > MAX_RETAINED_CAPACITY) {
+      sortBuffer = new int[0];
+    }
+    cellCount = 0;
+    sortedCount = 0;
+    modCount++;
+
+    // Only keep the first chunk to avoid holding on to memory used by an unusually large transaction
+    ByteBuffer firstChunk = chunks.get(0);
+    chunks.clear();
+    chunks.add(firstChunk);
+    firstChunk.clear();
+    currentChunk = firstChunk;
+  }
+
+  @Override
+  boolean containsRow(byte[] row) {
+    ensureSorted();
+    int idx = lowerBound(row);
+    return idx < cellCount && compareRow(cellAddresses[sortedCells[idx]], row) == 0;
+  }
+
+  @Nullable
+  @Override
+  NavigableMap<byte[], Update> getRow(byte[] row, @Nullable byte[][] columns) {
+    NavigableMap<byte[], Update> result = null;
+    if (columns != null) {
+      // Point lookups through the hash table, which doesn't require sorting
+      for (byte[] column : columns) {
+        int cellId = findCell(row, column, hash(row, column));
+        if (cellId >= 0) {
+          if (result == null) {
+            result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+          }
+          result.put(column, toUpdate(cellAddresses[cellId]));
+        }
+      }
+      return result;
+    }
+
+    ensureSorted();
+    for (int idx = lowerBound(row); idx < cellCount; idx++) {
+      long address = cellAddresses[sortedCells[idx]];
+      if (compareRow(address, row) != 0) {
+        break;
+      }
+      if (result == null) {
+        result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      }
+      result.put(readColumn(address), toUpdate(address));
+    }
+    return result;
+  }
+
+  @Override
+  void put(byte[] row, byte[][] columns, byte[][] values) {
+    for (int i = 0; i < columns.length; i++) {
+      byte[] column = columns[i];
+      byte[] value = values[i];
+      int hash = hash(row, column);
+      int cellId = findCell(row, column, hash);
+      if (cellId < 0) {
+        addCell(hash, appendPut(row, column, value));
+        continue;
+      }
+
+      long address = cellAddresses[cellId];
+      int valueLength = value == null ? NULL_VALUE_LENGTH : value.length;
+      ByteBuffer chunk = chunk(address);
+      int valueOffset = valueOffset(chunk, address);
+      if (chunk.get(valueOffset - 1) == TYPE_PUT && chunk.getInt(valueOffset) == valueLength) {
+        // Same size, overwrite in place
+        if (value != null) {
+          writeBytes(chunk, valueOffset + Bytes.SIZEOF_INT, value);
+        }
+      } else {
+        cellAddresses[cellId] = appendPut(row, column, value);
+      }
+    }
+  }
+
+  @Override
+  void increment(byte[] row, byte[][] columns, long[] amounts) {
+    for (int i = 0; i < columns.length; i++) {
+      byte[] column = columns[i];
+      int hash = hash(row, column);
+      int cellId = findCell(row, column, hash);
+      if (cellId < 0) {
+        addCell(hash, appendIncrement(row, column, amounts[i]));
+        continue;
+      }
+
+      // Merge with the existing update, following the rules in Updates.mergeUpdates
+      long address = cellAddresses[cellId];
+      ByteBuffer chunk = chunk(address);
+      int valueOffset = valueOffset(chunk, address);
+      if (chunk.get(valueOffset - 1) == TYPE_INCREMENT) {
+        chunk.putLong(valueOffset, chunk.getLong(valueOffset) + amounts[i]);
+        continue;
+      }
+      int valueLength = chunk.getInt(valueOffset);
+      if (valueLength == NULL_VALUE_LENGTH) {
+        cellAddresses[cellId] = appendPut(row, column, Bytes.toBytes(amounts[i]));
+      } else if (valueLength == Bytes.SIZEOF_LONG) {
+        int longOffset = valueOffset + Bytes.SIZEOF_INT;
+        chunk.putLong(longOffset, chunk.getLong(longOffset) + amounts[i]);
+      } else {
+        throw new NumberFormatException("Attempted to increment a value that is not convertible to long");
+      }
+    }
+  }
+
+  @Override
+  Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows(@Nullable byte[] startRow,
+                                                                 @Nullable byte[] stopRow) {
+    return new RowIterator(startRow, stopRow);
+  }
+
+  @Override
+  void close() {
+    chunks.clear();
+    currentChunk = null;
+  }
+
+  /**
+   * Returns the number of memory chunks currently allocated by this buffer.
+   */
+  @VisibleForTesting
+  int getChunkCount() {
+    return chunks.size();
+  }
+
+  /**
+   * Returns the number of cells the cell index can hold without growing.
+   */
+  @VisibleForTesting
+  int getCellCapacity() {
+    return cellAddresses.length;
+  }
+
+  private ByteBuffer allocateChunk(int size) {
+    ByteBuffer chunk = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    chunks.add(chunk);
+    return chunk;
+  }
+
+  /**
+   * Reserves space for a record of the given size and returns the address of it. The current chunk position
+   * is at the start of the reserved space when this method returns.
+   */
+  private long reserve(int size) {
+    if (currentChunk.remaining() < size) {
+      currentChunk = allocateChunk(Math.max(CHUNK_SIZE, size));
+    }
+    return ((long) (chunks.size() - 1) << 32) | currentChunk.position();
+  }
+
+  private long appendPut(byte[] row, byte[] column, @Nullable byte[] value) {
+    int valueLength = value == null ? 0 : value.length;
+    long address = reserve(Bytes.SIZEOF_INT * 3 + row.length + column.length + 1 + valueLength);
+    appendKey(row, column, TYPE_PUT);
+    if (value == null) {
+      currentChunk.putInt(NULL_VALUE_LENGTH);
+    } else {
+      currentChunk.putInt(value.length);
+      currentChunk.put(value);
+    }
+    return address;
+  }
+
+  private long appendIncrement(byte[] row, byte[] column, long amount) {
+    long address = reserve(Bytes.SIZEOF_INT * 2 + row.length + column.length + 1 + Bytes.SIZEOF_LONG);
+    appendKey(row, column, TYPE_INCREMENT);
+    currentChunk.putLong(amount);
+    return address;
+  }
+
+  private void appendKey(byte[] row, byte[] column, byte type) {
+    currentChunk.putInt(row.length);
+    currentChunk.put(row);
+    currentChunk.putInt(column.length);
+    currentChunk.put(column);
+    currentChunk.put(type);
+  }
+
+  private ByteBuffer chunk(long address) {
+    return chunks.get((int) (address >>> 32));
+  }
+
+  private static int offset(long address) {
+    return (int) address;
+  }
+
+  /**
+   * Returns the offset of the value part of the record at the given address. The type byte is right before it.
+   */
+  private static int valueOffset(ByteBuffer chunk, long address) {
+    int offset = offset(address);
+    int columnLengthOffset = offset + Bytes.SIZEOF_INT + chunk.getInt(offset);
+    return columnLengthOffset + Bytes.SIZEOF_INT + chunk.getInt(columnLengthOffset) + 1;
+  }
+
+  private byte[] readRow(long address) {
+    ByteBuffer chunk = chunk(address);
+    int offset = offset(address);
+    return readBytes(chunk, offset + Bytes.SIZEOF_INT, chunk.getInt(offset));
+  }
+
+  private byte[] readColumn(long address) {
+    ByteBuffer chunk = chunk(address);
+    int columnLengthOffset = offset(address) + Bytes.SIZEOF_INT + chunk.getInt(offset(address));
+    return readBytes(chunk, columnLengthOffset + Bytes.SIZEOF_INT, chunk.getInt(columnLengthOffset));
+  }
+
+  private Update toUpdate(long address) {
+    ByteBuffer chunk = chunk(address);
+    int valueOffset = valueOffset(chunk, address);
+    if (chunk.get(valueOffset - 1) == TYPE_INCREMENT) {
+      return new IncrementValue(chunk.getLong(valueOffset));
+    }
+    int valueLength = chunk.getInt(valueOffset);
+    return new PutValue(valueLength == NULL_VALUE_LENGTH
+                          ? null : readBytes(chunk, valueOffset + Bytes.SIZEOF_INT, valueLength));
+  }
+
+  private static byte[] readBytes(ByteBuffer chunk, int offset, int length) {
+    byte[] bytes = new byte[length];
+    if (chunk.hasArray()) {
+      System.arraycopy(chunk.array(), chunk.arrayOffset() + offset, bytes, 0, length);
+    } else {
+      // Bulk copy through a duplicate to not alter the position of the chunk
+      ByteBuffer buffer = chunk.duplicate();
+      buffer.position(offset);
+      buffer.get(bytes);
+    }
+    return bytes;
+  }
+
+  private static void writeBytes(ByteBuffer chunk, int offset, byte[] bytes) {
+    if (chunk.hasArray()) {
+      System.arraycopy(bytes, 0, chunk.array(), chunk.arrayOffset() + offset, bytes.length);
+    } else {
+      ByteBuffer buffer = chunk.duplicate();
+      buffer.position(offset);
+      buffer.put(bytes);
+    }
+  }
+
+  /**
+   * Compares bytes in the chunk with the given byte array, using unsigned lexicographical order.
+   */
+  private static int compare(ByteBuffer chunk, int offset, int length, byte[] bytes) {
+    if (chunk.hasArray()) {
+      return Bytes.compareTo(chunk.array(), chunk.arrayOffset() + offset, length, bytes, 0, bytes.length);
+    }
+    int end = Math.min(length, bytes.length);
+    for (int i = 0; i < end; i++) {
+      int a = chunk.get(offset + i) & 0xff;
+      int b = bytes[i] & 0xff;
+      if (a != b) {
+        return a - b;
+      }
+    }
+    return length - bytes.length;
+  }
+
+  /**
+   * Compares bytes in two chunks, using unsigned lexicographical order.
+   */
+  private static int compare(ByteBuffer chunk1, int offset1, int length1,
+                             ByteBuffer chunk2, int offset2, int length2) {
+    if (chunk1.hasArray() && chunk2.hasArray()) {
+      return Bytes.compareTo(chunk1.array(), chunk1.arrayOffset() + offset1, length1,
+                             chunk2.array(), chunk2.arrayOffset() + offset2, length2);
+    }
+    int end = Math.min(length1, length2);
+    for (int i = 0; i < end; i++) {
+      int a = chunk1.get(offset1 + i) & 0xff;
+      int b = chunk2.get(offset2 + i) & 0xff;
+      if (a != b) {
+        return a - b;
+      }
+    }
+    return length1 - length2;
+  }
+
+  /**
+   * Compares the row of the record at the given address with the given row.
+   */
+  private int compareRow(long address, byte[] row) {
+    ByteBuffer chunk = chunk(address);
+    int offset = offset(address);
+    return compare(chunk, offset + Bytes.SIZEOF_INT, chunk.getInt(offset), row);
+  }
+
+  /**
+   * Compares the rows of the records at the given addresses.
+   */
+  private int compareRows(long address1, long address2) {
+    ByteBuffer chunk1 = chunk(address1);
+    ByteBuffer chunk2 = chunk(address2);
+    int offset1 = offset(address1);
+    int offset2 = offset(address2);
+    return compare(chunk1, offset1 + Bytes.SIZEOF_INT, chunk1.getInt(offset1),
+                   chunk2, offset2 + Bytes.SIZEOF_INT, chunk2.getInt(offset2));
+  }
+
+  /**
+   * Compares the (row, column) of the records at the given addresses.
+   */
+  private int compareCells(long address1, long address2) {
+    int cmp = compareRows(address1, address2);
+    if (cmp != 0) {
+      return cmp;
+    }
+    ByteBuffer chunk1 = chunk(address1);
+    ByteBuffer chunk2 = chunk(address2);
+    int columnLengthOffset1 = offset(address1) + Bytes.SIZEOF_INT + chunk1.getInt(offset(address1));
+    int columnLengthOffset2 = offset(address2) + Bytes.SIZEOF_INT + chunk2.getInt(offset(address2));
+    return compare(chunk1, columnLengthOffset1 + Bytes.SIZEOF_INT, chunk1.getInt(columnLengthOffset1),
+                   chunk2, columnLengthOffset2 + Bytes.SIZEOF_INT, chunk2.getInt(columnLengthOffset2));
+  }
+
+  /**
+   * Returns {@code true} if the record at the given address has the given row and column.
+   */
+  private boolean keyEquals(long address, byte[] row, byte[] column) {
+    ByteBuffer chunk = chunk(address);
+    int offset = offset(address);
+    int rowLength = chunk.getInt(offset);
+    if (rowLength != row.length || compare(chunk, offset + Bytes.SIZEOF_INT, rowLength, row) != 0) {
+      return false;
+    }
+    int columnLengthOffset = offset + Bytes.SIZEOF_INT + rowLength;
+    int columnLength = chunk.getInt(columnLengthOffset);
+    return columnLength == column.length
+      && compare(chunk, columnLengthOffset + Bytes.SIZEOF_INT, columnLength, column) == 0;
+  }
+
+  private static int hash(byte[] row, byte[] column) {
+    int h = Arrays.hashCode(row) * 31 + Arrays.hashCode(column);
+    // Mix the bits (murmur3 finalizer) since Arrays.hashCode of similar keys are clustered,
+    // which is bad for linear probing in a hash table with power of two size
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Returns the cell id of the given row and column or {@code -1} if the cell is not in this buffer.
+   */
+  private int findCell(byte[] row, byte[] column, int hash) {
+    int mask = hashSlots.length - 1;
+    for (int slot = hash & mask; hashSlots[slot] != 0; slot = (slot + 1) & mask) {
+      int cellId = hashSlots[slot] - 1;
+      if (cellHashes[cellId] == hash && keyEquals(cellAddresses[cellId], row, column)) {
+        return cellId;
+      }
+    }
+    return -1;
+  }
+
+  private void addCell(int hash, long address) {
+    if (cellCount == cellAddresses.length) {
+      int capacity = cellAddresses.length * 2;
+      cellAddresses = Arrays.copyOf(cellAddresses, capacity);
+      cellHashes = Arrays.copyOf(cellHashes, capacity);
+      sortedCells = Arrays.copyOf(sortedCells, capacity);
+    }
+    int cellId = cellCount++;
+    modCount++;
+    cellAddresses[cellId] = address;
+    cellHashes[cellId] = hash;
+    sortedCells[cellId] = cellId;
+
+    // Keep the load factor of the hash table at most 0.5
+    if (cellCount * 2 > hashSlots.length) {
+      hashSlots = new int[hashSlots.length * 2];
+      for (int i = 0; i < cellCount; i++) {
+        insertSlot(i);
+      }
+    } else {
+      insertSlot(cellId);
+    }
+  }
+
+  private void insertSlot(int cellId) {
+    int mask = hashSlots.length - 1;
+    int slot = cellHashes[cellId] & mask;
+    while (hashSlots[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    hashSlots[slot] = cellId + 1;
+  }
+
+  /**
+   * Sorts cells that were added since the last sort and merges them into the sorted cells.
+   */
+  private void ensureSorted() {
+    int unsorted = cellCount - sortedCount;
+    if (unsorted == 0) {
+      return;
+    }
+    if (sortBuffer.length < unsorted) {
+      sortBuffer = new int[Math.max(unsorted, sortBuffer.length * 2)];
+    }
+    int[] tail = Arrays.copyOfRange(sortedCells, sortedCount, cellCount);
+    mergeSort(tail, 0, unsorted);
+
+    // Merge from the end so that no extra space is needed
+    int i = sortedCount - 1;
+    int j = unsorted - 1;
+    int w = cellCount - 1;
+    while (j >= 0) {
+      if (i >= 0 && compareCells(cellAddresses[sortedCells[i]], cellAddresses[tail[j]]) > 0) {
+        sortedCells[w--] = sortedCells[i--];
+      } else {
+        sortedCells[w--] = tail[j--];
+      }
+    }
+    sortedCount = cellCount;
+  }
+
+  /**
+   * Sorts the cell ids in the range [from, to) of the given array.
+   */
+  private void mergeSort(int[] cells, int from, int to) {
+    if (to - from <= INSERTION_SORT_THRESHOLD) {
+      for (int i = from + 1; i < to; i++) {
+        int cell = cells[i];
+        int j = i - 1;
+        while (j >= from && compareCells(cellAddresses[cells[j]], cellAddresses[cell]) > 0) {
+          cells[j + 1] = cells[j];
+          j--;
+        }
+        cells[j + 1] = cell;
+      }
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    mergeSort(cells, from, mid);
+    mergeSort(cells, mid, to);
+
+    // Already in order
+    if (compareCells(cellAddresses[cells[mid - 1]], cellAddresses[cells[mid]]) <= 0) {
+      return;
+    }
+
+    System.arraycopy(cells, from, sortBuffer, 0, mid - from);
+    int i = 0;
+    int iEnd = mid - from;
+    int j = mid;
+    int w = from;
+    while (i < iEnd && j < to) {
+      if (compareCells(cellAddresses[sortBuffer[i]], cellAddresses[cells[j]]) <= 0) {
+        cells[w++] = sortBuffer[i++];
+      } else {
+        cells[w++] = cells[j++];
+      }
+    }
+    System.arraycopy(sortBuffer, i, cells, w, iEnd - i);
+  }
+
+  /**
+   * Returns the index in the sorted cells of the first cell with row greater than or equal to the given row.
+   */
+  private int lowerBound(byte[] row) {
+    int low = 0;
+    int high = cellCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (compareRow(cellAddresses[sortedCells[mid]], row) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Iterates over the rows of the sorted cells, creating the column map of each row when it is reached. If cells are
+   * added or removed during the iteration, it continues from the first row after the last returned one.
+   */
+  private final class RowIterator extends AbstractIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> {
+
+    private final byte[] startRow;
+    private final byte[] stopRow;
+    private byte[] lastRow;
+    private int index;
+    private int expectedModCount;
+
+    private RowIterator(@Nullable byte[] startRow, @Nullable byte[] stopRow) {
+      this.startRow = startRow;
+      this.stopRow = stopRow;
+      seek();
+    }
+
+    @Override
+    protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
+      if (expectedModCount != modCount) {
+        seek();
+      }
+      if (index >= cellCount) {
+        return endOfData();
+      }
+      long address = cellAddresses[sortedCells[index]];
+      if (stopRow != null && compareRow(address, stopRow) >= 0) {
+        return endOfData();
+      }
+      byte[] row = readRow(address);
+      NavigableMap<byte[], Update> columns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      do {
+        columns.put(readColumn(address), toUpdate(address));
+        index++;
+        if (index >= cellCount) {
+          break;
+        }
+        address = cellAddresses[sortedCells[index]];
+      } while (compareRow(address, row) == 0);
+      lastRow = row;
+      return Maps.immutableEntry(row, columns);
+    }
+
+    private void seek() {
+      ensureSorted();
+      if (lastRow == null) {
+        index = startRow == null ? 0 : lowerBound(startRow);
+      } else {
+        index = lowerBound(lastRow);
+        while (index < cellCount && compareRow(cellAddresses[sortedCells[index]], lastRow) == 0) {
+          index++;
+        }
+      }
+      expectedModCount = modCount;
+    }
+  }
+}
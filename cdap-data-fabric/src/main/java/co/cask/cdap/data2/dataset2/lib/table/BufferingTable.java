@@ -36,7 +36,9 @@ import co.cask.cdap.api.metrics.MetricsCollector;
 import co.cask.cdap.common.conf.Constants;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
 import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.apache.tephra.Transaction;
@@ -53,7 +55,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import javax.annotation.Nullable;
 
 /**
@@ -86,6 +87,33 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   protected static final byte[] DELETE_MARKER = new byte[0];
 
+  /**
+   * Dataset property to select the type of in-memory buffer for writes that are not yet persisted.
+   * The value is one of the {@link BufferType} names. If absent, {@link BufferType#TREE_MAP} is used.
+   */
+  public static final String PROPERTY_BUFFER_TYPE = "dataset.table.buffer.type";
+
+  /**
+   * Types of in-memory buffer for writes that are not yet persisted.
+   */
+  public enum BufferType {
+    /**
+     * Keeps writes in sorted maps of row to sorted maps of column to value.
+     */
+    TREE_MAP,
+
+    /**
+     * Copies writes into large on-heap memory chunks, which reduces the number of objects allocated
+     * for transactions that write many cells.
+     */
+    HEAP_ARENA,
+
+    /**
+     * Same as {@link #HEAP_ARENA}, but with the memory chunks allocated off-heap.
+     */
+    DIRECT_ARENA
+  }
+
   // name of the table
   private final String name;
   // conflict detection level
@@ -97,10 +125,11 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   // In-memory buffer that keeps not yet persisted data. It is row->(column->value) map. Value can be null which means
   // that the corresponded column was removed.
-  private NavigableMap<byte[], NavigableMap<byte[], Update>> buff;
+  private WriteBuffer buff;
 
-  // Keeps track of what was persisted so far
-  private NavigableMap<byte[], NavigableMap<byte[], Update>> toUndo;
+  // Whether the buffer was (possibly partially) persisted. The buffer is kept until the transaction is committed or
+  // rolled back, so that it can be used to undo what was persisted.
+  private boolean buffPersisted;
 
   // Report data ops metrics to
   private MetricsCollector metricsCollector;
@@ -150,7 +179,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     // we want it to be of format length+value to avoid conflicts like table="ab", row="cd" vs table="abc", row="d"
     // Default uses the above scheme. Subclasses can change it by overriding the #getNameAsTxChangePrefix method
     this.nameAsTxChangePrefix = Bytes.add(new byte[]{(byte) name.length()}, Bytes.toBytes(name));
-    this.buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+    this.buff = WriteBuffer.create(properties);
   }
 
   /**
@@ -178,21 +207,21 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   /**
    * Persists in-memory buffer. After this method returns we assume that data can be visible to other table clients
    * (of course other clients may choose still not to see it based on transaction isolation logic).
-   * @param buff in-memory buffer to persist. Map is described as row->(column->value). Map can contain null values
-   *             which means that the corresponded column was deleted
+   * @param buff in-memory buffer to persist, as row->(column->value) entries ordered by row. Column maps can contain
+   *             null values which means that the corresponded column was deleted
    * @throws Exception
    */
-  protected abstract void persist(NavigableMap<byte[], NavigableMap<byte[], Update>> buff)
+  protected abstract void persist(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> buff)
     throws Exception;
 
   /**
    * Undos previously persisted changes. After this method returns we assume that data can be visible to other table
    * clients (of course other clients may choose still not to see it based on transaction isolation logic).
-   * @param persisted previously persisted changes. Map is described as row->(column->value). Map can contain null
-   *                  values which means that the corresponded column was deleted
+   * @param persisted previously persisted changes, as row->(column->value) entries ordered by row. Column maps can
+   *                  contain null values which means that the corresponded column was deleted
    * @throws Exception
    */
-  protected abstract void undo(NavigableMap<byte[], NavigableMap<byte[], Update>> persisted)
+  protected abstract void undo(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> persisted)
     throws Exception;
 
   /**
@@ -260,8 +289,11 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   @Override
   public void close() throws IOException {
     // releasing resources
+    if (buff != null) {
+      buff.close();
+    }
     buff = null;
-    toUndo = null;
+    buffPersisted = false;
   }
 
   @Override
@@ -273,7 +305,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     }
     // starting with fresh buffer when tx starts
     buff.clear();
-    toUndo = null;
+    buffPersisted = false;
     this.tx = tx;
   }
 
@@ -308,17 +340,20 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   private Collection<byte[]> getRowChanges() {
     // we resolve conflicts on row level of individual table
-    List<byte[]> changes = new ArrayList<>(buff.size());
-    for (byte[] changedRow : buff.keySet()) {
-      changes.add(Bytes.add(getNameAsTxChangePrefix(), changedRow));
+    List<byte[]> changes = new ArrayList<>();
+    Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows = buff.rows(null, null);
+    while (rows.hasNext()) {
+      changes.add(Bytes.add(getNameAsTxChangePrefix(), rows.next().getKey()));
     }
     return changes;
   }
 
   private Collection<byte[]> getColumnChanges() {
     // we resolve conflicts on row level of individual table
-    List<byte[]> changes = new ArrayList<>(buff.size());
-    for (Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange : buff.entrySet()) {
+    List<byte[]> changes = new ArrayList<>();
+    Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows = buff.rows(null, null);
+    while (rows.hasNext()) {
+      Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange = rows.next();
       if (rowChange.getValue() == null) {
         // NOTE: as of now we cannot detect conflict between delete whole row and row's column value change.
         //       this is not a big problem as of now, as row deletion is now act as deletion of every column, but this
@@ -341,14 +376,10 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     if (!buff.isEmpty()) {
       // We first assume that all data will be persisted. So that if exception happen during persist we try to
       // rollback everything we had in in-memory buffer.
-      toUndo = buff;
-      // clearing up in-memory buffer by initializing new map.
-      // NOTE: we want to init map here so that if no changes are made we re-use same instance of the map in next tx
-      // NOTE: we could cache two maps and swap them to avoid creation of map instances, but code would be ugly
-      buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+      buffPersisted = true;
       // TODO: tracking of persisted items can be optimized by returning a pair {succeededOrNot, persisted} which
       //       tells if persisting succeeded and what was persisted (i.e. what we will have to undo in case of rollback)
-      persist(toUndo);
+      persist(buff.rows(null, null));
     }
     return true;
   }
@@ -357,17 +388,17 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   public void postTxCommit() {
     // don't need buffer anymore: tx has been committed
     buff.clear();
-    toUndo = null;
+    buffPersisted = false;
     tx = null;
   }
 
   @Override
   public boolean rollbackTx() throws Exception {
-    buff.clear();
-    if (toUndo != null) {
-      undo(toUndo);
-      toUndo = null;
+    if (buffPersisted) {
+      undo(buff.rows(null, null));
+      buffPersisted = false;
     }
+    buff.clear();
     tx = null;
     return true;
   }
@@ -415,7 +446,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     ensureTransactionIsStarted();
     reportRead(1);
     // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    NavigableMap<byte[], Update> buffCols = buff.getRow(row, null);
 
     // NOTE: since we cannot tell the exact column set, we always have to go to persisted store.
     //       potential improvement: do not fetch columns available in in-mem buffer (we know them at this point)
@@ -467,12 +498,12 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
         rowColumns.putAll(persistedRow);
 
         byte[] row = get.getRow();
-        NavigableMap<byte[], Update> buffCols = buff.get(row);
+        List<byte[]> getColumns = get.getColumns();
+        byte[][] columns = getColumns == null ? null : getColumns.toArray(new byte[getColumns.size()][]);
+        NavigableMap<byte[], Update> buffCols = buff.getRow(row, columns);
 
         // merge what was in the buffer and what was persisted
         if (buffCols != null) {
-          List<byte[]> getColumns = get.getColumns();
-          byte[][] columns = getColumns == null ? null : getColumns.toArray(new byte[getColumns.size()][]);
           mergeToPersisted(rowColumns, buffCols, columns);
         }
 
@@ -500,24 +531,13 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   }
 
   private void putInternal(byte[] row, byte[][] columns, byte[][] values) {
-    NavigableMap<byte[], Update> colVals = buff.get(row);
-    boolean newRow = false;
-    if (colVals == null) {
-      colVals = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      newRow = true;
-    }
     for (int i = 0; i < columns.length; i++) {
-      // NOTE: we copy passed column's and value's byte arrays to protect buffer against possible changes of these
-      // arrays on client
       if (values[i] != null && values[i].length == 0) {
         warnAboutEmptyValue(columns[i]);
       }
-      colVals.put(copy(columns[i]), new PutValue(copy(values[i])));
-    }
-    if (newRow) {
-      // NOTE: we copy passed row's byte arrays to protect buffer against possible changes of this array on client
-      buff.put(copy(row), colVals);
     }
+    // NOTE: the buffer copies passed byte arrays to protect itself against possible changes of these arrays on client
+    buff.put(row, columns, values);
   }
 
   /**
@@ -620,14 +640,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   public void increment(byte[] row, byte[][] columns, long[] amounts) {
     ensureTransactionIsStarted();
     if (enableReadlessIncrements) {
-      NavigableMap<byte[], Update> colVals = buff.get(row);
-      if (colVals == null) {
-        colVals = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-        buff.put(row, colVals);
-      }
-      for (int i = 0; i < columns.length; i++) {
-        colVals.put(columns[i], Updates.mergeUpdates(colVals.get(columns[i]), new IncrementValue(amounts[i])));
-      }
+      buff.increment(row, columns, amounts);
       reportWrite(1, getSize(row) + getSize(columns) + getSize(amounts));
     } else {
       internalIncrementAndGet(row, columns, amounts);
@@ -695,9 +708,9 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   @Override
   public Scanner scan(Scan scan) {
     ensureTransactionIsStarted();
-    NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap = scanBuffer(scan);
+    Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferRows = scanBuffer(scan);
     try {
-      return new BufferingScanner(bufferMap, scanPersisted(scan));
+      return new BufferingScanner(bufferRows, scanPersisted(scan));
     } catch (Exception e) {
       LOG.debug("scan failed for table: " + getTransactionAwareName() +
           ", scan: " + scan.toString(), e);
@@ -705,39 +718,25 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     }
   }
 
-  private NavigableMap<byte[], NavigableMap<byte[], Update>> scanBuffer(Scan scan) {
-    NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap;
-    byte[] startRow = scan.getStartRow();
-    byte[] stopRow = scan.getStopRow();
-    if (startRow == null && stopRow == null) {
-      bufferMap = buff;
-    } else if (startRow == null) {
-      bufferMap = buff.headMap(stopRow, false);
-    } else if (stopRow == null) {
-      bufferMap = buff.tailMap(startRow, true);
-    } else {
-      bufferMap = buff.subMap(startRow, true, stopRow, false);
-    }
-    bufferMap = applyFilter(bufferMap, scan.getFilter());
-    return bufferMap;
+  private Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> scanBuffer(Scan scan) {
+    return applyFilter(buff.rows(scan.getStartRow(), scan.getStopRow()), scan.getFilter());
   }
 
-  private NavigableMap<byte[], NavigableMap<byte[], Update>> applyFilter(
-                                                        NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap,
-                                                        @Nullable Filter filter) {
+  private Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> applyFilter(
+    Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferRows, @Nullable Filter filter) {
     if (filter == null) {
-      return bufferMap;
+      return bufferRows;
     }
 
     // todo: currently we support only FuzzyRowFilter as an experimental feature
     if (filter instanceof FuzzyRowFilter) {
-      NavigableMap<byte[], NavigableMap<byte[], Update>> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      for (Map.Entry<byte[], NavigableMap<byte[], Update>> entry : bufferMap.entrySet()) {
-        if (FuzzyRowFilter.ReturnCode.INCLUDE == ((FuzzyRowFilter) filter).filterRow(entry.getKey())) {
-          result.put(entry.getKey(), entry.getValue());
+      final FuzzyRowFilter fuzzyRowFilter = (FuzzyRowFilter) filter;
+      return Iterators.filter(bufferRows, new Predicate<Map.Entry<byte[], NavigableMap<byte[], Update>>>() {
+        @Override
+        public boolean apply(Map.Entry<byte[], NavigableMap<byte[], Update>> entry) {
+          return FuzzyRowFilter.ReturnCode.INCLUDE == fuzzyRowFilter.filterRow(entry.getKey());
         }
-      }
-      return result;
+      });
     } else {
       throw new DataSetException("Unknown filter type: " + filter);
     }
@@ -746,8 +745,8 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private Map<byte[], byte[]> getRowMap(byte[] row) throws Exception {
     NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
-    boolean rowDeleted = buffCols == null && buff.containsKey(row);
+    NavigableMap<byte[], Update> buffCols = buff.getRow(row, null);
+    boolean rowDeleted = buffCols == null && buff.containsRow(row);
     if (rowDeleted) {
       return Collections.emptyMap();
     }
@@ -767,7 +766,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private Map<byte[], byte[]> getRowMap(byte[] row, byte[][] columns) throws Exception {
     NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    NavigableMap<byte[], Update> buffCols = buff.getRow(row, columns);
 
     // if nothing locally, return all from server
     if (buffCols == null) {
@@ -962,12 +961,12 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   // they get annotated
 
   @ReadOnly
-  private Iterator<byte[]> getBufferKeyIterator(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer) {
-    final Iterator<byte[]> iterator = buffer.keySet().iterator();
-    return new AbstractIterator<byte[]>() {
+  private Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> getBufferIterator(
+    final Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows) {
+    return new AbstractIterator<Map.Entry<byte[], NavigableMap<byte[], Update>>>() {
       @Override
-      protected byte[] computeNext() {
-        return BufferingTable.this.hasNext(iterator) ? BufferingTable.this.next(iterator) : endOfData();
+      protected Map.Entry<byte[], NavigableMap<byte[], Update>> computeNext() {
+        return BufferingTable.this.hasNext(rows) ? BufferingTable.this.next(rows) : endOfData();
       }
     };
   }
@@ -982,27 +981,20 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     return iterator.next();
   }
 
-  @ReadOnly
-  private NavigableMap<byte[], Update> getFromBuffer(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer,
-                                                     byte[] key) {
-    return buffer.get(key);
-  }
-
   /**
    * Scanner implementation that overlays buffered data on top of already persisted data.
    */
   private class BufferingScanner implements Scanner {
-    private final NavigableMap<byte[], NavigableMap<byte[], Update>> buffer;
     private final Scanner persistedScanner;
-    private final Iterator<byte[]> keyIter;
-    private byte[] currentKey;
+    private final Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferIter;
+    private Map.Entry<byte[], NavigableMap<byte[], Update>> currentEntry;
     private Row currentRow;
 
-    private BufferingScanner(NavigableMap<byte[], NavigableMap<byte[], Update>> buffer, Scanner persistedScanner) {
-      this.buffer = buffer;
-      this.keyIter = getBufferKeyIterator(buffer);
-      if (this.keyIter.hasNext()) {
-        currentKey = keyIter.next();
+    private BufferingScanner(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> bufferRows,
+                             Scanner persistedScanner) {
+      this.bufferIter = getBufferIterator(bufferRows);
+      if (this.bufferIter.hasNext()) {
+        currentEntry = bufferIter.next();
       }
       this.persistedScanner = persistedScanner;
       this.currentRow = this.persistedScanner.next();
@@ -1011,20 +1003,20 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     @Nullable
     @Override
     public Row next() {
-      if (currentKey == null && currentRow == null) {
+      if (currentEntry == null && currentRow == null) {
         // out of rows
         return null;
       }
       reportRead(1);
       int order;
-      if (currentKey == null) {
+      if (currentEntry == null) {
         // exhausted buffer is the same as persisted scan row coming first
         order = 1;
       } else if (currentRow == null) {
         // exhausted persisted scanner is the same as buffer row coming first
         order = -1;
       } else {
-        order = Bytes.compareTo(currentKey, currentRow.getRow());
+        order = Bytes.compareTo(currentEntry.getKey(), currentRow.getRow());
       }
 
       Row result;
@@ -1035,18 +1027,18 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
       } else if (order < 0) {
         // buffer row comes first or persisted scanner is empty
         Map<byte[], byte[]> persistedRow = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-        mergeToPersisted(persistedRow, getFromBuffer(buffer, currentKey), null);
-        result = new Result(copy(currentKey), persistedRow);
+        mergeToPersisted(persistedRow, currentEntry.getValue(), null);
+        result = new Result(copy(currentEntry.getKey()), persistedRow);
 
-        currentKey = keyIter.hasNext() ? keyIter.next() : null;
+        currentEntry = bufferIter.hasNext() ? bufferIter.next() : null;
       } else {
-        // if currentKey and currentRow are equal, merge and advance both
+        // if currentEntry and currentRow are equal, merge and advance both
         Map<byte[], byte[]> persisted = currentRow.getColumns();
-        mergeToPersisted(persisted, getFromBuffer(buffer, currentKey), null);
+        mergeToPersisted(persisted, currentEntry.getValue(), null);
         result = new Result(currentRow.getRow(), persisted);
 
         currentRow = persistedScanner.next();
-        currentKey = keyIter.hasNext() ? keyIter.next() : null;
+        currentEntry = bufferIter.hasNext() ? bufferIter.next() : null;
       }
       return result;
     }
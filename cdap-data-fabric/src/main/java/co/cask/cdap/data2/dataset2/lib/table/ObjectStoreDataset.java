@@ -34,7 +34,9 @@ import co.cask.cdap.api.dataset.lib.KeyValueTable;
 import co.cask.cdap.api.dataset.lib.ObjectStore;
 import co.cask.cdap.common.io.BinaryDecoder;
 import co.cask.cdap.common.io.BinaryEncoder;
-import co.cask.cdap.internal.io.ReflectionDatumReader;
+import co.cask.cdap.internal.io.ASMDatumReaderFactory;
+import co.cask.cdap.internal.io.ASMFieldAccessorFactory;
+import co.cask.cdap.internal.io.DatumReader;
 import co.cask.cdap.internal.io.ReflectionDatumWriter;
 import co.cask.cdap.internal.io.TypeRepresentation;
 import com.google.common.base.Preconditions;
@@ -62,7 +64,7 @@ public class ObjectStoreDataset<T> extends AbstractDataset implements ObjectStor
   // we get this lazily, since we may not have the actual Type when simply instantiating this class (for instance, when
   // datasets are instantiated in DatasetSystemMetadataWriter for checking RecordScannable/BatchWritable/etc.),
   // but we do expect to have it when using it in a program context
-  private ReflectionDatumReader<T> datumReader;
+  private DatumReader<T> datumReader;
 
   public ObjectStoreDataset(String name, KeyValueTable kvTable, TypeRepresentation typeRep,
                             Schema schema, @Nullable ClassLoader classLoader) {
@@ -150,9 +152,10 @@ public class ObjectStoreDataset<T> extends AbstractDataset implements ObjectStor
   }
 
   @SuppressWarnings("unchecked")
-  private ReflectionDatumReader<T> getReflectionDatumReader() {
+  private DatumReader<T> getDatumReader() {
     if (datumReader == null) {
-      datumReader = new ReflectionDatumReader<>(schema, (TypeToken<T>) TypeToken.of(this.typeRep.toType()));
+      datumReader = new ASMDatumReaderFactory(new ASMFieldAccessorFactory())
+        .create((TypeToken<T>) TypeToken.of(this.typeRep.toType()), schema);
     }
     return datumReader;
   }
@@ -165,7 +168,7 @@ public class ObjectStoreDataset<T> extends AbstractDataset implements ObjectStor
     ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
     BinaryDecoder decoder = new BinaryDecoder(bis);
     try {
-      return getReflectionDatumReader().read(decoder, this.schema);
+      return getDatumReader().read(decoder, this.schema);
     } catch (IOException e) {
       // SHOULD NEVER happen
       throw new DataSetException("Failed to decode read object: " + e.getMessage(), e);
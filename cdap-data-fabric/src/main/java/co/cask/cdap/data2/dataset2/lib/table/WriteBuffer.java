@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import javax.annotation.Nullable;
+
+/**
+ * The in-memory buffer used by {@link BufferingTable} to keep writes of the current transaction that are not yet
+ * persisted. Logically it is a row->(column->{@link Update}) map. A {@link PutValue} with {@code null} value
+ * represents a deleted column.
+ */
+abstract class WriteBuffer {
+
+  /**
+   * Creates a {@link WriteBuffer} based on the {@link BufferingTable#PROPERTY_BUFFER_TYPE} in the given
+   * dataset properties.
+   *
+   * @throws IllegalArgumentException if the property value is not a valid buffer type
+   */
+  static WriteBuffer create(Map<String, String> properties) {
+    switch (getBufferType(properties)) {
+      case HEAP_ARENA:
+        return new ArenaWriteBuffer(false);
+      case DIRECT_ARENA:
+        return new ArenaWriteBuffer(true);
+      default:
+        return new TreeMapWriteBuffer();
+    }
+  }
+
+  /**
+   * Returns the {@link BufferingTable.BufferType} from the given dataset properties. If the property is absent,
+   * {@link BufferingTable.BufferType#TREE_MAP} is returned.
+   *
+   * @throws IllegalArgumentException if the property value is not a valid buffer type
+   */
+  static BufferingTable.BufferType getBufferType(Map<String, String> properties) {
+    String value = properties.get(BufferingTable.PROPERTY_BUFFER_TYPE);
+    if (value == null) {
+      return BufferingTable.BufferType.TREE_MAP;
+    }
+    try {
+      return BufferingTable.BufferType.valueOf(value.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid table buffer type: " + value);
+    }
+  }
+
+  /**
+   * Returns {@code true} if there is no buffered change.
+   */
+  abstract boolean isEmpty();
+
+  /**
+   * Removes all buffered changes.
+   */
+  abstract void clear();
+
+  /**
+   * Returns {@code true} if there is buffered change for the given row.
+   */
+  abstract boolean containsRow(byte[] row);
+
+  /**
+   * Returns the buffered changes of the given row. The returned map must not be modified by the caller.
+   *
+   * @param row the row to fetch
+   * @param columns if not {@code null}, the returned map only needs to contain the given columns;
+   *                otherwise all buffered columns of the row are returned
+   * @return a column->{@link Update} map or {@code null} if there is no buffered change for the row
+   */
+  @Nullable
+  abstract NavigableMap<byte[], Update> getRow(byte[] row, @Nullable byte[][] columns);
+
+  /**
+   * Buffers puts of the given columns. A {@code null} value represents deletion of the column. The given
+   * byte arrays are copied so that changes made by the caller afterwards do not affect the buffer.
+   */
+  abstract void put(byte[] row, byte[][] columns, byte[][] values);
+
+  /**
+   * Buffers increments of the given columns, merging them with buffered changes as described in
+   * {@link Updates#mergeUpdates(Update, Update)}.
+   */
+  abstract void increment(byte[] row, byte[][] columns, long[] amounts);
+
+  /**
+   * Returns an iterator over the buffered changes of the rows in the given range, ordered by row. Each element is a
+   * row->(column->{@link Update}) entry, with the column map of a row only created when the iterator reaches it.
+   * Rows added to this buffer during the iteration are returned if they come after the current row.
+   * The returned entries must not be modified by the caller.
+   *
+   * @param startRow the first row to include or {@code null} to start from the first buffered row
+   * @param stopRow the row to stop before or {@code null} to iterate until the last buffered row
+   */
+  abstract Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows(@Nullable byte[] startRow,
+                                                                          @Nullable byte[] stopRow);
+
+  /**
+   * Releases resources held by this buffer. The buffer cannot be used after this method returns.
+   */
+  void close() {
+    // no-op by default
+  }
+}
@@ -193,12 +193,13 @@ public class HBaseTable extends BufferingTable {
   }
 
   @Override
-  protected void persist(NavigableMap<byte[], NavigableMap<byte[], Update>> updates) throws Exception {
-    if (updates.isEmpty()) {
+  protected void persist(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> updates) throws Exception {
+    if (!updates.hasNext()) {
       return;
     }
     List<Mutation> mutations = new ArrayList<>();
-    for (Map.Entry<byte[], NavigableMap<byte[], Update>> row : updates.entrySet()) {
+    while (updates.hasNext()) {
+      Map.Entry<byte[], NavigableMap<byte[], Update>> row = updates.next();
       // create these only when they are needed
       PutBuilder put = null;
       PutBuilder incrementPut = null;
@@ -295,14 +296,15 @@ public class HBaseTable extends BufferingTable {
   }
 
   @Override
-  protected void undo(NavigableMap<byte[], NavigableMap<byte[], Update>> persisted) throws Exception {
-    if (persisted.isEmpty()) {
+  protected void undo(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> persisted) throws Exception {
+    if (!persisted.hasNext()) {
       return;
     }
 
     // NOTE: we use Delete with the write pointer as the specific version to delete.
     List<Delete> deletes = Lists.newArrayList();
-    for (Map.Entry<byte[], NavigableMap<byte[], Update>> row : persisted.entrySet()) {
+    while (persisted.hasNext()) {
+      Map.Entry<byte[], NavigableMap<byte[], Update>> row = persisted.next();
       DeleteBuilder delete = tableUtil.buildDelete(row.getKey());
       delete.setAttribute(TX_MAX_LIFETIME_MILLIS_KEY, txMaxLifetimeMillis);
       for (Map.Entry<byte[], Update> column : row.getValue().entrySet()) {
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -88,11 +88,11 @@ public class InMemoryTable extends BufferingTable {
   }
 
   @Override
-  protected void persist(NavigableMap<byte[], NavigableMap<byte[], Update>> updates) {
-    if (updates.isEmpty()) {
+  protected void persist(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> updates) {
+    if (!updates.hasNext()) {
       return;
     }
-    persistUpdates(updates);
+    persistUpdates(toMap(updates));
   }
 
   @WriteOnly
@@ -101,11 +101,21 @@ public class InMemoryTable extends BufferingTable {
   }
 
   @Override
-  protected void undo(NavigableMap<byte[], NavigableMap<byte[], Update>> persisted) {
-    if (persisted.isEmpty()) {
+  protected void undo(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> persisted) {
+    if (!persisted.hasNext()) {
       return;
     }
-    undoPersisted(persisted);
+    undoPersisted(toMap(persisted));
+  }
+
+  private static NavigableMap<byte[], NavigableMap<byte[], Update>> toMap(
+    Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows) {
+    NavigableMap<byte[], NavigableMap<byte[], Update>> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    while (rows.hasNext()) {
+      Map.Entry<byte[], NavigableMap<byte[], Update>> row = rows.next();
+      result.put(row.getKey(), row.getValue());
+    }
+    return result;
   }
 
   @WriteOnly
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -97,7 +97,8 @@ public class LevelDBMetricsTable implements MetricsTable {
   }
 
   @Override
-  public synchronized boolean swap(byte[] row, byte[] column, byte[] oldValue, byte[] newValue) {
+  public boolean swap(byte[] row, byte[] column, byte[] oldValue, byte[] newValue) {
+    // LevelDBTableCore holds the lock of the row while swapping, hence swaps of different rows can run concurrently
     try {
       return core.swap(row, column, oldValue, newValue);
     } catch (IOException e) {
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -35,6 +35,7 @@ import co.cask.cdap.data2.dataset2.lib.table.inmemory.PrefixedNamespaces;
 import com.google.common.collect.Maps;
 
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.NavigableMap;
 import javax.annotation.Nullable;
@@ -63,12 +64,13 @@ public class LevelDBTable extends BufferingTable {
   }
 
   @Override
-  protected void persist(NavigableMap<byte[], NavigableMap<byte[], Update>> changes) throws Exception {
+  protected void persist(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> changes) throws Exception {
     persistedVersion = tx == null ? System.currentTimeMillis() : tx.getWritePointer();
 
     NavigableMap<byte[], NavigableMap<byte[], byte[]>> puts = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     NavigableMap<byte[], NavigableMap<byte[], Long>> increments = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-    for (Map.Entry<byte[], NavigableMap<byte[], Update>> rowEntry : changes.entrySet()) {
+    while (changes.hasNext()) {
+      Map.Entry<byte[], NavigableMap<byte[], Update>> rowEntry = changes.next();
       for (Map.Entry<byte[], Update> colEntry : rowEntry.getValue().entrySet()) {
         Update val = colEntry.getValue();
         if (val instanceof IncrementValue) {
@@ -103,15 +105,16 @@ public class LevelDBTable extends BufferingTable {
   }
 
   @Override
-  protected void undo(NavigableMap<byte[], NavigableMap<byte[], Update>> persisted) throws Exception {
-    if (persisted.isEmpty()) {
+  protected void undo(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> persisted) throws Exception {
+    if (!persisted.hasNext()) {
       return;
     }
     undoPersisted(persisted);
   }
 
   @WriteOnly
-  private void undoPersisted(NavigableMap<byte[], NavigableMap<byte[], Update>> persisted) throws IOException {
+  private void undoPersisted(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> persisted)
+    throws IOException {
     core.undo(persisted, persistedVersion);
   }
 
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -36,12 +36,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.concurrent.locks.Lock;
 import javax.annotation.Nullable;
 
 /**
@@ -92,48 +95,74 @@ public class LevelDBTableCore {
   }
 
 
-  public synchronized boolean swap(byte[] row, byte[] column, byte[] oldValue, byte[] newValue) throws IOException {
-    byte[] existing = getRow(row, new byte[][] { column }, null, null, -1, null).get(column);
-    // verify
-    if (oldValue == null && existing != null) {
-      return false;
-    }
-    if (oldValue != null && (existing == null || !Bytes.equals(oldValue, existing))) {
-      return false;
-    }
-    // write
-    if (newValue == null) {
-      // to-do
-      deleteColumn(row, column);
-    } else {
-      persist(Collections.singletonMap(row, Collections.singletonMap(column, newValue)), System.currentTimeMillis());
-    }
-    return true;
-  }
+  // The read-modify-write operations below only lock the rows they modify, so that operations on different rows
+  // of the same table can run concurrently.
 
-  public synchronized Map<byte[], Long> increment(byte[] row, Map<byte[], Long> increments) throws IOException {
-    Map<byte[], Long> result = getResultMap(row, increments);
-    Map<byte[], byte[]> replacing = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-    for (Map.Entry<byte[], Long> entry : result.entrySet()) {
-      replacing.put(entry.getKey(), Bytes.toBytes(entry.getValue()));
+  public boolean swap(byte[] row, byte[] column, byte[] oldValue, byte[] newValue) throws IOException {
+    Lock lock = service.getRowLock(tableName, row);
+    lock.lock();
+    try {
+      byte[] existing = getRow(row, new byte[][] { column }, null, null, -1, null).get(column);
+      // verify
+      if (oldValue == null && existing != null) {
+        return false;
+      }
+      if (oldValue != null && (existing == null || !Bytes.equals(oldValue, existing))) {
+        return false;
+      }
+      // write
+      if (newValue == null) {
+        // to-do
+        deleteColumn(row, column);
+      } else {
+        persist(Collections.singletonMap(row, Collections.singletonMap(column, newValue)), System.currentTimeMillis());
+      }
+      return true;
+    } finally {
+      lock.unlock();
     }
-    persist(ImmutableMap.of(row, replacing), System.currentTimeMillis());
-    return result;
   }
 
-
-  public synchronized void increment(NavigableMap<byte[], NavigableMap<byte[], Long>> updates) throws IOException {
-    Map<byte[], Map<byte[], byte[]>> resultMap = Maps.newHashMap();
-    for (NavigableMap.Entry<byte[], NavigableMap<byte[], Long>> row : updates.entrySet()) {
-      NavigableMap<byte[], Long> increments = row.getValue();
+  public Map<byte[], Long> increment(byte[] row, Map<byte[], Long> increments) throws IOException {
+    Lock lock = service.getRowLock(tableName, row);
+    lock.lock();
+    try {
+      Map<byte[], Long> result = getResultMap(row, increments);
       Map<byte[], byte[]> replacing = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      Map<byte[], Long> result = getResultMap(row.getKey(), increments);
       for (Map.Entry<byte[], Long> entry : result.entrySet()) {
         replacing.put(entry.getKey(), Bytes.toBytes(entry.getValue()));
       }
-      resultMap.put(row.getKey(), replacing);
+      persist(ImmutableMap.of(row, replacing), System.currentTimeMillis());
+      return result;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void increment(NavigableMap<byte[], NavigableMap<byte[], Long>> updates) throws IOException {
+    Iterable<Lock> locks = service.getRowLocks(tableName, updates.keySet());
+    Deque<Lock> acquired = new ArrayDeque<>();
+    try {
+      for (Lock lock : locks) {
+        lock.lock();
+        acquired.push(lock);
+      }
+      Map<byte[], Map<byte[], byte[]>> resultMap = Maps.newHashMap();
+      for (NavigableMap.Entry<byte[], NavigableMap<byte[], Long>> row : updates.entrySet()) {
+        NavigableMap<byte[], Long> increments = row.getValue();
+        Map<byte[], byte[]> replacing = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+        Map<byte[], Long> result = getResultMap(row.getKey(), increments);
+        for (Map.Entry<byte[], Long> entry : result.entrySet()) {
+          replacing.put(entry.getKey(), Bytes.toBytes(entry.getValue()));
+        }
+        resultMap.put(row.getKey(), replacing);
+      }
+      persist(resultMap, System.currentTimeMillis());
+    } finally {
+      while (!acquired.isEmpty()) {
+        acquired.pop().unlock();
+      }
     }
-    persist(resultMap, System.currentTimeMillis());
   }
 
   private Map<byte[], Long> getResultMap(byte[] row, Map<byte[], Long> increments) throws IOException {
@@ -167,26 +196,46 @@ public class LevelDBTableCore {
         batch.put(key, column.getValue() == null ? DELETE_MARKER : column.getValue());
       }
     }
-    db.write(batch, service.getWriteOptions());
+    write(db, batch);
   }
 
   public void put(byte[] row, byte[] column, byte[] value, long version) throws IOException {
-    getDB().put(createPutKey(row, column, version), value);
+    getDB().put(createPutKey(row, column, version), value, getWriteOptions());
   }
 
   public void undo(Map<byte[], ? extends Map<byte[], ?>> persisted, long version) throws IOException {
-    if (persisted.isEmpty()) {
+    undo(persisted.entrySet().iterator(), version);
+  }
+
+  /**
+   * Deletes the given row->(column->value) entries written with the given version.
+   */
+  public void undo(Iterator<? extends Map.Entry<byte[], ? extends Map<byte[], ?>>> persisted,
+                   long version) throws IOException {
+    if (!persisted.hasNext()) {
       return;
     }
     DB db = getDB();
     WriteBatch batch = db.createWriteBatch();
-    for (Map.Entry<byte[], ? extends Map<byte[], ?>> row : persisted.entrySet()) {
+    while (persisted.hasNext()) {
+      Map.Entry<byte[], ? extends Map<byte[], ?>> row = persisted.next();
       for (Map.Entry<byte[], ?> column : row.getValue().entrySet()) {
         byte[] key = createPutKey(row.getKey(), column.getKey(), version);
         batch.delete(key);
       }
     }
-    db.write(batch, service.getWriteOptions());
+    write(db, batch);
+  }
+
+  /**
+   * Writes the given batch atomically with the configured {@link WriteOptions} and releases it.
+   */
+  private void write(DB db, WriteBatch batch) throws IOException {
+    try {
+      db.write(batch, getWriteOptions());
+    } finally {
+      batch.close();
+    }
   }
 
   public Scanner scan(byte[] startRow, byte[] stopRow,
@@ -340,7 +389,7 @@ public class LevelDBTableCore {
         }
         batch.delete(entry.getKey());
       }
-      db.write(batch);
+      write(db, batch);
     }
   }
 
@@ -361,6 +410,7 @@ public class LevelDBTableCore {
     try (DBIterator iterator = db.iterator()) {
       iterator.seek(startKey);
       if (!iterator.hasNext()) {
+        batch.close();
         return; // nothing in the db to delete
       }
       Map.Entry<byte[], byte[]> entry = iterator.next();
@@ -384,7 +434,7 @@ public class LevelDBTableCore {
       }
     }
     // delete all the entries that were found
-    db.write(batch, getWriteOptions());
+    write(db, batch);
   }
 
   public void deleteRange(byte[] startRow, byte[] stopRow, @Nullable FuzzyRowFilter filter, @Nullable byte[][] columns)
@@ -420,7 +470,7 @@ public class LevelDBTableCore {
           // perform the deletes when we have built up a batch.
           if (deletesInBatch >= deletesPerRound) {
             // delete all the entries that were found
-            db.write(batch, getWriteOptions());
+            write(db, batch);
             batch = db.createWriteBatch();
             deletesInBatch = 0;
           }
@@ -429,7 +479,9 @@ public class LevelDBTableCore {
 
       // perform any outstanding deletes
       if (deletesInBatch > 0) {
-        db.write(batch, getWriteOptions());
+        write(db, batch);
+      } else {
+        batch.close();
       }
     } finally {
       deleteIterator.close();
@@ -441,7 +493,7 @@ public class LevelDBTableCore {
     WriteBatch batch = db.createWriteBatch();
     try (DBIterator iterator = db.iterator()) {
       addToDeleteBatch(batch, iterator, row, column);
-      db.write(batch);
+      write(db, batch);
     }
   }
 
@@ -16,6 +16,7 @@
 
 package co.cask.cdap.data2.dataset2.lib.table.leveldb;
 
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data2.transaction.stream.leveldb.LevelDBNameConverter;
@@ -26,6 +27,7 @@ import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Striped;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.iq80.leveldb.DB;
@@ -40,9 +42,12 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
 
 import static org.iq80.leveldb.impl.Iq80DBFactory.factory;
 
@@ -54,6 +59,8 @@ public class LevelDBTableService {
 
   private static final Logger LOG = LoggerFactory.getLogger(LevelDBTableService.class);
 
+  private static final int ROW_LOCK_STRIPES = 256;
+
   private int blockSize;
   private long cacheSize;
   private String basePath;
@@ -61,6 +68,10 @@ public class LevelDBTableService {
 
   private final ConcurrentMap<String, DB> tables = Maps.newConcurrentMap();
 
+  // Locks for read-modify-write operations on rows. They are shared by all LevelDBTableCore instances,
+  // since there can be multiple instances for the same table.
+  private final Striped<Lock> rowLocks = Striped.lock(ROW_LOCK_STRIPES);
+
   /**
    * To avoid database locking issues make sure that the single LevelDBTableService instance
    * is created for handling one database.
@@ -156,6 +167,29 @@ public class LevelDBTableService {
     return writeOptions;
   }
 
+  /**
+   * Returns the lock for the given row of a table.
+   */
+  Lock getRowLock(String tableName, byte[] row) {
+    return rowLocks.get(getRowLockKey(tableName, row));
+  }
+
+  /**
+   * Returns the locks for the given rows of a table. The locks are always returned in the same order,
+   * hence acquiring them in iteration order is free of deadlock. The same lock may appear more than once.
+   */
+  Iterable<Lock> getRowLocks(String tableName, Collection<byte[]> rows) {
+    List<Integer> keys = new ArrayList<>(rows.size());
+    for (byte[] row : rows) {
+      keys.add(getRowLockKey(tableName, row));
+    }
+    return rowLocks.bulkGet(keys);
+  }
+
+  private static int getRowLockKey(String tableName, byte[] row) {
+    return 31 * tableName.hashCode() + Bytes.hashCode(row);
+  }
+
   public DB getTable(String tableName) throws IOException {
     DB db = tables.get(tableName);
     if (db == null) {
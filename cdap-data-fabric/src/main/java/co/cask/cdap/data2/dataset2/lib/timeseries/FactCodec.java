@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 Cask Data, Inc.
+ * Copyright 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -35,12 +35,16 @@ public class FactCodec {
   private static final Logger LOG = LoggerFactory.getLogger(FactCodec.class);
   // current version
   private static final byte[] VERSION = new byte[] {0};
+  // version of the rows of late facts, see FactTable#addLateFacts
+  static final byte[] LATE_FACTS_VERSION = new byte[] {1};
 
   // encoding types
   private static final String TYPE_MEASURE_NAME = "measureName";
   private static final String TYPE_DIMENSIONS_GROUP = "tagsGroup";
+  private static final String TYPE_GAUGE_MEASURE_NAME = "gaugeMeasureName";
 
   private final EntityTable entityTable;
+  private final byte[] version;
 
   private final int resolution;
   private final int rollTimebaseInterval;
@@ -48,7 +52,17 @@ public class FactCodec {
   private final byte[][] deltaCache;
 
   public FactCodec(EntityTable entityTable, int resolution, int rollTimebaseInterval) {
+    this(entityTable, resolution, rollTimebaseInterval, VERSION);
+  }
+
+  /**
+   * Creates a codec for row keys starting with the given version bytes, which must have the same length as the
+   * current version.
+   */
+  FactCodec(EntityTable entityTable, int resolution, int rollTimebaseInterval, byte[] version) {
+    Preconditions.checkArgument(version.length == VERSION.length, "Version must have %s bytes", VERSION.length);
     this.entityTable = entityTable;
+    this.version = version;
     this.resolution = resolution;
     this.rollTimebaseInterval = rollTimebaseInterval;
     this.deltaCache = createDeltaCache(rollTimebaseInterval);
@@ -105,6 +119,22 @@ public class FactCodec {
     return entityTable.getId(TYPE_MEASURE_NAME, measureName);
   }
 
+  /**
+   * Records that the given measure is a gauge, so that it can be told apart from counters when reading.
+   * @param measureName measure name
+   */
+  public void markGaugeMeasure(String measureName) {
+    entityTable.getId(TYPE_GAUGE_MEASURE_NAME, measureName);
+  }
+
+  /**
+   * Returns whether the given measure has been recorded as a gauge with {@link #markGaugeMeasure(String)}.
+   * @param measureName measure name
+   */
+  public boolean isGaugeMeasure(String measureName) {
+    return entityTable.hasId(TYPE_GAUGE_MEASURE_NAME, measureName);
+  }
+
   private byte[] createRowKey(List<DimensionValue> dimensionValues, String measureName, long ts, boolean stopKey,
                               boolean anyAggGroup) {
     // Row key format:
@@ -114,7 +144,7 @@ public class FactCodec {
     byte[] rowKey =
       new byte[VERSION.length + (dimensionValues.size() + 2) * entityTable.getIdSize() + Bytes.SIZEOF_INT];
 
-    int offset = writeVersion(rowKey);
+    int offset = writeVersion(rowKey, version);
 
     if (anyAggGroup) {
       offset = writeAnyEncoded(rowKey, offset, stopKey);
@@ -147,9 +177,9 @@ public class FactCodec {
     return rowKey;
   }
 
-  private static int writeVersion(byte[] rowKey) {
-    System.arraycopy(VERSION, 0, rowKey, 0, VERSION.length);
-    return VERSION.length;
+  private static int writeVersion(byte[] rowKey, byte[] version) {
+    System.arraycopy(version, 0, rowKey, 0, version.length);
+    return version.length;
   }
 
   /**
@@ -195,7 +225,8 @@ public class FactCodec {
   public byte[] createFuzzyRowMask(List<DimensionValue> dimensionValues, @Nullable String measureName) {
     // See createRowKey for row format info
     byte[] mask = new byte[VERSION.length + (dimensionValues.size() + 2) * entityTable.getIdSize() + Bytes.SIZEOF_INT];
-    int offset = writeVersion(mask);
+    // version is always fixed, which is all zeroes in the mask
+    int offset = VERSION.length;
 
     // agg group encoded is always provided for fuzzy row filter
     offset = writeEncodedFixedMask(mask, offset);
@@ -282,7 +313,7 @@ public class FactCodec {
     byte[][] splits = new byte[aggGroupsCount - 1][];
     for (int i = 2; i <= aggGroupsCount; i++) {
       byte[] rowKey = new byte[rowKeySize];
-      int offset = writeVersion(rowKey);
+      int offset = writeVersion(rowKey, VERSION);
       writeEncoded(rowKey, offset, i, encodedIdSize);
       splits[i - 2] = rowKey;
     }
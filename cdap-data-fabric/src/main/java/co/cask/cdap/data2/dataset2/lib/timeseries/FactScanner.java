@@ -125,8 +125,10 @@ public final class FactScanner implements Iterator<FactScanResult> {
             timeValues.add(timeValue);
           }
 
+          // Rows are ordered by time base before dimension values, so rows after this one can still have
+          // values in the time range.
           if (timeValues.isEmpty() && exhausted) {
-            break;
+            continue;
           }
 
           // todo: can return empty list, if all data is < startTs or > endTs
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -61,6 +61,13 @@ public final class FactTable implements Closeable {
   private static final int MAX_RECORDS_TO_SCAN_DURING_SEARCH = 10 * 1000 * 1000;
   private static final int MAX_SCANS_DURING_SEARCH = 10 * 1000;
 
+  // Row for storing the rollup watermark. Row keys of facts always start with the version byte 0 or 1, so it never
+  // collides with facts and is never included in scans.
+  private static final byte[] ROLLUP_WATERMARK_ROW = Bytes.concat(new byte[] { (byte) 0xff }, Bytes.toBytes("rollup"));
+  private static final byte[] ROLLUP_WATERMARK_COLUMN = Bytes.toBytes("watermark");
+  private static final byte[] ROLLUP_CLAIM_COLUMN = Bytes.toBytes("claim");
+  private static final byte[] LATE_FACTS_CLAIM_COLUMN = Bytes.toBytes("late.claim");
+
   private static final Function<byte[], Long> BYTES_TO_LONG = new Function<byte[], Long>() {
     @Override
     public Long apply(byte[] input) {
@@ -79,6 +86,7 @@ public final class FactTable implements Closeable {
   private final MetricsTable timeSeriesTable;
   private final EntityTable entityTable;
   private final FactCodec codec;
+  private final FactCodec lateFactsCodec;
   private final int resolution;
   // todo: should not be used outside of codec
   private final int rollTime;
@@ -108,6 +116,7 @@ public final class FactTable implements Closeable {
     this.entityTable = entityTable;
     this.timeSeriesTable = timeSeriesTable;
     this.codec = new FactCodec(entityTable, resolution, rollTime);
+    this.lateFactsCodec = new FactCodec(entityTable, resolution, rollTime, FactCodec.LATE_FACTS_VERSION);
     this.resolution = resolution;
     this.rollTime = rollTime;
     this.putCountMetric = "factTable." + resolution + ".put.count";
@@ -119,6 +128,26 @@ public final class FactTable implements Closeable {
   }
 
   public void add(List<Fact> facts) {
+    add(codec, facts);
+  }
+
+  /**
+   * Adds the counters of the given facts into the late facts of this table, which are stored apart from the facts
+   * added with {@link #add(List)}, and are never returned by scans or queries other than {@link #scanLateFacts}.
+   * Late facts are used for counters that arrive after their time range is rolled up into coarser resolutions.
+   * Values can be subtracted by adding negative counters, which is safe with concurrent additions.
+   */
+  public void addLateFacts(List<Fact> facts) {
+    for (Fact fact : facts) {
+      for (Measurement measurement : fact.getMeasurements()) {
+        Preconditions.checkArgument(measurement.getType() == MeasureType.COUNTER,
+                                    "Late facts can only have counters, but got %s", measurement);
+      }
+    }
+    add(lateFactsCodec, facts);
+  }
+
+  private void add(FactCodec codec, List<Fact> facts) {
     // Simply collecting all rows/cols/values that need to be put to the underlying table.
     NavigableMap<byte[], NavigableMap<byte[], byte[]>> gaugesTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     NavigableMap<byte[], NavigableMap<byte[], byte[]>> incrementsTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
@@ -150,6 +179,88 @@ public final class FactTable implements Closeable {
     }
   }
 
+  /**
+   * Records that the given measure is a gauge. See {@link FactCodec#markGaugeMeasure(String)}.
+   */
+  public void markGaugeMeasure(String measureName) {
+    codec.markGaugeMeasure(measureName);
+  }
+
+  /**
+   * Returns whether the given measure has been recorded as a gauge. See {@link FactCodec#isGaugeMeasure(String)}.
+   */
+  public boolean isGaugeMeasure(String measureName) {
+    return codec.isGaugeMeasure(measureName);
+  }
+
+  /**
+   * Returns the rollup watermark of this table, which is the time up to which (exclusive) facts of finer
+   * resolutions have been rolled up into this table, or {@code null} if the watermark has never been set.
+   */
+  @Nullable
+  public Long getRollupWatermark() {
+    byte[] value = timeSeriesTable.get(ROLLUP_WATERMARK_ROW, ROLLUP_WATERMARK_COLUMN);
+    return value == null ? null : Bytes.toLong(value);
+  }
+
+  /**
+   * Sets the rollup watermark of this table if it is equal to the expected value.
+   *
+   * @param expected the expected current watermark, {@code null} if it is expected to be not set
+   * @param watermark the new watermark
+   * @return {@code true} if the watermark was updated
+   */
+  public boolean swapRollupWatermark(@Nullable Long expected, long watermark) {
+    return timeSeriesTable.swap(ROLLUP_WATERMARK_ROW, ROLLUP_WATERMARK_COLUMN,
+                                expected == null ? null : Bytes.toBytes(expected), Bytes.toBytes(watermark));
+  }
+
+  /**
+   * Returns the rollup claim of this table, which is the time up to which (exclusive) a rollup into this table has
+   * been started, or {@code null} if no rollup has ever been started. A claim ahead of the rollup watermark means
+   * that a rollup is in progress.
+   */
+  @Nullable
+  public Long getRollupClaim() {
+    byte[] value = timeSeriesTable.get(ROLLUP_WATERMARK_ROW, ROLLUP_CLAIM_COLUMN);
+    return value == null ? null : Bytes.toLong(value);
+  }
+
+  /**
+   * Sets the rollup claim of this table if it is equal to the expected value.
+   *
+   * @param expected the expected current claim, {@code null} if it is expected to be not set
+   * @param claim the new claim
+   * @return {@code true} if the claim was updated
+   */
+  public boolean swapRollupClaim(@Nullable Long expected, long claim) {
+    return timeSeriesTable.swap(ROLLUP_WATERMARK_ROW, ROLLUP_CLAIM_COLUMN,
+                                expected == null ? null : Bytes.toBytes(expected), Bytes.toBytes(claim));
+  }
+
+  /**
+   * Returns the time until which (exclusive) the late facts of this table are claimed to be rolled up, or
+   * {@code null} if they have never been claimed.
+   */
+  @Nullable
+  public Long getLateFactsClaim() {
+    byte[] value = timeSeriesTable.get(ROLLUP_WATERMARK_ROW, LATE_FACTS_CLAIM_COLUMN);
+    return value == null ? null : Bytes.toLong(value);
+  }
+
+  /**
+   * Sets the time until which the late facts of this table are claimed if the current claim is equal to the expected
+   * value.
+   *
+   * @param expected the expected current claim, {@code null} if it is expected to be not set
+   * @param claim the new claim
+   * @return {@code true} if the claim was updated
+   */
+  public boolean swapLateFactsClaim(@Nullable Long expected, long claim) {
+    return timeSeriesTable.swap(ROLLUP_WATERMARK_ROW, LATE_FACTS_CLAIM_COLUMN,
+                                expected == null ? null : Bytes.toBytes(expected), Bytes.toBytes(claim));
+  }
+
   private class MeasureNameComparator implements Comparator<String> {
     private final Map<String, Long> measureNameToEntityIdMap;
 
@@ -164,7 +275,49 @@ public final class FactTable implements Closeable {
   }
 
   public FactScanner scan(FactScan scan) {
-    return new FactScanner(getScanner(scan), codec, scan.getStartTs(), scan.getEndTs(), scan.getMeasureNames());
+    return new FactScanner(getScanner(codec, scan), codec, scan.getStartTs(), scan.getEndTs(),
+                           scan.getMeasureNames());
+  }
+
+  /**
+   * Scans the late facts added with {@link #addLateFacts(List)}.
+   */
+  public FactScanner scanLateFacts(FactScan scan) {
+    return new FactScanner(getScanner(lateFactsCodec, scan), lateFactsCodec, scan.getStartTs(), scan.getEndTs(),
+                           scan.getMeasureNames());
+  }
+
+  /**
+   * Splits the given {@link FactScan} into at most the given number of scans, each covering a disjoint and
+   * contiguous time range. The time ranges are aligned with the time bases of the row keys, so that the
+   * scans cover disjoint row key ranges and the same timestamp is never returned by more than one scan.
+   *
+   * @param scan the scan to split
+   * @param maxSplits maximum number of scans to return
+   * @return list of scans ordered by time range
+   */
+  public List<FactScan> splitScan(FactScan scan, int maxSplits) {
+    long startTimeBase = scan.getStartTs() / rollTime * rollTime;
+    long endTimeBase = scan.getEndTs() / rollTime * rollTime;
+    long timeBases = (endTimeBase - startTimeBase) / rollTime + 1;
+    int splits = (int) Math.min(maxSplits, timeBases);
+    if (splits <= 1) {
+      return ImmutableList.of(scan);
+    }
+
+    long splitInterval = (timeBases + splits - 1) / splits * rollTime;
+    List<FactScan> result = new ArrayList<>(splits);
+    for (int i = 0; i < splits; i++) {
+      long startTs = startTimeBase + i * splitInterval;
+      if (startTs > scan.getEndTs()) {
+        break;
+      }
+      // Compare using subtraction to avoid overflow
+      long endTs = scan.getEndTs() - startTs < splitInterval ? scan.getEndTs() : startTs + splitInterval - 1;
+      result.add(new FactScan(Math.max(startTs, scan.getStartTs()), endTs,
+                              scan.getMeasureNames(), scan.getDimensionValues()));
+    }
+    return result;
   }
 
   private List<String> getSortedMeasures(Collection<String> measures) {
@@ -180,7 +333,7 @@ public final class FactTable implements Closeable {
     return measureNames;
   }
 
-  private Scanner getScanner(FactScan scan) {
+  private Scanner getScanner(FactCodec codec, FactScan scan) {
 
     // sort the measures based on their entity ids and based on that get the start and end row key metric names
     List<String> measureNames = getSortedMeasures(scan.getMeasureNames());
@@ -204,7 +357,8 @@ public final class FactTable implements Closeable {
     }
     endRow = Bytes.stopKeyForPrefix(endRow);
     FuzzyRowFilter fuzzyRowFilter =
-      measureNames.isEmpty() ? createFuzzyRowFilter(scan, startRow) : createFuzzyRowFilter(scan, measureNames);
+      measureNames.isEmpty() ? createFuzzyRowFilter(codec, scan, startRow)
+                             : createFuzzyRowFilter(codec, scan, measureNames);
 
     if (LOG.isTraceEnabled()) {
       LOG.trace("Scanning fact table {} with scan: {}; constructed startRow: {}, endRow: {}, fuzzyRowFilter: {}",
@@ -219,7 +373,7 @@ public final class FactTable implements Closeable {
    * @param scan specifies deletion criteria
    */
   public void delete(FactScan scan) {
-    try (Scanner scanner = getScanner(scan)) {
+    try (Scanner scanner = getScanner(codec, scan)) {
       Row row;
       while ((row = scanner.next()) != null) {
         List<byte[]> columns = Lists.newArrayList();
@@ -301,7 +455,7 @@ public final class FactTable implements Closeable {
     byte[] endRow = codec.createEndRowKey(allDimensions, null, endTs, false);
     endRow = Bytes.stopKeyForPrefix(endRow);
     FuzzyRowFilter fuzzyRowFilter =
-      createFuzzyRowFilter(new FactScan(startTs, endTs, ImmutableList.<String>of(), allDimensions), startRow);
+      createFuzzyRowFilter(codec, new FactScan(startTs, endTs, ImmutableList.<String>of(), allDimensions), startRow);
     Scanner scanner = timeSeriesTable.scan(startRow, endRow, fuzzyRowFilter);
     scans++;
     try {
@@ -384,7 +538,7 @@ public final class FactTable implements Closeable {
     byte[] endRow = codec.createEndRowKey(allDimensions, null, endTs, false);
     endRow = Bytes.stopKeyForPrefix(endRow);
     FuzzyRowFilter fuzzyRowFilter =
-      createFuzzyRowFilter(new FactScan(startTs, endTs, ImmutableList.<String>of(), allDimensions), startRow);
+      createFuzzyRowFilter(codec, new FactScan(startTs, endTs, ImmutableList.<String>of(), allDimensions), startRow);
 
     Set<String> measureNames = Sets.newHashSet();
     int scannedRecords = 0;
@@ -425,7 +579,7 @@ public final class FactTable implements Closeable {
     return FactCodec.getSplits(aggGroupsCount);
   }
 
-  private FuzzyRowFilter createFuzzyRowFilter(FactScan scan, List<String> measureNames) {
+  private FuzzyRowFilter createFuzzyRowFilter(FactCodec codec, FactScan scan, List<String> measureNames) {
     List<ImmutablePair<byte[], byte[]>> fuzzyPairsList = new ArrayList<>();
     for (String measureName : measureNames) {
       // add exact fuzzy keys for all the measure names provided in the scan, when constructing fuzzy row filter
@@ -437,7 +591,7 @@ public final class FactTable implements Closeable {
     return new FuzzyRowFilter(fuzzyPairsList);
   }
 
-  private FuzzyRowFilter createFuzzyRowFilter(FactScan scan, byte[] startRow) {
+  private FuzzyRowFilter createFuzzyRowFilter(FactCodec codec, FactScan scan, byte[] startRow) {
     // we need to always use a fuzzy row filter as it is the only one to do the matching of values
 
     // if we are querying only one measure, we will use fixed measureName for filter,
@@ -20,6 +20,7 @@ import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.lib.AbstractDataset;
 import co.cask.cdap.api.dataset.lib.IndexedTable;
 import co.cask.cdap.api.dataset.table.Delete;
+import co.cask.cdap.api.dataset.table.Get;
 import co.cask.cdap.api.dataset.table.Put;
 import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scan;
@@ -70,6 +71,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -90,6 +93,8 @@ public class MetadataDataset extends AbstractDataset {
   private static final String HISTORY_COLUMN = "h"; // column for metadata history
   private static final String VALUE_COLUMN = "v";  // column for metadata value
   private static final String TAGS_SEPARATOR = ",";
+  // number of metadata values to read with one batched get when fetching search results
+  private static final int METADATA_FETCH_BATCH_SIZE = 1000;
 
   // Fuzzy key is of form <row key, key mask>. We want to compare row keys.
   private static final Comparator<ImmutablePair<byte[], byte[]>> FUZZY_KEY_COMPARATOR =
@@ -570,7 +575,9 @@ public class MetadataDataset extends AbstractDataset {
   private SearchResults searchByDefaultIndex(String namespaceId, String searchQuery,
                                              Set<EntityTypeSimpleName> types, boolean showHidden,
                                              Set<EntityScope> entityScope) {
-    List<MetadataEntry> results = new LinkedList<>();
+    // Collect the entity and metadata key of all matching index rows first, and then read the metadata values
+    // with batched gets, instead of reading the value for every index row.
+    List<ImmutablePair<NamespacedEntityId, String>> matches = new ArrayList<>();
     for (String searchTerm : getSearchTerms(namespaceId, searchQuery, entityScope)) {
       Scanner scanner;
       if (searchTerm.endsWith("*")) {
@@ -585,9 +592,10 @@ public class MetadataDataset extends AbstractDataset {
       try {
         Row next;
         while ((next = scanner.next()) != null) {
-          Optional<MetadataEntry> metadataEntry = parseRow(next, DEFAULT_INDEX_COLUMN, types, showHidden);
-          if (metadataEntry.isPresent()) {
-            results.add(metadataEntry.get());
+          ImmutablePair<NamespacedEntityId, String> match = parseIndexRow(next, DEFAULT_INDEX_COLUMN, types,
+                                                                          showHidden);
+          if (match != null) {
+            matches.add(match);
           }
         }
       } finally {
@@ -595,10 +603,52 @@ public class MetadataDataset extends AbstractDataset {
       }
     }
 
-    // cursors are currently not supported for default indexes
+    // A metadata entry can match multiple times, e.g. for tags 'prod1' and 'prod2' with the term 'prod*'.
+    // Every match counts in the ranking of results, but the value only needs to be read once.
+    Map<ImmutablePair<NamespacedEntityId, String>, MetadataEntry> entries =
+      getMetadataEntries(new LinkedHashSet<>(matches));
+    List<MetadataEntry> results = new ArrayList<>(matches.size());
+    for (ImmutablePair<NamespacedEntityId, String> match : matches) {
+      MetadataEntry entry = entries.get(match);
+      if (entry != null) {
+        results.add(entry);
+      }
+    }
+
+    // cursors are handled by the caller for default indexes, since results are ranked after fetching all of them
     return new SearchResults(results, Collections.<String>emptyList(), results);
   }
 
+  /**
+   * Reads the {@link MetadataEntry} for the given entity and metadata key pairs with batched gets.
+   *
+   * @return a map from the entity and metadata key pair to the {@link MetadataEntry}. Pairs that don't have a value
+   *         are not included.
+   */
+  private Map<ImmutablePair<NamespacedEntityId, String>, MetadataEntry> getMetadataEntries(
+    Collection<ImmutablePair<NamespacedEntityId, String>> targets) {
+
+    Map<ImmutablePair<NamespacedEntityId, String>, MetadataEntry> entries = new HashMap<>();
+    for (List<ImmutablePair<NamespacedEntityId, String>> batch
+      : Iterables.partition(targets, METADATA_FETCH_BATCH_SIZE)) {
+
+      List<Get> gets = new ArrayList<>(batch.size());
+      for (ImmutablePair<NamespacedEntityId, String> target : batch) {
+        gets.add(new Get(MdsKey.getMDSValueKey(target.getFirst(), target.getSecond()).getKey(),
+                         Bytes.toBytes(VALUE_COLUMN)));
+      }
+      Iterator<Row> rows = indexedTable.get(gets).iterator();
+      for (ImmutablePair<NamespacedEntityId, String> target : batch) {
+        byte[] value = rows.next().get(VALUE_COLUMN);
+        // value can be null when all tags are removed one by one. The row still exists, but the value is null.
+        if (value != null) {
+          entries.put(target, new MetadataEntry(target.getFirst(), target.getSecond(), Bytes.toString(value)));
+        }
+      }
+    }
+    return entries;
+  }
+
   private SearchResults searchByCustomIndex(String namespaceId, Set<EntityTypeSimpleName> types,
                                             SortInfo sortInfo, int offset, int limit, int numCursors,
                                             @Nullable String cursor, boolean showHidden,
@@ -657,9 +707,27 @@ public class MetadataDataset extends AbstractDataset {
   // so return an Optional
   private Optional<MetadataEntry> parseRow(Row rowToProcess, String indexColumn,
                                            Set<EntityTypeSimpleName> entityFilter, boolean showHidden) {
+    ImmutablePair<NamespacedEntityId, String> match = parseIndexRow(rowToProcess, indexColumn, entityFilter,
+                                                                    showHidden);
+    if (match == null) {
+      return Optional.absent();
+    }
+    MetadataEntry entry = getMetadata(match.getFirst(), match.getSecond());
+    return Optional.fromNullable(entry);
+  }
+
+  /**
+   * Parses an index row to get the entity and the metadata key that the index is for.
+   *
+   * @return the entity and metadata key pair, or {@code null} if the row should not be included in the results
+   */
+  @Nullable
+  private ImmutablePair<NamespacedEntityId, String> parseIndexRow(Row rowToProcess, String indexColumn,
+                                                                  Set<EntityTypeSimpleName> entityFilter,
+                                                                  boolean showHidden) {
     String rowValue = rowToProcess.getString(indexColumn);
     if (rowValue == null) {
-      return Optional.absent();
+      return null;
     }
 
     final byte[] rowKey = rowToProcess.getRow();
@@ -668,18 +736,16 @@ public class MetadataDataset extends AbstractDataset {
     // Filter on target type if not set to include all types
     boolean includeAllTypes = entityFilter.isEmpty() || entityFilter.contains(EntityTypeSimpleName.ALL);
     if (!includeAllTypes && !entityFilter.contains(EntityTypeSimpleName.valueOfSerializedForm(targetType))) {
-      return Optional.absent();
+      return null;
     }
 
     NamespacedEntityId targetId = MdsKey.getNamespacedIdFromKey(targetType, rowKey);
     // if the entity starts with _ then skip it unless the caller choose to showHidden.
     // This is done to hide entities from Tracker. See: CDAP-7910
     if (!showHidden && targetId.getEntityName().startsWith("_")) {
-      return Optional.absent();
+      return null;
     }
-    String key = MdsKey.getMetadataKey(targetType, rowKey);
-    MetadataEntry entry = getMetadata(targetId, key);
-    return Optional.fromNullable(entry);
+    return ImmutablePair.of(targetId, MdsKey.getMetadataKey(targetType, rowKey));
   }
 
   /**
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -217,6 +217,48 @@ public class LineageDataset extends AbstractDataset {
                          filter);
   }
 
+  /**
+   * Fetch program-data access information for a set of datasets and streams for a given period.
+   *
+   * @param data datasets and streams for which to fetch access information
+   * @param start start time period
+   * @param end end time period
+   * @param filter filter to be applied on result set
+   * @return program-data access information of all the given datasets and streams
+   */
+  public Set<Relation> getRelationsForData(Set<? extends NamespacedEntityId> data, long start, long end,
+                                           Predicate<Relation> filter) {
+    ImmutableSet.Builder<Relation> relationsBuilder = ImmutableSet.builder();
+    for (NamespacedEntityId entityId : data) {
+      if (entityId instanceof DatasetId) {
+        relationsBuilder.addAll(getRelations((DatasetId) entityId, start, end, filter));
+      } else if (entityId instanceof StreamId) {
+        relationsBuilder.addAll(getRelations((StreamId) entityId, start, end, filter));
+      } else {
+        throw new IllegalArgumentException("Unknown data type " + entityId);
+      }
+    }
+    return relationsBuilder.build();
+  }
+
+  /**
+   * Fetch program-data access information for a set of programs for a given period.
+   *
+   * @param programs programs for which to fetch access information
+   * @param start start time period
+   * @param end end time period
+   * @param filter filter to be applied on result set
+   * @return program-data access information of all the given programs
+   */
+  public Set<Relation> getRelationsForPrograms(Set<ProgramId> programs, long start, long end,
+                                               Predicate<Relation> filter) {
+    ImmutableSet.Builder<Relation> relationsBuilder = ImmutableSet.builder();
+    for (ProgramId program : programs) {
+      relationsBuilder.addAll(getRelations(program, start, end, filter));
+    }
+    return relationsBuilder.build();
+  }
+
   /**
    * @return a set of access times (for program and data it accesses) associated with a program run.
    */
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -205,6 +205,28 @@ public class LineageStore implements LineageStoreReader, LineageStoreWriter {
     });
   }
 
+  @Override
+  public Set<Relation> getRelationsForData(final Set<? extends NamespacedEntityId> data, final long start,
+                                           final long end, final Predicate<Relation> filter) {
+    return execute(new TransactionExecutor.Function<LineageDataset, Set<Relation>>() {
+      @Override
+      public Set<Relation> apply(LineageDataset input) throws Exception {
+        return input.getRelationsForData(data, start, end, filter);
+      }
+    });
+  }
+
+  @Override
+  public Set<Relation> getRelationsForPrograms(final Set<ProgramId> programs, final long start, final long end,
+                                               final Predicate<Relation> filter) {
+    return execute(new TransactionExecutor.Function<LineageDataset, Set<Relation>>() {
+      @Override
+      public Set<Relation> apply(LineageDataset input) throws Exception {
+        return input.getRelationsForPrograms(programs, start, end, filter);
+      }
+    });
+  }
+
   /**
    * @return a set of access times (for program and data it accesses) associated with a program run.
    */
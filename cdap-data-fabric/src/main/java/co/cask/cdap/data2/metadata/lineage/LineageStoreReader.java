@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -71,4 +71,30 @@ public interface LineageStoreReader {
    */
   Set<Relation> getRelations(ProgramId program, long start, long end,
                              Predicate<Relation> filter);
+
+  /**
+   * Fetch program-data access information for a set of datasets and streams for a given period.
+   * All the lookups are done in one transaction.
+   *
+   * @param data datasets and streams for which to fetch access information
+   * @param start start time period
+   * @param end end time period
+   * @param filter filter to be applied on result set
+   * @return program-data access information of all the given datasets and streams
+   */
+  Set<Relation> getRelationsForData(Set<? extends NamespacedEntityId> data, long start, long end,
+                                    Predicate<Relation> filter);
+
+  /**
+   * Fetch program-data access information for a set of programs for a given period.
+   * All the lookups are done in one transaction.
+   *
+   * @param programs programs for which to fetch access information
+   * @param start start time period
+   * @param end end time period
+   * @param filter filter to be applied on result set
+   * @return program-data access information of all the given programs
+   */
+  Set<Relation> getRelationsForPrograms(Set<ProgramId> programs, long start, long end,
+                                        Predicate<Relation> filter);
 }
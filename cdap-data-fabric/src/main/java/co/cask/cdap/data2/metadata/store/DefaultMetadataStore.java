@@ -45,6 +45,7 @@ import co.cask.cdap.proto.metadata.MetadataRecord;
 import co.cask.cdap.proto.metadata.MetadataScope;
 import co.cask.cdap.proto.metadata.MetadataSearchResponse;
 import co.cask.cdap.proto.metadata.MetadataSearchResultRecord;
+import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -63,12 +64,14 @@ import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
 
 /**
  * Implementation of {@link MetadataStore} used in distributed mode.
@@ -437,9 +440,18 @@ public class DefaultMetadataStore implements MetadataStore {
     // 2. Even when using custom sorting, we still fetch extra results if numCursors > 1
     // TODO: Figure out how all of this can be done server (HBase) side
     if (SortInfo.DEFAULT.equals(sortInfo)) {
-      int startIndex = Math.min(offset, sortedEntities.size());
-      int endIndex = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit); // Account for overflow
+      // Results are ranked after all of them are fetched, hence a cursor is the index of the first result
+      // of a page in the ranked results.
+      long cursorIndex = getDefaultSortCursorIndex(cursor);
+      int startIndex = (int) Math.min(cursorIndex + offset, sortedEntities.size());
+      int endIndex = (int) Math.min(Integer.MAX_VALUE, (long) startIndex + limit); // Account for overflow
       endIndex = Math.min(endIndex, sortedEntities.size());
+      if (limit > 0) {
+        for (long nextIndex = endIndex; cursors.size() < numCursors && nextIndex < sortedEntities.size();
+             nextIndex += limit) {
+          cursors.add(Long.toString(nextIndex));
+        }
+      }
 
       // add 1 to maxIndex because end index is exclusive
       sortedEntities = new LinkedHashSet<>(
@@ -459,6 +471,25 @@ public class DefaultMetadataStore implements MetadataStore {
       entityScope);
   }
 
+  /**
+   * Returns the index in the ranked results that the given cursor of a search with {@link SortInfo#DEFAULT}
+   * points to, or {@code 0} if no cursor is given.
+   */
+  private long getDefaultSortCursorIndex(@Nullable String cursor) throws BadRequestException {
+    if (Strings.isNullOrEmpty(cursor)) {
+      return 0L;
+    }
+    try {
+      int index = Integer.parseInt(cursor);
+      if (index >= 0) {
+        return index;
+      }
+    } catch (NumberFormatException e) {
+      // fall through
+    }
+    throw new BadRequestException(String.format("Invalid cursor '%s' for search without sort info", cursor));
+  }
+
   private SearchResults getSearchResults(final MetadataScope scope, final String namespaceId,
                                          final String searchQuery, final Set<EntityTypeSimpleName> types,
                                          final SortInfo sortInfo, final int offset,
@@ -487,7 +518,8 @@ public class DefaultMetadataStore implements MetadataStore {
     }
     // if sort order is weighted, score results by weight, and return in descending order of weights
     // Score results
-    final Map<NamespacedEntityId, Integer> weightedResults = new HashMap<>();
+    // Entities with the same score are kept in the order that they are matched
+    final Map<NamespacedEntityId, Integer> weightedResults = new LinkedHashMap<>();
     for (MetadataEntry metadataEntry : results) {
       Integer score = weightedResults.get(metadataEntry.getTargetId());
       score = (score == null) ? 0 : score;
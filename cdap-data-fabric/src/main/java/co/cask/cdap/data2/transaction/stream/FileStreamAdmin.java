@@ -25,6 +25,7 @@ import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.common.namespace.NamespacedLocationFactory;
+import co.cask.cdap.common.stream.StreamBlockCompression;
 import co.cask.cdap.common.utils.OSDetector;
 import co.cask.cdap.data.stream.CoordinatorStreamProperties;
 import co.cask.cdap.data.stream.StreamCoordinatorClient;
@@ -320,7 +321,8 @@ public class FileStreamAdmin implements StreamAdmin {
           }
 
           return new StreamConfig(streamId, config.getPartitionDuration(), config.getIndexInterval(),
-                                  config.getTTL(), getStreamLocation(streamId), config.getFormat(), threshold);
+                                  config.getTTL(), getStreamLocation(streamId), config.getFormat(), threshold,
+                                  config.getCompression());
         }
       });
     } catch (Exception ex) {
@@ -606,6 +608,8 @@ public class FileStreamAdmin implements StreamAdmin {
             Constants.Stream.TTL, cConf.get(Constants.Stream.TTL)));
           int threshold = Integer.parseInt(properties.getProperty(
             Constants.Stream.NOTIFICATION_THRESHOLD, cConf.get(Constants.Stream.NOTIFICATION_THRESHOLD)));
+          StreamBlockCompression compression = StreamBlockCompression.fromName(properties.getProperty(
+            Constants.Stream.FILE_COMPRESSION, cConf.get(Constants.Stream.FILE_COMPRESSION)));
           String description = properties.getProperty(Constants.Stream.DESCRIPTION);
           FormatSpecification formatSpec = null;
           if (properties.containsKey(Constants.Stream.FORMAT_SPECIFICATION)) {
@@ -614,7 +618,7 @@ public class FileStreamAdmin implements StreamAdmin {
           }
 
           final StreamConfig config = new StreamConfig(streamId, partitionDuration, indexInterval,
-                                                       ttl, streamLocation, formatSpec, threshold);
+                                                       ttl, streamLocation, formatSpec, threshold, compression);
           impersonator.doAs(streamId, new Callable<Void>() {
             @Override
             public Void call() throws Exception {
@@ -18,11 +18,13 @@ package co.cask.cdap.data2.transaction.stream;
 import co.cask.cdap.api.data.format.FormatSpecification;
 import co.cask.cdap.api.data.format.Formats;
 import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.common.stream.StreamBlockCompression;
 import co.cask.cdap.proto.id.StreamId;
 import com.google.common.base.Objects;
 import org.apache.twill.filesystem.Location;
 
 import java.util.Collections;
+import javax.annotation.Nullable;
 
 /**
  * Represents the configuration of a stream. This class needs to be GSON serializable.
@@ -41,11 +43,19 @@ public final class StreamConfig {
   private final long ttl;
   private final FormatSpecification format;
   private final int notificationThresholdMB;
+  // Null for streams created before compression was supported
+  private final StreamBlockCompression compression;
 
   private final transient Location location;
 
   public StreamConfig(StreamId streamId, long partitionDuration, long indexInterval, long ttl,
                       Location location, FormatSpecification format, int notificationThresholdMB) {
+    this(streamId, partitionDuration, indexInterval, ttl, location, format, notificationThresholdMB, null);
+  }
+
+  public StreamConfig(StreamId streamId, long partitionDuration, long indexInterval, long ttl,
+                      Location location, FormatSpecification format, int notificationThresholdMB,
+                      @Nullable StreamBlockCompression compression) {
     this.streamId = streamId;
     this.partitionDuration = partitionDuration;
     this.indexInterval = indexInterval;
@@ -53,6 +63,7 @@ public final class StreamConfig {
     this.location = location;
     this.notificationThresholdMB = notificationThresholdMB;
     this.format = format;
+    this.compression = compression;
   }
 
   /**
@@ -104,6 +115,13 @@ public final class StreamConfig {
     return notificationThresholdMB;
   }
 
+  /**
+   * @return The compression of data blocks in files of this stream.
+   */
+  public StreamBlockCompression getCompression() {
+    return Objects.firstNonNull(compression, StreamBlockCompression.NONE);
+  }
+
   @Override
   public String toString() {
     return Objects.toStringHelper(this)
@@ -114,6 +132,7 @@ public final class StreamConfig {
       .add("location", location)
       .add("format", format)
       .add("notificationThresholdMB", notificationThresholdMB)
+      .add("compression", compression)
       .toString();
   }
 
@@ -152,7 +171,8 @@ public final class StreamConfig {
                               Objects.firstNonNull(ttl, config.getTTL()),
                               config.getLocation(),
                               Objects.firstNonNull(formatSpec, config.getFormat()),
-                              Objects.firstNonNull(notificationThreshold, config.getNotificationThresholdMB()));
+                              Objects.firstNonNull(notificationThreshold, config.getNotificationThresholdMB()),
+                              config.getCompression());
     }
   }
 }
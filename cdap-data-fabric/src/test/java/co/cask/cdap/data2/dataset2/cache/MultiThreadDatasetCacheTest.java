@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,10 +16,13 @@
 
 package co.cask.cdap.data2.dataset2.cache;
 
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.utils.Tasks;
 import co.cask.cdap.data.dataset.SystemDatasetInstantiator;
 import co.cask.cdap.data2.dataset2.DynamicDatasetCache;
 import co.cask.cdap.data2.dataset2.MultiThreadDatasetCache;
+import com.google.common.collect.ImmutableMap;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -88,6 +91,87 @@ public class MultiThreadDatasetCacheTest extends DynamicDatasetCacheTest {
     }, 5, TimeUnit.SECONDS, 100, TimeUnit.MILLISECONDS);
   }
 
+  @Test
+  public void testReuseCacheOfTerminatedThread() throws Throwable {
+    MultiThreadDatasetCache cache = (MultiThreadDatasetCache) this.cache;
+
+    // the cache of a terminated thread should become idle
+    AtomicReference<TestDataset> dataset1 = new AtomicReference<>();
+    Thread thread = runInThread(cache, dataset1);
+    Assert.assertNotNull(dataset1.get());
+    cache.releaseCacheOf(thread);
+    Assert.assertEquals(1, cache.getIdleCacheCount());
+
+    // a new thread should reuse the idle cache, including the dataset instance
+    AtomicReference<TestDataset> dataset2 = new AtomicReference<>();
+    runInThread(cache, dataset2);
+    Assert.assertSame(dataset1.get(), dataset2.get());
+    Assert.assertEquals(0, cache.getIdleCacheCount());
+  }
+
+  @Test
+  public void testIdleCacheLimits() throws Throwable {
+    // only one idle cache is kept
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setInt(Constants.Dataset.CACHE_MAX_IDLE_CACHES, 1);
+    MultiThreadDatasetCache cache = createCache(cConf);
+    try {
+      Thread thread1 = runInThread(cache, new AtomicReference<TestDataset>());
+      Thread thread2 = runInThread(cache, new AtomicReference<TestDataset>());
+      cache.releaseCacheOf(thread1);
+      cache.releaseCacheOf(thread2);
+      Assert.assertEquals(1, cache.getIdleCacheCount());
+    } finally {
+      cache.close();
+    }
+
+    // with zero idle time, the idle cache is closed once a thread accesses its own cache after it was released
+    cConf = CConfiguration.create();
+    cConf.setLong(Constants.Dataset.CACHE_MAX_IDLE_SECONDS, 0);
+    cache = createCache(cConf);
+    try {
+      cache.getDataset("a");
+      cache.releaseCacheOf(runInThread(cache, new AtomicReference<TestDataset>()));
+      Assert.assertEquals(1, cache.getIdleCacheCount());
+      TimeUnit.MILLISECONDS.sleep(10);
+      cache.getDataset("a");
+      Assert.assertEquals(0, cache.getIdleCacheCount());
+    } finally {
+      cache.close();
+    }
+  }
+
+  private MultiThreadDatasetCache createCache(CConfiguration cConf) {
+    SystemDatasetInstantiator instantiator =
+      new SystemDatasetInstantiator(dsFramework, getClass().getClassLoader(), null);
+    return new MultiThreadDatasetCache(cConf, instantiator, txClient, NAMESPACE, ImmutableMap.<String, String>of(),
+                                       null, null);
+  }
+
+  /**
+   * Starts a thread that gets dataset "a" from the cache and waits for it to complete.
+   */
+  private Thread runInThread(final MultiThreadDatasetCache cache,
+                             final AtomicReference<TestDataset> dataset) throws Exception {
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          dataset.set(cache.<TestDataset>getDataset("a"));
+        } catch (Throwable t) {
+          failure.set(t);
+        }
+      }
+    };
+    thread.start();
+    thread.join();
+    if (failure.get() != null) {
+      throw new Exception(failure.get());
+    }
+    return thread;
+  }
+
   private Thread createThread(final Map<String, TestDataset> datasetMap, final AtomicReference<Throwable> ref) {
     return new Thread() {
       @Override
@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.cube;
+
+import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
+import co.cask.cdap.api.dataset.lib.cube.Cube;
+import co.cask.cdap.api.dataset.lib.cube.CubeFact;
+import co.cask.cdap.api.dataset.lib.cube.CubeQuery;
+import co.cask.cdap.api.dataset.lib.cube.MeasureType;
+import co.cask.cdap.api.dataset.lib.cube.TimeSeries;
+import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryMetricsTable;
+import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryTableService;
+import co.cask.cdap.data2.dataset2.lib.timeseries.EntityTable;
+import co.cask.cdap.data2.dataset2.lib.timeseries.FactTable;
+import co.cask.cdap.test.XSlowTests;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the {@link AbstractCubeTest} with a {@link DefaultCube} that executes queries with parallel scans.
+ * A small roll time is used for the fact tables so that queries span multiple time bases and get split.
+ */
+public class ParallelDefaultCubeTest extends AbstractCubeTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ParallelDefaultCubeTest.class);
+
+  @Override
+  protected Cube getCube(final String name, int[] resolutions, Map<String, ? extends Aggregation> aggregations) {
+    FactTableSupplier supplier = new FactTableSupplier() {
+      @Override
+      public FactTable get(int resolution, int rollTime) {
+        return createFactTable(name, resolution, 4);
+      }
+    };
+    return new DefaultCube(resolutions, supplier, aggregations, ImmutableMap.<String, AggregationAlias>of(), 4);
+  }
+
+  /**
+   * Compares the query latency of serial and parallel execution on a synthetic cube.
+   */
+  @Category(XSlowTests.class)
+  @Test
+  public void testQueryPerformance() throws Exception {
+    final String name = "perfCube";
+    FactTableSupplier supplier = new FactTableSupplier() {
+      @Override
+      public FactTable get(int resolution, int rollTime) {
+        return createFactTable(name, resolution, rollTime);
+      }
+    };
+    Map<String, Aggregation> aggregations = ImmutableMap.<String, Aggregation>of(
+      "agg", new DefaultAggregation(ImmutableList.of("dim1", "dim2")));
+    int[] resolutions = new int[] { 1 };
+    DefaultCube serialCube = new DefaultCube(resolutions, supplier, aggregations,
+                                             ImmutableMap.<String, AggregationAlias>of());
+    DefaultCube parallelCube = new DefaultCube(resolutions, supplier, aggregations,
+                                               ImmutableMap.<String, AggregationAlias>of(), 4);
+
+    // One day of data at 1 second resolution for 5 x 4 dimension values
+    int seconds = 24 * 3600;
+    Stopwatch stopwatch = new Stopwatch().start();
+    for (int ts = 0; ts < seconds; ts++) {
+      List<CubeFact> facts = Lists.newArrayList();
+      for (int dim1 = 0; dim1 < 5; dim1++) {
+        for (int dim2 = 0; dim2 < 4; dim2++) {
+          facts.add(new CubeFact(ts)
+                      .addDimensionValues(ImmutableMap.of("dim1", "value" + dim1, "dim2", "value" + dim2))
+                      .addMeasurement("metric", MeasureType.COUNTER, 1L));
+        }
+      }
+      serialCube.add(facts);
+    }
+    LOG.info("Added {} facts in {} ms", seconds * 20, stopwatch.elapsedTime(TimeUnit.MILLISECONDS));
+
+    CubeQuery query = CubeQuery.builder()
+      .select()
+        .measurement("metric", AggregationFunction.SUM)
+      .from(null).resolution(1, TimeUnit.SECONDS)
+      .where()
+        .dimensions(ImmutableMap.<String, String>of())
+        .timeRange(0, seconds)
+      .groupBy()
+        .dimensions(ImmutableList.of("dim1"))
+      .limit(Integer.MAX_VALUE)
+      .build();
+
+    for (int i = 0; i < 5; i++) {
+      stopwatch.reset().start();
+      Collection<TimeSeries> serialResult = serialCube.query(query);
+      long serialMillis = stopwatch.elapsedTime(TimeUnit.MILLISECONDS);
+
+      stopwatch.reset().start();
+      Collection<TimeSeries> parallelResult = parallelCube.query(query);
+      long parallelMillis = stopwatch.elapsedTime(TimeUnit.MILLISECONDS);
+
+      LOG.info("Query latency on {} processors: serial {} ms, parallel {} ms",
+               Runtime.getRuntime().availableProcessors(), serialMillis, parallelMillis);
+
+      Assert.assertEquals(5, serialResult.size());
+      Assert.assertEquals(serialResult.size(), parallelResult.size());
+      Assert.assertTrue(serialResult.containsAll(parallelResult));
+    }
+    serialCube.close();
+    parallelCube.close();
+  }
+
+  private FactTable createFactTable(String name, int resolution, int rollTime) {
+    String entityTableName = "EntityTable-" + name;
+    InMemoryTableService.create(entityTableName);
+    String dataTableName = "DataTable-" + name + "-" + resolution;
+    InMemoryTableService.create(dataTableName);
+    return new FactTable(new InMemoryMetricsTable(dataTableName),
+                         new EntityTable(new InMemoryMetricsTable(entityTableName)),
+                         resolution, rollTime);
+  }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.cube;
+
+import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
+import co.cask.cdap.api.dataset.lib.cube.CubeFact;
+import co.cask.cdap.api.dataset.lib.cube.CubeQuery;
+import co.cask.cdap.api.dataset.lib.cube.MeasureType;
+import co.cask.cdap.api.dataset.lib.cube.TimeSeries;
+import co.cask.cdap.common.utils.TimeProvider;
+import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryMetricsTable;
+import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryTableService;
+import co.cask.cdap.data2.dataset2.lib.timeseries.EntityTable;
+import co.cask.cdap.data2.dataset2.lib.timeseries.FactTable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link DefaultCube} with rollup of coarser resolutions enabled.
+ */
+public class RollupDefaultCubeTest {
+
+  private static final int ROLLUP_DELAY_SECONDS = 60;
+  // must be the same as DefaultCube.ROLLUP_WRITE_MARGIN_SECONDS
+  private static final int WRITE_MARGIN_SECONDS = 10;
+  private static final int[] RESOLUTIONS = new int[] { 1, 60, Integer.MAX_VALUE };
+  private static final Map<String, Aggregation> AGGREGATIONS = ImmutableMap.<String, Aggregation>of(
+    "agg1", new DefaultAggregation(ImmutableList.of("dim1", "dim2")),
+    "agg2", new DefaultAggregation(ImmutableList.of("dim1")),
+    // same dimensions as agg2, which must not be rolled up twice
+    "agg3", new DefaultAggregation(ImmutableList.of("dim1")));
+
+  @Test
+  public void testRollup() throws Exception {
+    TestTimeProvider timeProvider = new TestTimeProvider();
+    DefaultCube expectedCube = createCube("expected", false, timeProvider);
+    DefaultCube cube = createCube("rollup", true, timeProvider);
+    AtomicInteger reads = new AtomicInteger();
+    DefaultCube rollupCube = createCube("rollup", true, timeProvider, new AtomicBoolean(), reads);
+
+    List<CubeFact> facts = createFacts(0, 300);
+    expectedCube.add(facts);
+    rollupCube.add(facts);
+
+    // Counters are only in the finest resolution before rollup, gauges are in all resolutions
+    verifyQueries(expectedCube, rollupCube, 1, "counter", "gauge");
+    verifyQueries(expectedCube, rollupCube, 60, "gauge");
+    Assert.assertTrue(query(rollupCube, 60, "counter").isEmpty());
+
+    // Writing doesn't read the rollup state once the watermarks are loaded
+    int readsAfterFirstWrite = reads.get();
+    rollupCube.add(createFacts(300, 301));
+    expectedCube.add(createFacts(300, 301));
+    Assert.assertEquals(readsAfterFirstWrite, reads.get());
+
+    // Roll up the first 150 seconds, which does not complete the data point at 120 in the minute resolution
+    timeProvider.setSeconds(150 + ROLLUP_DELAY_SECONDS + WRITE_MARGIN_SECONDS);
+    Assert.assertTrue(rollupCube.rollup(150) > 0);
+    Assert.assertEquals(query(expectedCube, 60, "counter", 0, 119), query(rollupCube, 60, "counter", 0, 119));
+    Assert.assertFalse(query(expectedCube, 60, "counter").equals(query(rollupCube, 60, "counter")));
+
+    // The rest is rolled up by another instance, from the persisted watermarks
+    timeProvider.setSeconds(360 + ROLLUP_DELAY_SECONDS + WRITE_MARGIN_SECONDS);
+    Assert.assertTrue(cube.rollup(360) > 0);
+    verifyQueries(expectedCube, rollupCube, 60, "counter", "gauge");
+    verifyQueries(expectedCube, rollupCube, Integer.MAX_VALUE, "counter", "gauge");
+
+    // Nothing more to roll up
+    Assert.assertEquals(0, rollupCube.rollup(360));
+    verifyQueries(expectedCube, rollupCube, 60, "counter", "gauge");
+
+    expectedCube.close();
+    rollupCube.close();
+    cube.close();
+  }
+
+  @Test
+  public void testRollupOfClosedTimeRanges() throws Exception {
+    TestTimeProvider timeProvider = new TestTimeProvider();
+    DefaultCube expectedCube = createCube("expected-closed", false, timeProvider);
+    DefaultCube rollupCube = createCube("closed", true, timeProvider);
+
+    List<CubeFact> facts = createFacts(0, 100);
+    expectedCube.add(facts);
+    rollupCube.add(facts);
+
+    // Time ranges that are not closed yet are not rolled up, even if asked for
+    timeProvider.setSeconds(100);
+    Assert.assertTrue(rollupCube.rollup(300) > 0);
+
+    // Hence counters written into the finest resolution only afterwards are rolled up later
+    facts = createFacts(100 - ROLLUP_DELAY_SECONDS, 200);
+    expectedCube.add(facts);
+    rollupCube.add(facts);
+    timeProvider.setSeconds(300 + ROLLUP_DELAY_SECONDS + WRITE_MARGIN_SECONDS);
+    Assert.assertTrue(rollupCube.rollup(300) > 0);
+    verifyQueries(expectedCube, rollupCube, 1, "counter", "gauge");
+    verifyQueries(expectedCube, rollupCube, 60, "counter", "gauge");
+    verifyQueries(expectedCube, rollupCube, Integer.MAX_VALUE, "counter", "gauge");
+
+    expectedCube.close();
+    rollupCube.close();
+  }
+
+  @Test
+  public void testLateFacts() throws Exception {
+    TestTimeProvider timeProvider = new TestTimeProvider();
+    DefaultCube expectedCube = createCube("expected-late", false, timeProvider);
+    DefaultCube writerCube = createCube("late", true, timeProvider);
+    DefaultCube rollupCube = createCube("late", true, timeProvider);
+
+    List<CubeFact> facts = createFacts(0, 300);
+    expectedCube.add(facts);
+    writerCube.add(facts);
+
+    // Rolled up by another instance
+    timeProvider.setSeconds(300 + ROLLUP_DELAY_SECONDS + WRITE_MARGIN_SECONDS);
+    Assert.assertTrue(rollupCube.rollup(300) > 0);
+    verifyQueries(expectedCube, writerCube, 60, "counter", "gauge");
+
+    // Counters that arrive after their time range is closed are written as late facts. Those before the watermark
+    // are added into all resolutions by the next rollup, the others wait for the watermark to pass them.
+    facts = createFacts(100, 200);
+    expectedCube.add(facts);
+    writerCube.add(facts);
+    facts = createFacts(300, 400);
+    expectedCube.add(facts);
+    writerCube.add(facts);
+    Assert.assertTrue(rollupCube.rollup(300) > 0);
+    verifyQueries(expectedCube, writerCube, 1, 0, 299, "counter", "gauge");
+    verifyQueries(expectedCube, writerCube, 60, 0, 299, "counter", "gauge");
+    Assert.assertFalse(query(expectedCube, 1, "counter").equals(query(writerCube, 1, "counter")));
+
+    // Nothing is added twice once the watermark passes the remaining late facts
+    timeProvider.setSeconds(400 + ROLLUP_DELAY_SECONDS + WRITE_MARGIN_SECONDS);
+    Assert.assertTrue(rollupCube.rollup(400) > 0);
+    Assert.assertEquals(0, rollupCube.rollup(400));
+    verifyQueries(expectedCube, writerCube, 1, "counter", "gauge");
+    verifyQueries(expectedCube, writerCube, 60, "counter", "gauge");
+    verifyQueries(expectedCube, writerCube, Integer.MAX_VALUE, "counter", "gauge");
+
+    expectedCube.close();
+    writerCube.close();
+    rollupCube.close();
+  }
+
+  @Test
+  public void testRollupFailure() throws Exception {
+    TestTimeProvider timeProvider = new TestTimeProvider();
+    DefaultCube expectedCube = createCube("expected-failure", false, timeProvider);
+    AtomicBoolean failIncrement = new AtomicBoolean();
+    DefaultCube rollupCube = createCube("failure", true, timeProvider, failIncrement, new AtomicInteger());
+
+    List<CubeFact> facts = createFacts(0, 300);
+    expectedCube.add(facts);
+    rollupCube.add(facts);
+
+    // Writing into the minute resolution fails, hence its watermark must not be advanced
+    timeProvider.setSeconds(300 + ROLLUP_DELAY_SECONDS + WRITE_MARGIN_SECONDS);
+    failIncrement.set(true);
+    Assert.assertTrue(rollupCube.rollup(300) > 0);
+    failIncrement.set(false);
+    verifyQueries(expectedCube, rollupCube, Integer.MAX_VALUE, "counter", "gauge");
+    Assert.assertTrue(query(rollupCube, 60, "counter").isEmpty());
+
+    // Rolled up again, without counting the totals twice
+    Assert.assertTrue(rollupCube.rollup(300) > 0);
+    verifyQueries(expectedCube, rollupCube, 60, "counter", "gauge");
+    verifyQueries(expectedCube, rollupCube, Integer.MAX_VALUE, "counter", "gauge");
+
+    expectedCube.close();
+    rollupCube.close();
+  }
+
+  private List<CubeFact> createFacts(long startTs, long endTs) {
+    List<CubeFact> facts = Lists.newArrayList();
+    for (long ts = startTs; ts < endTs; ts++) {
+      for (int i = 0; i < 3; i++) {
+        facts.add(new CubeFact(ts)
+                    .addDimensionValues(ImmutableMap.of("dim1", "value" + i, "dim2", "value" + (ts % 2)))
+                    .addMeasurement("counter", MeasureType.COUNTER, i + 1)
+                    .addMeasurement("gauge", MeasureType.GAUGE, ts));
+      }
+    }
+    return facts;
+  }
+
+  private void verifyQueries(DefaultCube expectedCube, DefaultCube cube, int resolution, String... measureNames) {
+    verifyQueries(expectedCube, cube, resolution, 0, 1000, measureNames);
+  }
+
+  private void verifyQueries(DefaultCube expectedCube, DefaultCube cube, int resolution, long startTs, long endTs,
+                             String... measureNames) {
+    for (String measureName : measureNames) {
+      Assert.assertEquals(query(expectedCube, resolution, measureName, startTs, endTs),
+                          query(cube, resolution, measureName, startTs, endTs));
+    }
+  }
+
+  private List<TimeSeries> query(DefaultCube cube, int resolution, String measureName) {
+    return query(cube, resolution, measureName, 0, 1000);
+  }
+
+  private List<TimeSeries> query(DefaultCube cube, int resolution, String measureName, long startTs, long endTs) {
+    List<TimeSeries> result = Lists.newArrayList();
+    for (String aggregation : AGGREGATIONS.keySet()) {
+      CubeQuery query = CubeQuery.builder()
+        .select()
+          .measurement(measureName, AggregationFunction.SUM)
+        .from(aggregation).resolution(resolution, TimeUnit.SECONDS)
+        .where()
+          .dimensions(ImmutableMap.<String, String>of())
+          .timeRange(startTs, endTs)
+        .groupBy()
+          .dimensions(ImmutableList.of("dim1"))
+        .limit(Integer.MAX_VALUE)
+        .build();
+      result.addAll(cube.query(query));
+    }
+    // Make the result comparable
+    Collections.sort(result, new Comparator<TimeSeries>() {
+      @Override
+      public int compare(TimeSeries o1, TimeSeries o2) {
+        return o1.getDimensionValues().toString().compareTo(o2.getDimensionValues().toString());
+      }
+    });
+    return result;
+  }
+
+  private DefaultCube createCube(String name, boolean rollupEnabled, TimeProvider timeProvider) {
+    return createCube(name, rollupEnabled, timeProvider, new AtomicBoolean(), new AtomicInteger());
+  }
+
+  /**
+   * Creates a {@link DefaultCube} whose minute resolution fails to increment when the given flag is set, and which
+   * counts the reads of single cells from its coarser resolutions.
+   */
+  private DefaultCube createCube(final String name, boolean rollupEnabled, TimeProvider timeProvider,
+                                 final AtomicBoolean failIncrement, final AtomicInteger reads) {
+    FactTableSupplier supplier = new FactTableSupplier() {
+      @Override
+      public FactTable get(final int resolution, int rollTime) {
+        String entityTableName = "EntityTable-" + name;
+        InMemoryTableService.create(entityTableName);
+        String dataTableName = "DataTable-" + name + "-" + resolution;
+        InMemoryTableService.create(dataTableName);
+        InMemoryMetricsTable dataTable = new InMemoryMetricsTable(dataTableName) {
+          @Override
+          public byte[] get(byte[] row, byte[] column) {
+            if (resolution != RESOLUTIONS[0]) {
+              reads.incrementAndGet();
+            }
+            return super.get(row, column);
+          }
+
+          @Override
+          public void increment(NavigableMap<byte[], NavigableMap<byte[], Long>> updates) {
+            if (resolution == 60 && failIncrement.get()) {
+              throw new RuntimeException("Failure for testing");
+            }
+            super.increment(updates);
+          }
+        };
+        return new FactTable(dataTable, new EntityTable(new InMemoryMetricsTable(entityTableName)),
+                             resolution, rollTime);
+      }
+    };
+    DefaultCube cube = new DefaultCube(RESOLUTIONS, supplier, AGGREGATIONS,
+                                       ImmutableMap.<String, AggregationAlias>of(), 1, rollupEnabled,
+                                       ROLLUP_DELAY_SECONDS);
+    cube.setTimeProvider(timeProvider);
+    return cube;
+  }
+
+  /**
+   * A {@link TimeProvider} that returns the time set by the test.
+   */
+  private static final class TestTimeProvider implements TimeProvider {
+
+    private volatile long seconds;
+
+    void setSeconds(long seconds) {
+      this.seconds = seconds;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+      return TimeUnit.SECONDS.toMillis(seconds);
+    }
+  }
+}
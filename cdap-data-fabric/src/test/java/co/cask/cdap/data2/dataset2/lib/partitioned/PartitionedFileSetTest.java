@@ -31,7 +31,9 @@ import co.cask.cdap.api.dataset.lib.PartitionedFileSetProperties;
 import co.cask.cdap.api.dataset.lib.Partitioning;
 import co.cask.cdap.api.dataset.table.TableProperties;
 import co.cask.cdap.common.namespace.NamespacedLocationFactory;
+import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.data2.dataset2.DatasetFrameworkTestUtil;
+import co.cask.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
 import co.cask.cdap.proto.id.DatasetId;
 import co.cask.cdap.test.SlowTests;
 import com.google.common.collect.ImmutableMap;
@@ -180,6 +182,36 @@ public class PartitionedFileSetTest {
     PartitionedFileSetDataset.parseRowKey(rowKey, PARTITIONING_2);
   }
 
+  @Test
+  public void testGenerateFuzzyRowFilter() {
+    // no filter needed if there is no filter, or if the start and stop keys already cover all conditions
+    Assert.assertNull(PartitionedFileSetDataset.generateFuzzyRowFilter(null, PARTITIONING_1));
+    Assert.assertNull(PartitionedFileSetDataset.generateFuzzyRowFilter(
+      PartitionFilter.builder().addValueCondition("s", "x").addValueCondition("i", 42).build(), PARTITIONING_1));
+    // no filter possible for conditions after a string field without single value condition
+    Assert.assertNull(PartitionedFileSetDataset.generateFuzzyRowFilter(
+      PartitionFilter.builder().addValueCondition("i", 42).build(), PARTITIONING_1));
+    Assert.assertNull(PartitionedFileSetDataset.generateFuzzyRowFilter(
+      PartitionFilter.builder().addRangeCondition("s", "a", "b").addValueCondition("l", 17L).build(),
+      PARTITIONING_1));
+
+    // a condition on l with a wildcard for i
+    FuzzyRowFilter fuzzyRowFilter = PartitionedFileSetDataset.generateFuzzyRowFilter(
+      PartitionFilter.builder().addValueCondition("s", "x").addValueCondition("l", 17L).build(), PARTITIONING_1);
+    Assert.assertNotNull(fuzzyRowFilter);
+    Assert.assertEquals(1, fuzzyRowFilter.getFuzzyKeysData().size());
+
+    byte[] rowKey = PartitionedFileSetDataset.generateRowKey(PARTITION_KEY, PARTITIONING_1);
+    ImmutablePair<byte[], byte[]> fuzzyKey = fuzzyRowFilter.getFuzzyKeysData().get(0);
+    Assert.assertArrayEquals(new byte[] { 0, 0, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0 }, fuzzyKey.getSecond());
+    Assert.assertEquals(rowKey.length, fuzzyKey.getFirst().length);
+    for (int i = 0; i < rowKey.length; i++) {
+      if (fuzzyKey.getSecond()[i] == 0) {
+        Assert.assertEquals(rowKey[i], fuzzyKey.getFirst()[i]);
+      }
+    }
+  }
+
   @Test
   public void testMetadataForNonexistentPartition() throws Exception {
     PartitionedFileSet pfs = dsFrameworkUtil.getInstance(pfsInstance);
@@ -0,0 +1,380 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.test.XSlowTests;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Unit-test for {@link ArenaWriteBuffer}. It verifies the arena buffer against the {@link TreeMapWriteBuffer}.
+ */
+public class ArenaWriteBufferTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ArenaWriteBufferTest.class);
+
+  @Test
+  public void testBufferType() {
+    Assert.assertTrue(WriteBuffer.create(ImmutableMap.<String, String>of()) instanceof TreeMapWriteBuffer);
+    Assert.assertTrue(WriteBuffer.create(ImmutableMap.of(BufferingTable.PROPERTY_BUFFER_TYPE, "heap_arena"))
+                        instanceof ArenaWriteBuffer);
+    Assert.assertTrue(WriteBuffer.create(ImmutableMap.of(BufferingTable.PROPERTY_BUFFER_TYPE, "DIRECT_ARENA"))
+                        instanceof ArenaWriteBuffer);
+    try {
+      WriteBuffer.create(ImmutableMap.of(BufferingTable.PROPERTY_BUFFER_TYPE, "unknown"));
+      Assert.fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testMergeSemantics() {
+    for (boolean direct : new boolean[] { false, true }) {
+      WriteBuffer buffer = new ArenaWriteBuffer(direct);
+      byte[] row = Bytes.toBytes("r");
+      byte[] c1 = Bytes.toBytes("c1");
+      byte[] c2 = Bytes.toBytes("c2");
+      byte[] c3 = Bytes.toBytes("c3");
+
+      // Put a + Increment b = Put (a + b)
+      buffer.put(row, new byte[][] { c1 }, new byte[][] { Bytes.toBytes(10L) });
+      buffer.increment(row, new byte[][] { c1 }, new long[] { 5L });
+      // Increment a + Increment b = Increment (a + b)
+      buffer.increment(row, new byte[][] { c2 }, new long[] { 3L });
+      buffer.increment(row, new byte[][] { c2 }, new long[] { 4L });
+      // Delete + Increment b = Put b
+      buffer.put(row, new byte[][] { c3 }, new byte[][] { null });
+      buffer.increment(row, new byte[][] { c3 }, new long[] { 7L });
+
+      NavigableMap<byte[], Update> columns = buffer.getRow(row, null);
+      Assert.assertNotNull(columns);
+      Assert.assertEquals(3, columns.size());
+      Assert.assertTrue(columns.get(c1) instanceof PutValue);
+      Assert.assertEquals(15L, Bytes.toLong(((PutValue) columns.get(c1)).getValue()));
+      Assert.assertTrue(columns.get(c2) instanceof IncrementValue);
+      Assert.assertEquals(7L, (long) ((IncrementValue) columns.get(c2)).getValue());
+      Assert.assertTrue(columns.get(c3) instanceof PutValue);
+      Assert.assertEquals(7L, Bytes.toLong(((PutValue) columns.get(c3)).getValue()));
+
+      // Increment a + Put b = Put b, with a different value size
+      buffer.put(row, new byte[][] { c2 }, new byte[][] { Bytes.toBytes("value") });
+      Assert.assertArrayEquals(Bytes.toBytes("value"),
+                               ((PutValue) buffer.getRow(row, new byte[][] { c2 }).get(c2)).getValue());
+
+      // Increment on non-long value should fail
+      try {
+        buffer.increment(row, new byte[][] { c2 }, new long[] { 1L });
+        Assert.fail("Expected NumberFormatException");
+      } catch (NumberFormatException e) {
+        // expected
+      }
+
+      // Changes to the arrays passed to the buffer should not affect the buffer
+      byte[] value = Bytes.toBytes("abc");
+      buffer.put(row, new byte[][] { c1 }, new byte[][] { value });
+      value[0] = 'x';
+      Assert.assertArrayEquals(Bytes.toBytes("abc"),
+                               ((PutValue) buffer.getRow(row, new byte[][] { c1 }).get(c1)).getValue());
+
+      Assert.assertNull(buffer.getRow(Bytes.toBytes("x"), null));
+      Assert.assertNull(buffer.getRow(row, new byte[][] { Bytes.toBytes("c4") }));
+      Assert.assertTrue(buffer.containsRow(row));
+      Assert.assertFalse(buffer.containsRow(Bytes.toBytes("x")));
+
+      Assert.assertEquals(1, Iterators.size(buffer.rows(null, null)));
+      buffer.clear();
+      Assert.assertTrue(buffer.isEmpty());
+      Assert.assertFalse(buffer.rows(null, null).hasNext());
+      Assert.assertNull(buffer.getRow(row, null));
+      buffer.close();
+    }
+  }
+
+  @Test
+  public void testRandomOperations() {
+    for (boolean direct : new boolean[] { false, true }) {
+      // Fix the seed for reproducible test
+      Random random = new Random(direct ? 1L : 2L);
+      WriteBuffer expected = new TreeMapWriteBuffer();
+      ArenaWriteBuffer actual = new ArenaWriteBuffer(direct);
+
+      // Run multiple transactions to make sure the arena is reusable after clear
+      for (int tx = 0; tx < 5; tx++) {
+        for (int i = 0; i < 20000; i++) {
+          byte[] row = Bytes.toBytes("row" + random.nextInt(500));
+          byte[][] columns = new byte[][] { Bytes.toBytes("col" + random.nextInt(20)) };
+          int op = random.nextInt(10);
+          if (op < 5) {
+            // Random value size, including large values that don't fit in a single chunk
+            int size = random.nextInt(1000) == 0 ? ArenaWriteBuffer.CHUNK_SIZE + 1 : random.nextInt(16);
+            byte[] value = new byte[size];
+            random.nextBytes(value);
+            byte[][] values = new byte[][] { op == 0 ? null : value };
+            expected.put(row, columns, values);
+            actual.put(row, columns, values);
+          } else if (op < 7) {
+            long[] amounts = new long[] { random.nextInt(100) };
+            NavigableMap<byte[], Update> existing = expected.getRow(row, columns);
+            Update update = existing == null ? null : existing.get(columns[0]);
+            if (update instanceof PutValue && update.getBytes() != null
+              && update.getBytes().length != Bytes.SIZEOF_LONG) {
+              continue;
+            }
+            expected.increment(row, columns, amounts);
+            actual.increment(row, columns, amounts);
+          } else if (op < 9) {
+            // The TreeMapWriteBuffer always returns the whole row, hence only compare the requested column
+            NavigableMap<byte[], Update> expectedRow = expected.getRow(row, columns);
+            NavigableMap<byte[], Update> actualRow = actual.getRow(row, columns);
+            Update expectedUpdate = expectedRow == null ? null : expectedRow.get(columns[0]);
+            if (expectedUpdate == null) {
+              Assert.assertNull(actualRow);
+            } else {
+              Assert.assertNotNull(actualRow);
+              assertUpdateEquals(expectedUpdate, actualRow.get(columns[0]));
+            }
+          } else {
+            assertRowEquals(expected.getRow(row, null), actual.getRow(row, null));
+          }
+        }
+        assertBufferEquals(expected.rows(null, null), actual.rows(null, null));
+        byte[] startRow = Bytes.toBytes("row1");
+        byte[] stopRow = Bytes.toBytes("row3");
+        assertBufferEquals(expected.rows(startRow, stopRow), actual.rows(startRow, stopRow));
+        assertBufferEquals(expected.rows(null, stopRow), actual.rows(null, stopRow));
+        assertBufferEquals(expected.rows(startRow, null), actual.rows(startRow, null));
+        expected.clear();
+        actual.clear();
+        Assert.assertTrue(actual.isEmpty());
+        Assert.assertEquals(1, actual.getChunkCount());
+      }
+      actual.close();
+    }
+  }
+
+  @Test
+  public void testRowsWithChanges() {
+    for (boolean direct : new boolean[] { false, true }) {
+      WriteBuffer buffer = new ArenaWriteBuffer(direct);
+      byte[][] columns = new byte[][] { Bytes.toBytes("c") };
+      for (String row : new String[] { "b", "d", "f" }) {
+        buffer.put(Bytes.toBytes(row), columns, new byte[][] { Bytes.toBytes(row) });
+      }
+
+      // Rows added while iterating are only returned if they come after the current row,
+      // and changes to existing cells after the current row are visible
+      Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> rows = buffer.rows(null, Bytes.toBytes("g"));
+      Assert.assertArrayEquals(Bytes.toBytes("b"), rows.next().getKey());
+      for (String row : new String[] { "a", "c", "f", "g" }) {
+        buffer.put(Bytes.toBytes(row), columns, new byte[][] { Bytes.toBytes(row + "1") });
+      }
+      for (String row : new String[] { "c", "d", "f" }) {
+        Map.Entry<byte[], NavigableMap<byte[], Update>> entry = rows.next();
+        Assert.assertArrayEquals(Bytes.toBytes(row), entry.getKey());
+        byte[] expectedValue = Bytes.toBytes("d".equals(row) ? row : row + "1");
+        Assert.assertArrayEquals(expectedValue, entry.getValue().get(columns[0]).getBytes());
+      }
+      Assert.assertFalse(rows.hasNext());
+
+      // Clearing the buffer while iterating ends the iteration
+      rows = buffer.rows(null, null);
+      rows.next();
+      buffer.clear();
+      Assert.assertFalse(rows.hasNext());
+      buffer.close();
+    }
+  }
+
+  @Test
+  public void testClearShrinks() {
+    ArenaWriteBuffer buffer = new ArenaWriteBuffer(false);
+    byte[][] columns = new byte[][] { Bytes.toBytes("c") };
+    byte[][] values = new byte[][] { new byte[1024] };
+    // Big transaction that grows both the chunks and the cell index
+    for (int i = 0; i < ArenaWriteBuffer.MAX_RETAINED_CAPACITY * 2; i++) {
+      buffer.put(Bytes.toBytes(i), columns, values);
+    }
+    Assert.assertTrue(buffer.getChunkCount() > 1);
+    Assert.assertTrue(buffer.getCellCapacity() > ArenaWriteBuffer.MAX_RETAINED_CAPACITY);
+    Assert.assertEquals(ArenaWriteBuffer.MAX_RETAINED_CAPACITY * 2, Iterators.size(buffer.rows(null, null)));
+
+    buffer.clear();
+    Assert.assertEquals(1, buffer.getChunkCount());
+    Assert.assertTrue(buffer.getCellCapacity() <= ArenaWriteBuffer.MAX_RETAINED_CAPACITY);
+
+    // The buffer is usable after shrinking
+    for (int i = 0; i < 1000; i++) {
+      buffer.put(Bytes.toBytes(i), columns, values);
+    }
+    Assert.assertEquals(1000, Iterators.size(buffer.rows(null, null)));
+    Assert.assertNotNull(buffer.getRow(Bytes.toBytes(999), columns));
+
+    // A moderate transaction doesn't cause the cell index to be reallocated
+    int capacity = buffer.getCellCapacity();
+    buffer.clear();
+    Assert.assertEquals(capacity, buffer.getCellCapacity());
+    buffer.close();
+  }
+
+  /**
+   * Compares throughput and allocation of the different buffer types for the put, get and scan operations
+   * performed by a {@link BufferingTable} in a transaction that writes many cells.
+   */
+  @Category(XSlowTests.class)
+  @Test
+  public void testPerformance() {
+    int rows = 100000;
+    byte[][] columns = new byte[5][];
+    byte[][] values = new byte[columns.length][];
+    long[] amounts = new long[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = Bytes.toBytes("column" + i);
+      values[i] = Bytes.toBytes((long) i);
+      amounts[i] = 1L;
+    }
+
+    for (BufferingTable.BufferType type : BufferingTable.BufferType.values()) {
+      WriteBuffer buffer = WriteBuffer.create(ImmutableMap.of(BufferingTable.PROPERTY_BUFFER_TYPE, type.name()));
+      // Warm up
+      for (int i = 0; i < 2; i++) {
+        runPerformance(type, buffer, rows / 10, columns, values, amounts, false);
+      }
+      runPerformance(type, buffer, rows, columns, values, amounts, true);
+      buffer.close();
+    }
+  }
+
+  /**
+   * Performs puts and increments, point gets, row gets, a full scan and a clear on the given buffer.
+   */
+  private void runPerformance(BufferingTable.BufferType type, WriteBuffer buffer, int rows,
+                              byte[][] columns, byte[][] values, long[] amounts, boolean report) {
+    long allocated = getAllocatedBytes();
+    Stopwatch stopwatch = new Stopwatch().start();
+    for (int i = 0; i < rows; i++) {
+      byte[] row = Bytes.toBytes(i * 7919 % rows);
+      buffer.put(row, columns, values);
+      buffer.increment(row, columns, amounts);
+    }
+    allocated = report("put", type, rows * columns.length, stopwatch, allocated, report);
+
+    for (int i = 0; i < rows; i++) {
+      Assert.assertNotNull(buffer.getRow(Bytes.toBytes(i), columns));
+    }
+    allocated = report("get", type, rows * columns.length, stopwatch, allocated, report);
+
+    for (int i = 0; i < rows; i += 10) {
+      Assert.assertNotNull(buffer.getRow(Bytes.toBytes(i), null));
+    }
+    allocated = report("get row", type, rows / 10 * columns.length, stopwatch, allocated, report);
+
+    int cells = 0;
+    Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator = buffer.rows(null, null);
+    while (iterator.hasNext()) {
+      cells += iterator.next().getValue().size();
+    }
+    Assert.assertEquals(rows * columns.length, cells);
+    allocated = report("scan", type, cells, stopwatch, allocated, report);
+
+    buffer.clear();
+    Assert.assertTrue(buffer.isEmpty());
+    report("clear", type, cells, stopwatch, allocated, report);
+  }
+
+  /**
+   * Logs the throughput and allocation of an operation and resets the measurement.
+   *
+   * @return number of bytes allocated by the current thread so far
+   */
+  private long report(String operation, BufferingTable.BufferType type, int cells,
+                      Stopwatch stopwatch, long lastAllocated, boolean report) {
+    long allocated = getAllocatedBytes();
+    long elapsed = Math.max(1L, stopwatch.elapsedTime(TimeUnit.MILLISECONDS));
+    if (report) {
+      LOG.info("Buffer type {}, {}: {} cells in {} ms, {} cells/sec, allocated {} bytes/cell",
+               type, operation, cells, elapsed, cells * 1000L / elapsed,
+               allocated < 0 ? "N/A" : (allocated - lastAllocated) / cells);
+    }
+    stopwatch.reset().start();
+    return allocated;
+  }
+
+  /**
+   * Returns number of bytes allocated by the current thread or {@code -1} if not supported by the JVM.
+   */
+  private long getAllocatedBytes() {
+    ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1L;
+  }
+
+  private void assertBufferEquals(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> expected,
+                                  Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> actual) {
+    while (expected.hasNext()) {
+      Assert.assertTrue(actual.hasNext());
+      Map.Entry<byte[], NavigableMap<byte[], Update>> expectedRow = expected.next();
+      Map.Entry<byte[], NavigableMap<byte[], Update>> actualRow = actual.next();
+      Assert.assertArrayEquals(expectedRow.getKey(), actualRow.getKey());
+      assertRowEquals(expectedRow.getValue(), actualRow.getValue());
+    }
+    Assert.assertFalse(actual.hasNext());
+  }
+
+  private void assertRowEquals(@Nullable NavigableMap<byte[], Update> expected,
+                               @Nullable NavigableMap<byte[], Update> actual) {
+    if (expected == null) {
+      Assert.assertNull(actual);
+      return;
+    }
+    Assert.assertNotNull(actual);
+    Assert.assertEquals(expected.size(), actual.size());
+    for (Map.Entry<byte[], Update> entry : expected.entrySet()) {
+      assertUpdateEquals(entry.getValue(), actual.get(entry.getKey()));
+    }
+  }
+
+  private void assertUpdateEquals(Update expected, @Nullable Update actual) {
+    Assert.assertNotNull(actual);
+    Assert.assertEquals(expected.getClass(), actual.getClass());
+    if (expected instanceof IncrementValue) {
+      Assert.assertEquals(expected.getValue(), actual.getValue());
+    } else {
+      // Not using assertArrayEquals since it is slow for large values
+      Assert.assertTrue(Arrays.equals(expected.getBytes(), actual.getBytes()));
+    }
+  }
+}
@@ -26,8 +26,8 @@ import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.api.dataset.table.TableProperties;
 import co.cask.cdap.data2.dataset2.TableAssert;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import org.apache.tephra.Transaction;
 import org.apache.tephra.TransactionAware;
 import org.junit.Assert;
@@ -35,6 +35,7 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
@@ -556,20 +557,16 @@ public abstract class BufferingTableTest<T extends BufferingTable> extends Table
     // override persist to simulate failure in the middle
 
     @Override
-    protected void persist(NavigableMap<byte[], NavigableMap<byte[], Update>> buff) throws Exception {
+    protected void persist(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> buff) throws Exception {
       // persists only first change and throws exception
-      NavigableMap<byte[], NavigableMap<byte[], Update>> toPersist = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      if (buff.size() > 0) {
-        toPersist.put(buff.firstEntry().getKey(), buff.firstEntry().getValue());
-      }
-      delegate.persist(toPersist);
+      delegate.persist(Iterators.limit(buff, 1));
       throw new RuntimeException("Simulating failure in the middle of persist");
     }
 
     // implementing abstract methods
 
     @Override
-    protected void undo(NavigableMap<byte[], NavigableMap<byte[], Update>> persisted) throws Exception {
+    protected void undo(Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> persisted) throws Exception {
       delegate.undo(persisted);
     }
 
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2015 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -223,8 +223,9 @@ public abstract class MetricsTableTest {
     table.put(ImmutableSortedMap.<byte[], SortedMap<byte[], Long>>orderedBy(Bytes.BYTES_COMPARATOR)
                 .put(A, mapOf(B, 0L)).build());
     AtomicInteger[] counts = { new AtomicInteger(), new AtomicInteger() }; // [0] for success, [1] for failures
+    // Use a different table instance for each thread, since the swap must be atomic across instances
     Thread t1 = new SwapThread(table, A, B, counts, rounds);
-    Thread t2 = new SwapThread(table, A, B, counts, rounds);
+    Thread t2 = new SwapThread(getTable("testConcurrentSwap"), A, B, counts, rounds);
     t1.start();
     t2.start();
     t1.join();
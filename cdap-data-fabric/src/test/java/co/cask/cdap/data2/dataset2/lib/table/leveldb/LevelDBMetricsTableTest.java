@@ -16,6 +16,7 @@
 
 package co.cask.cdap.data2.dataset2.lib.table.leveldb;
 
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.DatasetProperties;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
@@ -35,12 +36,20 @@ import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.security.auth.context.AuthenticationContextModules;
 import co.cask.cdap.security.authorization.AuthorizationEnforcementModule;
 import co.cask.cdap.security.authorization.AuthorizationTestModule;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
+import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.util.List;
+import java.util.NavigableMap;
+
 /**
  * metrics table test for levelDB.
  */
@@ -76,4 +85,57 @@ public class LevelDBMetricsTableTest extends MetricsTableTest {
     return DatasetsUtil.getOrCreateDataset(dsFramework, metricsDatasetInstanceId, MetricsTable.class.getName(),
                                            DatasetProperties.EMPTY, null, null);
   }
+
+  @Test
+  public void testConcurrentMultiRowIncrement() throws Exception {
+    final int rounds = 200;
+    final byte[][] rows = new byte[16][];
+    for (int i = 0; i < rows.length; i++) {
+      rows[i] = Bytes.toBytes("row" + i);
+    }
+
+    // Each thread uses its own table instance and increments all rows, starting from a different row
+    List<Thread> threads = Lists.newArrayList();
+    final List<MetricsTable> tables = Lists.newArrayList();
+    for (int i = 0; i < 4; i++) {
+      final MetricsTable table = getTable("testConcurrentMultiRowIncrement");
+      final int offset = i * 4;
+      tables.add(table);
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          for (int round = 0; round < rounds; round++) {
+            NavigableMap<byte[], NavigableMap<byte[], Long>> updates = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+            for (int j = 0; j < rows.length; j++) {
+              NavigableMap<byte[], Long> increments = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+              increments.put(A, 1L);
+              updates.put(rows[(offset + j) % rows.length], increments);
+            }
+            table.increment(updates);
+            table.increment(rows[(offset + round) % rows.length], ImmutableMap.of(B, 1L));
+          }
+        }
+      });
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join(60000);
+      Assert.assertFalse(t.isAlive());
+    }
+
+    MetricsTable table = tables.get(0);
+    long totalB = 0L;
+    for (byte[] row : rows) {
+      Assert.assertEquals(threads.size() * rounds, Bytes.toLong(table.get(row, A)));
+      byte[] value = table.get(row, B);
+      totalB += value == null ? 0L : Bytes.toLong(value);
+    }
+    Assert.assertEquals(threads.size() * rounds, totalB);
+
+    for (MetricsTable t : tables) {
+      t.close();
+    }
+  }
 }
@@ -562,6 +562,55 @@ public class FactTableTest {
     Assert.assertEquals(3, splitsWithRows.size());
   }
 
+  @Test
+  public void testSplitScan() throws Exception {
+    InMemoryTableService.create("splitScanEntityTable");
+    InMemoryTableService.create("splitScanDataTable");
+    int resolution = 1;
+    int rollTimebaseInterval = 10;
+
+    FactTable table = new FactTable(new InMemoryMetricsTable("splitScanDataTable"),
+                                    new EntityTable(new InMemoryMetricsTable("splitScanEntityTable")),
+                                    resolution, rollTimebaseInterval);
+    for (int ts = 0; ts < 100; ts++) {
+      writeInc(table, "metric", ts, ts, "dim1", "value1");
+    }
+
+    FactScan scan = new FactScan(5, 94, "metric", dimValues("dim1", "value1"));
+    // Time bases 0, 10, ..., 90 are split into 4 ranges with 3 time bases each, except the last one
+    List<FactScan> scans = table.splitScan(scan, 4);
+    Assert.assertEquals(4, scans.size());
+    long[][] expectedRanges = new long[][] { {5, 29}, {30, 59}, {60, 89}, {90, 94} };
+    for (int i = 0; i < expectedRanges.length; i++) {
+      Assert.assertEquals(expectedRanges[i][0], scans.get(i).getStartTs());
+      Assert.assertEquals(expectedRanges[i][1], scans.get(i).getEndTs());
+      Assert.assertEquals(scan.getMeasureNames(), scans.get(i).getMeasureNames());
+      Assert.assertEquals(scan.getDimensionValues(), scans.get(i).getDimensionValues());
+    }
+
+    // The union of the split scans should be the same as the original scan
+    List<TimeValue> timeValues = Lists.newArrayList();
+    for (FactScan splitScan : scans) {
+      FactScanner scanner = table.scan(splitScan);
+      try {
+        while (scanner.hasNext()) {
+          timeValues.addAll(Lists.newArrayList(scanner.next().iterator()));
+        }
+      } finally {
+        scanner.close();
+      }
+    }
+    List<TimeValue> expected = Lists.newArrayList();
+    for (int ts = 5; ts <= 94; ts++) {
+      expected.add(new TimeValue(ts, ts));
+    }
+    Assert.assertEquals(expected, timeValues);
+
+    // No split if the range is within one time base, or if only one split is requested
+    Assert.assertEquals(ImmutableList.of(scan), table.splitScan(scan, 1));
+    Assert.assertEquals(1, table.splitScan(new FactScan(11, 19, "metric", dimValues("dim1", "value1")), 4).size());
+  }
+
   private List<TimeValue> timeValues(long ts, int resolution, long... values) {
     List<TimeValue> timeValues = Lists.newArrayList();
     for (int i = 0; i < values.length; i++) {
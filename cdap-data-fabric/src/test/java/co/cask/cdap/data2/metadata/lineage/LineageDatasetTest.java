@@ -1,5 +1,5 @@
 /*
- * Copyright © 2015 Cask Data, Inc.
+ * Copyright © 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -172,6 +172,24 @@ public class LineageDatasetTest {
           lineageDataset.getRelations(datasetInstance2, 0, 35000, Predicates.<Relation>alwaysTrue())
         );
 
+        // Multiple entities in one lookup
+        Assert.assertEquals(
+          ImmutableSet.of(new Relation(datasetInstance1, program1, AccessType.READ, runId1, ImmutableSet.of(flowlet1)),
+                          new Relation(stream1, program2, AccessType.READ, runId2)
+          ),
+          lineageDataset.getRelationsForData(toSet(datasetInstance1, stream1), 0, 100000,
+                                             Predicates.<Relation>alwaysTrue())
+        );
+
+        Assert.assertEquals(
+          ImmutableSet.of(new Relation(datasetInstance1, program1, AccessType.READ, runId1, ImmutableSet.of(flowlet1)),
+                          new Relation(datasetInstance2, program3, AccessType.READ_WRITE, runId4),
+                          new Relation(stream2, program3, AccessType.UNKNOWN, runId4)
+          ),
+          lineageDataset.getRelationsForPrograms(toSet(program1, program3), 0, 100000,
+                                                 Predicates.<Relation>alwaysTrue())
+        );
+
         Assert.assertEquals(toSet(program1, datasetInstance1), lineageDataset.getEntitiesForRun(run11));
         Assert.assertEquals(ImmutableList.of(run11Data1AccessTime), lineageDataset.getAccessTimesForRun(run11));
 
@@ -411,6 +411,46 @@ public class MetadataStoreTest {
     );
   }
 
+  @Test
+  public void testSearchCursorsWithDefaultSort() throws BadRequestException {
+    NamespaceId ns = new NamespaceId("cursorns");
+    ProgramId flow = ns.app("app").flow("flow");
+    StreamId stream = ns.stream("stream");
+    DatasetId dataset = ns.dataset("dataset");
+
+    store.addTags(MetadataScope.USER, flow, "tag");
+    store.addTags(MetadataScope.USER, stream, "tag1", "tag2");
+    store.addTags(MetadataScope.USER, dataset, "tag1", "tag2", "tag3");
+
+    // relevance order for searchQuery "tag*" is dataset, stream, flow
+    MetadataSearchResponse response = search(ns.getNamespace(), "tag*", 0, 1, 2);
+    Assert.assertEquals(3, response.getTotal());
+    Assert.assertEquals(ImmutableList.of(new MetadataSearchResultRecord(dataset)),
+                        ImmutableList.copyOf(stripMetadata(response.getResults())));
+    Assert.assertEquals(ImmutableList.of("1", "2"), response.getCursors());
+
+    // search from the cursors
+    response = store.search(ns.getNamespace(), "tag*", EnumSet.allOf(EntityTypeSimpleName.class), SortInfo.DEFAULT,
+                            0, 1, 1, response.getCursors().get(0), false, EnumSet.allOf(EntityScope.class));
+    Assert.assertEquals(ImmutableList.of(new MetadataSearchResultRecord(stream)),
+                        ImmutableList.copyOf(stripMetadata(response.getResults())));
+    Assert.assertEquals(ImmutableList.of("2"), response.getCursors());
+
+    response = store.search(ns.getNamespace(), "tag*", EnumSet.allOf(EntityTypeSimpleName.class), SortInfo.DEFAULT,
+                            0, 1, 1, response.getCursors().get(0), false, EnumSet.allOf(EntityScope.class));
+    Assert.assertEquals(ImmutableList.of(new MetadataSearchResultRecord(flow)),
+                        ImmutableList.copyOf(stripMetadata(response.getResults())));
+    Assert.assertTrue(response.getCursors().isEmpty());
+
+    try {
+      store.search(ns.getNamespace(), "tag*", EnumSet.allOf(EntityTypeSimpleName.class), SortInfo.DEFAULT,
+                   0, 1, 1, "invalid", false, EnumSet.allOf(EntityScope.class));
+      Assert.fail("Expected failure for invalid cursor");
+    } catch (BadRequestException e) {
+      // expected
+    }
+  }
+
   @AfterClass
   public static void teardown() {
     txManager.stopAndWait();
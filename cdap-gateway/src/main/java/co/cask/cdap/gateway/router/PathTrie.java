@@ -0,0 +1,175 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.gateway.router;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * A trie of URI path segments for looking up the value of the first matching rule, in the order the rules
+ * were added. A rule is a path pattern, in which a {@code *} segment matches any segment. By default a rule
+ * matches any path that starts with the pattern. An exact rule only matches paths that have the same number of
+ * segments as the pattern. A rule can also be restricted to a set of request methods.
+ *
+ * Rules must be added before lookups start. Lookups are thread safe.
+ *
+ * @param <M> type of the request method
+ * @param <T> type of the value associated with a rule
+ */
+final class PathTrie<M, T> {
+
+  private static final String WILDCARD = "*";
+
+  private final Node<M, T> root = new Node<>();
+  private int rules;
+
+  /**
+   * Adds a rule that matches paths starting with the given pattern, regardless of request method.
+   */
+  PathTrie<M, T> add(String pattern, T value) {
+    return add(pattern, false, null, value);
+  }
+
+  /**
+   * Adds a rule.
+   *
+   * @param pattern the path pattern, with segments separated by {@code /}
+   * @param exact {@code true} to only match paths that have the same number of segments as the pattern
+   * @param methods the request methods that the rule applies to or {@code null} for all methods
+   * @param value the value associated with the rule
+   * @return this instance
+   */
+  PathTrie<M, T> add(String pattern, boolean exact, @Nullable Set<M> methods, T value) {
+    Rule<M, T> rule = new Rule<>(rules++, exact, methods, value);
+    Node<M, T> node = root;
+    node.updateMinPriority(rule);
+    for (String segment : StringUtils.split(pattern, '/')) {
+      node = node.getOrCreateChild(segment);
+      node.updateMinPriority(rule);
+    }
+    // Rules are added in increasing priority order, hence rules in a node are always sorted by priority
+    node.rules.add(rule);
+    return this;
+  }
+
+  /**
+   * Returns the first added rule that matches the given path segments and request method.
+   *
+   * @param segments path segments of the request
+   * @param method request method
+   * @return the first matching rule or {@code null} if no rule matches
+   */
+  @Nullable
+  Rule<M, T> lookup(String[] segments, M method) {
+    return lookup(root, segments, 0, method, null);
+  }
+
+  @Nullable
+  private Rule<M, T> lookup(Node<M, T> node, String[] segments, int depth, M method, @Nullable Rule<M, T> best) {
+    for (Rule<M, T> rule : node.rules) {
+      // Rules in a node are sorted by priority, hence the first match is the best in this node
+      if (best != null && best.priority < rule.priority) {
+        break;
+      }
+      if (rule.matches(segments.length == depth, method)) {
+        best = rule;
+        break;
+      }
+    }
+    if (depth == segments.length) {
+      return best;
+    }
+
+    Node<M, T> child = node.children.get(segments[depth]);
+    if (child != null && (best == null || best.priority > child.minPriority)) {
+      best = lookup(child, segments, depth + 1, method, best);
+    }
+    child = node.wildcard;
+    if (child != null && (best == null || best.priority > child.minPriority)) {
+      best = lookup(child, segments, depth + 1, method, best);
+    }
+    return best;
+  }
+
+  /**
+   * A rule in the trie.
+   *
+   * @param <M> type of the request method
+   * @param <T> type of the value associated with a rule
+   */
+  static final class Rule<M, T> {
+
+    private final int priority;
+    private final boolean exact;
+    private final Set<M> methods;
+    private final T value;
+
+    private Rule(int priority, boolean exact, @Nullable Set<M> methods, T value) {
+      this.priority = priority;
+      this.exact = exact;
+      this.methods = methods;
+      this.value = value;
+    }
+
+    T getValue() {
+      return value;
+    }
+
+    private boolean matches(boolean endOfPath, M method) {
+      return (endOfPath || !exact) && (methods == null || methods.contains(method));
+    }
+  }
+
+  /**
+   * A node in the trie, representing one path segment.
+   */
+  private static final class Node<M, T> {
+
+    private final Map<String, Node<M, T>> children = new HashMap<>();
+    private final List<Rule<M, T>> rules = new ArrayList<>();
+    private Node<M, T> wildcard;
+    // The smallest priority of all rules in this node and its descendants, for pruning the lookup
+    private int minPriority = Integer.MAX_VALUE;
+
+    Node<M, T> getOrCreateChild(String segment) {
+      Preconditions.checkArgument(!segment.isEmpty(), "Path segment cannot be empty");
+      if (WILDCARD.equals(segment)) {
+        if (wildcard == null) {
+          wildcard = new Node<>();
+        }
+        return wildcard;
+      }
+      Node<M, T> child = children.get(segment);
+      if (child == null) {
+        child = new Node<>();
+        children.put(segment, child);
+      }
+      return child;
+    }
+
+    void updateMinPriority(Rule<M, T> rule) {
+      minPriority = Math.min(minPriority, rule.priority);
+    }
+  }
+}
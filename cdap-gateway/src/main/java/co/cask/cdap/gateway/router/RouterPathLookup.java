@@ -19,15 +19,21 @@ package co.cask.cdap.gateway.router;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.service.ServiceDiscoverable;
 import co.cask.http.AbstractHttpHandler;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.lang.StringUtils;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import javax.annotation.Nullable;
+
 /**
  * Class to match the request path to corresponding service like app-fabric, or metrics service.
  */
 public final class RouterPathLookup extends AbstractHttpHandler {
 
-  @SuppressWarnings("unused")
   private enum AllowedMethod {
     GET, PUT, POST, DELETE
   }
@@ -41,6 +47,12 @@ public final class RouterPathLookup extends AbstractHttpHandler {
   public static final RouteDestination STREAMS_SERVICE = new RouteDestination(Constants.Service.STREAMS);
   public static final RouteDestination PREVIEW_HTTP = new RouteDestination(Constants.Service.PREVIEW_HTTP);
 
+  // Maximum number of recent routing decisions to cache for each request method
+  private static final int MAX_CACHED_ROUTES = 10000;
+
+  private final PathTrie<AllowedMethod, Route> v3Routes = createV3Routes();
+  private final Map<AllowedMethod, Cache<String, RouteDestination>> routeCaches = createRouteCaches();
+
   /**
    * Returns the CDAP service which will handle the HttpRequest
    *
@@ -53,6 +65,14 @@ public final class RouterPathLookup extends AbstractHttpHandler {
     try {
       String method = httpRequest.getMethod().getName();
       AllowedMethod requestMethod = AllowedMethod.valueOf(method);
+
+      // Only routing decisions of v3 paths are cached, which don't depend on the fallback service
+      Cache<String, RouteDestination> routeCache = routeCaches.get(requestMethod);
+      RouteDestination destination = routeCache.getIfPresent(requestPath);
+      if (destination != null) {
+        return destination;
+      }
+
       String[] uriParts = StringUtils.split(requestPath, '/');
 
       //Check if the call should go to webapp
@@ -64,7 +84,11 @@ public final class RouterPathLookup extends AbstractHttpHandler {
         return new RouteDestination(fallbackService);
       }
       if (uriParts[0].equals(Constants.Gateway.API_VERSION_3_TOKEN)) {
-        return getV3RoutingService(uriParts, requestMethod);
+        destination = getV3RoutingService(uriParts, requestMethod);
+        if (destination != null) {
+          routeCache.put(requestPath, destination);
+        }
+        return destination;
       }
     } catch (Exception e) {
       // Ignore exception. Default routing to app-fabric.
@@ -72,129 +96,145 @@ public final class RouterPathLookup extends AbstractHttpHandler {
     return APP_FABRIC_HTTP;
   }
 
-  private RouteDestination getV3RoutingService(String [] uriParts, AllowedMethod requestMethod) {
-    if ((uriParts.length >= 2) && uriParts[1].equals("feeds")) {
-      // TODO find a better way to handle that - this looks hackish
-      return null;
-    } else if ((uriParts.length >= 11) && "versions".equals(uriParts[5]) && "services".equals(uriParts[7])
-      && "methods".equals(uriParts[9])) {
-      // User defined services (version specific) handle methods on them:
-      //Path: "/v3/namespaces/{namespace-id}/apps/{app-id}/versions/{version-id}/services/{service-id}/methods/
-      //       <user-defined-method-path>"
-      String serviceName = ServiceDiscoverable.getName(uriParts[2], uriParts[4], uriParts[8]);
-      String version = uriParts[6];
-      return new RouteDestination(serviceName, version);
-    } else if ((uriParts.length >= 9) && "services".equals(uriParts[5]) && "methods".equals(uriParts[7])) {
-      //User defined services handle methods on them:
-      //Path: "/v3/namespaces/{namespace-id}/apps/{app-id}/services/{service-id}/methods/<user-defined-method-path>"
-      return new RouteDestination(ServiceDiscoverable.getName(uriParts[2], uriParts[4], uriParts[6]));
-    } else if (matches(uriParts, "v3", "system", "services", null, "logs")) {
-      //Log Handler Path /v3/system/services/<service-id>/logs
-      return METRICS;
-    } else if (matches(uriParts, "v3", "namespaces", null, "apps", null, "metadata") ||
-      matches(uriParts, "v3", "namespaces", null, "apps", null, null, null, "metadata") ||
-      matches(uriParts, "v3", "namespaces", null, "artifacts", null, "versions", null, "metadata") ||
-      matches(uriParts, "v3", "namespaces", null, "datasets", null, "metadata") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "metadata") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "views", null, "metadata") ||
-
-      matches(uriParts, "v3", "namespaces", null, "apps", null, "metadata", "properties") ||
-      matches(uriParts, "v3", "namespaces", null, "artifacts", null, "versions", null, "metadata", "properties") ||
-      matches(uriParts, "v3", "namespaces", null, "apps", null, null, null, "metadata", "properties") ||
-      matches(uriParts, "v3", "namespaces", null, "datasets", null, "metadata", "properties") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "metadata", "properties") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "views", null, "metadata", "properties") ||
-
-      matches(uriParts, "v3", "namespaces", null, "apps", null, "metadata", "tags") ||
-      matches(uriParts, "v3", "namespaces", null, "artifacts", null, "versions", null, "metadata", "tags") ||
-      matches(uriParts, "v3", "namespaces", null, "apps", null, null, null, "metadata", "tags") ||
-      matches(uriParts, "v3", "namespaces", null, "datasets", null, "metadata", "tags") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "metadata", "tags") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "views", null, "metadata", "tags") ||
-
-      matches(uriParts, "v3", "namespaces", null, "metadata", "search") ||
-      matches(uriParts, "v3", "namespaces", null, "datasets", null, "lineage") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "lineage") ||
-      matches(uriParts, "v3", "namespaces", null, "apps", null, null, null, "runs", null, "metadata")) {
-      return METADATA_SERVICE;
-    } else if (matches(uriParts, "v3", "security", "authorization") ||
-      matches(uriParts, "v3", "namespaces", null, "securekeys")) {
-      // Authorization and Secure Store Handlers currently run in App Fabric
-      return APP_FABRIC_HTTP;
-    } else if (matches(uriParts, "v3", "security", "store", "namespaces", null)) {
-      return APP_FABRIC_HTTP;
-    } else if ((matches(uriParts, "v3", "namespaces", null, "streams", null, "programs")
-      || matches(uriParts, "v3", "namespaces", null, "data", "datasets", null, "programs")) &&
-      requestMethod.equals(AllowedMethod.GET)) {
-      return APP_FABRIC_HTTP;
-    } else if (matches(uriParts, "v3", "namespaces", null, "previews")) {
-      return PREVIEW_HTTP;
-    } else if (matches(uriParts, "v3", "system", "serviceproviders")) {
-      return APP_FABRIC_HTTP;
-    } else if ((uriParts.length >= 4) && uriParts[1].equals("namespaces") && uriParts[3].equals("streams")) {
-      return STREAMS_SERVICE;
-    } else if ((uriParts.length >= 8 && uriParts[7].equals("logs")) ||
-      (uriParts.length >= 10 && uriParts[9].equals("logs")) ||
-      (uriParts.length >= 6 && uriParts[5].equals("logs"))) {
-      //Log Handler Paths:
-      // /v3/namespaces/<namespaceid>/apps/<appid>/<programid-type>/<programid>/logs
-      // /v3/namespaces/{namespace-id}/apps/{app-id}/{program-type}/{program-id}/runs/{run-id}/logs
-      return METRICS;
-    } else if (uriParts.length >= 2 && uriParts[1].equals("metrics")) {
-      //Metrics Search Handler Path /v3/metrics
-      return METRICS;
-    } else if (uriParts.length >= 5 && uriParts[1].equals("data") && uriParts[2].equals("explore") &&
-      (uriParts[3].equals("queries") || uriParts[3].equals("jdbc") || uriParts[3].equals("namespaces"))) {
-      // non-namespaced explore operations. For example, /v3/data/explore/queries/{id}
-      return EXPLORE_HTTP_USER_SERVICE;
-    } else if (uriParts.length >= 6 && uriParts[3].equals("data") && uriParts[4].equals("explore") &&
-      (uriParts[5].equals("queries") || uriParts[5].equals("streams") || uriParts[5].equals("datasets")
-        || uriParts[5].equals("tables") || uriParts[5].equals("jdbc"))) {
-      // namespaced explore operations. For example, /v3/namespaces/{namespace-id}/data/explore/streams/{stream}/enable
-      return EXPLORE_HTTP_USER_SERVICE;
-    } else if ((uriParts.length == 3) && uriParts[1].equals("explore") && uriParts[2].equals("status")) {
-      return EXPLORE_HTTP_USER_SERVICE;
-    } else if (uriParts.length == 7 && uriParts[3].equals("data") && uriParts[4].equals("datasets") &&
-      (uriParts[6].equals("flows") || uriParts[6].equals("workers") || uriParts[6].equals("mapreduce"))) {
-      // namespaced app fabric data operations:
-      // /v3/namespaces/{namespace-id}/data/datasets/{name}/flows
-      // /v3/namespaces/{namespace-id}/data/datasets/{name}/workers
-      // /v3/namespaces/{namespace-id}/data/datasets/{name}/mapreduce
-      return APP_FABRIC_HTTP;
-    } else if ((uriParts.length >= 4) && uriParts[3].equals("data")) {
-      // other data operations. For example:
-      // /v3/namespaces/{namespace-id}/data/datasets
-      // /v3/namespaces/{namespace-id}/data/datasets/{name}
-      // /v3/namespaces/{namespace-id}/data/datasets/{name}/properties
-      // /v3/namespaces/{namespace-id}/data/datasets/{name}/admin/{method}
-      return DATASET_MANAGER;
-    }
-    return APP_FABRIC_HTTP;
+  @Nullable
+  private RouteDestination getV3RoutingService(String[] uriParts, AllowedMethod requestMethod) {
+    PathTrie.Rule<AllowedMethod, Route> rule = v3Routes.lookup(uriParts, requestMethod);
+    return rule == null ? APP_FABRIC_HTTP : rule.getValue().getDestination(uriParts);
   }
 
   /**
-   * Determines if actual matches expected.
-   *
-   * - actual may be longer than expected, but we'll return true as long as expected was found
-   * - null in expected means "accept any string"
-   *
-   * @param actual actual string array to check
-   * @param expected expected string array format
-   * @return true if actual matches expected
+   * Creates the routing rules of v3 paths. Rules are matched in the order they are added, where the first
+   * matching rule determines the destination. Paths that don't match any rule are routed to app-fabric.
    */
-  private boolean matches(String[] actual, String... expected) {
-    if (actual.length < expected.length) {
-      return false;
-    }
+  private static PathTrie<AllowedMethod, Route> createV3Routes() {
+    PathTrie<AllowedMethod, Route> routes = new PathTrie<>();
+
+    // TODO find a better way to handle that - this looks hackish
+    routes.add("/v3/feeds", new Route() {
+      @Nullable
+      @Override
+      public RouteDestination getDestination(String[] uriParts) {
+        return null;
+      }
+    });
 
-    for (int i = 0; i < expected.length; i++) {
-      if (expected[i] == null) {
-        continue;
+    // User defined services (version specific) handle methods on them:
+    //Path: "/v3/namespaces/{namespace-id}/apps/{app-id}/versions/{version-id}/services/{service-id}/methods/
+    //       <user-defined-method-path>"
+    routes.add("/v3/*/*/*/*/versions/*/services/*/methods/*", new Route() {
+      @Override
+      public RouteDestination getDestination(String[] uriParts) {
+        return new RouteDestination(ServiceDiscoverable.getName(uriParts[2], uriParts[4], uriParts[8]), uriParts[6]);
       }
-      if (!expected[i].equals(actual[i])) {
-        return false;
+    });
+    //User defined services handle methods on them:
+    //Path: "/v3/namespaces/{namespace-id}/apps/{app-id}/services/{service-id}/methods/<user-defined-method-path>"
+    routes.add("/v3/*/*/*/*/services/*/methods/*", new Route() {
+      @Override
+      public RouteDestination getDestination(String[] uriParts) {
+        return new RouteDestination(ServiceDiscoverable.getName(uriParts[2], uriParts[4], uriParts[6]));
       }
+    });
+
+    //Log Handler Path /v3/system/services/<service-id>/logs
+    routes.add("/v3/system/services/*/logs", new StaticRoute(METRICS));
+
+    StaticRoute metadata = new StaticRoute(METADATA_SERVICE);
+    for (String entity : new String[] { "/v3/namespaces/*/apps/*", "/v3/namespaces/*/apps/*/*/*",
+                                        "/v3/namespaces/*/artifacts/*/versions/*", "/v3/namespaces/*/datasets/*",
+                                        "/v3/namespaces/*/streams/*", "/v3/namespaces/*/streams/*/views/*"}) {
+      // Prefix rules cover the metadata, metadata/properties and metadata/tags paths
+      routes.add(entity + "/metadata", metadata);
+    }
+    routes.add("/v3/namespaces/*/metadata/search", metadata);
+    routes.add("/v3/namespaces/*/datasets/*/lineage", metadata);
+    routes.add("/v3/namespaces/*/streams/*/lineage", metadata);
+    routes.add("/v3/namespaces/*/apps/*/*/*/runs/*/metadata", metadata);
+
+    // Authorization and Secure Store Handlers currently run in App Fabric
+    StaticRoute appFabric = new StaticRoute(APP_FABRIC_HTTP);
+    routes.add("/v3/security/authorization", appFabric);
+    routes.add("/v3/namespaces/*/securekeys", appFabric);
+    routes.add("/v3/security/store/namespaces/*", appFabric);
+    routes.add("/v3/namespaces/*/streams/*/programs", false, EnumSet.of(AllowedMethod.GET), appFabric);
+    routes.add("/v3/namespaces/*/data/datasets/*/programs", false, EnumSet.of(AllowedMethod.GET), appFabric);
+    routes.add("/v3/namespaces/*/previews", new StaticRoute(PREVIEW_HTTP));
+    routes.add("/v3/system/serviceproviders", appFabric);
+    routes.add("/v3/namespaces/*/streams", new StaticRoute(STREAMS_SERVICE));
+
+    //Log Handler Paths:
+    // /v3/namespaces/<namespaceid>/apps/<appid>/<programid-type>/<programid>/logs
+    // /v3/namespaces/{namespace-id}/apps/{app-id}/{program-type}/{program-id}/runs/{run-id}/logs
+    StaticRoute metrics = new StaticRoute(METRICS);
+    routes.add("/v3/*/*/*/*/*/*/logs", metrics);
+    routes.add("/v3/*/*/*/*/*/*/*/*/logs", metrics);
+    routes.add("/v3/*/*/*/*/logs", metrics);
+    //Metrics Search Handler Path /v3/metrics
+    routes.add("/v3/metrics", metrics);
+
+    StaticRoute explore = new StaticRoute(EXPLORE_HTTP_USER_SERVICE);
+    // non-namespaced explore operations. For example, /v3/data/explore/queries/{id}
+    for (String type : new String[] { "queries", "jdbc", "namespaces" }) {
+      routes.add("/v3/data/explore/" + type + "/*", explore);
+    }
+    // namespaced explore operations. For example, /v3/namespaces/{namespace-id}/data/explore/streams/{stream}/enable
+    for (String type : new String[] { "queries", "streams", "datasets", "tables", "jdbc" }) {
+      routes.add("/v3/*/*/data/explore/" + type, explore);
+    }
+    routes.add("/v3/explore/status", true, null, explore);
+
+    // namespaced app fabric data operations:
+    // /v3/namespaces/{namespace-id}/data/datasets/{name}/flows
+    // /v3/namespaces/{namespace-id}/data/datasets/{name}/workers
+    // /v3/namespaces/{namespace-id}/data/datasets/{name}/mapreduce
+    for (String programType : new String[] { "flows", "workers", "mapreduce" }) {
+      routes.add("/v3/*/*/data/datasets/*/" + programType, true, null, appFabric);
+    }
+
+    // other data operations. For example:
+    // /v3/namespaces/{namespace-id}/data/datasets
+    // /v3/namespaces/{namespace-id}/data/datasets/{name}
+    // /v3/namespaces/{namespace-id}/data/datasets/{name}/properties
+    // /v3/namespaces/{namespace-id}/data/datasets/{name}/admin/{method}
+    routes.add("/v3/*/*/data", new StaticRoute(DATASET_MANAGER));
+    return routes;
+  }
+
+  private static Map<AllowedMethod, Cache<String, RouteDestination>> createRouteCaches() {
+    Map<AllowedMethod, Cache<String, RouteDestination>> caches = new EnumMap<>(AllowedMethod.class);
+    for (AllowedMethod method : AllowedMethod.values()) {
+      caches.put(method, CacheBuilder.newBuilder().maximumSize(MAX_CACHED_ROUTES).<String, RouteDestination>build());
+    }
+    return caches;
+  }
+
+  /**
+   * Computes the {@link RouteDestination} of a request path that matches a routing rule.
+   */
+  private interface Route {
+
+    /**
+     * Returns the {@link RouteDestination} for the given path segments or {@code null} if the request is not
+     * routed to any service.
+     */
+    @Nullable
+    RouteDestination getDestination(String[] uriParts);
+  }
+
+  /**
+   * A {@link Route} that always routes to the same destination.
+   */
+  private static final class StaticRoute implements Route {
+
+    private final RouteDestination destination;
+
+    StaticRoute(RouteDestination destination) {
+      this.destination = destination;
+    }
+
+    @Override
+    public RouteDestination getDestination(String[] uriParts) {
+      return destination;
     }
-    return true;
   }
 }
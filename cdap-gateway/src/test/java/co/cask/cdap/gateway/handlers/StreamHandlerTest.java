@@ -22,6 +22,7 @@ import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
 import co.cask.cdap.common.NamespaceNotFoundException;
 import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.stream.StreamDataBlockCodec;
 import co.cask.cdap.common.stream.StreamEventTypeAdapter;
 import co.cask.cdap.common.utils.Tasks;
 import co.cask.cdap.data2.transaction.stream.StreamConfig;
@@ -39,6 +40,8 @@ import co.cask.common.http.HttpRequest;
 import co.cask.common.http.HttpRequests;
 import co.cask.common.http.HttpResponse;
 import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.io.ByteStreams;
@@ -244,6 +247,58 @@ public class StreamHandlerTest extends GatewayTestBase {
     urlConn.disconnect();
   }
 
+  @Test
+  public void testBinaryStreamEvents() throws Exception {
+    // Create new stream.
+    HttpURLConnection urlConn = openURL(createURL("streams/test_stream_binary"), HttpMethod.PUT);
+    Assert.assertEquals(HttpResponseStatus.OK.getCode(), urlConn.getResponseCode());
+    urlConn.disconnect();
+
+    // Enqueue 10 large entries, so that the data is sent in multiple chunks
+    int eventCount = 10;
+    for (int i = 0; i < eventCount; ++i) {
+      urlConn = openURL(createURL("streams/test_stream_binary"), HttpMethod.POST);
+      urlConn.setDoOutput(true);
+      urlConn.addRequestProperty("test_stream_binary.header1", Integer.toString(i));
+      urlConn.getOutputStream().write(Strings.repeat(Integer.toString(i), 20000).getBytes(Charsets.UTF_8));
+      Assert.assertEquals(HttpResponseStatus.OK.getCode(), urlConn.getResponseCode());
+      urlConn.disconnect();
+    }
+
+    // Fetch all entries, with limit larger than, equal to and smaller than the number of events
+    Assert.assertEquals(eventCount, fetchBinaryEvents("test_stream_binary", eventCount + 1).size());
+    Assert.assertEquals(5, fetchBinaryEvents("test_stream_binary", 5).size());
+    List<StreamEvent> events = fetchBinaryEvents("test_stream_binary", eventCount);
+    Assert.assertEquals(eventCount, events.size());
+    for (int i = 0; i < eventCount; i++) {
+      StreamEvent event = events.get(i);
+      Assert.assertEquals(Strings.repeat(Integer.toString(i), 20000),
+                          Charsets.UTF_8.decode(event.getBody()).toString());
+      Assert.assertEquals(Integer.toString(i), event.getHeaders().get("header1"));
+    }
+  }
+
+  /**
+   * Fetches events in binary format, with the limit applied when decoding the response.
+   */
+  private List<StreamEvent> fetchBinaryEvents(String stream, int limit) throws Exception {
+    HttpURLConnection urlConn = openURL(createURL("streams/" + stream + "/events?format=binary&limit=" + limit),
+                                        HttpMethod.GET);
+    try {
+      Assert.assertEquals(HttpResponseStatus.OK.getCode(), urlConn.getResponseCode());
+      final List<StreamEvent> events = Lists.newArrayList();
+      StreamDataBlockCodec.decode(urlConn.getInputStream(), limit, new Function<StreamEvent, Boolean>() {
+        @Override
+        public Boolean apply(StreamEvent event) {
+          return events.add(event);
+        }
+      });
+      return events;
+    } finally {
+      urlConn.disconnect();
+    }
+  }
+
   @Test
   public void testListStreams() throws Exception {
     List<StreamDetail> specs = listStreams(NamespaceId.DEFAULT);
@@ -440,6 +440,28 @@ public class RouterPathTest {
     assertRouting("/v3/system/////serviceproviders///////", RouterPathLookup.APP_FABRIC_HTTP);
   }
 
+  @Test
+  public void testCachedRouting() {
+    // Routing decisions are cached per request method, hence repeated lookups must give the same destinations
+    String path = "/v3/namespaces/default/streams/s1/programs";
+    for (int i = 0; i < 2; i++) {
+      HttpRequest httpRequest = new DefaultHttpRequest(VERSION, HttpMethod.GET, path);
+      Assert.assertEquals(RouterPathLookup.APP_FABRIC_HTTP,
+                          pathLookup.getRoutingService(FALLBACKSERVICE, path, httpRequest));
+      httpRequest = new DefaultHttpRequest(VERSION, HttpMethod.POST, path);
+      Assert.assertEquals(RouterPathLookup.STREAMS_SERVICE,
+                          pathLookup.getRoutingService(FALLBACKSERVICE, path, httpRequest));
+    }
+
+    // Cached v3 routing is not affected by the webapp fallback service
+    HttpRequest httpRequest = new DefaultHttpRequest(VERSION, HttpMethod.POST, path);
+    Assert.assertEquals(RouterPathLookup.STREAMS_SERVICE,
+                        pathLookup.getRoutingService("$HOST", path, httpRequest));
+    path = "/app/index.html";
+    httpRequest = new DefaultHttpRequest(VERSION, HttpMethod.GET, path);
+    Assert.assertEquals(new RouteDestination("$HOST"), pathLookup.getRoutingService("$HOST", path, httpRequest));
+  }
+
   private void assertRouting(String path, RouteDestination destination) {
     for (HttpMethod method : ImmutableList.of(HttpMethod.GET, HttpMethod.POST, HttpMethod.DELETE)) {
       HttpRequest httpRequest = new DefaultHttpRequest(VERSION, method, path);
@@ -46,6 +46,7 @@ import co.cask.cdap.metrics.runtime.KafkaMetricsProcessorRuntimeService;
 import co.cask.cdap.metrics.runtime.MessagingMetricsProcessorRuntimeService;
 import co.cask.cdap.metrics.store.DefaultMetricDatasetFactory;
 import co.cask.cdap.metrics.store.MetricDatasetFactory;
+import co.cask.cdap.metrics.store.MetricsRollupService;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.security.auth.context.AuthenticationContextModules;
 import co.cask.cdap.security.authorization.AuthorizationEnforcementModule;
@@ -103,6 +104,9 @@ public final class MetricsProcessorTwillRunnable extends AbstractMasterTwillRunn
     services.add(injector.getInstance(KafkaMetricsProcessorRuntimeService.class));
     services.add(injector.getInstance(MessagingMetricsProcessorRuntimeService.class));
     services.add(injector.getInstance(MetricsProcessorStatusService.class));
+    if (getCConfiguration().getBoolean(Constants.Metrics.ROLLUP_ENABLED)) {
+      services.add(injector.getInstance(MetricsRollupService.class));
+    }
   }
 
   @VisibleForTesting
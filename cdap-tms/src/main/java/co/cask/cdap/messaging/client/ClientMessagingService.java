@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -64,7 +64,9 @@ import org.apache.twill.discovery.DiscoveryServiceClient;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Type;
+import java.net.ConnectException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.ByteBuffer;
@@ -178,15 +180,10 @@ public final class ClientMessagingService implements MessagingService {
   @Nullable
   @Override
   public RollbackDetail publish(StoreRequest request) throws TopicNotFoundException, IOException {
-    HttpResponse response = performWriteRequest(request, true);
-
-    byte[] body = response.getResponseBody();
+    byte[] body = performWriteRequest(request, true);
     if (body.length == 0) {
       return null;
     }
-
-    // It has rollback detail, verify the content-type and decode it
-    verifyContentType(response.getHeaders().asMap(), "avro/binary");
     return new ClientRollbackDetail(body);
   }
 
@@ -216,16 +213,19 @@ public final class ClientMessagingService implements MessagingService {
   }
 
   /**
-   * Makes a request to the server for writing to the messaging system
+   * Makes a request to the server for writing to the messaging system. The request is made with the
+   * {@link HttpURLConnection} directly instead of through the {@link RemoteClient}, which always disconnects.
+   * The response is read fully and the stream is closed without disconnecting, so that the connection is returned
+   * to the keep-alive cache and reused by subsequent requests.
    *
    * @param request contains information about what to write
    * @param publish {@code true} to make publish call, {@code false} to make store call.
-   * @return the response from the server
+   * @return the response body from the server
    * @throws IOException if failed to perform the write operation
    * @throws TopicNotFoundException if the topic to write to does not exist
    */
-  private HttpResponse performWriteRequest(StoreRequest request,
-                                           boolean publish) throws IOException, TopicNotFoundException {
+  private byte[] performWriteRequest(StoreRequest request,
+                                     boolean publish) throws IOException, TopicNotFoundException {
     GenericRecord record = new GenericData.Record(Schemas.V1.PublishRequest.SCHEMA);
     if (request.isTransactional()) {
       record.put("transactionWritePointer", request.getTransactionWritePointer());
@@ -242,18 +242,61 @@ public final class ClientMessagingService implements MessagingService {
     // Make the publish request
     String writeType = publish ? "publish" : "store";
     TopicId topicId = request.getTopicId();
-    HttpRequest httpRequest = remoteClient.requestBuilder(HttpMethod.POST, createTopicPath(topicId) + "/" + writeType)
-      .addHeader(HttpHeaders.CONTENT_TYPE, "avro/binary")
-      .withBody(os.toByteBuffer())
-      .build();
+    URL url = remoteClient.resolve(createTopicPath(topicId) + "/" + writeType);
+    HttpURLConnection urlConn = (HttpURLConnection) url.openConnection();
 
-    HttpResponse response = remoteClient.execute(httpRequest);
+    int responseCode;
+    final byte[] body;
+    Map<String, List<String>> headers;
+    try {
+      urlConn.setConnectTimeout(HTTP_REQUEST_CONFIG.getConnectTimeout());
+      urlConn.setReadTimeout(HTTP_REQUEST_CONFIG.getReadTimeout());
+      urlConn.setRequestMethod("POST");
+      urlConn.setRequestProperty(HttpHeaders.CONTENT_TYPE, "avro/binary");
+      urlConn.setDoOutput(true);
+      urlConn.setFixedLengthStreamingMode(os.size());
 
-    if (response.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+      try (OutputStream output = urlConn.getOutputStream()) {
+        os.writeTo(output);
+      }
+
+      responseCode = urlConn.getResponseCode();
+      InputStream input = responseCode < HttpURLConnection.HTTP_BAD_REQUEST
+        ? urlConn.getInputStream()
+        : urlConn.getErrorStream();
+      if (input == null) {
+        body = new byte[0];
+      } else {
+        try {
+          body = ByteStreams.toByteArray(input);
+        } finally {
+          input.close();
+        }
+      }
+      headers = urlConn.getHeaderFields();
+    } catch (ConnectException e) {
+      urlConn.disconnect();
+      throw new ServiceUnavailableException(Constants.Service.MESSAGING_SERVICE, e);
+    } catch (IOException e) {
+      urlConn.disconnect();
+      throw e;
+    }
+
+    if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
       throw new TopicNotFoundException(topicId.getNamespace(), topicId.getTopic());
     }
-    handleError(response, "Failed to " + writeType + " message to topic " + topicId);
-    return response;
+    handleError(responseCode, new Supplier<String>() {
+      @Override
+      public String get() {
+        return new String(body, StandardCharsets.UTF_8);
+      }
+    }, "Failed to " + writeType + " message to topic " + topicId);
+
+    if (body.length > 0) {
+      // It has rollback detail, verify the content-type
+      verifyContentType(headers, "avro/binary");
+    }
+    return body;
   }
 
   /**
@@ -398,48 +441,60 @@ public final class ClientMessagingService implements MessagingService {
       // in memory, hence we use the HttpURLConnection directly instead.
       URL url = remoteClient.resolve(createTopicPath(topicId) + "/poll");
       final HttpURLConnection urlConn = (HttpURLConnection)  url.openConnection();
-      urlConn.setConnectTimeout(HTTP_REQUEST_CONFIG.getConnectTimeout());
-      urlConn.setReadTimeout(HTTP_REQUEST_CONFIG.getReadTimeout());
-      urlConn.setRequestMethod("POST");
-      urlConn.setRequestProperty(HttpHeaders.CONTENT_TYPE, "avro/binary");
-      urlConn.setDoInput(true);
-      urlConn.setDoOutput(true);
-
-      // Send the request
-      Encoder encoder = EncoderFactory.get().directBinaryEncoder(urlConn.getOutputStream(), null);
-      DatumWriter<GenericRecord> datumWriter = new GenericDatumWriter<>(Schemas.V1.ConsumeRequest.SCHEMA);
-      datumWriter.write(record, encoder);
-
-      int responseCode = urlConn.getResponseCode();
-      if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
-        throw new TopicNotFoundException(topicId.getNamespace(), topicId.getTopic());
-      }
+      final InputStream input;
+      final Decoder decoder;
+      final long initialItemCount;
+      try {
+        urlConn.setConnectTimeout(HTTP_REQUEST_CONFIG.getConnectTimeout());
+        urlConn.setReadTimeout(HTTP_REQUEST_CONFIG.getReadTimeout());
+        urlConn.setRequestMethod("POST");
+        urlConn.setRequestProperty(HttpHeaders.CONTENT_TYPE, "avro/binary");
+        urlConn.setDoInput(true);
+        urlConn.setDoOutput(true);
+
+        // Send the request
+        Encoder encoder = EncoderFactory.get().directBinaryEncoder(urlConn.getOutputStream(), null);
+        DatumWriter<GenericRecord> datumWriter = new GenericDatumWriter<>(Schemas.V1.ConsumeRequest.SCHEMA);
+        datumWriter.write(record, encoder);
+
+        int responseCode = urlConn.getResponseCode();
+        if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+          throw new TopicNotFoundException(topicId.getNamespace(), topicId.getTopic());
+        }
 
-      handleError(responseCode, new Supplier<String>() {
-        @Override
-        public String get() {
-          // If there is any error, read the response body from the error stream
-          InputStream errorStream = urlConn.getErrorStream();
-          try {
-            return errorStream == null ? "" : new String(ByteStreams.toByteArray(errorStream),
-                                                         StandardCharsets.UTF_8);
-          } catch (IOException e) {
-            return "";
+        handleError(responseCode, new Supplier<String>() {
+          @Override
+          public String get() {
+            // If there is any error, read the response body from the error stream
+            InputStream errorStream = urlConn.getErrorStream();
+            try {
+              return errorStream == null ? "" : new String(ByteStreams.toByteArray(errorStream),
+                                                           StandardCharsets.UTF_8);
+            } catch (IOException e) {
+              return "";
+            }
           }
-        }
-      }, "Failed to update topic " + topicId);
-      verifyContentType(urlConn.getHeaderFields(), "avro/binary");
+        }, "Failed to update topic " + topicId);
+        verifyContentType(urlConn.getHeaderFields(), "avro/binary");
+
+        // Decode the avro array manually instead of using DatumReader in order to support streaming decode.
+        input = urlConn.getInputStream();
+        decoder = DecoderFactory.get().binaryDecoder(input, null);
+        initialItemCount = decoder.readArrayStart();
+      } catch (Throwable t) {
+        urlConn.disconnect();
+        throw t;
+      }
 
-      // Decode the avro array manually instead of using DatumReader in order to support streaming decode.
-      final Decoder decoder = DecoderFactory.get().binaryDecoder(urlConn.getInputStream(), null);
-      final long initialItemCount = decoder.readArrayStart();
       return new AbstractCloseableIterator<RawMessage>() {
 
         private long itemCount = initialItemCount;
+        private boolean arrayEnded;
 
         @Override
         protected RawMessage computeNext() {
           if (initialItemCount == 0) {
+            arrayEnded = true;
             return endOfData();
           }
 
@@ -448,6 +503,7 @@ public final class ClientMessagingService implements MessagingService {
               itemCount = decoder.arrayNext();
               if (itemCount == 0) {
                 // The zero item count signals the end of the array
+                arrayEnded = true;
                 return endOfData();
               }
             }
@@ -468,7 +524,22 @@ public final class ClientMessagingService implements MessagingService {
 
         @Override
         public void close() {
-          urlConn.disconnect();
+          if (!arrayEnded) {
+            // Not all messages are consumed. Disconnect instead of reading the rest of the response.
+            urlConn.disconnect();
+            return;
+          }
+          // Read till the end of the response and close the stream instead of disconnecting, so that the
+          // connection is kept alive and reused by subsequent requests to the messaging service.
+          try {
+            byte[] buffer = new byte[256];
+            while (input.read(buffer) >= 0) {
+              // no-op
+            }
+            input.close();
+          } catch (IOException e) {
+            urlConn.disconnect();
+          }
         }
       };
     }
@@ -31,7 +31,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -58,13 +62,24 @@ import javax.annotation.concurrent.ThreadSafe;
  *
  * The spin lock between step 2 to step 8 is necessary as it guarantees events enqueued by all threads would eventually
  * get written and flushed.
+ *
+ * Optionally, the writer can operate in group commit mode by providing a positive linger time. In this mode,
+ * payloads of each request are read into memory before enqueue so that the size of the pending batch is known.
+ * The thread that acquired the writer flag in step 3 waits until either the pending requests reach the maximum
+ * batch count, the maximum batch bytes, or the oldest pending request has been waiting for the linger time,
+ * whichever comes first. At most the maximum batch count and bytes of requests are written in one batch; the
+ * remaining ones stay in the queue for the next writer.
  */
 @ThreadSafe
 final class ConcurrentMessageWriter implements Closeable {
 
+  // Time for a non-writer thread to park between tries when running in group commit mode
+  private static final long GROUP_COMMIT_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
   private final StoreRequestWriter<?> messagesWriter;
   private final MetricsCollector metricsCollector;
   private final PendingStoreQueue pendingStoreQueue;
+  private final long lingerNanos;
   private final AtomicBoolean writerFlag;
   private final AtomicBoolean closed;
 
@@ -83,9 +98,32 @@ final class ConcurrentMessageWriter implements Closeable {
    * @param metricsCollector the {@link MetricsCollector} for collecting metrics emitted by this class.
    */
   ConcurrentMessageWriter(StoreRequestWriter<?> messagesWriter, MetricsCollector metricsCollector) {
+    this(messagesWriter, metricsCollector, 0L, Integer.MAX_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param messagesWriter the {@link StoreRequestWriter} for persisting {@link StoreRequest}.
+   * @param metricsCollector the {@link MetricsCollector} for collecting metrics emitted by this class.
+   * @param lingerMillis maximum time in milliseconds for the writer to wait for more requests before writing
+   *                     a batch. A non-positive value disables group commit.
+   * @param maxBatchCount maximum number of {@link StoreRequest} to write in one batch
+   * @param maxBatchBytes maximum number of payload bytes to write in one batch. A batch always contains at least
+   *                      one request, even if that request alone exceeds this limit.
+   */
+  ConcurrentMessageWriter(StoreRequestWriter<?> messagesWriter, MetricsCollector metricsCollector,
+                          long lingerMillis, int maxBatchCount, long maxBatchBytes) {
+    if (maxBatchCount <= 0) {
+      throw new IllegalArgumentException("Maximum batch count must be positive: " + maxBatchCount);
+    }
+    if (maxBatchBytes <= 0) {
+      throw new IllegalArgumentException("Maximum batch bytes must be positive: " + maxBatchBytes);
+    }
     this.messagesWriter = messagesWriter;
     this.metricsCollector = metricsCollector;
-    this.pendingStoreQueue = new PendingStoreQueue(metricsCollector);
+    this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, lingerMillis));
+    this.pendingStoreQueue = new PendingStoreQueue(metricsCollector, lingerNanos > 0, maxBatchCount, maxBatchBytes);
     this.writerFlag = new AtomicBoolean();
     this.closed = new AtomicBoolean();
   }
@@ -107,13 +145,24 @@ final class ConcurrentMessageWriter implements Closeable {
     }
 
     PendingStoreRequest pendingStoreRequest = new PendingStoreRequest(storeRequest, metadata);
+    if (lingerNanos > 0) {
+      try {
+        pendingStoreRequest.bufferPayloads();
+      } catch (IllegalStateException e) {
+        throw new IOException("Unable to write message to " + storeRequest.getTopicId(), e);
+      }
+    }
     pendingStoreQueue.enqueue(pendingStoreRequest);
 
     metricsCollector.increment("persist.requested", 1L);
 
     while (!pendingStoreRequest.isCompleted()) {
       if (!tryWrite()) {
-        Thread.yield();
+        if (lingerNanos > 0) {
+          LockSupport.parkNanos(GROUP_COMMIT_PARK_NANOS);
+        } else {
+          Thread.yield();
+        }
       }
     }
 
@@ -144,6 +193,9 @@ final class ConcurrentMessageWriter implements Closeable {
       return false;
     }
     try {
+      if (lingerNanos > 0 && !closed.get()) {
+        pendingStoreQueue.awaitBatch(lingerNanos);
+      }
       pendingStoreQueue.persist(messagesWriter);
     } finally {
       writerFlag.set(false);
@@ -158,27 +210,41 @@ final class ConcurrentMessageWriter implements Closeable {
     }
     // Flush everything in the queue.
     // When this thread can grab the writer flag, all pending write requests must be completed since the closed
-    // flag was already set to false.
-    while (!tryWrite()) {
-      Thread.yield();
-    }
+    // flag was already set to false. In group commit mode, each write is bounded by the batch limits,
+    // hence keep writing until the queue is drained.
+    do {
+      while (!tryWrite()) {
+        Thread.yield();
+      }
+    } while (!pendingStoreQueue.isEmpty());
     messagesWriter.close();
   }
 
   /**
    * A resettable {@link Iterator} to provide {@link StoreRequest} to {@link StoreRequestWriter}.
-   * Except the {@link #enqueue(PendingStoreRequest)} method, all methods on this class can only be
-   * called while holding the writer flag.
+   * Except the {@link #enqueue(PendingStoreRequest)} and {@link #isEmpty()} methods, all methods on this class
+   * can only be called while holding the writer flag.
    */
   private static final class PendingStoreQueue {
 
     private final MetricsCollector metricsCollector;
+    private final boolean groupCommit;
+    private final int maxBatchCount;
+    private final long maxBatchBytes;
     private final Queue<PendingStoreRequest> writeQueue;
+    private final AtomicInteger pendingCount;
+    private final AtomicLong pendingBytes;
     private final List<PendingStoreRequest> inflightRequests;
 
-    private PendingStoreQueue(MetricsCollector metricsCollector) {
+    private PendingStoreQueue(MetricsCollector metricsCollector, boolean groupCommit,
+                              int maxBatchCount, long maxBatchBytes) {
       this.metricsCollector = metricsCollector;
+      this.groupCommit = groupCommit;
+      this.maxBatchCount = maxBatchCount;
+      this.maxBatchBytes = maxBatchBytes;
       this.writeQueue = new ConcurrentLinkedQueue<>();
+      this.pendingCount = new AtomicInteger();
+      this.pendingBytes = new AtomicLong();
       this.inflightRequests = new ArrayList<>(100);
     }
 
@@ -186,11 +252,40 @@ final class ConcurrentMessageWriter implements Closeable {
      * Puts the given {@link PendingStoreRequest} to the concurrent queue.
      */
     void enqueue(PendingStoreRequest storeRequest) {
+      if (groupCommit) {
+        pendingBytes.addAndGet(storeRequest.getPayloadSize());
+        pendingCount.incrementAndGet();
+      }
       writeQueue.add(storeRequest);
     }
 
     /**
-     * Persists all {@link PendingStoreRequest} currently in the queue with the given writer.
+     * Returns {@code true} if there is no pending request in the queue.
+     */
+    boolean isEmpty() {
+      return writeQueue.isEmpty();
+    }
+
+    /**
+     * Blocks until the pending requests reach the batch count or bytes limit, or until the oldest pending request
+     * has been waiting for the given linger time.
+     */
+    void awaitBatch(long lingerNanos) {
+      PendingStoreRequest oldest = writeQueue.peek();
+      if (oldest == null) {
+        return;
+      }
+      long deadline = oldest.getEnqueueNanos() + lingerNanos;
+      long remaining = deadline - System.nanoTime();
+      while (remaining > 0 && pendingCount.get() < maxBatchCount && pendingBytes.get() < maxBatchBytes) {
+        LockSupport.parkNanos(Math.min(remaining, GROUP_COMMIT_PARK_NANOS));
+        remaining = deadline - System.nanoTime();
+      }
+    }
+
+    /**
+     * Persists the {@link PendingStoreRequest} currently in the queue with the given writer.
+     * In group commit mode, at most the maximum batch count and bytes of requests are persisted.
      */
     void persist(StoreRequestWriter<?> writer) {
       // Capture all current events.
@@ -200,13 +295,29 @@ final class ConcurrentMessageWriter implements Closeable {
       // Since this method is expected to be called (indirectly) from a http handler thread, that is bounded by
       // the thread pool size used by the http service.
       inflightRequests.clear();
-      PendingStoreRequest request = writeQueue.poll();
+      long batchBytes = 0L;
+      long now = System.nanoTime();
+      long maxQueueDelayNanos = 0L;
+      PendingStoreRequest request = writeQueue.peek();
       while (request != null) {
+        if (groupCommit && !inflightRequests.isEmpty()
+          && (inflightRequests.size() >= maxBatchCount || batchBytes + request.getPayloadSize() > maxBatchBytes)) {
+          break;
+        }
+        writeQueue.poll();
         inflightRequests.add(request);
-        request = writeQueue.poll();
+        batchBytes += request.getPayloadSize();
+        maxQueueDelayNanos = Math.max(maxQueueDelayNanos, now - request.getEnqueueNanos());
+        request = writeQueue.peek();
       }
 
+      if (groupCommit) {
+        pendingCount.addAndGet(-inflightRequests.size());
+        pendingBytes.addAndGet(-batchBytes);
+        metricsCollector.gauge("persist.batch.bytes", batchBytes);
+      }
       metricsCollector.gauge("persist.queue.size", inflightRequests.size());
+      metricsCollector.gauge("persist.queue.delay.ms", TimeUnit.NANOSECONDS.toMillis(maxQueueDelayNanos));
 
       try {
         writer.write(inflightRequests.iterator());
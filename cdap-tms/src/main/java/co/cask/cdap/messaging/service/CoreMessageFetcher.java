@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -176,7 +176,11 @@ final class CoreMessageFetcher extends MessageFetcher {
         if (messageIterator.hasNext()) {
           messageEntry = messageIterator.next();
           if (messageEntry.isPayloadReference()) {
-            // If the message entry is a reference to payload table, create the payload iterator
+            // If the message entry is a reference to payload table, create the payload iterator.
+            // The payload table is opened once and reused for all references, while the iterator of the previous
+            // reference is closed to release its scanner.
+            closeQuietly(payloadIterator);
+            payloadIterator = null;
             try {
               if (payloadTable == null) {
                 payloadTable = payloadTableProvider.get();
@@ -408,7 +408,10 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
             Constants.Metrics.Tag.TABLE, messageTable ? "message" : "payload"
           ));
 
-          return new ConcurrentMessageWriter(messagesWriter, metricsContext);
+          return new ConcurrentMessageWriter(messagesWriter, metricsContext,
+                                             cConf.getLong(Constants.MessagingSystem.GROUP_COMMIT_LINGER_MS),
+                                             cConf.getInt(Constants.MessagingSystem.GROUP_COMMIT_MAX_BATCH_COUNT),
+                                             cConf.getLong(Constants.MessagingSystem.GROUP_COMMIT_MAX_BATCH_BYTES));
         }
       });
   }
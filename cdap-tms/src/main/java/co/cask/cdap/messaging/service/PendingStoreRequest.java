@@ -19,6 +19,9 @@ package co.cask.cdap.messaging.service;
 import co.cask.cdap.messaging.StoreRequest;
 import co.cask.cdap.messaging.TopicMetadata;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import javax.annotation.Nullable;
 
 /**
@@ -28,7 +31,10 @@ final class PendingStoreRequest extends StoreRequest {
 
   private final StoreRequest originalRequest;
   private final TopicMetadata metadata;
+  private final long enqueueNanos;
 
+  private Iterator<byte[]> bufferedPayloads;
+  private long payloadSize;
   private boolean completed;
   private long startTimestamp;
   private long endTimestamp;
@@ -41,6 +47,41 @@ final class PendingStoreRequest extends StoreRequest {
           originalRequest.getTransactionWritePointer());
     this.originalRequest = originalRequest;
     this.metadata = topicMetadata;
+    this.enqueueNanos = System.nanoTime();
+  }
+
+  /**
+   * Reads all payloads from the original {@link StoreRequest} into memory so that the total payload size is known
+   * before the request is handed to the writer. This method must be called before this request is enqueued.
+   *
+   * @return the total number of payload bytes in this request
+   */
+  long bufferPayloads() {
+    List<byte[]> payloads = new ArrayList<>();
+    long size = 0L;
+    while (originalRequest.hasNext()) {
+      byte[] payload = originalRequest.next();
+      payloads.add(payload);
+      size += payload.length;
+    }
+    bufferedPayloads = payloads.iterator();
+    payloadSize = size;
+    return size;
+  }
+
+  /**
+   * Returns the total payload size in bytes as computed by {@link #bufferPayloads()}, or {@code 0} if the payloads
+   * are not buffered.
+   */
+  long getPayloadSize() {
+    return payloadSize;
+  }
+
+  /**
+   * Returns the value of {@link System#nanoTime()} when this request was created.
+   */
+  long getEnqueueNanos() {
+    return enqueueNanos;
   }
 
   TopicMetadata getTopicMetadata() {
@@ -103,7 +144,8 @@ final class PendingStoreRequest extends StoreRequest {
   @Nullable
   @Override
   protected byte[] doComputeNext() {
-    return originalRequest.hasNext() ? originalRequest.next() : null;
+    Iterator<byte[]> payloads = bufferedPayloads == null ? originalRequest : bufferedPayloads;
+    return payloads.hasNext() ? payloads.next() : null;
   }
 
   @Override
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2016 Cask Data, Inc.
+ * Copyright © 2016-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -23,6 +23,7 @@ import co.cask.cdap.api.messaging.TopicNotFoundException;
 import co.cask.cdap.api.metrics.MetricsCollectionService;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.discovery.RandomEndpointStrategy;
 import co.cask.cdap.common.guice.ConfigModule;
 import co.cask.cdap.common.guice.DiscoveryRuntimeModule;
 import co.cask.cdap.common.metrics.NoOpMetricsCollectionService;
@@ -38,12 +39,16 @@ import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.proto.id.TopicId;
 import com.google.common.base.Strings;
 import com.google.common.collect.Iterators;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.apache.tephra.Transaction;
 import org.apache.tephra.TxConstants;
+import org.apache.twill.discovery.Discoverable;
 import org.apache.twill.discovery.DiscoveryServiceClient;
+import org.apache.twill.discovery.InMemoryDiscoveryService;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -52,11 +57,17 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Tests for {@link MessagingHttpService}.
@@ -68,6 +79,7 @@ public class MessagingHttpServiceTest {
 
   private static CConfiguration cConf;
   private static MessagingHttpService httpService;
+  private static Injector injector;
   private static MessagingService client;
 
   @BeforeClass
@@ -78,7 +90,7 @@ public class MessagingHttpServiceTest {
     // Set max life time to a high value so that dummy tx ids that we create in the tests still work
     cConf.setLong(TxConstants.Manager.CFG_TX_MAX_LIFETIME, 10000000000L);
 
-    Injector injector = Guice.createInjector(
+    injector = Guice.createInjector(
       new ConfigModule(cConf),
       new DiscoveryRuntimeModule().getInMemoryModules(),
       new MessagingServerRuntimeModule().getInMemoryModules(),
@@ -132,6 +144,84 @@ public class MessagingHttpServiceTest {
     client.deleteTopic(topic1);
   }
 
+  @Test
+  public void testWriteReuseConnection() throws Exception {
+    TopicId topicId = new NamespaceId("ns1").topic("reuse");
+    client.createTopic(new TopicMetadata(topicId));
+
+    // Route a client through a proxy that counts the connections opened to the messaging service
+    DiscoveryServiceClient discoveryClient = injector.getInstance(DiscoveryServiceClient.class);
+    Discoverable discoverable = new RandomEndpointStrategy(
+      discoveryClient.discover(Constants.Service.MESSAGING_SERVICE)).pick(10, TimeUnit.SECONDS);
+    Assert.assertNotNull(discoverable);
+
+    final InetSocketAddress serviceAddress = discoverable.getSocketAddress();
+    final AtomicInteger connections = new AtomicInteger();
+    try (final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+      Thread acceptThread = new Thread("proxy-accept") {
+        @Override
+        public void run() {
+          while (!serverSocket.isClosed()) {
+            try {
+              Socket socket = serverSocket.accept();
+              connections.incrementAndGet();
+              Socket serviceSocket = new Socket(serviceAddress.getAddress(), serviceAddress.getPort());
+              startCopy(socket, serviceSocket);
+              startCopy(serviceSocket, socket);
+            } catch (IOException e) {
+              // The server socket is closed
+            }
+          }
+        }
+      };
+      acceptThread.setDaemon(true);
+      acceptThread.start();
+
+      InMemoryDiscoveryService proxyDiscovery = new InMemoryDiscoveryService();
+      proxyDiscovery.register(new Discoverable(Constants.Service.MESSAGING_SERVICE,
+                                               (InetSocketAddress) serverSocket.getLocalSocketAddress()));
+      MessagingService proxyClient = new ClientMessagingService(proxyDiscovery);
+
+      // All publish and store calls, including failed ones, should go through the same connection
+      for (int i = 0; i < 10; i++) {
+        proxyClient.publish(StoreRequestBuilder.of(topicId).addPayloads(Integer.toString(i)).build());
+        proxyClient.storePayload(StoreRequestBuilder.of(topicId).setTransaction(1L)
+                                   .addPayloads(Integer.toString(i)).build());
+      }
+      try {
+        proxyClient.publish(StoreRequestBuilder.of(new NamespaceId("ns1").topic("missing")).addPayloads("a").build());
+        Assert.fail("Expected TopicNotFoundException");
+      } catch (TopicNotFoundException e) {
+        // expected
+      }
+      proxyClient.publish(StoreRequestBuilder.of(topicId).addPayloads("last").build());
+      Assert.assertEquals(1, connections.get());
+    }
+
+    client.deleteTopic(topicId);
+  }
+
+  /**
+   * Starts a daemon thread to copy data from one socket to another until the end of input is reached.
+   */
+  private static void startCopy(final Socket from, final Socket to) {
+    Thread thread = new Thread("proxy-copy") {
+      @Override
+      public void run() {
+        try {
+          ByteStreams.copy(from.getInputStream(), to.getOutputStream());
+        } catch (IOException e) {
+          // Either side is closed
+        } finally {
+          Closeables.closeQuietly(from);
+          Closeables.closeQuietly(to);
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
   @Test
   public void testMetadataEndpoints() throws Exception {
     NamespaceId nsId = new NamespaceId("metadata");
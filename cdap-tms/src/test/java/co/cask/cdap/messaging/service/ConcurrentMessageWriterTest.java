@@ -18,6 +18,7 @@ package co.cask.cdap.messaging.service;
 
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.metrics.MetricsCollector;
+import co.cask.cdap.api.metrics.NoopMetricsContext;
 import co.cask.cdap.common.utils.TimeProvider;
 import co.cask.cdap.messaging.StoreRequest;
 import co.cask.cdap.messaging.TopicMetadata;
@@ -37,6 +38,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -268,6 +270,72 @@ public class ConcurrentMessageWriterTest {
     }
   }
 
+  @Test
+  public void testGroupCommit() throws InterruptedException, IOException {
+    int threadCount = 20;
+    final int requestPerThread = 10;
+    final int maxBatchCount = 8;
+    // Each payload is 4 bytes, hence at most 3 requests of 2 payloads each can be written in one batch
+    long maxBatchBytes = 24L;
+
+    final TopicId topicId = NamespaceId.DEFAULT.topic("t");
+    final TopicMetadata metadata = new TopicMetadata(topicId, new HashMap<String, String>(), 1);
+    TestStoreRequestWriter testWriter = new TestStoreRequestWriter(new TimeProvider.IncrementalTimeProvider());
+
+    final List<Long> batchSizes = Collections.synchronizedList(new ArrayList<Long>());
+    final ConcurrentMessageWriter writer = new ConcurrentMessageWriter(testWriter, new MetricsCollector() {
+      @Override
+      public void increment(String metricName, long value) {
+        // No-op
+      }
+
+      @Override
+      public void gauge(String metricName, long value) {
+        if ("persist.queue.size".equals(metricName)) {
+          batchSizes.add(value);
+        }
+      }
+    }, 50L, maxBatchCount, maxBatchBytes);
+
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    for (int i = 0; i < threadCount; i++) {
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < requestPerThread; i++) {
+              writer.persist(new TestStoreRequest(topicId, Arrays.asList("abcd", "efgh")), metadata);
+            }
+          } catch (Exception e) {
+            LOG.error("Exception raised when persisting.", e);
+          }
+        }
+      });
+    }
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    writer.close();
+
+    // All messages should be written
+    List<RawMessage> messages = testWriter.getMessages().get(topicId);
+    Assert.assertEquals(2 * threadCount * requestPerThread, messages.size());
+
+    // No batch should exceed the byte limit
+    long totalRequests = 0L;
+    for (long batchSize : batchSizes) {
+      Assert.assertTrue(batchSize <= 3);
+      totalRequests += batchSize;
+    }
+    Assert.assertEquals(threadCount * requestPerThread, totalRequests);
+
+    // A single request larger than the byte limit should still be written
+    ConcurrentMessageWriter singleWriter = new ConcurrentMessageWriter(testWriter, new NoopMetricsContext(),
+                                                                       50L, maxBatchCount, 1L);
+    singleWriter.persist(new TestStoreRequest(topicId, Arrays.asList("large", "payload")), metadata);
+    singleWriter.close();
+    Assert.assertEquals(2 * threadCount * requestPerThread + 2, testWriter.getMessages().get(topicId).size());
+  }
+
   /**
    * A {@link StoreRequestWriter} that turns all payloads to {@link RawMessage} and stores it in a List.
    */
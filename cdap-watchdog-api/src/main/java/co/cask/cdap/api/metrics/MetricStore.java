@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 Cask Data, Inc.
+ * Copyright 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -68,6 +68,14 @@ public interface MetricStore {
    */
   void deleteAll() throws Exception;
 
+  /**
+   * Rolls up metrics data written only into the finest resolution into the coarser resolutions, up to the given time.
+   * It is called periodically by the metrics processor if metrics rollup is enabled.
+   * @param endTs time up to which (exclusive) to roll up metrics data, in seconds since epoch
+   * @throws Exception
+   */
+  void rollup(long endTs) throws Exception;
+
   /**
    * Given a list of tags in the {@link MetricSearchQuery}, returns the list of next available tags
    * @param query specifies where to search
@@ -31,6 +31,8 @@ import org.apache.twill.filesystem.LocationFactory;
 public class DistributedAppenderContext extends AbstractAppenderContext {
 
   private final TwillContext twillContext;
+  private int workerId;
+  private int workers = 1;
 
   @Inject
   DistributedAppenderContext(DatasetFramework datasetFramework,
@@ -42,13 +44,26 @@ public class DistributedAppenderContext extends AbstractAppenderContext {
     this.twillContext = twillContext;
   }
 
+  /**
+   * Sets the worker within the log framework instance that uses this context. Each worker is presented to
+   * appenders as a separate instance. It must be called before any appender is started.
+   *
+   * @param workerId id of the worker, between zero (inclusive) and the number of workers (exclusive)
+   * @param workers the configured number of workers in each log framework instance, which must be the same in all
+   *                instances even if some instances create fewer workers, so that instance ids are unique
+   */
+  void setWorker(int workerId, int workers) {
+    this.workerId = workerId;
+    this.workers = workers;
+  }
+
   @Override
   public int getInstanceId() {
-    return twillContext.getInstanceId();
+    return twillContext.getInstanceId() * workers + workerId;
   }
 
   @Override
   public int getInstanceCount() {
-    return twillContext.getInstanceCount();
+    return twillContext.getInstanceCount() * workers;
   }
 }
@@ -48,6 +48,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -80,34 +81,44 @@ public class DistributedLogFramework extends ResourceBalancerService {
 
   @Override
   protected Service createService(Set<Integer> partitions) {
-    Map<String, LogPipelineSpecification<AppenderContext>> specs = new LogPipelineLoader(cConf).load(contextProvider);
-    int pipelineCount = specs.size();
+    // The partitions are divided among workers. Each worker has its own set of pipelines, hence nothing is shared
+    // between workers, except the checkpoint store, in which each partition has its own checkpoint.
+    // The instance ids of workers are based on the configured number of workers, which is the same in all instances,
+    // while the number of workers created is capped by the number of partitions assigned to this instance.
+    int workers = getWorkers(cConf);
+    List<Set<Integer>> workerPartitions = assignPartitions(partitions, workers);
 
-    // Create one KafkaLogProcessorPipeline per spec
     final List<Service> pipelines = new ArrayList<>();
-    for (final LogPipelineSpecification<AppenderContext> pipelineSpec : specs.values()) {
-      final CConfiguration cConf = pipelineSpec.getConf();
-      final AppenderContext context = pipelineSpec.getContext();
-
-      long bufferSize = getBufferSize(pipelineCount, cConf, partitions.size());
-      final String topic = cConf.get(Constants.Logging.KAFKA_TOPIC);
-      final KafkaPipelineConfig config = new KafkaPipelineConfig(
-        topic, partitions, bufferSize,
-        cConf.getLong(Constants.Logging.PIPELINE_EVENT_DELAY_MS),
-        cConf.getInt(Constants.Logging.PIPELINE_KAFKA_FETCH_SIZE),
-        cConf.getLong(Constants.Logging.PIPELINE_CHECKPOINT_INTERVAL_MS)
-      );
-
-      RetryStrategy retryStrategy = RetryStrategies.fromConfiguration(cConf, "system.log.process.");
-      pipelines.add(new RetryOnStartFailureService(new Supplier<Service>() {
-        @Override
-        public Service get() {
-          return new KafkaLogProcessorPipeline(
-            new LogProcessorPipelineContext(cConf, context.getName(), context,
-                                            context.getMetricsContext(), context.getInstanceId()),
-            checkpointManagerFactory.create(topic, pipelineSpec.getCheckpointPrefix()), brokerService, config);
-        }
-      }, retryStrategy));
+    for (int workerId = 0; workerId < workerPartitions.size(); workerId++) {
+      Map<String, LogPipelineSpecification<AppenderContext>> specs =
+        new LogPipelineLoader(cConf).load(createContextProvider(contextProvider, workerId, workers));
+      int pipelineCount = specs.size() * workerPartitions.size();
+
+      // Create one KafkaLogProcessorPipeline per spec
+      for (final LogPipelineSpecification<AppenderContext> pipelineSpec : specs.values()) {
+        final CConfiguration cConf = pipelineSpec.getConf();
+        final AppenderContext context = pipelineSpec.getContext();
+
+        long bufferSize = getBufferSize(pipelineCount, cConf, partitions.size());
+        final String topic = cConf.get(Constants.Logging.KAFKA_TOPIC);
+        final KafkaPipelineConfig config = new KafkaPipelineConfig(
+          topic, workerPartitions.get(workerId), bufferSize,
+          cConf.getLong(Constants.Logging.PIPELINE_EVENT_DELAY_MS),
+          cConf.getInt(Constants.Logging.PIPELINE_KAFKA_FETCH_SIZE),
+          cConf.getLong(Constants.Logging.PIPELINE_CHECKPOINT_INTERVAL_MS)
+        );
+
+        RetryStrategy retryStrategy = RetryStrategies.fromConfiguration(cConf, "system.log.process.");
+        pipelines.add(new RetryOnStartFailureService(new Supplier<Service>() {
+          @Override
+          public Service get() {
+            return new KafkaLogProcessorPipeline(
+              new LogProcessorPipelineContext(cConf, context.getName(), context,
+                                              context.getMetricsContext(), context.getInstanceId()),
+              checkpointManagerFactory.create(topic, pipelineSpec.getCheckpointPrefix()), brokerService, config);
+          }
+        }, retryStrategy));
+      }
     }
 
     // Returns a Service that start/stop all pipelines.
@@ -136,6 +147,56 @@ public class DistributedLogFramework extends ResourceBalancerService {
     };
   }
 
+  /**
+   * Returns the configured number of workers in each log framework instance.
+   */
+  static int getWorkers(CConfiguration cConf) {
+    return Math.max(1, cConf.getInt(Constants.Logging.PIPELINE_WORKERS));
+  }
+
+  /**
+   * Assigns the given partitions to at most the given number of workers in round robin. There are fewer workers
+   * if there are fewer partitions than workers, and at least one worker.
+   *
+   * @return list of partitions assigned to each worker
+   */
+  static List<Set<Integer>> assignPartitions(Set<Integer> partitions, int workers) {
+    int count = Math.max(1, Math.min(workers, partitions.size()));
+    List<Set<Integer>> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      result.add(new TreeSet<Integer>());
+    }
+    int i = 0;
+    for (int partition : new TreeSet<>(partitions)) {
+      result.get(i++ % count).add(partition);
+    }
+    return result;
+  }
+
+  /**
+   * Returns a {@link Provider} of {@link AppenderContext} for the given worker.
+   *
+   * @param contextProvider the provider of {@link AppenderContext} of the log framework instance
+   * @param workerId id of the worker in the log framework instance
+   * @param workers the configured number of workers in each log framework instance
+   */
+  static Provider<AppenderContext> createContextProvider(final Provider<AppenderContext> contextProvider,
+                                                         final int workerId, final int workers) {
+    if (workers == 1) {
+      return contextProvider;
+    }
+    return new Provider<AppenderContext>() {
+      @Override
+      public AppenderContext get() {
+        AppenderContext context = contextProvider.get();
+        if (context instanceof DistributedAppenderContext) {
+          ((DistributedAppenderContext) context).setWorker(workerId, workers);
+        }
+        return context;
+      }
+    };
+  }
+
   /**
    * Blocks and validates all the given futures completed successfully.
    */
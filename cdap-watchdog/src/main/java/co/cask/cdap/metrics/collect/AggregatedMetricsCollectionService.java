@@ -26,21 +26,35 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Base class for {@link MetricsCollectionService} which collect metrics through a set of cached
  * {@link AggregatedMetricsEmitter}.
+ * <p>
+ * Each {@link MetricsContext} holds the emitters of the metrics emitted through it, so emitting a metric only
+ * requires a lookup by metric name, without hashing the tags. Emitters accumulate values without locking, and are
+ * drained by the publishing thread periodically without blocking the emitting threads. Emitters that didn't emit
+ * for a while are retired by the publishing thread, and values added to a retired emitter concurrently are handed
+ * over to its replacement, so that no value is lost.
+ * <p>
+ * There is at most one live {@link MetricsContext} for the same set of tags, so that metrics of the same tags are
+ * never published as separate {@link MetricValues} for the same timestamp.
+ * The {@link MetricsContext} returned by this class also implements {@link DistributionCollector}.
  */
 public abstract class AggregatedMetricsCollectionService extends AbstractExecutionThreadService
                                                          implements MetricsCollectionService {
@@ -49,32 +63,29 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
   private static final long CACHE_EXPIRE_MINUTES = 1;
 
   private final LoadingCache<Map<String, String>, MetricsContext> collectors;
-  private final LoadingCache<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>> emitters;
+  // All contexts that are still referenced, either by the collectors cache, the activeContexts or the caller.
+  private final LoadingCache<Map<String, String>, MetricsContextImpl> contexts;
+  // Contexts that have emitters. The publishing thread only iterates over these contexts.
+  private final Set<MetricsContextImpl> activeContexts;
   private Thread runThread;
 
   public AggregatedMetricsCollectionService() {
+    this.contexts = CacheBuilder.newBuilder()
+      .weakValues()
+      .build(new CacheLoader<Map<String, String>, MetricsContextImpl>() {
+        @Override
+        public MetricsContextImpl load(Map<String, String> tags) throws Exception {
+          return new MetricsContextImpl(tags);
+        }
+      });
     this.collectors = CacheBuilder.newBuilder()
       .expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES)
       .build(createCollectorLoader());
 
-    this.emitters = CacheBuilder.newBuilder()
-      // NOTE : we don't need to have removalListener to  emit metrics, as we have expireAfterAccess set for a minute,
-      // emitters.get() is used to increment/gauge and that would reset the access time,
-      // and since runOneIteration() emits all the metrics for the scheduled duration (every 1 second)
-      // there wont be any loss of emitter entries.
-      .expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES)
-      .build(new CacheLoader<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>>() {
-        @Override
-        public LoadingCache<String, AggregatedMetricsEmitter> load(Map<String, String> tags) throws Exception {
-          return CacheBuilder.newBuilder().expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES).
-            build(new CacheLoader<String, AggregatedMetricsEmitter>() {
-              @Override
-              public AggregatedMetricsEmitter load(String metricName) throws Exception {
-                return new AggregatedMetricsEmitter(metricName);
-              }
-            });
-        }
-      });
+    // NOTE : contexts removed from the collectors cache are still published as long as they are active.
+    // A context removed from the collectors cache is reused if it is requested again while it is still referenced.
+    // Emitters that didn't emit anything for a minute are retired by the publishing thread (see getMetrics).
+    this.activeContexts = Collections.newSetFromMap(new ConcurrentHashMap<MetricsContextImpl, Boolean>());
   }
 
   /**
@@ -102,6 +113,13 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
     return TimeUnit.SECONDS.toMillis(Constants.MetricsCollector.DEFAULT_FREQUENCY_SECONDS);
   }
 
+  /**
+   * Returns the number of seconds that an emitter can stay without emitting anything before it is retired.
+   */
+  protected long getEmitterExpireSeconds() {
+    return TimeUnit.MINUTES.toSeconds(CACHE_EXPIRE_MINUTES);
+  }
+
   @Override
   protected void startUp() throws Exception {
     runThread = Thread.currentThread();
@@ -176,25 +194,21 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
   }
 
   private Iterator<MetricValues> getMetrics(final long timestamp) {
-    // NOTE : emitters.asMap does not reset the access time in cache,
-    // so it's the preferred way to access the cache entries. as we access and emit metrics every second.
-    final Iterator<Map.Entry<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>>> iterator =
-      emitters.asMap().entrySet().iterator();
+    final Iterator<MetricsContextImpl> iterator = activeContexts.iterator();
+    final long emitterExpireSeconds = getEmitterExpireSeconds();
     return new AbstractIterator<MetricValues>() {
       @Override
       protected MetricValues computeNext() {
         while (iterator.hasNext()) {
-          Map.Entry<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>> entry = iterator.next();
-          Map<String, AggregatedMetricsEmitter> metricEmitters = entry.getValue().asMap();
-          // +1 because we add extra metric about how many metric values did we emit in this context (see below)
-          List<MetricValue> metricValues = Lists.newArrayListWithCapacity(metricEmitters.size() + 1);
-          for (Map.Entry<String, AggregatedMetricsEmitter> emitterEntry : metricEmitters.entrySet()) {
-            MetricValue metricValue = emitterEntry.getValue().emit();
-            // skip increment by 0
-            if (metricValue.getType() == MetricType.COUNTER && metricValue.getValue() == 0) {
-              continue;
+          MetricsContextImpl context = iterator.next();
+          List<MetricValue> metricValues = context.emit(timestamp, emitterExpireSeconds);
+
+          if (context.isIdle()) {
+            activeContexts.remove(context);
+            // Add it back if an emitter was added to the context concurrently
+            if (!context.isIdle()) {
+              activeContexts.add(context);
             }
-            metricValues.add(metricValue);
           }
 
           if (metricValues.isEmpty()) {
@@ -206,7 +220,7 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
           metricValues.add(new MetricValue("metrics.emitted.count", MetricType.COUNTER, metricValues.size() + 1));
 
           LOG.trace("Emit metric {}", metricValues);
-          return new MetricValues(entry.getKey(), timestamp, metricValues);
+          return new MetricValues(context.getTags(), timestamp, metricValues);
         }
         return endOfData();
       }
@@ -217,27 +231,47 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
     return new CacheLoader<Map<String, String>, MetricsContext>() {
       @Override
       public MetricsContext load(final Map<String, String> collectorKey) throws Exception {
-        return new MetricsContextImpl(collectorKey);
+        return contexts.getUnchecked(collectorKey);
       }
     };
   }
 
-  private final class MetricsContextImpl implements MetricsContext {
+  private final class MetricsContextImpl implements MetricsContext, DistributionCollector {
 
     private final Map<String, String> tags;
+    private final ConcurrentMap<String, AggregatedMetricsEmitter> emitters;
+    private final ConcurrentMap<String, DistributionMetricsEmitter> distributions;
 
     private MetricsContextImpl(final Map<String, String> tags) {
       this.tags = ImmutableMap.copyOf(tags);
+      this.emitters = new ConcurrentHashMap<>();
+      this.distributions = new ConcurrentHashMap<>();
     }
 
     @Override
     public void increment(String metricName, long value) {
-      emitters.getUnchecked(tags).getUnchecked(metricName).increment(value);
+      AggregatedMetricsEmitter emitter = getEmitter(metricName);
+      emitter.increment(value);
+      handOver(metricName, emitter);
     }
 
     @Override
     public void gauge(String metricName, long value) {
-      emitters.getUnchecked(tags).getUnchecked(metricName).gauge(value);
+      AggregatedMetricsEmitter emitter = getEmitter(metricName);
+      emitter.gauge(value);
+      handOver(metricName, emitter);
+    }
+
+    @Override
+    public void distribution(String metricName, long value) {
+      DistributionMetricsEmitter emitter = getDistributionEmitter(metricName);
+      emitter.record(value);
+      // If the emitter was retired concurrently, the value may be added after its last emit
+      while (emitter.isRetired()) {
+        DistributionMetricsEmitter next = getDistributionEmitter(metricName);
+        emitter.transferTo(next);
+        emitter = next;
+      }
     }
 
     @Override
@@ -263,5 +297,88 @@ public abstract class AggregatedMetricsCollectionService extends AbstractExecuti
       allTags.putAll(tags);
       return collectors.getUnchecked(allTags);
     }
+
+    private AggregatedMetricsEmitter getEmitter(String metricName) {
+      AggregatedMetricsEmitter emitter = emitters.get(metricName);
+      if (emitter != null) {
+        return emitter;
+      }
+      emitter = new AggregatedMetricsEmitter(metricName);
+      AggregatedMetricsEmitter existing = emitters.putIfAbsent(metricName, emitter);
+      if (existing != null) {
+        return existing;
+      }
+      // Make sure this context is published
+      activeContexts.add(this);
+      return emitter;
+    }
+
+    private DistributionMetricsEmitter getDistributionEmitter(String metricName) {
+      DistributionMetricsEmitter emitter = distributions.get(metricName);
+      if (emitter != null) {
+        return emitter;
+      }
+      emitter = new DistributionMetricsEmitter(metricName);
+      DistributionMetricsEmitter existing = distributions.putIfAbsent(metricName, emitter);
+      if (existing != null) {
+        return existing;
+      }
+      activeContexts.add(this);
+      return emitter;
+    }
+
+    /**
+     * Moves the values added to the given emitter to its replacement if the emitter was retired concurrently,
+     * since the values may be added after its last emit.
+     */
+    private void handOver(String metricName, AggregatedMetricsEmitter emitter) {
+      while (emitter.isRetired()) {
+        AggregatedMetricsEmitter next = getEmitter(metricName);
+        emitter.transferTo(next);
+        emitter = next;
+      }
+    }
+
+    /**
+     * Emits all metric values of this context and retires emitters that haven't emitted for a while.
+     * This method is only called from the publishing thread.
+     */
+    private List<MetricValue> emit(long timestamp, long emitterExpireSeconds) {
+      // +1 because we add extra metric about how many metric values did we emit in this context
+      List<MetricValue> metricValues = new ArrayList<>(emitters.size() + distributions.size() * 5 + 1);
+      for (Map.Entry<String, AggregatedMetricsEmitter> entry : emitters.entrySet()) {
+        AggregatedMetricsEmitter emitter = entry.getValue();
+        MetricValue metricValue = emitter.emit(timestamp);
+        if (metricValue != null) {
+          metricValues.add(metricValue);
+        } else if (timestamp - emitter.getLastEmitSeconds() >= emitterExpireSeconds
+          && emitters.remove(entry.getKey(), emitter)) {
+          // Emit what was added before the emitter is retired. Values added after are handed over by the emitting
+          // thread to the new emitter.
+          emitter.retire();
+          metricValue = emitter.emit(timestamp);
+          if (metricValue != null) {
+            metricValues.add(metricValue);
+          }
+        }
+      }
+      for (Map.Entry<String, DistributionMetricsEmitter> entry : distributions.entrySet()) {
+        DistributionMetricsEmitter emitter = entry.getValue();
+        if (!emitter.emit(timestamp, metricValues)
+          && timestamp - emitter.getLastEmitSeconds() >= emitterExpireSeconds
+          && distributions.remove(entry.getKey(), emitter)) {
+          emitter.retire();
+          emitter.emit(timestamp, metricValues);
+        }
+      }
+      return metricValues;
+    }
+
+    /**
+     * Returns {@code true} if there is no emitter in this context.
+     */
+    private boolean isIdle() {
+      return emitters.isEmpty() && distributions.isEmpty();
+    }
   }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -20,21 +20,30 @@ import co.cask.cdap.api.metrics.MetricValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
 
 /**
  * {@link MetricsEmitter} that aggregates  values for a metric
  * during collection and emit the aggregated value when emit.
+ * Increments are accumulated in a {@link StripedCounter} so that concurrent updates to the same metric don't
+ * contend on a single memory location. If gauge is used during a collection period, the last gauge value is emitted.
  */
 final class AggregatedMetricsEmitter implements MetricsEmitter {
   private static final Logger LOG = LoggerFactory.getLogger(AggregatedMetricsEmitter.class);
 
   private final String name;
-  // metric value
-  private final AtomicLong value;
+  // aggregated counter value
+  private final StripedCounter counter;
   // specifies if the metric type is gauge or counter
   private final AtomicBoolean gaugeUsed;
+  // last gauge value
+  private volatile long gaugeValue;
+  // set by the publishing thread after this emitter is removed from its context
+  private volatile boolean retired;
+  // last time in seconds that this emitter emitted a value. Only accessed by the publishing thread.
+  private long lastEmitSeconds;
 
   AggregatedMetricsEmitter(String name) {
     if (name == null || name.isEmpty()) {
@@ -42,25 +51,81 @@ final class AggregatedMetricsEmitter implements MetricsEmitter {
     }
 
     this.name = name;
-    this.value = new AtomicLong();
+    this.counter = new StripedCounter();
     this.gaugeUsed = new AtomicBoolean(false);
+    this.lastEmitSeconds = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
   }
 
   void increment(long value) {
-    this.value.addAndGet(value);
+    counter.add(value);
   }
 
-
   @Override
   public MetricValue emit() {
-    // todo CDAP-2195 - potential race condition , reseting value and type has to be done together
-    long value = this.value.getAndSet(0);
-    MetricType type = gaugeUsed.getAndSet(false) ? MetricType.GAUGE : MetricType.COUNTER;
-    return new MetricValue(name, type, value);
+    long value = counter.sumThenReset();
+    // Only do the getAndSet when a gauge was set, which is cheaper than always doing it
+    if (gaugeUsed.get() && gaugeUsed.getAndSet(false)) {
+      return new MetricValue(name, MetricType.GAUGE, gaugeValue);
+    }
+    return new MetricValue(name, MetricType.COUNTER, value);
+  }
+
+  /**
+   * Emits the aggregated value at the given time.
+   *
+   * @return the {@link MetricValue} or {@code null} if there is nothing to emit, i.e. a counter with value 0
+   */
+  @Nullable
+  MetricValue emit(long timeSeconds) {
+    MetricValue metricValue = emit();
+    if (metricValue.getType() == MetricType.COUNTER && metricValue.getValue() == 0) {
+      return null;
+    }
+    lastEmitSeconds = timeSeconds;
+    return metricValue;
+  }
+
+  /**
+   * Returns the last time in seconds that {@link #emit(long)} returned a value, or the creation time of this
+   * emitter if it never emitted.
+   */
+  long getLastEmitSeconds() {
+    return lastEmitSeconds;
   }
 
   public void gauge(long value) {
-    this.value.set(value);
+    this.gaugeValue = value;
     this.gaugeUsed.set(true);
   }
+
+  /**
+   * Marks this emitter as retired. It is called by the publishing thread after this emitter is removed from its
+   * context, and before the last {@link #emit(long)} of this emitter.
+   */
+  void retire() {
+    retired = true;
+  }
+
+  /**
+   * Returns {@code true} if this emitter is retired. Values added before the retirement are emitted by the publishing
+   * thread. A thread that sees this emitter retired after adding a value must {@link #transferTo} the replacement
+   * emitter, since the value may have been added after the last emit.
+   */
+  boolean isRetired() {
+    return retired;
+  }
+
+  /**
+   * Moves the values not yet emitted by this emitter to the given emitter. Each value is either emitted by this
+   * emitter or moved, but never both.
+   */
+  void transferTo(AggregatedMetricsEmitter emitter) {
+    long value = counter.sumThenReset();
+    if (value != 0) {
+      emitter.increment(value);
+    }
+    if (gaugeUsed.get() && gaugeUsed.getAndSet(false)) {
+      emitter.gauge(gaugeValue);
+    }
+  }
 }
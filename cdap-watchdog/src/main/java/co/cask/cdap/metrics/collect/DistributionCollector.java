@@ -0,0 +1,40 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.metrics.collect;
+
+/**
+ * Collects distribution of values of a metric, such as latencies. The {@link co.cask.cdap.api.metrics.MetricsContext}
+ * returned by {@link AggregatedMetricsCollectionService} implements this interface.
+ * <p>
+ * For each collection period, a distribution metric with name {@code name} is emitted as the following metrics:
+ * <ul>
+ *   <li>{@code name.count} - counter of the number of values reported</li>
+ *   <li>{@code name.sum} - counter of the sum of values reported</li>
+ *   <li>{@code name.max} - gauge of the maximum value reported</li>
+ *   <li>{@code name.p50}, {@code name.p99} - gauges of the approximated 50th and 99th percentiles</li>
+ * </ul>
+ * The percentiles are approximated using power of two buckets, hence are accurate to within a factor of two.
+ */
+public interface DistributionCollector {
+
+  /**
+   * Reports a value for the given distribution metric.
+   *
+   * @param metricName name of the metric
+   * @param value the value to report
+   */
+  void distribution(String metricName, long value);
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.metrics.collect;
+
+import co.cask.cdap.api.metrics.MetricType;
+import co.cask.cdap.api.metrics.MetricValue;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+
+/**
+ * Aggregates values reported through {@link DistributionCollector} during collection and emits the
+ * count, sum, max and approximated percentiles when emit.
+ * Values are counted in power of two buckets, with one set of buckets per stripe of threads.
+ * <p>
+ * Values are recorded into the current one of two windows. Emitting switches the current window and drains the
+ * previous one after the threads recording into it are done, so that the count, sum and max of each value are always
+ * emitted together.
+ */
+final class DistributionMetricsEmitter {
+
+  // Bucket 0 is for values <= 0, bucket i is for values in [2^(i-1), 2^i)
+  private static final int BUCKETS = Long.SIZE;
+
+  private final String name;
+  private final AtomicReference<Window> currentWindow;
+  private Window otherWindow;
+  // set by the publishing thread after this emitter is removed from its context
+  private volatile boolean retired;
+  // last time in seconds that this emitter emitted values. Only accessed by the publishing thread.
+  private long lastEmitSeconds;
+
+  DistributionMetricsEmitter(String name) {
+    this.name = name;
+    this.currentWindow = new AtomicReference<>(new Window());
+    this.otherWindow = new Window();
+    this.lastEmitSeconds = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+  }
+
+  void record(long value) {
+    int bucket = value <= 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(value);
+    Window window = enterWindow();
+    try {
+      window.add(bucket, 1L, value, value);
+    } finally {
+      window.exit();
+    }
+  }
+
+  /**
+   * Marks this emitter as retired. It is called by the publishing thread after this emitter is removed from its
+   * context, and before the last {@link #emit(long, Collection)} of this emitter.
+   */
+  void retire() {
+    retired = true;
+  }
+
+  /**
+   * Returns {@code true} if this emitter is retired, in which case values recorded to it must be moved to the
+   * replacement emitter with {@link #transferTo(DistributionMetricsEmitter)}.
+   */
+  boolean isRetired() {
+    return retired;
+  }
+
+  /**
+   * Moves the values not yet emitted by this emitter to the given emitter. Each value is either emitted by this
+   * emitter or moved, but never both.
+   */
+  void transferTo(DistributionMetricsEmitter emitter) {
+    Snapshot snapshot = drain();
+    if (snapshot == null) {
+      return;
+    }
+    Window window = emitter.enterWindow();
+    try {
+      for (int i = 0; i < BUCKETS; i++) {
+        if (snapshot.counts[i] != 0) {
+          window.add(i, snapshot.counts[i], 0L, Long.MIN_VALUE);
+        }
+      }
+      window.add(0, 0L, snapshot.sum, snapshot.max);
+    } finally {
+      window.exit();
+    }
+  }
+
+  /**
+   * Emits the aggregated values at the given time to the given collection.
+   *
+   * @return {@code true} if there were values reported since the last emit
+   */
+  boolean emit(long timeSeconds, Collection<MetricValue> metricValues) {
+    Snapshot snapshot = drain();
+    if (snapshot == null) {
+      return false;
+    }
+
+    metricValues.add(new MetricValue(name + ".count", MetricType.COUNTER, snapshot.count));
+    metricValues.add(new MetricValue(name + ".sum", MetricType.COUNTER, snapshot.sum));
+    metricValues.add(new MetricValue(name + ".max", MetricType.GAUGE, snapshot.max));
+    metricValues.add(new MetricValue(name + ".p50", MetricType.GAUGE, snapshot.percentile(0.5d)));
+    metricValues.add(new MetricValue(name + ".p99", MetricType.GAUGE, snapshot.percentile(0.99d)));
+    lastEmitSeconds = timeSeconds;
+    return true;
+  }
+
+  /**
+   * Returns the last time in seconds that {@link #emit(long, Collection)} emitted values, or the creation time of
+   * this emitter if it never emitted.
+   */
+  long getLastEmitSeconds() {
+    return lastEmitSeconds;
+  }
+
+  /**
+   * Returns the current window after registering the calling thread as recording into it. The caller must call
+   * {@link Window#exit()} when done.
+   */
+  private Window enterWindow() {
+    while (true) {
+      Window window = currentWindow.get();
+      window.enter();
+      // If the window was switched before entering, the emitting thread may not wait for this thread
+      if (currentWindow.get() == window) {
+        return window;
+      }
+      window.exit();
+    }
+  }
+
+  /**
+   * Switches the current window and returns the values of the previous one, or {@code null} if it has no values.
+   * It is called by the publishing thread, and by threads handing over values from a retired emitter.
+   */
+  @Nullable
+  private synchronized Snapshot drain() {
+    Window window = currentWindow.getAndSet(otherWindow);
+    otherWindow = window;
+    window.awaitExits();
+    return window.drain();
+  }
+
+  /**
+   * Values recorded during one window. Each stripe of threads has its own block of the array, holding the bucket
+   * counts, the sum and the number of threads currently recording.
+   */
+  private static final class Window {
+
+    private static final int SUM = BUCKETS;
+    private static final int WRITERS = BUCKETS + 1;
+    private static final int STRIDE = BUCKETS + 2;
+
+    private final AtomicLongArray values;
+    private final AtomicLong max;
+
+    Window() {
+      this.values = new AtomicLongArray(StripedCounter.getStripes() * STRIDE);
+      this.max = new AtomicLong(Long.MIN_VALUE);
+    }
+
+    void enter() {
+      values.getAndIncrement(StripedCounter.currentStripe() * STRIDE + WRITERS);
+    }
+
+    void exit() {
+      values.getAndDecrement(StripedCounter.currentStripe() * STRIDE + WRITERS);
+    }
+
+    void add(int bucket, long count, long sum, long maxValue) {
+      int offset = StripedCounter.currentStripe() * STRIDE;
+      if (count != 0) {
+        values.getAndAdd(offset + bucket, count);
+      }
+      if (sum != 0) {
+        values.getAndAdd(offset + SUM, sum);
+      }
+      long currentMax = max.get();
+      while (maxValue > currentMax && !max.compareAndSet(currentMax, maxValue)) {
+        currentMax = max.get();
+      }
+    }
+
+    /**
+     * Waits for the threads recording into this window to finish. Each thread enters and exits in the block of its
+     * own stripe, hence a block that reads zero has no thread recording.
+     */
+    void awaitExits() {
+      for (int i = WRITERS; i < values.length(); i += STRIDE) {
+        while (values.get(i) != 0) {
+          Thread.yield();
+        }
+      }
+    }
+
+    /**
+     * Returns the values of this window and resets it, or {@code null} if it has no values. Must only be called when
+     * no thread is recording into this window.
+     */
+    @Nullable
+    Snapshot drain() {
+      long[] counts = new long[BUCKETS];
+      long count = 0;
+      long sum = 0;
+      for (int offset = 0; offset < values.length(); offset += STRIDE) {
+        for (int i = 0; i < BUCKETS; i++) {
+          long bucketCount = values.getAndSet(offset + i, 0L);
+          counts[i] += bucketCount;
+          count += bucketCount;
+        }
+        sum += values.getAndSet(offset + SUM, 0L);
+      }
+      long maxValue = max.getAndSet(Long.MIN_VALUE);
+      return count == 0 ? null : new Snapshot(counts, count, sum, maxValue);
+    }
+  }
+
+  /**
+   * Values drained from a {@link Window}.
+   */
+  private static final class Snapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    Snapshot(long[] counts, long count, long sum, long max) {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    /**
+     * Returns the upper bound of the bucket that contains the given percentile, capped by the max value.
+     */
+    long percentile(double percentile) {
+      long target = (long) Math.ceil(count * percentile);
+      long accumulated = 0;
+      for (int i = 0; i < counts.length; i++) {
+        accumulated += counts[i];
+        if (accumulated >= target) {
+          long upperBound = i == 0 ? 0L : (1L << i) - 1;
+          return Math.min(upperBound, max);
+        }
+      }
+      return max;
+    }
+  }
+}
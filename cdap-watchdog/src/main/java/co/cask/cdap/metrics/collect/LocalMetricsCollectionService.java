@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -19,6 +19,7 @@ import co.cask.cdap.api.metrics.MetricStore;
 import co.cask.cdap.api.metrics.MetricValues;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.metrics.store.MetricsRollupService;
 import co.cask.cdap.proto.Id;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
@@ -33,7 +34,7 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * A {@link co.cask.cdap.api.metrics.MetricsCollectionService} that writes to MetricsTable directly.
- * It also has a scheduling job that clean up old metrics periodically.
+ * It also has a scheduling job that clean up old metrics periodically, and rolls up metrics if it is enabled.
  */
 @Singleton
 public final class LocalMetricsCollectionService extends AggregatedMetricsCollectionService {
@@ -45,6 +46,7 @@ public final class LocalMetricsCollectionService extends AggregatedMetricsCollec
   private final CConfiguration cConf;
   private final MetricStore metricStore;
   private ScheduledExecutorService scheduler;
+  private MetricsRollupService rollupService;
 
   @Inject
   public LocalMetricsCollectionService(CConfiguration cConf, MetricStore metricStore) {
@@ -71,10 +73,18 @@ public final class LocalMetricsCollectionService extends AggregatedMetricsCollec
 
     // Try right away if there's anything to cleanup, then we'll schedule to do that periodically
     scheduler.schedule(createCleanupTask(retentionSecs), 1, TimeUnit.SECONDS);
+
+    if (cConf.getBoolean(Constants.Metrics.ROLLUP_ENABLED)) {
+      rollupService = new MetricsRollupService(cConf, metricStore);
+      rollupService.startAndWait();
+    }
   }
 
   @Override
   protected void shutDown() throws Exception {
+    if (rollupService != null) {
+      rollupService.stopAndWait();
+    }
     if (scheduler != null) {
       scheduler.shutdownNow();
     }
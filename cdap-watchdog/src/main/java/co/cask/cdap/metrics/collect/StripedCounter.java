@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.metrics.collect;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that is cheap to update from many threads concurrently. Updates go to a single base value until
+ * contention is detected, after which they are spread across a set of cells selected by the updating thread,
+ * in the same way as the {@code LongAdder} in Java 8. Cells are padded to reduce false sharing.
+ */
+final class StripedCounter {
+
+  // Number of longs between two cells, so that each cell is on its own cache line
+  private static final int PADDING = 8;
+  private static final int STRIPES = stripes();
+
+  private final AtomicLong base;
+  private volatile AtomicLongArray cells;
+
+  StripedCounter() {
+    this.base = new AtomicLong();
+  }
+
+  /**
+   * Adds the given value to this counter.
+   */
+  void add(long value) {
+    AtomicLongArray cells = this.cells;
+    if (cells == null) {
+      long current = base.get();
+      if (base.compareAndSet(current, current + value)) {
+        return;
+      }
+      cells = initCells();
+    }
+    cells.getAndAdd(currentStripe() * PADDING, value);
+  }
+
+  /**
+   * Returns the current sum of this counter and resets it to zero. Updates happening concurrently with this
+   * call are either included in the returned value or retained for the next call, but are never lost.
+   */
+  long sumThenReset() {
+    long sum = base.getAndSet(0L);
+    AtomicLongArray cells = this.cells;
+    if (cells != null) {
+      for (int i = 0; i < cells.length(); i += PADDING) {
+        sum += cells.getAndSet(i, 0L);
+      }
+    }
+    return sum;
+  }
+
+  private synchronized AtomicLongArray initCells() {
+    if (cells == null) {
+      cells = new AtomicLongArray(STRIPES * PADDING);
+    }
+    return cells;
+  }
+
+  /**
+   * Returns the number of stripes used for spreading updates from different threads.
+   */
+  static int getStripes() {
+    return STRIPES;
+  }
+
+  /**
+   * Returns the stripe in the range of {@code [0, getStripes())} for the current thread.
+   */
+  static int currentStripe() {
+    // Spread the thread id since they are usually sequential
+    long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+    return (int) (id >>> 32) & (STRIPES - 1);
+  }
+
+  /**
+   * Returns the number of stripes to use, which is the smallest power of two that is no less than
+   * twice the number of processors.
+   */
+  private static int stripes() {
+    int processors = Runtime.getRuntime().availableProcessors();
+    return Integer.highestOneBit(Math.max(1, processors * 2 - 1)) << 1;
+  }
+}
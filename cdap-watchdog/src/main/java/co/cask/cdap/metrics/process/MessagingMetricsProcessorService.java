@@ -244,11 +244,15 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
       new MetricValues(metricsContextMap, TimeUnit.MILLISECONDS.toSeconds(now), ImmutableList.of(
         new MetricValue("metrics.process.count", MetricType.COUNTER, metricValues.size()),
         new MetricValue("metrics.process.delay.ms", MetricType.GAUGE, delay))));
-    metricStore.add(metricValues);
+    // Merge records of the same tags and timestamp, which are common when many containers emit the same metrics,
+    // to reduce the number of facts to be written to the cube
+    List<MetricValues> aggregated = MetricValuesAggregator.aggregate(metricValues);
+    metricStore.add(aggregated);
     recordsProcessed += metricValues.size();
 
-    PROGRESS_LOG.debug("{} metrics records processed. Last metric record's timestamp: {}. Metrics process delay: {}",
-                       recordsProcessed, lastRecordTime, delay);
+    PROGRESS_LOG.debug("{} metrics records processed. Last metric record's timestamp: {}. Metrics process delay: {}. " +
+                         "Records written after aggregation: {}",
+                       recordsProcessed, lastRecordTime, delay, aggregated.size());
   }
 
   private class ProcessMetricsThread extends Thread {
@@ -271,8 +275,11 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
     public void run() {
       while (isRunning()) {
         try {
-          processMetrics();
-          TimeUnit.MILLISECONDS.sleep(metricsProcessIntervalMillis);
+          // Only wait for the next interval if the topic has been drained. Otherwise there is a backlog of metrics,
+          // so fetch again immediately to catch up.
+          if (!processMetrics()) {
+            TimeUnit.MILLISECONDS.sleep(metricsProcessIntervalMillis);
+          }
         } catch (InterruptedException e) {
           // It's triggered by stop
           Thread.currentThread().interrupt();
@@ -280,7 +287,13 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
       }
     }
 
-    private void processMetrics() {
+    /**
+     * Fetches and persists metrics from the topic.
+     *
+     * @return {@code true} if the fetch limit is reached and the fetched metrics are persisted by this thread,
+     *         meaning there are likely more metrics to process; {@code false} otherwise
+     */
+    private boolean processMetrics() {
       // Decode the metrics records.
       try {
         MessageFetcher fetcher = messagingService.prepareFetch(topicIdMetaKey.getTopicId());
@@ -297,9 +310,11 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
         }
 
         byte[] currentMessageId = null;
+        int fetched = 0;
         try (CloseableIterator<RawMessage> iterator = fetcher.fetch()) {
           while (iterator.hasNext() && isRunning()) {
             RawMessage input = iterator.next();
+            fetched++;
             try {
               payloadInput.reset(input.getPayload());
               MetricValues metricValues = recordReader.read(decoder, recordSchema);
@@ -320,14 +335,16 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
 
         // Skip persisting if the records is empty
         if (records.isEmpty()) {
-          return;
+          return false;
         }
 
         // Ensure there's only one thread can persist records and messageId's when the persistingFlag is false.
         // The thread set persistingFlag to true when it starts to persist.
+        // If it cannot persist, the records are left for the persisting thread and this thread should wait
+        // for the next interval, so that records don't pile up in memory.
         if (!persistingFlag.compareAndSet(false, true)) {
           LOG.trace("Cannot persist because persistingFlag is taken by another thread.");
-          return;
+          return false;
         }
         try {
           Deque<MetricValues> recordsCopy = new LinkedList<>();
@@ -341,12 +358,15 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
           persistRecordsMessageIds(recordsCopy, topicMessageIdsCopy);
         } catch (Exception e) {
           LOG.error("Failed to persist consumed messages.", e);
+          return false;
         } finally {
           // Set persistingFlag back to false after persisting completes.
           persistingFlag.set(false);
         }
+        return fetched >= fetcherLimit;
       } catch (Exception e) {
         LOG.warn("Failed to process metrics. Will be retried in next iteration.", e);
+        return false;
       }
     }
   }
@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.metrics.process;
+
+import co.cask.cdap.api.metrics.MetricType;
+import co.cask.cdap.api.metrics.MetricValue;
+import co.cask.cdap.api.metrics.MetricValues;
+import co.cask.cdap.common.utils.ImmutablePair;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges {@link MetricValues} that have the same tags and timestamp before they are written to the metric store.
+ * Metrics of the same name are merged in the order they appear. Counters are summed, a gauge replaces whatever
+ * came before it and a counter after a gauge is added to the gauge value.
+ * <p>
+ * Merging a record into an earlier one moves its metrics ahead of the records in between. Cube aggregations that
+ * drop some of the tags collapse records of different tags into one fact, for which the order of a gauge and the
+ * other values of the same name matters. A record is therefore only merged if none of its metrics would move past
+ * a metric of the same name with different tags, unless both are counters. Otherwise it starts a new merged record.
+ * This gives the same result as writing the records one by one, for the tags and timestamp as well as for any
+ * aggregation of them, even if a name is emitted as both counter and gauge. Since metrics emitted by the same
+ * program context within the same second are collapsed into one record, the number of facts to be encoded and
+ * written to the cube is reduced.
+ */
+final class MetricValuesAggregator {
+
+  private MetricValuesAggregator() {
+    // no-op
+  }
+
+  /**
+   * Returns the given records with records of the same tags and timestamp merged. The merged records are in the
+   * order of the first record merged into each of them.
+   */
+  static List<MetricValues> aggregate(Collection<? extends MetricValues> records) {
+    List<MergedRecord> merged = new ArrayList<>();
+    // The last merged record of each tags and timestamp combination, which is the only one records can merge into
+    Map<ImmutablePair<Map<String, String>, Long>, MergedRecord> lastMerged = new HashMap<>();
+    // For each metric name, the index of the last merged record that has the metric, and that has it as a gauge
+    Map<String, Integer> lastIndex = new HashMap<>();
+    Map<String, Integer> lastGaugeIndex = new HashMap<>();
+
+    for (MetricValues record : records) {
+      ImmutablePair<Map<String, String>, Long> key = ImmutablePair.of(record.getTags(), record.getTimestamp());
+      MergedRecord target = lastMerged.get(key);
+      if (target == null || !canMerge(record, target.index, lastIndex, lastGaugeIndex)) {
+        target = new MergedRecord(key, merged.size());
+        merged.add(target);
+        lastMerged.put(key, target);
+      }
+      for (MetricValue metric : record.getMetrics()) {
+        MetricValue existing = target.metrics.get(metric.getName());
+        if (existing != null && metric.getType() == MetricType.COUNTER) {
+          // Incrementing a gauge gives a gauge of the sum
+          metric = new MetricValue(metric.getName(), existing.getType(), existing.getValue() + metric.getValue());
+        }
+        target.metrics.put(metric.getName(), metric);
+        updateIndex(lastIndex, metric.getName(), target.index);
+        if (metric.getType() == MetricType.GAUGE) {
+          updateIndex(lastGaugeIndex, metric.getName(), target.index);
+        }
+      }
+    }
+
+    // Nothing to merge, return the records as is
+    if (merged.size() == records.size()) {
+      return new ArrayList<>(records);
+    }
+
+    List<MetricValues> result = new ArrayList<>(merged.size());
+    for (MergedRecord record : merged) {
+      result.add(new MetricValues(record.key.getFirst(), record.key.getSecond(),
+                                  new ArrayList<>(record.metrics.values())));
+    }
+    return result;
+  }
+
+  /**
+   * Returns {@code true} if the metrics of the given record can be moved to the merged record of the given index,
+   * which is the case if the merged records after it don't have a metric of the same name, or both are counters.
+   */
+  private static boolean canMerge(MetricValues record, int index,
+                                  Map<String, Integer> lastIndex, Map<String, Integer> lastGaugeIndex) {
+    for (MetricValue metric : record.getMetrics()) {
+      Integer last = metric.getType() == MetricType.GAUGE
+        ? lastIndex.get(metric.getName()) : lastGaugeIndex.get(metric.getName());
+      if (last != null && last > index) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void updateIndex(Map<String, Integer> indices, String name, int index) {
+    Integer last = indices.get(name);
+    if (last == null || last < index) {
+      indices.put(name, index);
+    }
+  }
+
+  /**
+   * Metrics merged from records of the same tags and timestamp.
+   */
+  private static final class MergedRecord {
+    private final ImmutablePair<Map<String, String>, Long> key;
+    private final int index;
+    private final Map<String, MetricValue> metrics = new LinkedHashMap<>();
+
+    private MergedRecord(ImmutablePair<Map<String, String>, Long> key, int index) {
+      this.key = key;
+      this.index = index;
+    }
+  }
+}
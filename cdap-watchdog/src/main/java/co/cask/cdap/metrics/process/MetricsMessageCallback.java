@@ -1,5 +1,5 @@
 /*
- * Copyright © 2014-2016 Cask Data, Inc.
+ * Copyright © 2014-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -92,7 +92,7 @@ public final class MetricsMessageCallback implements KafkaConsumer.MessageCallba
     long now = System.currentTimeMillis();
     try {
       addProcessingStats(records, now);
-      metricStore.add(records);
+      metricStore.add(MetricValuesAggregator.aggregate(records));
     } catch (Exception e) {
       // SimpleKafkaConsumer will log the error, and continue on past these messages
       throw new RuntimeException("Failed to add metrics data to a store", e);
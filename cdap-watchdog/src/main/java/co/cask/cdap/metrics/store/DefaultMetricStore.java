@@ -1,5 +1,5 @@
 /*
- * Copyright 2015 Cask Data, Inc.
+ * Copyright 2015-2017 Cask Data, Inc.
  *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
@@ -16,7 +16,6 @@
 
 package co.cask.cdap.metrics.store;
 
-import co.cask.cdap.api.dataset.lib.cube.Cube;
 import co.cask.cdap.api.dataset.lib.cube.CubeDeleteQuery;
 import co.cask.cdap.api.dataset.lib.cube.CubeExploreQuery;
 import co.cask.cdap.api.dataset.lib.cube.CubeFact;
@@ -35,6 +34,7 @@ import co.cask.cdap.api.metrics.MetricValue;
 import co.cask.cdap.api.metrics.MetricValues;
 import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.api.metrics.TagValue;
+import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data2.dataset2.lib.cube.Aggregation;
 import co.cask.cdap.data2.dataset2.lib.cube.AggregationAlias;
@@ -84,7 +84,7 @@ public class DefaultMetricStore implements MetricStore {
                                                          Constants.Metrics.Tag.WORKFLOW_RUN_ID)));
 
   private final int resolutions[];
-  private final Supplier<Cube> cube;
+  private final Supplier<DefaultCube> cube;
   private MetricsContext metricsContext;
 
 
@@ -197,13 +197,20 @@ public class DefaultMetricStore implements MetricStore {
   }
 
   @Inject
-  public DefaultMetricStore(final MetricDatasetFactory dsFactory) {
+  public DefaultMetricStore(final MetricDatasetFactory dsFactory, CConfiguration cConf) {
     // 1 sec, 1 min, 1 hour and "all time totals"
-    this(dsFactory, new int[] {1, 60, 3600, TOTALS_RESOLUTION});
+    this(dsFactory, new int[] {1, 60, 3600, TOTALS_RESOLUTION}, cConf.getInt(Constants.Metrics.QUERY_PARALLELISM),
+         cConf.getBoolean(Constants.Metrics.ROLLUP_ENABLED), cConf.getLong(Constants.Metrics.ROLLUP_DELAY_SECONDS));
   }
 
   // NOTE: should never be used apart from data migration during cdap upgrade
   public DefaultMetricStore(final MetricDatasetFactory dsFactory, final int resolutions[]) {
+    this(dsFactory, resolutions, 1, false, 0L);
+  }
+
+  private DefaultMetricStore(final MetricDatasetFactory dsFactory, final int resolutions[],
+                             final int queryParallelism, final boolean rollupEnabled,
+                             final long rollupDelaySeconds) {
     this.resolutions = resolutions;
     final FactTableSupplier factTableSupplier = new FactTableSupplier() {
       @Override
@@ -212,10 +219,12 @@ public class DefaultMetricStore implements MetricStore {
         return dsFactory.getOrCreateFactTable(resolution);
       }
     };
-    this.cube = Suppliers.memoize(new Supplier<Cube>() {
+    this.cube = Suppliers.memoize(new Supplier<DefaultCube>() {
       @Override
-      public Cube get() {
-        DefaultCube cube = new DefaultCube(resolutions, factTableSupplier, AGGREGATIONS, AGGREGATIONS_ALIAS_DIMENSIONS);
+      public DefaultCube get() {
+        // If rollup is enabled, coarser resolutions are rolled up from the finest one by the MetricsRollupService
+        DefaultCube cube = new DefaultCube(resolutions, factTableSupplier, AGGREGATIONS, AGGREGATIONS_ALIAS_DIMENSIONS,
+                                           queryParallelism, rollupEnabled, rollupDelaySeconds);
         cube.setMetricsCollector(metricsContext);
         return cube;
       }
@@ -315,6 +324,11 @@ public class DefaultMetricStore implements MetricStore {
     deleteBefore(System.currentTimeMillis() / 1000);
   }
 
+  @Override
+  public void rollup(long endTs) throws Exception {
+    cube.get().rollup(endTs);
+  }
+
   private CubeDeleteQuery buildCubeDeleteQuery(MetricDeleteQuery query) {
     // note: delete query currently usually executed synchronously,
     //       so we only attempt to delete totals, to avoid timeout
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.metrics.store;
+
+import co.cask.cdap.api.metrics.MetricStore;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.inject.Inject;
+import org.apache.twill.common.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically rolls up the metrics written into the finest resolution of the {@link MetricStore} into the coarser
+ * resolutions. It should only be run by the metrics processor, and only if {@link Constants.Metrics#ROLLUP_ENABLED}
+ * is set. Facts newer than {@link Constants.Metrics#ROLLUP_DELAY_SECONDS} are not rolled up, to allow for metrics
+ * that arrive late.
+ */
+public class MetricsRollupService extends AbstractScheduledService {
+  private static final Logger LOG = LoggerFactory.getLogger(MetricsRollupService.class);
+
+  private final MetricStore metricStore;
+  private final long intervalSeconds;
+  private final long delaySeconds;
+  private ScheduledExecutorService executor;
+
+  @Inject
+  public MetricsRollupService(CConfiguration cConf, MetricStore metricStore) {
+    this.metricStore = metricStore;
+    this.intervalSeconds = cConf.getLong(Constants.Metrics.ROLLUP_INTERVAL_SECONDS);
+    this.delaySeconds = cConf.getLong(Constants.Metrics.ROLLUP_DELAY_SECONDS);
+  }
+
+  @Override
+  protected void runOneIteration() throws Exception {
+    long endTs = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) - delaySeconds;
+    try {
+      metricStore.rollup(endTs);
+    } catch (Throwable t) {
+      // Keep the service running for the next rollup
+      LOG.warn("Failed to roll up metrics up to {}", endTs, t);
+    }
+  }
+
+  @Override
+  protected void shutDown() throws Exception {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  @Override
+  protected Scheduler scheduler() {
+    return Scheduler.newFixedDelaySchedule(intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+  }
+
+  @Override
+  protected final ScheduledExecutorService executor() {
+    executor = Executors.newSingleThreadScheduledExecutor(Threads.createDaemonThreadFactory("metrics-rollup"));
+    return executor;
+  }
+}
@@ -21,6 +21,7 @@ import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.classic.spi.LoggingEvent;
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.api.logging.AppenderContext;
 import co.cask.cdap.api.metrics.MetricsCollectionService;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
@@ -38,6 +39,7 @@ import co.cask.cdap.common.utils.Tasks;
 import co.cask.cdap.data.runtime.DataSetsModules;
 import co.cask.cdap.data.runtime.SystemDatasetRuntimeModule;
 import co.cask.cdap.data.runtime.TransactionExecutorModule;
+import co.cask.cdap.data2.dataset2.DatasetFramework;
 import co.cask.cdap.kafka.KafkaTester;
 import co.cask.cdap.logging.appender.LogMessage;
 import co.cask.cdap.logging.appender.system.LogPathIdentifier;
@@ -58,12 +60,17 @@ import co.cask.cdap.security.impersonation.DefaultOwnerAdmin;
 import co.cask.cdap.security.impersonation.OwnerAdmin;
 import co.cask.cdap.security.impersonation.UGIProvider;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Module;
+import com.google.inject.Provider;
 import org.apache.tephra.TransactionManager;
+import org.apache.tephra.TransactionSystemClient;
 import org.apache.tephra.runtime.TransactionModules;
+import org.apache.twill.api.TwillContext;
+import org.apache.twill.filesystem.LocationFactory;
 import org.apache.twill.kafka.client.BrokerService;
 import org.apache.twill.kafka.client.Compression;
 import org.apache.twill.kafka.client.KafkaClientService;
@@ -78,9 +85,14 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.nio.ByteBuffer;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
@@ -193,6 +205,87 @@ public class DistributedLogFrameworkTest {
     Assert.assertEquals(msgCount, checkpoint.getNextOffset());
   }
 
+  @Test
+  public void testAssignPartitions() {
+    Set<Integer> partitions = ImmutableSet.of(0, 1, 2, 3, 4);
+    Assert.assertEquals(ImmutableList.of(ImmutableSet.of(0, 2, 4), ImmutableSet.of(1, 3)),
+                        DistributedLogFramework.assignPartitions(partitions, 2));
+    Assert.assertEquals(ImmutableList.of(partitions), DistributedLogFramework.assignPartitions(partitions, 1));
+
+    // Every partition is assigned to exactly one worker
+    Set<Integer> assigned = new HashSet<>();
+    for (Set<Integer> workerPartitions : DistributedLogFramework.assignPartitions(partitions, 3)) {
+      Assert.assertFalse(workerPartitions.isEmpty());
+      for (int partition : workerPartitions) {
+        Assert.assertTrue(assigned.add(partition));
+      }
+    }
+    Assert.assertEquals(partitions, assigned);
+  }
+
+  @Test
+  public void testWorkerInstanceIds() {
+    CConfiguration cConf = CConfiguration.create();
+    cConf.setInt(Constants.Logging.PIPELINE_WORKERS, 2);
+    int workers = DistributedLogFramework.getWorkers(cConf);
+
+    // Two instances sharing three partitions, hence the second instance only creates one worker
+    int instanceCount = 2;
+    List<Set<Integer>> instancePartitions = ImmutableList.<Set<Integer>>of(ImmutableSet.of(0, 1), ImmutableSet.of(2));
+
+    Set<Integer> instanceIds = new HashSet<>();
+    for (int instanceId = 0; instanceId < instanceCount; instanceId++) {
+      Provider<AppenderContext> contextProvider = createContextProvider(instanceId, instanceCount);
+      List<Set<Integer>> workerPartitions =
+        DistributedLogFramework.assignPartitions(instancePartitions.get(instanceId), workers);
+      for (int workerId = 0; workerId < workerPartitions.size(); workerId++) {
+        AppenderContext context =
+          DistributedLogFramework.createContextProvider(contextProvider, workerId, workers).get();
+        Assert.assertTrue(context.getInstanceId() >= 0);
+        Assert.assertTrue(context.getInstanceId() < context.getInstanceCount());
+        Assert.assertTrue(instanceIds.add(context.getInstanceId()));
+      }
+    }
+    Assert.assertEquals(3, instanceIds.size());
+  }
+
+  /**
+   * Creates a {@link Provider} of {@link DistributedAppenderContext} for the given log framework instance.
+   */
+  private Provider<AppenderContext> createContextProvider(int instanceId, int instanceCount) {
+    final TwillContext twillContext = createTwillContext(instanceId, instanceCount);
+    return new Provider<AppenderContext>() {
+      @Override
+      public AppenderContext get() {
+        return new DistributedAppenderContext(injector.getInstance(DatasetFramework.class),
+                                              injector.getInstance(TransactionSystemClient.class),
+                                              injector.getInstance(LocationFactory.class),
+                                              injector.getInstance(MetricsCollectionService.class),
+                                              twillContext);
+      }
+    };
+  }
+
+  /**
+   * Creates a {@link TwillContext} with the given instance id and count.
+   */
+  private TwillContext createTwillContext(final int instanceId, final int instanceCount) {
+    final TwillContext delegate = new MockTwillContext();
+    return (TwillContext) Proxy.newProxyInstance(
+      getClass().getClassLoader(), new Class<?>[] { TwillContext.class }, new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+          if ("getInstanceId".equals(method.getName())) {
+            return instanceId;
+          }
+          if ("getInstanceCount".equals(method.getName())) {
+            return instanceCount;
+          }
+          return method.invoke(delegate, args);
+        }
+      });
+  }
+
   private Injector createInjector() throws IOException {
     CConfiguration cConf = CConfiguration.copy(KAFKA_TESTER.getCConf());
     cConf.set(Constants.CFG_LOCAL_DATA_DIR, TEMP_FOLDER.newFolder().getAbsolutePath());
@@ -20,28 +20,42 @@ import co.cask.cdap.api.metrics.MetricValues;
 import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.test.SlowTests;
+import co.cask.cdap.test.XSlowTests;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterators;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Testing the basic properties of the {@link AggregatedMetricsCollectionService}.
  */
 public class AggregatedMetricsCollectionServiceTest {
 
+  private static final Logger LOG = LoggerFactory.getLogger(AggregatedMetricsCollectionServiceTest.class);
+
   private static final HashMap<String, String> EMPTY_TAGS = new HashMap<>();
   private static final String NAMESPACE = "testnamespace";
   private static final String APP = "testapp";
@@ -195,6 +209,293 @@ public class AggregatedMetricsCollectionServiceTest {
     service.stop().get(5, TimeUnit.SECONDS);
   }
 
+  @Category(SlowTests.class)
+  @Test
+  public void testDistribution() throws InterruptedException {
+    final BlockingQueue<MetricValues> published = new LinkedBlockingQueue<>();
+    AggregatedMetricsCollectionService service = createService(published);
+    service.startAndWait();
+    try {
+      MetricsContext context = service.getContext(EMPTY_TAGS);
+      Assert.assertTrue(context instanceof DistributionCollector);
+      Assert.assertTrue(context.childContext(Constants.Metrics.Tag.NAMESPACE, NAMESPACE)
+                          instanceof DistributionCollector);
+
+      DistributionCollector collector = (DistributionCollector) context;
+      for (int i = 1; i <= 100; i++) {
+        collector.distribution(METRIC, i);
+      }
+
+      MetricValues record = published.poll(10, TimeUnit.SECONDS);
+      Assert.assertNotNull(record);
+      Assert.assertEquals(100L, getMetricValue(record.getMetrics(), METRIC + ".count"));
+      Assert.assertEquals(5050L, getMetricValue(record.getMetrics(), METRIC + ".sum"));
+      Assert.assertEquals(100L, getMetricValue(record.getMetrics(), METRIC + ".max"));
+      // 50 is in the bucket [32, 64) and 99 is in the bucket [64, 128), capped by the max
+      Assert.assertEquals(63L, getMetricValue(record.getMetrics(), METRIC + ".p50"));
+      Assert.assertEquals(100L, getMetricValue(record.getMetrics(), METRIC + ".p99"));
+
+      // No publishing if there is no new value
+      Assert.assertNull(published.poll(3, TimeUnit.SECONDS));
+    } finally {
+      service.stopAndWait();
+    }
+  }
+
+  /**
+   * Measures the cost of emitting metrics from many threads concurrently, comparing with a single shared
+   * {@link AtomicLong}. It also verifies no increment is lost while metrics are being published concurrently.
+   */
+  @Category(XSlowTests.class)
+  @Test
+  public void testConcurrentEmitPerformance() throws Exception {
+    final BlockingQueue<MetricValues> published = new LinkedBlockingQueue<>();
+    AggregatedMetricsCollectionService service = createService(published);
+    service.startAndWait();
+
+    int threads = 32;
+    final int iterations = 1000000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final MetricsContext context = service.getContext(ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, NAMESPACE));
+      final AtomicLong atomicLong = new AtomicLong();
+
+      for (int round = 0; round < 3; round++) {
+        long contextNanos = runConcurrently(executor, threads, new Runnable() {
+          @Override
+          public void run() {
+            for (int i = 0; i < iterations; i++) {
+              context.increment(METRIC, 1L);
+            }
+          }
+        });
+        long atomicNanos = runConcurrently(executor, threads, new Runnable() {
+          @Override
+          public void run() {
+            for (int i = 0; i < iterations; i++) {
+              atomicLong.addAndGet(1L);
+            }
+          }
+        });
+        long operations = (long) threads * iterations;
+        LOG.info("Emit cost with {} threads on {} processors: MetricsContext.increment {} ns/op, AtomicLong {} ns/op",
+                 threads, Runtime.getRuntime().availableProcessors(),
+                 (double) contextNanos / operations, (double) atomicNanos / operations);
+      }
+    } finally {
+      executor.shutdownNow();
+      // Stopping the service flushes the remaining metrics
+      service.stopAndWait();
+    }
+
+    long total = 0;
+    for (MetricValues metricValues : published) {
+      total += getMetricValue(metricValues.getMetrics(), METRIC);
+    }
+    Assert.assertEquals(3L * threads * iterations, total);
+  }
+
+  /**
+   * Tests the interleaving of an emitting thread that got an emitter just before the publishing thread retired it.
+   */
+  @Test
+  public void testRetiredEmitterHandOver() {
+    List<MetricValue> metricValues = new ArrayList<>();
+
+    AggregatedMetricsEmitter emitter = new AggregatedMetricsEmitter(METRIC);
+    emitter.increment(1L);
+    // Publishing thread retires the emitter and emits what was added before
+    emitter.retire();
+    Assert.assertEquals(1L, emitter.emit(0L).getValue());
+    // Emitting thread adds to the emitter it got before the retirement, then hands over to the replacement
+    emitter.increment(2L);
+    Assert.assertTrue(emitter.isRetired());
+    AggregatedMetricsEmitter replacement = new AggregatedMetricsEmitter(METRIC);
+    emitter.transferTo(replacement);
+    Assert.assertNull(emitter.emit(1L));
+    Assert.assertEquals(2L, replacement.emit(1L).getValue());
+
+    DistributionMetricsEmitter distribution = new DistributionMetricsEmitter(METRIC);
+    distribution.retire();
+    distribution.record(5L);
+    distribution.record(7L);
+    DistributionMetricsEmitter distributionReplacement = new DistributionMetricsEmitter(METRIC);
+    distribution.transferTo(distributionReplacement);
+    Assert.assertFalse(distribution.emit(0L, metricValues));
+    Assert.assertTrue(distributionReplacement.emit(0L, metricValues));
+    Assert.assertEquals(2L, getMetricValue(metricValues, METRIC + ".count"));
+    Assert.assertEquals(12L, getMetricValue(metricValues, METRIC + ".sum"));
+    Assert.assertEquals(7L, getMetricValue(metricValues, METRIC + ".max"));
+  }
+
+  /**
+   * Tests that the count, sum and max of each value recorded concurrently with emit are emitted together.
+   */
+  @Test
+  public void testConcurrentDistributionEmit() throws Exception {
+    final DistributionMetricsEmitter emitter = new DistributionMetricsEmitter(METRIC);
+    int threads = 8;
+    final int iterations = 1000000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            for (int i = 0; i < iterations; i++) {
+              emitter.record(i % 1000);
+            }
+          }
+        }));
+      }
+
+      long count = 0;
+      long sum = 0;
+      boolean done = false;
+      while (!done) {
+        done = true;
+        for (Future<?> future : futures) {
+          done &= future.isDone();
+        }
+        List<MetricValue> metricValues = new ArrayList<>();
+        if (!emitter.emit(0L, metricValues)) {
+          continue;
+        }
+        long emittedCount = getMetricValue(metricValues, METRIC + ".count");
+        long emittedSum = getMetricValue(metricValues, METRIC + ".sum");
+        long max = getMetricValue(metricValues, METRIC + ".max");
+        Assert.assertTrue(max >= 0 && max < 1000);
+        Assert.assertTrue(emittedSum <= emittedCount * max);
+        Assert.assertTrue(getMetricValue(metricValues, METRIC + ".p50") >= 0);
+        Assert.assertTrue(getMetricValue(metricValues, METRIC + ".p99") >= 0);
+        count += emittedCount;
+        sum += emittedSum;
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      Assert.assertEquals((long) threads * iterations, count);
+      Assert.assertEquals((long) threads * (iterations / 1000) * (999 * 1000 / 2), sum);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Tests that values emitted concurrently with the publishing thread retiring the emitters are not lost.
+   */
+  @Test
+  public void testConcurrentEmitWithRetire() throws Exception {
+    final BlockingQueue<MetricValues> published = new LinkedBlockingQueue<>();
+    AggregatedMetricsCollectionService service = new AggregatedMetricsCollectionService() {
+      @Override
+      protected void publish(Iterator<MetricValues> metrics) {
+        Iterators.addAll(published, metrics);
+      }
+
+      @Override
+      protected long getInitialDelayMillis() {
+        return 0L;
+      }
+
+      @Override
+      protected long getPeriodMillis() {
+        return 1L;
+      }
+
+      @Override
+      protected long getEmitterExpireSeconds() {
+        // Retire emitters whenever there is nothing to emit
+        return 0L;
+      }
+    };
+    service.startAndWait();
+
+    int threads = 8;
+    final int iterations = 1000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final MetricsContext context = service.getContext(ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE, NAMESPACE));
+      runConcurrently(executor, threads, new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < iterations; i++) {
+              for (int j = 0; j < 10; j++) {
+                context.increment(METRIC + j, 1L);
+                ((DistributionCollector) context).distribution(GAUGE_METRIC + j, 1L);
+              }
+              // Give the publishing thread a chance to see the emitters idle and retire them
+              TimeUnit.MICROSECONDS.sleep(i % 500);
+            }
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+    } finally {
+      executor.shutdownNow();
+      service.stopAndWait();
+    }
+
+    for (int j = 0; j < 10; j++) {
+      long total = 0;
+      long count = 0;
+      for (MetricValues metricValues : published) {
+        total += getMetricValue(metricValues.getMetrics(), METRIC + j);
+        count += getMetricValue(metricValues.getMetrics(), GAUGE_METRIC + j + ".count");
+      }
+      Assert.assertEquals((long) threads * iterations, total);
+      Assert.assertEquals((long) threads * iterations, count);
+    }
+  }
+
+  /**
+   * Runs the given task in the given number of threads, all started at the same time.
+   *
+   * @return the elapsed time in nanoseconds for all threads to complete
+   */
+  private long runConcurrently(ExecutorService executor, int threads, final Runnable task) throws Exception {
+    final CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          barrier.await();
+          task.run();
+          return null;
+        }
+      }));
+    }
+    barrier.await();
+    Stopwatch stopwatch = new Stopwatch().start();
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    return stopwatch.elapsedTime(TimeUnit.NANOSECONDS);
+  }
+
+  private AggregatedMetricsCollectionService createService(final Collection<MetricValues> published) {
+    return new AggregatedMetricsCollectionService() {
+      @Override
+      protected void publish(Iterator<MetricValues> metrics) {
+        Iterators.addAll(published, metrics);
+      }
+
+      @Override
+      protected long getInitialDelayMillis() {
+        return 1000L;
+      }
+
+      @Override
+      protected long getPeriodMillis() {
+        return 1000L;
+      }
+    };
+  }
+
   private void verifyCounterMetricsValue(MetricValues metricValues) {
     Assert.assertNotNull(metricValues);
     Map<String, String> tags = metricValues.getTags();
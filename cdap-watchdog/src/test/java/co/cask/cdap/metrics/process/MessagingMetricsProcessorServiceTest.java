@@ -168,6 +168,10 @@ public class MessagingMetricsProcessorServiceTest extends MetricsProcessorServic
       metricsMap.clear();
     }
 
+    @Override
+    public void rollup(long endTs) throws Exception {
+    }
+
     @Override
     public Collection<TagValue> findNextAvailableTags(MetricSearchQuery query) throws Exception {
       return null;
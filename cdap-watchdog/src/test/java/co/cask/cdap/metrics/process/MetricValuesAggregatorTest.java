@@ -0,0 +1,170 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.metrics.process;
+
+import co.cask.cdap.api.metrics.MetricType;
+import co.cask.cdap.api.metrics.MetricValue;
+import co.cask.cdap.api.metrics.MetricValues;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import javax.annotation.Nullable;
+
+/**
+ * Unit tests for {@link MetricValuesAggregator}.
+ */
+public class MetricValuesAggregatorTest {
+
+  @Test
+  public void testAggregate() {
+    Map<String, String> tags1 = ImmutableMap.of("ns", "ns1", "app", "app1");
+    Map<String, String> tags2 = ImmutableMap.of("ns", "ns1", "app", "app2");
+
+    List<MetricValues> records = ImmutableList.of(
+      new MetricValues(tags1, 10L, ImmutableList.of(new MetricValue("c", MetricType.COUNTER, 1),
+                                                    new MetricValue("g", MetricType.GAUGE, 5))),
+      new MetricValues(tags2, 10L, ImmutableList.of(new MetricValue("c", MetricType.COUNTER, 7))),
+      // Equal tags in a different map instance are merged
+      new MetricValues(new HashMap<>(tags1), 10L, ImmutableList.of(new MetricValue("c", MetricType.COUNTER, 2),
+                                                                   new MetricValue("g", MetricType.GAUGE, 3))),
+      new MetricValues(tags1, 11L, ImmutableList.of(new MetricValue("c", MetricType.COUNTER, 4)))
+    );
+
+    List<MetricValues> aggregated = MetricValuesAggregator.aggregate(records);
+    Assert.assertEquals(3, aggregated.size());
+
+    Assert.assertEquals(tags1, aggregated.get(0).getTags());
+    Assert.assertEquals(10L, aggregated.get(0).getTimestamp());
+    Assert.assertEquals(ImmutableMap.of("c", 3L, "g", 3L), toMap(aggregated.get(0)));
+
+    Assert.assertEquals(tags2, aggregated.get(1).getTags());
+    Assert.assertEquals(ImmutableMap.of("c", 7L), toMap(aggregated.get(1)));
+
+    Assert.assertEquals(11L, aggregated.get(2).getTimestamp());
+    Assert.assertEquals(ImmutableMap.of("c", 4L), toMap(aggregated.get(2)));
+  }
+
+  @Test
+  public void testMixedTypes() {
+    Map<String, String> tags = ImmutableMap.of("ns", "ns1");
+
+    // Same name emitted as both counter and gauge is merged in the order of the records
+    List<MetricValues> records = ImmutableList.of(
+      new MetricValues(tags, 10L, ImmutableList.of(new MetricValue("a", MetricType.COUNTER, 1),
+                                                   new MetricValue("b", MetricType.GAUGE, 5),
+                                                   new MetricValue("c", MetricType.COUNTER, 2))),
+      new MetricValues(tags, 10L, ImmutableList.of(new MetricValue("a", MetricType.GAUGE, 5),
+                                                   new MetricValue("b", MetricType.COUNTER, 2),
+                                                   new MetricValue("c", MetricType.GAUGE, 4))),
+      new MetricValues(tags, 10L, ImmutableList.of(new MetricValue("a", MetricType.COUNTER, 3),
+                                                   new MetricValue("c", MetricType.COUNTER, 1)))
+    );
+
+    List<MetricValues> aggregated = MetricValuesAggregator.aggregate(records);
+    Assert.assertEquals(1, aggregated.size());
+    // a: counter 1, then set to 5, then incremented by 3
+    // b: set to 5, then incremented by 2
+    // c: counter 2, then set to 4, then incremented by 1
+    Assert.assertEquals(ImmutableMap.of("a", 8L, "b", 7L, "c", 5L), toMap(aggregated.get(0)));
+    for (MetricValue metric : aggregated.get(0).getMetrics()) {
+      Assert.assertEquals(MetricType.GAUGE, metric.getType());
+    }
+  }
+
+  @Test
+  public void testCollapsedTags() {
+    Map<String, String> tags1 = ImmutableMap.of("ns", "ns1", "run", "run1");
+    Map<String, String> tags2 = ImmutableMap.of("ns", "ns1", "run", "run2");
+
+    // An aggregation without the "run" tag collapses both tags into one fact, for which the gauge of tags2 must be
+    // applied between the two counters of tags1
+    List<MetricValues> records = ImmutableList.of(
+      new MetricValues(tags1, 10L, ImmutableList.of(new MetricValue("m", MetricType.COUNTER, 1))),
+      new MetricValues(tags2, 10L, ImmutableList.of(new MetricValue("m", MetricType.GAUGE, 10))),
+      new MetricValues(tags1, 10L, ImmutableList.of(new MetricValue("m", MetricType.COUNTER, 2))),
+      // Counters of other names can still be merged
+      new MetricValues(tags1, 10L, ImmutableList.of(new MetricValue("n", MetricType.COUNTER, 3))),
+      new MetricValues(tags2, 10L, ImmutableList.of(new MetricValue("n", MetricType.COUNTER, 4))),
+      new MetricValues(tags1, 10L, ImmutableList.of(new MetricValue("n", MetricType.COUNTER, 5)))
+    );
+    List<MetricValues> aggregated = MetricValuesAggregator.aggregate(records);
+    Assert.assertEquals(3, aggregated.size());
+    Assert.assertEquals(ImmutableMap.of("m", 12L, "n", 12L), collapse(aggregated, null));
+    Assert.assertEquals(collapse(records, tags1), collapse(aggregated, tags1));
+    Assert.assertEquals(collapse(records, tags2), collapse(aggregated, tags2));
+
+    // Random records always give the same result, for each tags and for the collapsed tags
+    List<Map<String, String>> tags = ImmutableList.of(tags1, tags2, ImmutableMap.of("ns", "ns1", "run", "run3"));
+    Random random = new Random(0L);
+    for (int i = 0; i < 1000; i++) {
+      List<MetricValues> randomRecords = new ArrayList<>();
+      for (int j = 0; j < 10; j++) {
+        List<MetricValue> metrics = new ArrayList<>();
+        for (String name : new String[] { "a", "b" }) {
+          if (random.nextBoolean()) {
+            metrics.add(new MetricValue(name, random.nextInt(4) == 0 ? MetricType.GAUGE : MetricType.COUNTER,
+                                        random.nextInt(100)));
+          }
+        }
+        randomRecords.add(new MetricValues(tags.get(random.nextInt(tags.size())), 10L, metrics));
+      }
+      List<MetricValues> randomAggregated = MetricValuesAggregator.aggregate(randomRecords);
+      Assert.assertEquals(collapse(randomRecords, null), collapse(randomAggregated, null));
+      for (Map<String, String> tag : tags) {
+        Assert.assertEquals(collapse(randomRecords, tag), collapse(randomAggregated, tag));
+      }
+    }
+  }
+
+  /**
+   * Applies the given records one by one to a single value per metric name, as the metric store does for a fact.
+   *
+   * @param tags only apply records of the given tags, or {@code null} to apply all records as if their tags collapse
+   */
+  private Map<String, Long> collapse(List<MetricValues> records, @Nullable Map<String, String> tags) {
+    Map<String, Long> result = new HashMap<>();
+    for (MetricValues record : records) {
+      if (tags != null && !tags.equals(record.getTags())) {
+        continue;
+      }
+      for (MetricValue metric : record.getMetrics()) {
+        Long value = result.get(metric.getName());
+        if (metric.getType() == MetricType.COUNTER && value != null) {
+          result.put(metric.getName(), value + metric.getValue());
+        } else {
+          result.put(metric.getName(), metric.getValue());
+        }
+      }
+    }
+    return result;
+  }
+
+  private Map<String, Long> toMap(MetricValues record) {
+    Map<String, Long> result = new HashMap<>();
+    for (MetricValue metric : record.getMetrics()) {
+      Assert.assertNull(result.put(metric.getName(), metric.getValue()));
+    }
+    return result;
+  }
+}